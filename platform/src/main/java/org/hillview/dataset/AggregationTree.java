@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.management.ConfigureAggregator;
+import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.HostAndPort;
+import org.hillview.utils.HostList;
+import rx.Observable;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A balanced tree of aggregators built over a set of workers.  Each internal node
+ * of the tree merges the results of at most fanOut children; the aggregator of
+ * a node runs inside the process of one of the workers below it, so no separate
+ * aggregator processes are needed.  A worker can aggregate at several levels of
+ * the tree; the combined dataset of each level is installed at a separate
+ * reserved dataset index.
+ *
+ * Workers are grouped by their location label (e.g., the rack), so that siblings
+ * share a location when possible; the aggregator of a node is placed on a worker
+ * with the most common label among its children.  When the set of workers changes the
+ * tree is simply built again.
+ */
+public class AggregationTree {
+    /**
+     * The dataset combining the workers below an aggregator at level L
+     * has index AGGREGATOR_INDEX - L.
+     */
+    private static final int AGGREGATOR_INDEX = -1000;
+
+    /**
+     * A node of the tree.  Leaves have level 0 and refer to the initial
+     * dataset of a worker.  Children have lower levels than their parent,
+     * but not necessarily the next lower one.
+     */
+    public static class Node implements Serializable {
+        static final long serialVersionUID = 1;
+
+        public final HostAndPort server;
+        public final int level;
+        public final List<Node> children;
+
+        Node(HostAndPort server, int level, List<Node> children) {
+            this.server = server;
+            this.level = level;
+            this.children = children;
+        }
+
+        /**
+         * Index of the dataset of this node on its server.
+         */
+        public int getDatasetIndex() {
+            if (this.level == 0)
+                return RemoteDataSet.defaultDatasetIndex;
+            return AGGREGATOR_INDEX - this.level;
+        }
+
+        /**
+         * Number of workers below this node.
+         */
+        public int getLeafCount() {
+            if (this.children.isEmpty())
+                return 1;
+            int result = 0;
+            for (Node c : this.children)
+                result += c.getLeafCount();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return this.server + "@" + this.level;
+        }
+    }
+
+    /**
+     * Compute the shape of the tree.
+     * @param workers  Workers at the leaves.
+     * @param fanOut   Maximum number of children of a node; at least 2.
+     * @return         The nodes at the top of the tree; at most fanOut.
+     */
+    public static List<Node> build(HostList workers, int fanOut) {
+        if (fanOut < 2)
+            throw new RuntimeException("Fan-out must be at least 2: " + fanOut);
+        List<HostAndPort> sorted = new ArrayList<HostAndPort>(workers.getServerList());
+        sorted.sort(Comparator.comparing(workers::getLabel).thenComparing(HostAndPort::toString));
+        List<Node> level = new ArrayList<Node>(sorted.size());
+        for (HostAndPort h : sorted)
+            level.add(new Node(h, 0, Collections.emptyList()));
+        int depth = 0;
+        while (level.size() > fanOut) {
+            depth++;
+            // Group the nodes of each location separately; if that does not
+            // reduce the number of nodes group them regardless of location.
+            List<Node> next = new ArrayList<Node>();
+            int start = 0;
+            for (int i = 1; i <= level.size(); i++) {
+                if (i == level.size() || !workers.getLabel(level.get(i).server).equals(
+                        workers.getLabel(level.get(start).server))) {
+                    group(level.subList(start, i), fanOut, depth, workers, next);
+                    start = i;
+                }
+            }
+            if (next.size() == level.size()) {
+                next.clear();
+                group(level, fanOut, depth, workers, next);
+            }
+            level = next;
+        }
+        return level;
+    }
+
+    /**
+     * Split a list of nodes into balanced groups of at most fanOut nodes and
+     * create a parent for each group.  Groups with a single node are not given
+     * a parent.
+     */
+    private static void group(List<Node> nodes, int fanOut, int depth, HostList workers, List<Node> result) {
+        int count = nodes.size();
+        int groups = (count + fanOut - 1) / fanOut;
+        for (int g = 0; g < groups; g++) {
+            List<Node> children = new ArrayList<Node>(
+                    nodes.subList(g * count / groups, (g + 1) * count / groups));
+            if (children.size() == 1)
+                result.add(children.get(0));
+            else
+                result.add(new Node(chooseAggregator(children, workers), depth, children));
+        }
+    }
+
+    /**
+     * Choose a server to aggregate the specified children: one of the children
+     * with the most common label.
+     */
+    private static HostAndPort chooseAggregator(List<Node> children, HostList workers) {
+        HashMap<String, Integer> labelCount = new HashMap<String, Integer>();
+        for (Node c : children)
+            labelCount.merge(workers.getLabel(c.server), 1, Integer::sum);
+        Node best = children.get(0);
+        int bestCount = 0;
+        for (Node c : children) {
+            int count = labelCount.get(workers.getLabel(c.server));
+            if (count > bestCount) {
+                best = c;
+                bestCount = count;
+            }
+        }
+        return best.server;
+    }
+
+    /**
+     * Build the tree over the workers, configure the aggregators, and create
+     * the dataset at the root of the tree.  Calling this again with a different
+     * set of workers rebuilds the tree.
+     * @param workers  Workers at the leaves.
+     * @param fanOut   Maximum number of children of each aggregator.
+     */
+    public static <T> IDataSet<T> createCluster(HostList workers, int fanOut) {
+        if (workers.size() == 0)
+            throw new IllegalArgumentException("ClusterDescription must contain one or more servers");
+        List<Node> roots = build(workers, fanOut);
+        // An aggregator may use the dataset of a lower level on the same server,
+        // so the levels are configured bottom-up.
+        TreeMap<Integer, List<ConfigureAggregator>> perLevel = new TreeMap<Integer, List<ConfigureAggregator>>();
+        for (Node n : roots)
+            configure(n, perLevel);
+        for (Map.Entry<Integer, List<ConfigureAggregator>> e : perLevel.entrySet()) {
+            HillviewLogger.instance.info("Configuring aggregation tree", "level {0}: {1} aggregators",
+                    e.getKey(), e.getValue().size());
+            List<Observable<PartialResult<ControlMessage.StatusList>>> configured =
+                    new ArrayList<Observable<PartialResult<ControlMessage.StatusList>>>();
+            for (ConfigureAggregator c : e.getValue())
+                configured.add(new RemoteDataSet<Object>(c.server).manage(c));
+            List<PartialResult<ControlMessage.StatusList>> results =
+                    Observable.merge(configured).toList().toBlocking().single();
+            for (PartialResult<ControlMessage.StatusList> r : results) {
+                if (r.deltaValue == null)
+                    continue;
+                for (ControlMessage.Status s : r.deltaValue)
+                    if (s.isError())
+                        throw new RuntimeException("Cannot configure aggregator " + s.hostname, s.exception);
+            }
+        }
+        List<IDataSet<T>> top = new ArrayList<IDataSet<T>>(roots.size());
+        for (Node n : roots)
+            top.add(new RemoteDataSet<T>(n.server, n.getDatasetIndex()));
+        return new ParallelDataSet<T>(top);
+    }
+
+    private static void configure(Node node, TreeMap<Integer, List<ConfigureAggregator>> result) {
+        if (node.children.isEmpty())
+            return;
+        ArrayList<HostAndPort> servers = new ArrayList<HostAndPort>(node.children.size());
+        int[] indexes = new int[node.children.size()];
+        for (int i = 0; i < node.children.size(); i++) {
+            Node c = node.children.get(i);
+            configure(c, result);
+            servers.add(c.server);
+            indexes[i] = c.getDatasetIndex();
+        }
+        result.computeIfAbsent(node.level, k -> new ArrayList<ConfigureAggregator>()).add(
+                new ConfigureAggregator(node.server, node.getDatasetIndex(), servers, indexes));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.IMonoid;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An rx operator that groups values that arrive close in time and adds them
+ * using a monoid, emitting a single value for each group.
+ * A group is emitted when either:
+ * - it has COUNT_FACTOR times as many values as the fan-in (the number of sources
+ *   feeding the stream), or
+ * - a delay has elapsed since the first value in the group was received.
+ * The delay grows with the fan-in and adapts to the observed cost of adding values:
+ * when adding is cheap groups are emitted quickly, when it is expensive values are
+ * allowed to accumulate for a longer time, up to a maximum interval.
+ * All additions are performed sequentially on a single worker; values that arrive
+ * while an addition is in progress are added to the next group, so slow additions
+ * never pile up.
+ * @param <R>  Type of values in stream.
+ */
+public class BundleOperator<R> implements Observable.Operator<R, R> {
+    /**
+     * Minimum delay before emitting a group, in milliseconds.
+     */
+    static final int MIN_INTERVAL = 5;
+    /**
+     * The delay is at least this many times the average time spent adding a group.
+     * This bounds the fraction of the time spent adding values.
+     */
+    static final int MERGE_COST_FACTOR = 10;
+    /**
+     * A group is emitted immediately when it has this many values per source.
+     */
+    static final int COUNT_FACTOR = 4;
+
+    private final IMonoid<R> adder;
+    private final int maxInterval;
+    private final int maxCount;
+    private final int minInterval;
+    private final Scheduler scheduler;
+
+    /**
+     * Create an operator that bundles values.
+     * @param adder        Monoid used to add values.
+     * @param maxInterval  Maximum time in milliseconds a value is delayed.
+     * @param fanIn        Number of independent sources that contribute values to the stream.
+     */
+    public BundleOperator(IMonoid<R> adder, int maxInterval, int fanIn) {
+        this(adder, maxInterval, fanIn, Schedulers.computation());
+    }
+
+    /**
+     * Create an operator that bundles values.
+     * @param scheduler    Scheduler used to time the groups and add the values.
+     */
+    public BundleOperator(IMonoid<R> adder, int maxInterval, int fanIn, Scheduler scheduler) {
+        this.adder = adder;
+        this.maxInterval = maxInterval;
+        fanIn = Math.max(fanIn, 1);
+        this.maxCount = COUNT_FACTOR * fanIn;
+        // With many sources we wait longer, to produce fewer values upstream.
+        this.minInterval = Math.min(maxInterval, MIN_INTERVAL + fanIn / 2);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Subscriber<? super R> call(Subscriber<? super R> child) {
+        final Scheduler.Worker worker = this.scheduler.createWorker();
+        child.add(worker);
+        BundleSubscriber result = new BundleSubscriber(child, worker);
+        // The upstream is not subject to backpressure from the child, since
+        // we emit fewer values than we receive.
+        child.add(result);
+        return result;
+    }
+
+    private class BundleSubscriber extends Subscriber<R> {
+        private final Subscriber<? super R> child;
+        /**
+         * All the actions that emit values downstream execute on this worker.
+         */
+        private final Scheduler.Worker worker;
+        private final Object lock = new Object();
+        // The following fields are protected by the lock.
+        private List<R> pending;
+        /**
+         * Incremented each time the pending values are added and emitted.
+         */
+        private long group;
+        private boolean immediateFlushScheduled;
+        /**
+         * Exponentially-weighted average of the time to add a group, in milliseconds.
+         */
+        private double averageMergeTime;
+        // This field is only accessed on the worker.
+        private boolean done;
+
+        BundleSubscriber(Subscriber<? super R> child, Scheduler.Worker worker) {
+            this.child = child;
+            this.worker = worker;
+            this.pending = new ArrayList<R>();
+        }
+
+        private long currentDelay() {
+            double delay = this.averageMergeTime * MERGE_COST_FACTOR;
+            return (long)Math.min(BundleOperator.this.maxInterval, Math.max(BundleOperator.this.minInterval, delay));
+        }
+
+        @Override
+        public void onNext(R r) {
+            boolean flushNow = false;
+            long delay = 0;
+            long currentGroup;
+            boolean first;
+            synchronized (this.lock) {
+                this.pending.add(r);
+                first = this.pending.size() == 1;
+                if (this.pending.size() >= BundleOperator.this.maxCount && !this.immediateFlushScheduled) {
+                    this.immediateFlushScheduled = true;
+                    flushNow = true;
+                } else if (first) {
+                    delay = this.currentDelay();
+                }
+                currentGroup = this.group;
+            }
+            if (flushNow)
+                this.worker.schedule(() -> this.flush(-1));
+            else if (first)
+                this.worker.schedule(() -> this.flush(currentGroup), delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Add the pending values and emit the result.
+         * @param expectedGroup  If not negative only flush if this is the current group;
+         *                       otherwise the group has already been emitted.
+         */
+        private void flush(long expectedGroup) {
+            if (this.done)
+                return;
+            List<R> toAdd;
+            synchronized (this.lock) {
+                if (expectedGroup >= 0 && expectedGroup != this.group)
+                    return;
+                if (expectedGroup < 0)
+                    this.immediateFlushScheduled = false;
+                if (this.pending.isEmpty())
+                    return;
+                toAdd = this.pending;
+                this.pending = new ArrayList<R>();
+                this.group++;
+            }
+            R result;
+            long start = System.nanoTime();
+            try {
+                result = BundleOperator.this.adder.reduce(toAdd);
+            } catch (Throwable t) {
+                this.done = true;
+                this.child.onError(t);
+                return;
+            }
+            double elapsed = (System.nanoTime() - start) / 1.0e6;
+            synchronized (this.lock) {
+                this.averageMergeTime = .8 * this.averageMergeTime + .2 * elapsed;
+            }
+            this.child.onNext(result);
+        }
+
+        @Override
+        public void onCompleted() {
+            this.worker.schedule(() -> {
+                this.flush(-1);
+                if (this.done)
+                    return;
+                this.done = true;
+                this.child.onCompleted();
+                this.worker.unsubscribe();
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.worker.schedule(() -> {
+                if (this.done)
+                    return;
+                this.done = true;
+                this.child.onError(throwable);
+                this.worker.unsubscribe();
+            });
+        }
+    }
+}
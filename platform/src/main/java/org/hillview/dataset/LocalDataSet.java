@@ -18,17 +18,17 @@
 package org.hillview.dataset;
 
 import org.hillview.dataset.api.*;
+import org.hillview.sketches.highorder.SharedScanScheduler;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.*;
 import rx.Observable;
-import rx.Scheduler;
-import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
 
 import javax.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 
 /**
  * A LocalDataSet is an implementation of IDataSet which contains exactly one
@@ -50,16 +50,6 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
      */
     private final boolean separateThread;
 
-    /**
-     * Work is executed on this thread.
-     */
-    private static final Scheduler workScheduler;
-
-    static {
-        ExecutorService executor = ExecutorUtils.getComputeExecutorService();
-        workScheduler = Schedulers.from(executor);
-    }
-
     /**
      * Create a LocalDataSet, processing the data on a separate thread by default.
      * @param data: Data to store in the LocalDataSet.
@@ -75,15 +65,41 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
     }
 
     /**
-     * Schedule the computation using the LocalDataSet.workScheduler.
-     * @param data  Data whose computation is scheduled
+     * Schedule the computation on the compute thread pool.  The task is
+     * tagged with the class of the computation and with the session that
+     * initiated the operation, if known.  Unsubscribing before the task
+     * starts removes it from the queue.
+     * If an operation trace is active, the time spent waiting for the
+     * pool and computing is added to the trace.
+     * @param computation  Computation that is executed.
+     * @param callable     Code that performs the computation.
      */
-    private <S> Observable<S> schedule(Observable<S> data) {
-        if (this.separateThread) {
-            return data.subscribeOn(LocalDataSet.workScheduler)
-                    .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler());
-        }
-        return data;
+    private <S> Observable<S> schedule(IDataSetComputation computation, Callable<S> callable) {
+        final OperationTrace trace = OperationTrace.current();
+        if (!this.separateThread)
+            return Observable.fromCallable(OperationTrace.timed(trace, callable, -1));
+        final ComputePool.TaskClass taskClass = computation.getTaskClass();
+        final String session = trace == null ? null : trace.session;
+        Observable<S> result = Observable.create(subscriber -> {
+            long submitted = System.nanoTime();
+            Callable<S> timed = OperationTrace.timed(trace, callable, submitted);
+            ComputePool.Task task = ExecutorUtils.getComputeExecutorService().submit(
+                    taskClass, session, () -> {
+                        if (subscriber.isUnsubscribed())
+                            return;
+                        S value;
+                        try {
+                            value = timed.call();
+                        } catch (Throwable t) {
+                            subscriber.onError(t);
+                            return;
+                        }
+                        subscriber.onNext(value);
+                        subscriber.onCompleted();
+                    });
+            subscriber.add(Subscriptions.create(task::cancel));
+        });
+        return result.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler());
     }
 
     @Override
@@ -92,20 +108,18 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
         final Callable<IDataSet<S>> callable = () -> {
             try {
                 HillviewLogger.instance.info("Starting map", "{0}:{1}",
-                        this, mapper.asString());
+                        this, HillviewLogger.lazy(mapper::asString));
                 S result = mapper.apply(LocalDataSet.this.data);
                 HillviewLogger.instance.info("Completed map", "{0}:{1}",
-                        this, mapper.asString());
+                        this, HillviewLogger.lazy(mapper::asString));
                 return new LocalDataSet<S>(result);
             } catch (final Throwable t) {
                 throw new Exception(t);
             }
         };
-        final Observable<IDataSet<S>> mapped = Observable.fromCallable(callable);
+        final Observable<IDataSet<S>> mapped = this.schedule(mapper, callable);
         // Wrap the produced data in a PartialResult
-        Observable<PartialResult<IDataSet<S>>> data = mapped
-                .map(PartialResult::new);
-        return this.schedule(data);
+        return mapped.map(PartialResult::new);
     }
 
     @Override
@@ -117,10 +131,10 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
                 List<IDataSet<S>> locals = new ArrayList<IDataSet<S>>();
                 for (S s : Converters.checkNull(list)) {
                     HillviewLogger.instance.info("Starting flatMap", "{0}:{1}",
-                            this, mapper.asString());
+                            this, HillviewLogger.lazy(mapper::asString));
                     IDataSet<S> ds = new LocalDataSet<S>(s);
                     HillviewLogger.instance.info("Completed flatMap", "{0}:{1}",
-                            this, mapper.asString());
+                            this, HillviewLogger.lazy(mapper::asString));
                     locals.add(ds);
                 }
                 return (IDataSet<S>) new ParallelDataSet<S>(locals);
@@ -128,10 +142,9 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
                 throw new Exception(t);
             }
         };
-        final Observable<IDataSet<S>> mapped = Observable.fromCallable(callable);
+        final Observable<IDataSet<S>> mapped = this.schedule(mapper, callable);
         // Wrap the produced data in a PartialResult
-        Observable<PartialResult<IDataSet<S>>> data = mapped.map(PartialResult::new);
-        return this.schedule(data);
+        return mapped.map(PartialResult::new);
     }
 
     @Override
@@ -163,25 +176,23 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
     public Observable<PartialResult<IDataSet<T>>> prune(IMap<T, Boolean> isEmpty) {
         final Callable<IDataSet<T>> callable = () -> {
             HillviewLogger.instance.info("Starting prune", "{0}:{1}",
-                    this, isEmpty.asString());
+                    this, HillviewLogger.lazy(isEmpty::asString));
             Boolean result = isEmpty.apply(LocalDataSet.this.data);
             HillviewLogger.instance.info("Completed prune", "{0}:{1} result is {2}",
-                    this, isEmpty.asString(), result);
+                    this, HillviewLogger.lazy(isEmpty::asString), result);
             assert result != null;
             return result ? null : this;
         };
-        final Observable<IDataSet<T>> result = Observable.fromCallable(callable);
+        final Observable<IDataSet<T>> result = this.schedule(isEmpty, callable);
         // Wrap the produced data in a PartialResult
-        Observable<PartialResult<IDataSet<T>>> data = result
-                .map(PartialResult::new);
-        return this.schedule(data);
+        return result.map(PartialResult::new);
     }
 
     @Override
     public Observable<PartialResult<ControlMessage.StatusList>> manage(ControlMessage message) {
         final Callable<ControlMessage.StatusList> callable = () -> {
             HillviewLogger.instance.info("Starting manage", "{0}:{1}",
-                    this, message.toString());
+                    this, message);
             ControlMessage.Status status;
             try {
                 status = message.localAction(this);
@@ -191,7 +202,7 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
             }
             ControlMessage.StatusList result = new ControlMessage.StatusList(status);
             HillviewLogger.instance.info("Completed manage", "{0}:{1}",
-                    this, message.toString());
+                    this, message);
             return result;
         };
         final Observable<ControlMessage.StatusList> executed = Observable.fromCallable(callable);
@@ -202,24 +213,30 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
     public <R extends ISketchResult> Observable<PartialResult<R>> sketch(final ISketch<T, R> sketch) {
         // Immediately return a zero partial result
         // final Observable<PartialResult<R>> zero = this.zero(sketch::zero);
+        if (this.separateThread && this.data instanceof ITable) {
+            // Share the scan with other sketches queued or running on the same data.
+            Observable<R> shared = SharedScanScheduler.instance.schedule(
+                    sketch, (ITable)this.data, OperationTrace.current());
+            if (shared != null)
+                return shared.map(PartialResult::new);
+        }
         final Callable<R> callable = () -> {
             try {
                 HillviewLogger.instance.info("Starting sketch", "{0}:{1}",
-                        this, sketch.asString());
+                        this, HillviewLogger.lazy(sketch::asString));
                 R result = sketch.create(this.data);
                 HillviewLogger.instance.info("Completed sketch", "{0}:{1}",
-                        this, sketch.asString());
+                        this, HillviewLogger.lazy(sketch::asString));
                 return result;
             } catch (final Throwable t) {
                 throw new Exception(t);
             }
         };
-        final Observable<R> sketched = Observable.fromCallable(callable);
+        final Observable<R> sketched = this.schedule(sketch, callable);
         // Wrap results in a stream of PartialResults.
-        final Observable<PartialResult<R>> pro = sketched.map(PartialResult::new);
         // Concatenate with the zero.
         //Observable<PartialResult<R>> result = zero.concatWith(pro);
-        return this.schedule(pro);
+        return sketched.map(PartialResult::new);
     }
 
     @Override
@@ -31,7 +31,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
 
 /**
  * A ParallelDataSet holds together multiple IDataSet objects and invokes operations on them
@@ -45,16 +44,14 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
      * aggregate results from children if they come "close" to each other in time, to produce
      * fewer results upstream.  This parameter controls the aggregation interval:
      * If non zero then aggregate partial results that are within
-     * this specified number of milliseconds from each other.  Human reaction time is on the
+     * this specified number of milliseconds from each other.  This is an upper bound;
+     * results are emitted sooner when all children have reported or when adding
+     * results is cheap.  Human reaction time is on the
      * order of 50 milliseconds or more, so this is a ballpark reasonable value.
      * If this is set to zero no aggregation is performed.
      * If this is set to a value too large then progress reporting to the user may be impacted.
      */
     private int bundleInterval = 300;
-    /**
-     * The bundleInterval specifies a time in milliseconds.
-     */
-    private static final TimeUnit bundleTimeUnit = TimeUnit.MILLISECONDS;
 
     /**
      * Children of the data set.
@@ -90,6 +87,8 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
 
     public int size() { return this.children.size(); }
 
+    public List<IDataSet<T>> getChildren() { return this.children; }
+
     /**
      * Can be used to change the time interval in which partial results are aggregated.
      * This should be done only once after construction; datasets are supposed to be immutable.
@@ -103,8 +102,9 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
     }
 
     /**
-     * This function groups R values that come too close in time (within a 'bundleInterval'
-     * time interval) and "adds" them up emitting a single value.
+     * This function groups R values that come close in time and "adds" them up,
+     * emitting a single value.  Values are delayed at most 'bundleInterval';
+     * see BundleOperator for the policy.
      * @param data  A stream of data.
      * @param adder A monoid that knows how to add the data.
      * @return  A shorter stream, in which some of the values in the data stream have been
@@ -112,10 +112,9 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
      */
     private <R> Observable<R> bundle(final Observable<R> data, IMonoid<R> adder) {
         if (this.bundleInterval > 0) {
-            // If a time interval has no data we don't want to produce a zero.
-            Observable<List<R>> bundled = data.buffer(this.bundleInterval, bundleTimeUnit)
-                       .filter(e -> !e.isEmpty());
-            return bundled.map(adder::reduce);
+            // Merge time is charged to the operation being invoked, if it is traced.
+            IMonoid<R> timed = OperationTrace.timed(OperationTrace.current(), adder);
+            return data.lift(new BundleOperator<R>(timed, this.bundleInterval, this.size()));
         } else {
             return data;
         }
@@ -307,7 +306,7 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
         }
 
         final Callable<ControlMessage.StatusList> callable = () -> {
-            HillviewLogger.instance.info("Starting manage", "{0}", message.toString());
+            HillviewLogger.instance.info("Starting manage", "{0}", message);
             ControlMessage.Status status;
             try {
                 status = message.parallelAction(this);
@@ -317,7 +316,7 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
             ControlMessage.StatusList result = new ControlMessage.StatusList();
             if (status != null)
                 result.add(status);
-            HillviewLogger.instance.info("Completed manage", "{0}", message.toString());
+            HillviewLogger.instance.info("Completed manage", "{0}", message);
             return result;
         };
         final Observable<ControlMessage.StatusList> executed = Observable.fromCallable(callable);
@@ -18,9 +18,6 @@
 package org.hillview.dataset;
 
 import com.google.protobuf.ByteString;
-import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
-import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
-import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
 import io.grpc.stub.StreamObserver;
 import org.apache.commons.lang3.SerializationUtils;
 import org.hillview.dataset.api.*;
@@ -39,7 +36,6 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -51,19 +47,6 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
     private final static int TIMEOUT = 60000 * 10;  // TODO: import via config file
     private final int remoteHandle;
     private final HostAndPort serverEndpoint;
-    private final HillviewServerGrpc.HillviewServerStub stub;
-    /*
-     * To avoid epoll CPU utilization problems, we could use PollSelectorProvider().
-     * See: https://github.com/netty/netty/issues/327
-     */
-    private static final EventLoopGroup workerElg = new NioEventLoopGroup(1,
-            ExecutorUtils.newFastLocalThreadFactory("rds-shared-worker"));
-    /*
-     * The high priority for the executor is needed to handle unsubscription
-     * requests with high priority.
-     */
-    private static final ExecutorService executorService =
-            ExecutorUtils.newNamedThreadPool("rds-shared-executor", 5, Thread.MAX_PRIORITY);
     /**
      * When the service is deployed with a single initial dataset this is the index used.
      */
@@ -93,13 +76,18 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
     public RemoteDataSet(final HostAndPort serverEndpoint, final int remoteHandle) {
         this.serverEndpoint = serverEndpoint;
         this.remoteHandle = remoteHandle;
-        this.stub = HillviewServerGrpc.newStub(NettyChannelBuilder
-                .forAddress(serverEndpoint.getHost(), serverEndpoint.getPort())
-                .maxInboundMessageSize(HillviewServer.MAX_MESSAGE_SIZE)
-                .executor(executorService)
-                .eventLoopGroup(workerElg)
-                .usePlaintext()   // channel is unencrypted.
-                .build());
+    }
+
+    public HostAndPort getServerEndpoint() {
+        return this.serverEndpoint;
+    }
+
+    /**
+     * A stub for calling the server; the channels are shared by all
+     * datasets on the same server.
+     */
+    private HillviewServerGrpc.HillviewServerStub stub() {
+        return ChannelPool.instance.getStub(this.serverEndpoint);
     }
 
     private static <T> SerializedSubject<T, T> createSerializedSubject() {
@@ -125,12 +113,19 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         CommandWrapper(RemoteOperation operation) {
             byte[] serializedOp = SerializationUtils.serialize(operation);
             this.operationId = UUID.randomUUID();
-            this.command = Command.newBuilder()
+            Command.Builder builder = Command.newBuilder()
                     .setIdsIndex(RemoteDataSet.this.remoteHandle)
                     .setSerializedOp(ByteString.copyFrom(serializedOp))
                     .setHighId(operationId.getMostSignificantBits())
-                    .setLowId(operationId.getLeastSignificantBits())
-                    .build();
+                    .setLowId(operationId.getLeastSignificantBits());
+            OperationTrace trace = OperationTrace.current();
+            if (trace != null) {
+                builder.setTraceHighId(trace.rootId.getMostSignificantBits())
+                        .setTraceLowId(trace.rootId.getLeastSignificantBits());
+                if (trace.session != null)
+                    builder.setSession(trace.session);
+            }
+            this.command = builder.build();
             this.subject = RemoteDataSet.createSerializedSubject();
             this.responseObserver = null;
         }
@@ -156,9 +151,9 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final MapOperation<T, S> mapOp = new MapOperation<T, S>(mapper);
         DatasetCommandWrapper<S> wrap = new DatasetCommandWrapper<S>(mapOp);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .map(wrap.command, wrap.responseObserver))
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, wrap.responseObserver));
     }
 
     /**
@@ -170,9 +165,9 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final PruneOperation<T> pruneOp = new PruneOperation<T>(isEmpty);
         DatasetCommandWrapper<T> wrap = new DatasetCommandWrapper<T>(pruneOp);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .prune(wrap.command, wrap.responseObserver))
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, wrap.responseObserver));
     }
 
     @Override
@@ -180,9 +175,9 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final FlatMapOperation<T, S> mapOp = new FlatMapOperation<T, S>(mapper);
         DatasetCommandWrapper<S> wrap = new DatasetCommandWrapper<S>(mapOp);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .flatMap(wrap.command, wrap.responseObserver))
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, wrap.responseObserver));
     }
 
     /**
@@ -194,10 +189,10 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         CommandWrapper<R> wrap = new CommandWrapper<R>(sketchOp);
         StreamObserver<PartialResponse> responseObserver = new SketchObserver<R>(wrap.subject);
         return wrap.subject
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .sketch(wrap.command, responseObserver))
                 .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, responseObserver));
     }
 
     /**
@@ -223,9 +218,9 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final ZipOperation<T, S, R> zip = new ZipOperation<>(rds.remoteHandle, map);
         DatasetCommandWrapper<R> wrap = new DatasetCommandWrapper<>(zip);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .zip(wrap.command, wrap.responseObserver))
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, wrap.responseObserver));
     }
 
     @Override
@@ -250,9 +245,9 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final ZipNOperation<T, R> zip = new ZipNOperation<>(handles, map);
         DatasetCommandWrapper<R> wrap = new DatasetCommandWrapper<>(zip);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .zipN(wrap.command, wrap.responseObserver))
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, wrap.responseObserver));
     }
 
     @Override
@@ -262,9 +257,19 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final StreamObserver<PartialResponse> responseObserver =
                 new ManageObserver(wrap.subject, message, this);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                         .manage(wrap.command, responseObserver))
-                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
+                .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId, responseObserver));
+    }
+
+    /**
+     * Unsubscribes an operation and adds the work that the server has reported
+     * so far to the span of the caller.
+     */
+    private void unsubscribe(final UUID id, @Nullable StreamObserver<PartialResponse> observer) {
+        if (observer instanceof OperationObserver)
+            ((OperationObserver<?>)observer).addRemoteTrace();
+        this.unsubscribe(id);
     }
 
     /**
@@ -281,7 +286,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
                                        .setHighId(id.getMostSignificantBits())
                                        .setLowId(id.getLeastSignificantBits())
                                        .build();
-        this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+        this.stub().withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
                  .unsubscribe(command, new StreamObserver<Ack>() {
             @Override
             public void onNext(final Ack ack) {}
@@ -300,29 +305,68 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
      */
     private abstract class OperationObserver<S> implements StreamObserver<PartialResponse> {
         final SerializedSubject<S, S> subject;
+        /**
+         * Span of the operation that created this observer.
+         */
+        @Nullable
+        final OperationTrace trace;
+        /**
+         * Latest span received from the server; each one summarizes all work done so far.
+         */
+        @Nullable
+        OperationTrace remoteTrace;
+        /**
+         * Set once the span of the server has been added to the span of the caller.
+         */
+        boolean remoteTraceAdded;
 
         OperationObserver(final SerializedSubject<S, S> subject) {
             this.subject = subject;
+            this.trace = OperationTrace.current();
+            this.remoteTrace = null;
         }
 
         @Override
         public void onNext(final PartialResponse response) {
             HillviewLogger.instance.info("OperationObserver onNext");
+            if (this.trace != null && !response.getTrace().isEmpty())
+                this.setRemoteTrace(SerializationUtils.deserialize(response.getTrace().toByteArray()));
             S result = this.processResponse(response);
             this.subject.onNext(result);
         }
 
+        synchronized void setRemoteTrace(OperationTrace remoteTrace) {
+            if (!this.remoteTraceAdded)
+                this.remoteTrace = remoteTrace;
+        }
+
+        /**
+         * Add the span of the server to the span of the caller.  This is done
+         * once, when the operation completes, fails, or is cancelled.
+         */
+        synchronized void addRemoteTrace() {
+            if (this.remoteTraceAdded)
+                return;
+            this.remoteTraceAdded = true;
+            if (this.trace != null && this.remoteTrace != null) {
+                this.trace.add(this.remoteTrace);
+                this.remoteTrace = null;
+            }
+        }
+
         @Override
         public void onError(final Throwable throwable) {
             HillviewLogger.instance.error("RemoteDataSet Observer received exception",
                     "{0}:{1}", RemoteDataSet.this.toString(),
                     Utilities.throwableToString(throwable));
+            this.addRemoteTrace();
             this.subject.onError(throwable);
         }
 
         @Override
         public void onCompleted() {
             HillviewLogger.instance.info("OperationObserver has completed");
+            this.addRemoteTrace();
             this.subject.onCompleted();
         }
 
@@ -397,6 +441,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
 
         @Override
         public void onCompleted() {
+            this.addRemoteTrace();
             ControlMessage.Status status = this.message.remoteAction(this.dataSet);
             if (status != null) {
                 ControlMessage.StatusList list = new ControlMessage.StatusList(status);
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.*;
+import org.hillview.dataset.monoids.PartialResultMonoid;
+import org.hillview.utils.*;
+import rx.Observable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A dataset whose replicas all hold the same data, usually on different servers.
+ * Maps and zips are applied to all replicas, so the results are replicated as well.
+ * A sketch is sent to a single replica; if it does not complete within a latency
+ * percentile of recent executions of the same sketch on that replica, it is also sent
+ * to a second replica (a hedged request).  The first result is used and the other
+ * request is cancelled.  If the first replica fails the sketch is sent to the second
+ * one.  The replicas must have the same topology.
+ */
+public class ReplicatedDataSet<T> extends BaseDataSet<T> {
+    /**
+     * A sketch is hedged when it takes longer than this percentile of the previous
+     * executions.
+     */
+    private static final int HEDGE_PERCENTILE = Integer.getInteger("hillview.hedge.percentile", 95);
+    /**
+     * Delay before hedging when there are too few previous executions.
+     */
+    private static final int DEFAULT_HEDGE_MS = Integer.getInteger("hillview.hedge.default.ms", 1000);
+    private static final int MIN_SAMPLES = 20;
+    private static final int WINDOW_SIZE = 256;
+
+    /**
+     * Recent latencies of each kind of sketch on each replica.
+     */
+    private static final ConcurrentHashMap<String, LatencyWindow> latencies =
+            new ConcurrentHashMap<String, LatencyWindow>();
+    /**
+     * Used to choose the first replica of each sketch.
+     */
+    private static final AtomicInteger nextReplica = new AtomicInteger(0);
+
+    private final List<IDataSet<T>> replicas;
+
+    /**
+     * The latencies of the most recent executions of a sketch, in milliseconds.
+     */
+    static class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count = 0;
+
+        synchronized void add(long latency) {
+            this.samples[this.count % WINDOW_SIZE] = latency;
+            this.count++;
+        }
+
+        synchronized long percentile(int percent) {
+            int size = Math.min(this.count, WINDOW_SIZE);
+            if (size < MIN_SAMPLES)
+                return DEFAULT_HEDGE_MS;
+            long[] sorted = Arrays.copyOf(this.samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, size * percent / 100)];
+        }
+    }
+
+    public ReplicatedDataSet(List<IDataSet<T>> replicas) {
+        if (replicas.isEmpty())
+            throw new RuntimeException("No replicas");
+        this.replicas = replicas;
+    }
+
+    /**
+     * Creates a parallel dataset over the specified cluster where each child is
+     * replicated on several machines.  Replicas are placed on machines with different
+     * labels when possible.
+     * @param index        Index of dataset on remote machine.  Must be a negative number.
+     * @param replication  Number of replicas of each child; must divide the number of servers.
+     */
+    public static IDataSet<Empty> createCluster(final HostList description, int index, int replication) {
+        final int numServers = description.size();
+        if (numServers <= 0)
+            throw new IllegalArgumentException("ClusterDescription must contain one or more servers");
+        if (replication < 1 || numServers % replication != 0)
+            throw new IllegalArgumentException("Replication " + replication +
+                    " does not divide the number of servers " + numServers);
+        HillviewLogger.instance.info("Creating replicated dataset", "replication {0}", replication);
+        List<HostAndPort> sorted = new ArrayList<HostAndPort>(description.getServerList());
+        sorted.sort(Comparator.comparing(description::getLabel).thenComparing(HostAndPort::toString));
+        int groups = numServers / replication;
+        final List<IDataSet<Empty>> children = new ArrayList<IDataSet<Empty>>(groups);
+        for (int g = 0; g < groups; g++) {
+            List<IDataSet<Empty>> replicas = new ArrayList<IDataSet<Empty>>(replication);
+            for (int r = 0; r < replication; r++)
+                replicas.add(new RemoteDataSet<Empty>(sorted.get(g + r * groups), index));
+            children.add(new ReplicatedDataSet<Empty>(replicas));
+        }
+        return new ParallelDataSet<Empty>(children);
+    }
+
+    public int size() { return this.replicas.size(); }
+
+    /**
+     * Combine the results of an operation applied to every replica.
+     * @param obs  One stream of partial results per replica.
+     * @return     A stream of progress reports ending with a ReplicatedDataSet.
+     */
+    private <S> Observable<PartialResult<IDataSet<S>>> combine(
+            List<Observable<PartialResult<IDataSet<S>>>> obs) {
+        final int size = obs.size();
+        return Observable.defer(() -> {
+            List<IDataSet<S>> results = new ArrayList<IDataSet<S>>(Collections.nCopies(size, null));
+            List<Observable<PartialResult<IDataSet<S>>>> tagged =
+                    new ArrayList<Observable<PartialResult<IDataSet<S>>>>(size);
+            for (int i = 0; i < size; i++) {
+                int finalI = i;
+                tagged.add(obs.get(i).map(p -> {
+                    if (p.deltaValue != null)
+                        results.set(finalI, p.deltaValue);
+                    return new PartialResult<IDataSet<S>>(p.deltaDone / size, null);
+                }));
+            }
+            Observable<PartialResult<IDataSet<S>>> last = Observable.fromCallable(() -> {
+                int present = 0;
+                for (IDataSet<S> r : results)
+                    if (r != null)
+                        present++;
+                if (present == 0)
+                    return new PartialResult<IDataSet<S>>(0, null);
+                if (present != size)
+                    throw new RuntimeException("Replicas produced different results");
+                return new PartialResult<IDataSet<S>>(0, new ReplicatedDataSet<S>(results));
+            });
+            return Observable.merge(tagged).concatWith(last);
+        });
+    }
+
+    @Override
+    public <S> Observable<PartialResult<IDataSet<S>>> map(IMap<T, S> mapper) {
+        return this.combine(Linq.map(this.replicas, r -> r.map(mapper)));
+    }
+
+    @Override
+    public <S> Observable<PartialResult<IDataSet<S>>> flatMap(IMap<T, List<S>> mapper) {
+        return this.combine(Linq.map(this.replicas, r -> r.flatMap(mapper)));
+    }
+
+    @Override
+    public Observable<PartialResult<IDataSet<T>>> prune(IMap<T, Boolean> isEmpty) {
+        return this.combine(Linq.map(this.replicas, r -> r.prune(isEmpty)));
+    }
+
+    private <S> ReplicatedDataSet<S> checkReplicated(IDataSet<S> other) {
+        if (!(other instanceof ReplicatedDataSet<?>))
+            throw new RuntimeException("Expected a ReplicatedDataSet " + other);
+        ReplicatedDataSet<S> result = (ReplicatedDataSet<S>)other;
+        if (result.size() != this.size())
+            throw new RuntimeException("Different number of replicas: " +
+                    this.size() + " vs. " + result.size());
+        return result;
+    }
+
+    @Override
+    public <S, R> Observable<PartialResult<IDataSet<R>>> zip(IDataSet<S> other, IMap<Pair<T, S>, R> map) {
+        ReplicatedDataSet<S> os = this.checkReplicated(other);
+        List<Observable<PartialResult<IDataSet<R>>>> obs =
+                new ArrayList<Observable<PartialResult<IDataSet<R>>>>(this.size());
+        for (int i = 0; i < this.size(); i++)
+            obs.add(this.replicas.get(i).zip(os.replicas.get(i), map));
+        return this.combine(obs);
+    }
+
+    @Override
+    public <R> Observable<PartialResult<IDataSet<R>>> zipN(List<IDataSet<T>> other, IMap<List<T>, R> map) {
+        List<ReplicatedDataSet<T>> os = Linq.map(other, this::checkReplicated);
+        List<Observable<PartialResult<IDataSet<R>>>> obs =
+                new ArrayList<Observable<PartialResult<IDataSet<R>>>>(this.size());
+        for (int i = 0; i < this.size(); i++) {
+            int finalI = i;
+            obs.add(this.replicas.get(i).zipN(Linq.map(os, o -> o.replicas.get(finalI)), map));
+        }
+        return this.combine(obs);
+    }
+
+    @Override
+    public Observable<PartialResult<ControlMessage.StatusList>> manage(ControlMessage message) {
+        final int size = this.size();
+        List<Observable<PartialResult<ControlMessage.StatusList>>> obs =
+                Linq.map(this.replicas, r -> r.manage(message).map(
+                        e -> new PartialResult<ControlMessage.StatusList>(e.deltaDone / size, e.deltaValue)));
+        return Observable.merge(obs);
+    }
+
+    private LatencyWindow getWindow(int replica, ISketch<T, ?> sketch) {
+        return latencies.computeIfAbsent(
+                this.replicas.get(replica) + "/" + sketch.getClass().getName(),
+                k -> new LatencyWindow());
+    }
+
+    /**
+     * Run the sketch on one replica and return its complete result as a single value.
+     * The latency of the replica is recorded when it produces the result.
+     */
+    private <R extends ISketchResult> Observable<PartialResult<R>> runOn(int replica, ISketch<T, R> sketch) {
+        PartialResultMonoid<R> monoid = new PartialResultMonoid<R>(sketch);
+        LatencyWindow window = this.getWindow(replica, sketch);
+        return Observable.defer(() -> {
+            long start = System.nanoTime();
+            return this.replicas.get(replica).sketch(sketch).reduce(monoid::add)
+                    .doOnNext(r -> window.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        });
+    }
+
+    /**
+     * Partial results from the replicas cannot be mixed, so the result is only
+     * produced when a replica has completed the sketch.
+     */
+    @Override
+    public <R extends ISketchResult> Observable<PartialResult<R>> sketch(ISketch<T, R> sketch) {
+        int size = this.size();
+        int first = Math.floorMod(nextReplica.getAndIncrement(), size);
+        if (size == 1)
+            return this.replicas.get(first).sketch(sketch);
+        int second = (first + 1) % size;
+        long delay = this.getWindow(first, sketch).percentile(HEDGE_PERCENTILE);
+        return Observable.defer(() -> {
+            // The fallback and the hedged request share a single execution on the
+            // second replica, so that it never runs the sketch twice.
+            Observable<PartialResult<R>> onSecond = this.runOn(second, sketch).share();
+            AtomicBoolean failedOver = new AtomicBoolean();
+            // If the first replica fails the sketch falls back to the second one.
+            Observable<PartialResult<R>> primary = this.runOn(first, sketch)
+                    .onErrorResumeNext(e -> {
+                        HillviewLogger.instance.warn("Replica failed", "{0}: {1}",
+                                this.replicas.get(first), e.getMessage());
+                        MetricsRegistry.instance.increment("replica_failovers");
+                        failedOver.set(true);
+                        return onSecond;
+                    });
+            // The hedged request is only used for latency: if it fails the
+            // primary request, which has its own fallback, decides the result.
+            // After a failover the second replica is already running the sketch.
+            Observable<PartialResult<R>> hedged = Observable.defer(() -> {
+                if (failedOver.get())
+                    return Observable.<PartialResult<R>>never();
+                MetricsRegistry.instance.increment("hedged_sketches");
+                return onSecond
+                        .doOnNext(r -> MetricsRegistry.instance.increment("hedged_sketch_wins"))
+                        .onErrorResumeNext(e -> Observable.never());
+            }).delaySubscription(delay, TimeUnit.MILLISECONDS);
+            // amb unsubscribes from the slower replica, which cancels its computation.
+            return Observable.amb(primary, hedged);
+        });
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", replicas " + this.replicas;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.protobuf.ByteString;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.IDataSetComputation;
+import org.hillview.dataset.api.IMap;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.dataset.monoids.PartialResultMonoid;
+import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.MetricsRegistry;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Remembers the complete results of sketches, so that they can be maintained
+ * incrementally when data is appended.  The cache maps a pair (dataset, sketch)
+ * to the result of the sketch on the dataset.  Datasets are immutable and are
+ * compared by identity; they are not kept alive by the cache.  Sketches are
+ * compared by their serialized form.
+ *
+ * Data is appended by creating a ParallelDataSet whose children are the old
+ * dataset and the new partitions.  When some children of a ParallelDataSet have
+ * cached results only the other children are sketched, and the results are added.
+ * Cached results are shared, so IMonoid.add must not modify its arguments.
+ * The cache is bounded by the memory used by the results; the least-recently
+ * used results are evicted first.
+ *
+ * Views derived from a table, e.g., by filtering, are new datasets.  The cache
+ * is told about the datasets produced by maps; a dataset produced by a
+ * deterministic map from some data shares the cached results of the first
+ * dataset produced by the same map from the same data.  Maps preserve the
+ * partitioning, so this holds for the children as well: a view derived from a
+ * table with appended partitions reuses the results of the same view derived
+ * from the table before the append.
+ */
+public class SketchResultCache {
+    /**
+     * A pair (dataset, computation), where the computation is a sketch or a map.
+     */
+    private static class Key {
+        final WeakReference<IDataSet<?>> data;
+        final int dataHash;
+        /**
+         * Serialized computation.
+         */
+        final ByteString computation;
+
+        Key(IDataSet<?> data, ByteString computation) {
+            this.data = new WeakReference<IDataSet<?>>(data);
+            this.dataHash = System.identityHashCode(data);
+            this.computation = computation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            IDataSet<?> data = this.data.get();
+            return data != null && data == key.data.get() && this.computation.equals(key.computation);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.dataHash + this.computation.hashCode();
+        }
+    }
+
+    private final Cache<Key, ISketchResult> results;
+    /**
+     * For each pair (dataset, map) the first dataset produced by the map from the dataset.
+     */
+    private final Cache<Key, IDataSet<?>> derivations;
+    /**
+     * Maps a dataset produced by a map to the first dataset produced by the same
+     * map from the same data; the results of both are cached for the latter.
+     * Keys are compared by identity.
+     */
+    private final Cache<IDataSet<?>, IDataSet<?>> canonical;
+
+    /**
+     * Create a cache of sketch results.
+     * @param maxBytes  Maximum memory used by the results kept, in bytes.
+     */
+    public SketchResultCache(long maxBytes) {
+        this.results = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Weigher<Key, ISketchResult>) SketchResultCache::estimateSize)
+                .build();
+        this.derivations = CacheBuilder.newBuilder().weakValues().build();
+        this.canonical = CacheBuilder.newBuilder().weakKeys().weakValues().build();
+    }
+
+    /**
+     * A rough estimate of the memory used by a cache entry, in bytes: the size of
+     * the result and of the serialized sketch.
+     */
+    private static int estimateSize(Key key, ISketchResult result) {
+        return (int)Math.min(result.estimateSize() + key.computation.size() + 100, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The key used to compare sketches, or null if the sketch result cannot be cached.
+     */
+    @Nullable
+    private static ByteString sketchKey(ISketch<?, ?> sketch) {
+        if (!sketch.isIncremental())
+            return null;
+        return serialize(sketch);
+    }
+
+    @Nullable
+    private static ByteString serialize(IDataSetComputation computation) {
+        try {
+            return ByteString.copyFrom(SerializationUtils.serialize(computation));
+        } catch (SerializationException ex) {
+            HillviewLogger.instance.warn("Cannot serialize computation", "{0}", computation.asString());
+            return null;
+        }
+    }
+
+    /**
+     * The dataset under which the results of a dataset are cached.
+     */
+    private IDataSet<?> canonical(IDataSet<?> data) {
+        IDataSet<?> result = this.canonical.getIfPresent(data);
+        return result != null ? result : data;
+    }
+
+    @Nullable
+    private <T, R extends ISketchResult> R get(IDataSet<T> data, ByteString sketch) {
+        @SuppressWarnings("unchecked")
+        R result = (R)this.results.getIfPresent(new Key(this.canonical(data), sketch));
+        return result;
+    }
+
+    /**
+     * Record that a dataset has been produced by applying a map to another dataset,
+     * so that the cached results of the same map applied to the same data can be reused.
+     * @param source  Dataset the map was applied to.
+     * @param map     Map applied.
+     * @param result  Dataset produced by the map.
+     */
+    public <T, S> void derived(IDataSet<T> source, IMap<T, S> map, IDataSet<S> result) {
+        if (!map.isDeterministic())
+            return;
+        ByteString key = serialize(map);
+        if (key != null)
+            this.derived(source, key, result);
+    }
+
+    private synchronized void derived(IDataSet<?> source, ByteString map, IDataSet<?> result) {
+        Key key = new Key(this.canonical(source), map);
+        IDataSet<?> first = this.derivations.getIfPresent(key);
+        if (first == null) {
+            this.derivations.put(key, result);
+        } else {
+            first = this.canonical(first);
+            if (first != result)
+                this.canonical.put(result, first);
+        }
+        if (source instanceof ParallelDataSet && result instanceof ParallelDataSet) {
+            List<? extends IDataSet<?>> sources = ((ParallelDataSet<?>)source).getChildren();
+            List<? extends IDataSet<?>> results = ((ParallelDataSet<?>)result).getChildren();
+            if (sources.size() == results.size())
+                for (int i = 0; i < sources.size(); i++)
+                    this.derived(sources.get(i), map, results.get(i));
+        }
+    }
+
+    /**
+     * Run a sketch on a dataset, reusing the cached results of the dataset or of
+     * some of its children.  The complete result is cached when the sketch completes.
+     * @param data    Dataset to sketch.
+     * @param sketch  Sketch to run.
+     * @return        A stream of partial results, like IDataSet.sketch.
+     */
+    public <T, R extends ISketchResult> Observable<PartialResult<R>> sketch(
+            IDataSet<T> data, ISketch<T, R> sketch) {
+        ByteString key = sketchKey(sketch);
+        if (key == null)
+            return data.sketch(sketch);
+        R cached = this.get(data, key);
+        if (cached != null) {
+            MetricsRegistry.instance.increment("sketch_cache_hits");
+            return Observable.just(new PartialResult<R>(cached));
+        }
+        Observable<PartialResult<R>> result = this.compute(data, sketch, key);
+        PartialResultMonoid<R> monoid = new PartialResultMonoid<R>(sketch);
+        return Observable.defer(() -> {
+            AtomicReference<PartialResult<R>> total = new AtomicReference<PartialResult<R>>(monoid.zero());
+            return result
+                    .doOnNext(p -> total.accumulateAndGet(p, monoid::add))
+                    .doOnCompleted(() -> {
+                        R value = total.get().deltaValue;
+                        if (value != null)
+                            this.results.put(new Key(this.canonical(data), key), value);
+                    });
+        });
+    }
+
+    /**
+     * Sketch a dataset, using the cached results of its children if there are any.
+     */
+    private <T, R extends ISketchResult> Observable<PartialResult<R>> compute(
+            IDataSet<T> data, ISketch<T, R> sketch, ByteString key) {
+        if (!(data instanceof ParallelDataSet))
+            return data.sketch(sketch);
+        List<IDataSet<T>> children = ((ParallelDataSet<T>)data).getChildren();
+        List<R> cached = new ArrayList<R>(children.size());
+        boolean found = false;
+        for (IDataSet<T> child : children) {
+            R r = this.get(child, key);
+            cached.add(r);
+            found = found || r != null;
+        }
+        if (!found)
+            return data.sketch(sketch);
+
+        // Some children have been sketched before; only sketch the others.
+        int size = children.size();
+        List<Observable<PartialResult<R>>> obs = new ArrayList<Observable<PartialResult<R>>>(size);
+        for (int i = 0; i < size; i++) {
+            R r = cached.get(i);
+            if (r != null) {
+                MetricsRegistry.instance.increment("sketch_cache_hits");
+                obs.add(Observable.just(new PartialResult<R>(1.0 / size, r)));
+            } else {
+                obs.add(this.compute(children.get(i), sketch, key)
+                        .map(e -> new PartialResult<R>(e.deltaDone / size, e.deltaValue)));
+            }
+        }
+        return Observable.merge(obs);
+    }
+
+    public void purge() {
+        this.results.invalidateAll();
+        this.derivations.invalidateAll();
+        this.canonical.invalidateAll();
+    }
+
+    public long size() {
+        return this.results.size();
+    }
+}
@@ -148,4 +148,15 @@ public class ControlMessage implements Serializable {
      */
     @Nullable
     public Status remoteServerAction(HillviewServer server) { return null; }
+
+    /**
+     * This is executed at all HillviewServer objects, like the method above, for
+     * messages that need the dataset they were sent to.
+     * @param dataset  Dataset on the server that the message was sent to.
+     * @return null if there is nothing to do.
+     */
+    @Nullable
+    public Status remoteServerAction(HillviewServer server, IDataSet<?> dataset) {
+        return this.remoteServerAction(server);
+    }
 }
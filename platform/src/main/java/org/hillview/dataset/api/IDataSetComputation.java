@@ -17,6 +17,8 @@
 
 package org.hillview.dataset.api;
 
+import org.hillview.utils.ComputePool;
+
 import java.io.Serializable;
 
 /**
@@ -28,4 +30,10 @@ public interface IDataSetComputation extends Serializable {
      * We cannot override toString, so we implement a new method.
      */
     default String asString() { return this.getClass().getName(); }
+
+    /**
+     * The class of the tasks that execute this computation on the workers,
+     * which decides their priority in the compute thread pool.
+     */
+    default ComputePool.TaskClass getTaskClass() { return ComputePool.TaskClass.Interactive; }
 }
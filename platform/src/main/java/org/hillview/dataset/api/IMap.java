@@ -33,4 +33,12 @@ public interface IMap<T, S> extends IDataSetComputation {
      */
     @Nullable
     S apply(@Nullable T data);
+
+    /**
+     * True if applying this map again to the same data produces the same
+     * result, so the sketch results computed on the data it produces can be
+     * reused for the data produced later.  Maps that read state outside the
+     * dataset, such as files or databases, should return false.
+     */
+    default boolean isDeterministic() { return true; }
 }
@@ -28,6 +28,13 @@ import java.util.List;
  */
 public interface IMonoid<R> extends Serializable {
     @Nullable R zero();
+
+    /**
+     * Add two elements of the monoid.  The arguments must not be modified: results
+     * are shared, e.g. by the SketchResultCache, and may be added again later.
+     * The result may be one of the arguments.  Sketches whose add method updates
+     * an argument in place must not be incremental.
+     */
     @Nullable R add(@Nullable R left, @Nullable R right);
 
     @Nullable
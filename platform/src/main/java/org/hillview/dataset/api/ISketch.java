@@ -46,6 +46,14 @@ public interface ISketch<T, R extends ISketchResult> extends
     @Nullable
     default R getZero() { return Converters.checkNull(this.zero()); }
 
+    /**
+     * True if the result of this sketch on a dataset can be remembered and
+     * added to the results on data appended later.  Sketches whose result
+     * depends on state outside the dataset, such as the files on disk, should
+     * return false; they are always recomputed.
+     */
+    default boolean isIncremental() { return true; }
+
     /**
      * Creates a post-processed sketch which runs the specified post-processing
      * function after the sketch completes.
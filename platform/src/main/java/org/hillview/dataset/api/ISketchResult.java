@@ -17,9 +17,28 @@
 
 package org.hillview.dataset.api;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 /**
  * The result produced by a sketch.
  */
-public interface ISketchResult extends Serializable {}
+public interface ISketchResult extends Serializable {
+    /**
+     * A rough estimate of the memory used by this result, in bytes.  Used to
+     * bound the memory used by caches of results, so it should be cheap to
+     * compute.  Results whose size depends on the data should override this.
+     */
+    default long estimateSize() { return 64; }
+
+    /**
+     * A rough estimate of the memory used by an object that may be a result.
+     */
+    static long sizeOf(@Nullable Object object) {
+        if (object == null)
+            return 0;
+        if (object instanceof ISketchResult)
+            return ((ISketchResult)object).estimateSize();
+        return 16;
+    }
+}
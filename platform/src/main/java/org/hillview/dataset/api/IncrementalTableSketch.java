@@ -59,6 +59,16 @@ public abstract class IncrementalTableSketch<
         return result.rescale(samplingRate);
     }
 
+    /**
+     * True if the result of this sketch is the result of incrementing every row,
+     * as done by create, so that the sketch can share a table scan with other
+     * sketches.  Sketches must opt in by overriding this method; sketches that
+     * compute their result with a faster algorithm should not.
+     */
+    public boolean canShareScan() {
+        return false;
+    }
+
     @Override
     public R create(@Nullable ITable data) {
         R result = Converters.checkNull(this.zero());
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * A span that records where the time of one operation went on one node.
+ * Each node that executes an operation (the root, an aggregator, or a leaf server)
+ * has a span for it; all spans of an operation share the id of the root span.
+ * The spans of remote children are shipped back with the partial results and
+ * added to the span of their parent, so the root span summarizes the whole tree.
+ *
+ * Spans are attached to the thread that creates the observables for an operation;
+ * the datasets capture the current span when an operation is invoked.
+ * Each process keeps a bounded set of recent spans, which can be queried.
+ */
+public class OperationTrace implements Serializable {
+    static final long serialVersionUID = 1;
+
+    /**
+     * Phases of an operation whose duration is measured.
+     */
+    public enum Phase {
+        /**
+         * Decoding the operation received from the parent.
+         */
+        Deserialize,
+        /**
+         * Waiting for a thread of the compute pool.
+         */
+        Queue,
+        /**
+         * Running the operation on the data of a leaf.
+         */
+        Compute,
+        /**
+         * Combining partial results.
+         */
+        Merge,
+        /**
+         * Encoding the results sent to the parent.
+         */
+        Serialize
+    }
+
+    private static final int MAX_RECENT = 1000;
+    private static final Cache<UUID, OperationTrace> recent =
+            CacheBuilder.newBuilder().maximumSize(MAX_RECENT).build();
+    private static final ThreadLocal<OperationTrace> current = new ThreadLocal<OperationTrace>();
+
+    /**
+     * Identifier of this span.
+     */
+    public final UUID id;
+    /**
+     * Identifier of the span at the root of the tree.
+     */
+    public final UUID rootId;
+    public final String operation;
+    /**
+     * Session of the user that initiated the operation; null if unknown.
+     */
+    @Nullable
+    public final String session;
+    /**
+     * Wall-clock time when the span started, in milliseconds.
+     */
+    public final long startTime;
+    /**
+     * Wall-clock time when the span completed, in milliseconds; 0 if not completed.
+     */
+    private long endTime;
+    /**
+     * Nanoseconds spent in each phase, summed over all threads and all children.
+     */
+    private final long[] nanos = new long[Phase.values().length];
+    /**
+     * Bytes of results sent to the parent by this node and its children.
+     */
+    private long bytes;
+    /**
+     * Number of leaf computations.
+     */
+    private int leaves;
+    /**
+     * Number of remote children whose spans were added to this one.
+     */
+    private int remotes;
+
+    private OperationTrace(UUID id, UUID rootId, String operation,
+                           @Nullable String session, long startTime) {
+        this.id = id;
+        this.rootId = rootId;
+        this.operation = operation;
+        this.session = session;
+        this.startTime = startTime;
+    }
+
+    /**
+     * Start a new span and register it with the recent spans.
+     * @param id         Identifier of the span.
+     * @param rootId     Identifier of the root span; if null this span is the root.
+     * @param operation  Description of the operation.
+     * @param session    Session that initiated the operation; null if unknown.
+     */
+    public static OperationTrace start(UUID id, @Nullable UUID rootId, String operation,
+                                       @Nullable String session) {
+        OperationTrace result = new OperationTrace(
+                id, rootId == null ? id : rootId, operation, session, System.currentTimeMillis());
+        recent.put(id, result);
+        return result;
+    }
+
+    public static OperationTrace start(UUID id, @Nullable UUID rootId, String operation) {
+        return start(id, rootId, operation, null);
+    }
+
+    /**
+     * The span of the operation that is being invoked by the current thread, if any.
+     */
+    @Nullable
+    public static OperationTrace current() {
+        return current.get();
+    }
+
+    /**
+     * Invoke an operation on behalf of a span.  The span is visible to all
+     * datasets that are invoked by the current thread while the body runs.
+     */
+    public static <R> R with(@Nullable OperationTrace trace, Supplier<R> body) {
+        OperationTrace previous = current.get();
+        current.set(trace);
+        try {
+            return body.get();
+        } finally {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Wrap a leaf computation to measure its queueing and compute time.
+     * @param trace      Span of the computation; if null the computation is returned unchanged.
+     * @param callable   Computation.
+     * @param submitted  Time in nanoseconds when the computation was submitted;
+     *                   negative if the computation is not queued.
+     */
+    public static <S> Callable<S> timed(@Nullable OperationTrace trace, Callable<S> callable,
+                                        long submitted) {
+        if (trace == null)
+            return callable;
+        return () -> {
+            long start = System.nanoTime();
+            if (submitted >= 0)
+                trace.add(Phase.Queue, start - submitted);
+            try {
+                return callable.call();
+            } finally {
+                trace.add(Phase.Compute, System.nanoTime() - start);
+                trace.addLeaf();
+            }
+        };
+    }
+
+    /**
+     * Wrap a monoid to measure the time spent merging results.
+     * @param trace  Span of the merges; if null the monoid is returned unchanged.
+     */
+    public static <R> IMonoid<R> timed(@Nullable OperationTrace trace, IMonoid<R> monoid) {
+        if (trace == null)
+            return monoid;
+        return new IMonoid<R>() {
+            static final long serialVersionUID = 1;
+
+            @Nullable
+            @Override
+            public R zero() {
+                return monoid.zero();
+            }
+
+            @Nullable
+            @Override
+            public R add(@Nullable R left, @Nullable R right) {
+                long start = System.nanoTime();
+                try {
+                    return monoid.add(left, right);
+                } finally {
+                    trace.add(Phase.Merge, System.nanoTime() - start);
+                }
+            }
+
+            @Nullable
+            @Override
+            public R reduce(List<R> data) {
+                long start = System.nanoTime();
+                try {
+                    return monoid.reduce(data);
+                } finally {
+                    trace.add(Phase.Merge, System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    public synchronized void add(Phase phase, long nanoseconds) {
+        this.nanos[phase.ordinal()] += nanoseconds;
+    }
+
+    public synchronized void addBytes(long bytes) {
+        this.bytes += bytes;
+    }
+
+    public synchronized void addLeaf() {
+        this.leaves++;
+    }
+
+    /**
+     * Add the span of a remote child to this span.
+     */
+    public synchronized void add(OperationTrace child) {
+        for (int i = 0; i < this.nanos.length; i++)
+            this.nanos[i] += child.nanos[i];
+        this.bytes += child.bytes;
+        this.leaves += child.leaves;
+        this.remotes += child.remotes + 1;
+    }
+
+    public synchronized void finish() {
+        if (this.endTime == 0)
+            this.endTime = System.currentTimeMillis();
+    }
+
+    public synchronized long getNanos(Phase phase) {
+        return this.nanos[phase.ordinal()];
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    public synchronized int getLeaves() {
+        return this.leaves;
+    }
+
+    public synchronized int getRemotes() {
+        return this.remotes;
+    }
+
+    /**
+     * A copy of the current state of the span, which can be shipped to the parent.
+     */
+    public synchronized OperationTrace snapshot() {
+        OperationTrace result = new OperationTrace(
+                this.id, this.rootId, this.operation, this.session, this.startTime);
+        result.endTime = this.endTime;
+        System.arraycopy(this.nanos, 0, result.nanos, 0, this.nanos.length);
+        result.bytes = this.bytes;
+        result.leaves = this.leaves;
+        result.remotes = this.remotes;
+        return result;
+    }
+
+    /**
+     * Get a recent span of this process.
+     */
+    @Nullable
+    public static OperationTrace get(UUID id) {
+        return recent.getIfPresent(id);
+    }
+
+    /**
+     * Recent spans of this process, most recent first.
+     * @param rootId  If not null only return spans of the operation with this root.
+     * @param count   Maximum number of spans returned.
+     */
+    public static List<OperationTrace> getRecent(@Nullable UUID rootId, int count) {
+        List<OperationTrace> result = new ArrayList<OperationTrace>();
+        for (OperationTrace t : recent.asMap().values())
+            if (rootId == null || t.rootId.equals(rootId))
+                result.add(t);
+        result.sort(Comparator.comparingLong((OperationTrace t) -> t.startTime).reversed());
+        if (result.size() > count)
+            return new ArrayList<OperationTrace>(result.subList(0, count));
+        return result;
+    }
+
+    public static void clear() {
+        recent.invalidateAll();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.rootId).append(" ").append(this.operation);
+        if (this.endTime != 0)
+            builder.append(" elapsed=").append(this.endTime - this.startTime).append("ms");
+        for (Phase p : Phase.values())
+            builder.append(" ").append(p.toString().toLowerCase()).append("=")
+                    .append(millis(this.nanos[p.ordinal()]));
+        builder.append(" bytes=").append(this.bytes)
+                .append(" leaves=").append(this.leaves)
+                .append(" remotes=").append(this.remotes);
+        return builder.toString();
+    }
+}
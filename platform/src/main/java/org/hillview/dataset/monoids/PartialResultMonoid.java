@@ -21,6 +21,8 @@ import org.hillview.dataset.api.IMonoid;
 import org.hillview.dataset.api.PartialResult;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A Partial result with a value from a monoid is also a monoid.  This class implements
@@ -52,4 +54,21 @@ public class PartialResultMonoid<T> implements IMonoid<PartialResult<T>> {
         return new PartialResult<T>(left.deltaDone + right.deltaDone,
                 this.monoid.add(left.deltaValue, right.deltaValue));
     }
+
+    /**
+     * Reduces all values with a single call to the underlying monoid, so that monoids
+     * which can merge many values at once (e.g., with a k-way merge) can take advantage of it.
+     */
+    @Override @Nullable
+    public PartialResult<T> reduce(List<PartialResult<T>> data) {
+        if (data.size() <= 1)
+            return IMonoid.super.reduce(data);
+        double done = 0;
+        List<T> values = new ArrayList<T>(data.size());
+        for (PartialResult<T> pr : data) {
+            done += pr.deltaDone;
+            values.add(pr.deltaValue);
+        }
+        return new PartialResult<T>(done, this.monoid.reduce(values));
+    }
 }
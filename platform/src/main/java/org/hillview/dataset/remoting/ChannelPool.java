@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.remoting;
+
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import org.hillview.pb.HillviewServerGrpc;
+import org.hillview.utils.ExecutorUtils;
+import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.HostAndPort;
+import org.hillview.utils.MetricsRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide registry of the gRPC channels to the remote servers.  All dataset
+ * handles that point to the same server share its channels, and thus its
+ * connections.  Each server gets a fixed number of channels, which are used in
+ * round-robin order; more than one channel spreads the traffic over several
+ * HTTP/2 connections.  Connections that carry no calls are closed by gRPC after
+ * a while and reopened on demand; channels of servers that have not been used for
+ * a longer time are shut down and removed from the registry.
+ * The number of channels per server and the idle time in seconds can be set with
+ * the system properties hillview.channels.per.host and hillview.channel.idle.seconds.
+ */
+public class ChannelPool {
+    public static final ChannelPool instance = new ChannelPool(
+            Integer.getInteger("hillview.channels.per.host", 2),
+            Long.getLong("hillview.channel.idle.seconds", 600));
+
+    /**
+     * Interval between keepalive pings sent on connections with active calls.
+     */
+    private static final long KEEPALIVE_SECONDS = 60;
+    private static final long KEEPALIVE_TIMEOUT_SECONDS = 20;
+
+    /*
+     * To avoid epoll CPU utilization problems, we could use PollSelectorProvider().
+     * See: https://github.com/netty/netty/issues/327
+     */
+    private static final EventLoopGroup workerElg = new NioEventLoopGroup(1,
+            ExecutorUtils.newFastLocalThreadFactory("rds-shared-worker"));
+    /*
+     * The high priority for the executor is needed to handle unsubscription
+     * requests with high priority.
+     */
+    private static final ExecutorService executorService =
+            ExecutorUtils.newNamedThreadPool("rds-shared-executor", 5, Thread.MAX_PRIORITY);
+
+    /**
+     * The channels to one server.
+     */
+    private static class Endpoint {
+        final ManagedChannel[] channels;
+        final HillviewServerGrpc.HillviewServerStub[] stubs;
+        final AtomicInteger next;
+        /**
+         * Time when a channel was last requested, in milliseconds.
+         */
+        volatile long lastUsed;
+
+        Endpoint(HostAndPort server, int channelCount, long idleSeconds) {
+            this.channels = new ManagedChannel[channelCount];
+            this.stubs = new HillviewServerGrpc.HillviewServerStub[channelCount];
+            this.next = new AtomicInteger(0);
+            for (int i = 0; i < channelCount; i++) {
+                this.channels[i] = NettyChannelBuilder
+                        .forAddress(server.getHost(), server.getPort())
+                        .maxInboundMessageSize(HillviewServer.MAX_MESSAGE_SIZE)
+                        .executor(executorService)
+                        .eventLoopGroup(workerElg)
+                        .keepAliveTime(KEEPALIVE_SECONDS, TimeUnit.SECONDS)
+                        .keepAliveTimeout(KEEPALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .idleTimeout(idleSeconds, TimeUnit.SECONDS)
+                        .usePlaintext()   // channel is unencrypted.
+                        .build();
+                this.stubs[i] = HillviewServerGrpc.newStub(this.channels[i]);
+            }
+        }
+
+        HillviewServerGrpc.HillviewServerStub nextStub() {
+            int index = Math.floorMod(this.next.getAndIncrement(), this.stubs.length);
+            return this.stubs[index];
+        }
+
+        /**
+         * Shut down the channels; calls in progress are allowed to complete.
+         */
+        void shutdown() {
+            for (ManagedChannel c : this.channels)
+                c.shutdown();
+        }
+    }
+
+    private final int channelsPerHost;
+    private final long idleSeconds;
+    /**
+     * Channels of each server, indexed by the string representation of the server address.
+     */
+    private final ConcurrentHashMap<String, Endpoint> endpoints;
+    /**
+     * Time when the idle endpoints were last removed, in milliseconds.
+     */
+    private volatile long lastSweep;
+
+    private ChannelPool(int channelsPerHost, long idleSeconds) {
+        if (channelsPerHost <= 0)
+            throw new RuntimeException("Need at least one channel per host: " + channelsPerHost);
+        this.channelsPerHost = channelsPerHost;
+        this.idleSeconds = idleSeconds;
+        this.endpoints = new ConcurrentHashMap<String, Endpoint>();
+        this.lastSweep = System.currentTimeMillis();
+        MetricsRegistry.instance.gauge("grpc_channels", this::getChannelCount);
+    }
+
+    /**
+     * Get a stub for calling the specified server.  The stub should be used right
+     * away and not retained, since the channels of idle servers are shut down.
+     */
+    public HillviewServerGrpc.HillviewServerStub getStub(HostAndPort server) {
+        long now = System.currentTimeMillis();
+        if (now - this.lastSweep > TimeUnit.SECONDS.toMillis(this.idleSeconds) / 2)
+            this.removeIdle(now);
+        Endpoint endpoint = this.endpoints.compute(server.toString(), (k, e) -> {
+            if (e == null) {
+                HillviewLogger.instance.info("Opening channels", "{0}", k);
+                e = new Endpoint(server, this.channelsPerHost, this.idleSeconds);
+            }
+            e.lastUsed = now;
+            return e;
+        });
+        return endpoint.nextStub();
+    }
+
+    /**
+     * Shut down the channels of the servers that have not been used recently.
+     */
+    private void removeIdle(long now) {
+        this.lastSweep = now;
+        long cutoff = now - TimeUnit.SECONDS.toMillis(this.idleSeconds);
+        for (String key : this.endpoints.keySet()) {
+            this.endpoints.computeIfPresent(key, (k, e) -> {
+                if (e.lastUsed >= cutoff)
+                    return e;
+                HillviewLogger.instance.info("Closing idle channels", "{0}", k);
+                e.shutdown();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Total number of open channels.
+     */
+    public long getChannelCount() {
+        return (long)this.endpoints.size() * this.channelsPerHost;
+    }
+
+    public int getChannelsPerHost() {
+        return this.channelsPerHost;
+    }
+
+    /**
+     * Shut down all channels.  Channels are reopened if stubs are requested again.
+     */
+    public void shutdown() {
+        for (String key : this.endpoints.keySet()) {
+            this.endpoints.computeIfPresent(key, (k, e) -> {
+                e.shutdown();
+                return null;
+            });
+        }
+    }
+}
@@ -43,11 +43,13 @@ import rx.Subscription;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 
 /**
  * Server that transfers map(), sketch(), zip(), manage(), and unsubscribe() RPCs from a
@@ -112,6 +114,10 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     private final HostAndPort listenAddress;
 
     private final MemoizedResults memoizedCommands;
+    /**
+     * Names of the gauges registered by this server.
+     */
+    private final List<String> gauges;
 
     public HillviewServer(final HostAndPort listenAddress, final IDataSet<?> initialDataset) throws IOException {
         this.initialDatasets = new HashMap<Integer, IDataSet<?>>();
@@ -125,18 +131,37 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                                         .bossEventLoopGroup(bossElg)
                                         .addService(this)
                                         .maxInboundMessageSize(MAX_MESSAGE_SIZE)
+                                        // Clients ping the shared channels periodically.
+                                        .permitKeepAliveTime(30, TimeUnit.SECONDS)
                                         .build()
                                         .start();
         this.dataSets = CacheBuilder.newBuilder()
                 .expireAfterAccess(EXPIRE_TIME_IN_HOURS, TimeUnit.HOURS)
                 .removalListener(
-                        (RemovalListener<Integer, IDataSet<?>>) removalNotification ->
+                        (RemovalListener<Integer, IDataSet<?>>) removalNotification -> {
                                 HillviewLogger.instance.info("Removing reference to dataset", "{0}: {1}",
-                                    removalNotification.getKey(), removalNotification.getValue().toString()))
+                                    removalNotification.getKey(), removalNotification.getValue());
+                                if (removalNotification.wasEvicted())
+                                    MetricsRegistry.instance.increment("datasets_evicted");
+                        })
                 .build();
         this.toUnsubscribe = CacheBuilder.newBuilder()
                 .expireAfterAccess(EXPIRE_TIME_IN_HOURS, TimeUnit.HOURS)
                 .build();
+        this.gauges = new ArrayList<String>();
+        this.gauge("datasets", this.dataSets::size);
+        this.gauge("operations_in_flight", this.operationToObservable::size);
+        this.gauge("pending_unsubscriptions", this.toUnsubscribe::size);
+    }
+
+    /**
+     * Register a gauge labeled with the address of this server;
+     * it is removed when the server shuts down.
+     */
+    private void gauge(String name, LongSupplier value) {
+        String labeled = MetricsRegistry.labeled(name, "server", this.listenAddress.toString());
+        MetricsRegistry.instance.gauge(labeled, value);
+        this.gauges.add(labeled);
     }
 
     @SuppressWarnings("UnusedReturnValue")
@@ -146,10 +171,65 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
         return index;
     }
 
+    /**
+     * Install a dataset at a reserved (negative) index, replacing any dataset
+     * already there.  Memoized results may refer to the replaced dataset, so
+     * they are discarded.
+     */
+    public synchronized void setInitialDataset(int index, IDataSet<?> dataset) {
+        if (index >= 0)
+            throw new RuntimeException("Initial datasets must have negative indexes: " + index);
+        this.initialDatasets.put(index, dataset);
+        this.purgeMemoized();
+    }
+
+    @Nullable
+    public synchronized IDataSet<?> getInitialDataset(int index) {
+        return this.initialDatasets.get(index);
+    }
+
+    public HostAndPort getListenAddress() {
+        return this.listenAddress;
+    }
+
     private UUID getId(Command command) {
         return new UUID(command.getHighId(), command.getLowId());
     }
 
+    /**
+     * Start the span of a command.  Commands sent on behalf of a traced
+     * operation carry the id of its root span.
+     */
+    private OperationTrace startTrace(Command command, String operation) {
+        MetricsRegistry.instance.increment(MetricsRegistry.labeled("rpc_requests", "rpc", operation));
+        MetricsRegistry.instance.add(MetricsRegistry.labeled("rpc_bytes_received", "rpc", operation),
+                command.getSerializedSize());
+        UUID rootId = null;
+        if (command.getTraceHighId() != 0 || command.getTraceLowId() != 0)
+            rootId = new UUID(command.getTraceHighId(), command.getTraceLowId());
+        String session = command.getSession().isEmpty() ? null : command.getSession();
+        return OperationTrace.start(this.getId(command), rootId, operation, session);
+    }
+
+    /**
+     * Serialize a response.  If the caller traces the operation the
+     * current span of the command is sent with the response.
+     */
+    private static PartialResponse createResponse(OperationResponse<?> response, OperationTrace trace) {
+        long start = System.nanoTime();
+        final byte[] bytes = SerializationUtils.serialize(response);
+        trace.add(OperationTrace.Phase.Serialize, System.nanoTime() - start);
+        trace.addBytes(bytes.length);
+        PartialResponse.Builder builder = PartialResponse.newBuilder()
+                .setSerializedOp(ByteString.copyFrom(bytes));
+        if (!trace.rootId.equals(trace.id))
+            builder.setTrace(ByteString.copyFrom(SerializationUtils.serialize(trace.snapshot())));
+        PartialResponse result = builder.build();
+        MetricsRegistry.instance.add(MetricsRegistry.labeled("rpc_bytes_sent", "rpc", trace.operation),
+                result.getSerializedSize());
+        return result;
+    }
+
     /**
      * Save the RxJava subscription for a command; allows it to be cancelled.
      * @param id              Command id.
@@ -169,6 +249,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
         } else if (!unsub) {
             this.toUnsubscribe.invalidate(id);
         } else {
+            // The unsubscribe request arrived before the command.
+            MetricsRegistry.instance.increment("operations_cancelled");
             this.toUnsubscribe.put(id, true);
         }
         return unsub;
@@ -243,7 +325,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
      */
     private Subscriber<PartialResult<IDataSet<?>>> createSubscriber(
             final Command command, final UUID id, final String operation,
-            final StreamObserver<PartialResponse> responseObserver) {
+            final OperationTrace trace, final StreamObserver<PartialResponse> responseObserver) {
         return new Subscriber<PartialResult<IDataSet<?>>>() {
             @Nullable private PartialResponse memoizedResult = null;
             @Nullable private Integer memoizedDatasetIndex = null;
@@ -257,6 +339,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                                 command, this.memoizedResult,
                                 Converters.checkNull(this.memoizedDatasetIndex));
                     }
+                    trace.finish();
                     responseObserver.onCompleted();
                     HillviewServer.this.removeSubscription(id, operation + " completed");
                 }, executorService);
@@ -267,6 +350,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                 queue = queue.thenRunAsync(() -> {
                     HillviewLogger.instance.error("Error when creating subscriber", e);
                     e.printStackTrace();
+                    trace.finish();
                     responseObserver.onError(asStatusRuntimeException(e));
                     HillviewServer.this.removeSubscription(id, operation + " on error");
                 }, executorService);
@@ -282,11 +366,10 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                     final OperationResponse<PartialResult<Integer>> res = new
                             OperationResponse<PartialResult<Integer>>(new
                             PartialResult<Integer>(pr.deltaDone, idsIndex));
-                    final byte[] bytes = SerializationUtils.serialize(res);
-                    final PartialResponse result = PartialResponse.newBuilder()
-                            .setSerializedOp(ByteString.copyFrom(bytes)).build();
+                    final PartialResponse result = createResponse(res, trace);
                     if (MEMOIZE) {
-                        this.memoizedResult = result;
+                        // The span is specific to this invocation.
+                        this.memoizedResult = result.toBuilder().clearTrace().build();
                         this.memoizedDatasetIndex = idsIndex;
                     }
                     responseObserver.onNext(result);
@@ -299,17 +382,19 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     @SuppressWarnings("unchecked")
     public void prune(final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
-            PruneOperation pruneOp = this.respondIfReplyIsMemoized(command, responseObserver, true);
+            final OperationTrace trace = this.startTrace(command, "prune");
+            PruneOperation pruneOp = this.respondIfReplyIsMemoized(command, trace, responseObserver, true);
             if (pruneOp == null)
                return;
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
 
-            final Observable<PartialResult<IDataSet<?>>> observable = dataset.prune(pruneOp.isEmpty);
+            final Observable<PartialResult<IDataSet<?>>> observable =
+                    OperationTrace.with(trace, () -> dataset.prune(pruneOp.isEmpty));
             final UUID commandId = this.getId(command);
             Subscriber<PartialResult<IDataSet<?>>> subscriber = this.createSubscriber(
-                    command, commandId, "prune", responseObserver);
+                    command, commandId, "prune", trace, responseObserver);
             final Subscription sub = observable
                     .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
                     .subscribe(subscriber);
@@ -330,17 +415,19 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     @SuppressWarnings("unchecked")
     public void map(final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
-            MapOperation mapOp = this.respondIfReplyIsMemoized(command, responseObserver, true);
+            final OperationTrace trace = this.startTrace(command, "map");
+            MapOperation mapOp = this.respondIfReplyIsMemoized(command, trace, responseObserver, true);
             if (mapOp == null)
                 return;
 
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final Observable<PartialResult<IDataSet<?>>> observable = dataset.map(mapOp.mapper);
+            final Observable<PartialResult<IDataSet<?>>> observable =
+                    OperationTrace.with(trace, () -> dataset.map(mapOp.mapper));
             final UUID commandId = this.getId(command);
             Subscriber subscriber = this.createSubscriber(
-                    command, commandId, "map", responseObserver);
+                    command, commandId, "map", trace, responseObserver);
             final Subscription sub = observable
                     .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
                     .subscribe(subscriber);
@@ -362,17 +449,19 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     public void flatMap(
             final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
-            FlatMapOperation mapOp = this.respondIfReplyIsMemoized(command, responseObserver, true);
+            final OperationTrace trace = this.startTrace(command, "flatMap");
+            FlatMapOperation mapOp = this.respondIfReplyIsMemoized(command, trace, responseObserver, true);
             if (mapOp == null)
                 return;
 
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final Observable<PartialResult<IDataSet<?>>> observable = dataset.flatMap(mapOp.mapper);
+            final Observable<PartialResult<IDataSet<?>>> observable =
+                    OperationTrace.with(trace, () -> dataset.flatMap(mapOp.mapper));
             final UUID commandId = this.getId(command);
             Subscriber<PartialResult<IDataSet<?>>> subscriber = this.createSubscriber(
-                    command, commandId, "flatMap", responseObserver);
+                    command, commandId, "flatMap", trace, responseObserver);
             final Subscription sub = observable
                     .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
                     .subscribe(subscriber);
@@ -394,14 +483,17 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     public void sketch(final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
             boolean memoize = MEMOIZE;  // The value may change while we execute
-            final SketchOperation sketchOp = this.respondIfReplyIsMemoized(command, responseObserver, false);
+            final OperationTrace trace = this.startTrace(command, "sketch");
+            final SketchOperation sketchOp = this.respondIfReplyIsMemoized(
+                    command, trace, responseObserver, false);
             if (sketchOp == null)
                 return;
 
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final Observable<PartialResult<?>> observable = dataset.sketch(sketchOp.sketch);
+            final Observable<PartialResult<?>> observable =
+                    OperationTrace.with(trace, () -> dataset.sketch(sketchOp.sketch));
             final UUID commandId = this.getId(command);
             Subscriber<PartialResult<?>> subscriber = new Subscriber<PartialResult<?>>() {
                 @Nullable private Object sketchResultAccumulator =
@@ -413,6 +505,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                     HillviewServer.this.removeSubscription(commandId, "sketch completed");
                     queue = queue.thenRunAsync(() -> {
                         try {
+                            trace.finish();
                             responseObserver.onCompleted();
                             if (memoize && this.sketchResultAccumulator != null) {
                                 final OperationResponse<PartialResult<?>> res =
@@ -436,6 +529,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                     HillviewLogger.instance.error("Exception in sketch", e);
                     e.printStackTrace();
                     queue = queue.thenRunAsync(() -> {
+                        trace.finish();
                         responseObserver.onError(asStatusRuntimeException(e));
                         HillviewServer.this.removeSubscription(commandId, "sketch onError");
                     }, executorService);
@@ -446,15 +540,15 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                     HillviewLogger.instance.info("Partial sketch result", "{0}", pr);
                     queue = queue.thenRunAsync(() -> {
                         try {
-                            if (memoize && this.sketchResultAccumulator != null)
+                            if (memoize && this.sketchResultAccumulator != null) {
+                                long start = System.nanoTime();
                                 this.sketchResultAccumulator = sketchOp.sketch.add(this
                                         .sketchResultAccumulator, pr.deltaValue);
+                                trace.add(OperationTrace.Phase.Merge, System.nanoTime() - start);
+                            }
                             final OperationResponse<PartialResult<?>> res =
                                     new OperationResponse<PartialResult<?>>(pr);
-                            final byte[] bytes = SerializationUtils.serialize(res);
-                            responseObserver.onNext(PartialResponse.newBuilder()
-                                    .setSerializedOp(ByteString.copyFrom(bytes))
-                                    .build());
+                            responseObserver.onNext(createResponse(res, trace));
                         } catch (Exception ex) {
                             HillviewLogger.instance.error("Async exception", ex);
                             this.onError(ex);
@@ -486,20 +580,23 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
+            MetricsRegistry.instance.increment(MetricsRegistry.labeled("rpc_requests", "rpc", "manage"));
+            MetricsRegistry.instance.add(MetricsRegistry.labeled("rpc_bytes_received", "rpc", "manage"),
+                    command.getSerializedSize());
             final byte[] bytes = command.getSerializedOp().toByteArray();
             final ManageOperation manage = SerializationUtils.deserialize(bytes);
             Observable<PartialResult<ControlMessage.StatusList>> observable = dataset.manage(manage
                     .message);
             final Callable<ControlMessage.StatusList> callable = () -> {
-                HillviewLogger.instance.info("Starting manage", "{0}", manage.message.toString());
+                HillviewLogger.instance.info("Starting manage", "{0}", manage.message);
                 ControlMessage.Status status;
                 try {
-                    status = manage.message.remoteServerAction(this);
+                    status = manage.message.remoteServerAction(this, dataset);
                 } catch (final Throwable t) {
                     status = new ControlMessage.Status("Exception", t);
                 }
                 ControlMessage.StatusList result = new ControlMessage.StatusList(status);
-                HillviewLogger.instance.info("Completed manage", "{0}", manage.message.toString());
+                HillviewLogger.instance.info("Completed manage", "{0}", manage.message);
                 return result;
             };
             Observable<ControlMessage.StatusList> executed = Observable.fromCallable(callable);
@@ -528,6 +625,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                     final OperationResponse<PartialResult<ControlMessage.StatusList>> res =
                             new OperationResponse<PartialResult<ControlMessage.StatusList>>(pr);
                     final byte[] bytes = SerializationUtils.serialize(res);
+                    MetricsRegistry.instance.add(MetricsRegistry.labeled("rpc_bytes_sent", "rpc", "manage"),
+                            bytes.length);
                     responseObserver.onNext(PartialResponse.newBuilder()
                             .setSerializedOp(ByteString.copyFrom(bytes))
                             .build());
@@ -553,7 +652,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     @SuppressWarnings("unchecked")
     public void zip(final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
-            final ZipOperation zipOp = this.respondIfReplyIsMemoized(command, responseObserver, true);
+            final OperationTrace trace = this.startTrace(command, "zip");
+            final ZipOperation zipOp = this.respondIfReplyIsMemoized(command, trace, responseObserver, true);
             if (zipOp == null)
                 return;
 
@@ -565,9 +665,10 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             if (right == null)
                 return;
 
-            final Observable<PartialResult<IDataSet<?>>> observable = left.zip(right, zipOp.map);
+            final Observable<PartialResult<IDataSet<?>>> observable =
+                    OperationTrace.with(trace, () -> left.zip(right, zipOp.map));
             Subscriber<PartialResult<IDataSet<?>>> subscriber = this.createSubscriber(
-                    command, commandId, "zip", responseObserver);
+                    command, commandId, "zip", trace, responseObserver);
             final Subscription sub = observable
                     .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
                     .subscribe(subscriber);
@@ -588,7 +689,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     @SuppressWarnings("unchecked")
     public void zipN(final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
-            ZipNOperation zipOp = this.respondIfReplyIsMemoized(command, responseObserver, true);
+            final OperationTrace trace = this.startTrace(command, "zipN");
+            ZipNOperation zipOp = this.respondIfReplyIsMemoized(command, trace, responseObserver, true);
             if (zipOp == null)
                 return;
 
@@ -597,9 +699,10 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             if (left == null)
                 return;
             List right = Linq.map(zipOp.datasetIndexes, i -> this.getIfValid((int)i, responseObserver));
-            final Observable<PartialResult<IDataSet<?>>> observable = left.zipN(right, zipOp.map);
+            final Observable<PartialResult<IDataSet<?>>> observable =
+                    OperationTrace.with(trace, () -> left.zipN(right, zipOp.map));
             Subscriber<PartialResult<IDataSet<?>>> subscriber = this.createSubscriber(
-                    command, commandId, "zipN", responseObserver);
+                    command, commandId, "zipN", trace, responseObserver);
             final Subscription sub = observable
                     .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
                     .subscribe(subscriber);
@@ -627,6 +730,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final Subscription subscription = this.removeSubscription(unsubscribeOp.id,
                     "unsubscribe request");
             if (subscription != null) {
+                MetricsRegistry.instance.increment("operations_cancelled");
                 subscription.unsubscribe();
             } else {
                 if (logSubscription)
@@ -643,6 +747,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
      * shutdown RPC server
      */
     public void shutdown() {
+        for (String gauge : this.gauges)
+            MetricsRegistry.instance.removeGauge(gauge);
         this.server.shutdown();
         this.workerElg.shutdownGracefully();
         this.bossElg.shutdownGracefully();
@@ -652,6 +758,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     /**
      * Respond to caller with a memoized result if it is available.
      * @param command          Command to execute.
+     * @param trace            Span of the command.
      * @param responseObserver Observer that expects the result of the command.
      * @param checkResult      Only used if the result is actually a dataset id;
      *                         if the dataset with this id does not exist, then
@@ -662,10 +769,13 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
      */
     @Nullable
     private <T> T respondIfReplyIsMemoized(final Command command,
+                                           final OperationTrace trace,
                                            StreamObserver<PartialResponse> responseObserver,
                                            boolean checkResult) {
+        long start = System.nanoTime();
         final byte[] bytes = command.getSerializedOp().toByteArray();
         T result = SerializationUtils.deserialize(bytes);
+        trace.add(OperationTrace.Phase.Deserialize, System.nanoTime() - start);
         if (MEMOIZE) {
             MemoizedResults.ResponseAndId memoized = this.memoizedCommands.get(command);
             if (memoized != null) {
@@ -682,12 +792,18 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                 }
             }
             if (memoized != null) {
+                MetricsRegistry.instance.increment("memoization_hits");
+                MetricsRegistry.instance.add(
+                        MetricsRegistry.labeled("rpc_bytes_sent", "rpc", trace.operation),
+                        memoized.response.getSerializedSize());
+                trace.finish();
                 responseObserver.onNext(memoized.response);
                 responseObserver.onCompleted();
                 HillviewLogger.instance.info(
-                        "Found memoized result", "{0}.{1}", command.getIdsIndex(), result.toString());
+                        "Found memoized result", "{0}.{1}", command.getIdsIndex(), result);
                 return null;
             }
+            MetricsRegistry.instance.increment("memoization_misses");
         }
         return result;
     }
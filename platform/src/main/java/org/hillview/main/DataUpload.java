@@ -19,20 +19,37 @@ package org.hillview.main;
 
 import javax.annotation.Nullable;
 
+import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import org.apache.commons.io.FilenameUtils;
+import org.hillview.sketches.results.ColumnSortOrientation;
+import org.hillview.table.ArrayRowOrder;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.LazySchema;
 import org.hillview.management.ClusterConfig;
 import org.hillview.storage.*;
+import org.hillview.table.RecordOrder;
 import org.hillview.table.Schema;
 import org.hillview.table.api.*;
 import org.hillview.utils.Converters;
+import org.hillview.utils.ExecutorUtils;
 import org.hillview.utils.HillviewLogger;
 import org.hillview.utils.Utilities;
 import org.apache.commons.cli.*;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 /**
  * This entry point is only used for uploading data to a cluster. The user provides configuration details such as the
@@ -40,6 +57,13 @@ import java.nio.file.Paths;
  * scans the file to determine one. It then proceeds to read the file as a stream, and  chop it to smaller shards,
  * placing one shard in each server in a round robin fashion. The user chooses whether to upload the file in csv
  * format or in orc format. A schema file is also placed in each server.
+ *
+ * Optionally the rows can be partitioned on the values of a key column, either by hash or by
+ * range.  Each chunk is then split into one shard per partition, and all shards of a partition
+ * are placed on the same server.  Shards can be sorted on the key, and each shard is accompanied
+ * by a file with the zone map of its columns.  Zone maps are placed in a sibling of the
+ * destination folder (suffix .zonemaps), so that no shard pattern can match them.  Shards
+ * are written and sent by several threads in parallel.
  */
 public class DataUpload {
     enum OutputFormat {
@@ -48,6 +72,11 @@ public class DataUpload {
         None // only output schema
     }
 
+    enum PartitionMode {
+        Hash,
+        Range
+    }
+
     private static class Params {
         final int defaultChunkSize = 100000; // number of lines in default file chunk
         final String defaultSchemaName = "schema";
@@ -55,6 +84,7 @@ public class DataUpload {
         String inputSchemaName = null;
         String filename = ""; // the file to be sent
         String destinationFolder = ""; // the destination path where the files will be put
+        String zoneMapFolder = ""; // the path where the zone maps of the shards will be put
         @Nullable
         String cluster = null; // the path to the cluster config json file
         boolean hasHeader; // true if file has a header row (only used for csv inputs)
@@ -64,6 +94,12 @@ public class DataUpload {
         @Nullable
         String grokPattern; // when parsing a log file this is the pattern expected
         int skipLines;  // number of lines to skip from the beginning
+        @Nullable
+        String key; // column used to partition the rows; if null rows are not partitioned
+        PartitionMode partitionMode = PartitionMode.Hash;
+        int partitions; // number of partitions; if 0 one per worker
+        boolean sorted; // if true each shard is sorted on the key
+        int threads = 4; // number of shards written and sent in parallel
     }
 
     private void usage(Options options) {
@@ -108,6 +144,22 @@ public class DataUpload {
         Option o_skip = new Option("w", "skip", true, "number of lines to skip before starting parsing");
         o_skip.setRequired(false);
         options.addOption(o_skip);
+        Option o_key = new Option("k", "key", true, "column used to partition the rows");
+        o_key.setRequired(false);
+        options.addOption(o_key);
+        Option o_mode = new Option("m", "mode", true, "partitioning mode: one of 'hash', 'range'");
+        o_mode.setRequired(false);
+        options.addOption(o_mode);
+        Option o_partitions = new Option("n", "partitions", true,
+                "number of partitions; by default one per worker");
+        o_partitions.setRequired(false);
+        options.addOption(o_partitions);
+        Option o_sorted = new Option("r", "sorted", false, "set to sort each shard on the key column");
+        o_sorted.setRequired(false);
+        options.addOption(o_sorted);
+        Option o_threads = new Option("t", "threads", true, "number of shards written and sent in parallel");
+        o_threads.setRequired(false);
+        options.addOption(o_threads);
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd;
@@ -131,6 +183,7 @@ public class DataUpload {
         }
         parameters.destinationFolder = cmd.getOptionValue('d');
         parameters.cluster = cmd.getOptionValue("cluster");
+        parameters.zoneMapFolder = getZoneMapFolder(parameters.destinationFolder, parameters.cluster != null);
         parameters.grokPattern = cmd.getOptionValue("logpattern");
         if (cmd.hasOption('l')) {
             try {
@@ -169,6 +222,39 @@ public class DataUpload {
                 throw e;
             }
         }
+        parameters.key = cmd.getOptionValue("key");
+        if (cmd.hasOption("mode")) {
+            String mode = cmd.getOptionValue("mode");
+            switch (mode.toLowerCase()) {
+                case "hash":
+                    parameters.partitionMode = PartitionMode.Hash;
+                    break;
+                case "range":
+                    parameters.partitionMode = PartitionMode.Range;
+                    break;
+                default:
+                    usage(options);
+                    System.err.println("Illegal partitioning mode: " + mode);
+                    throw new RuntimeException("Unknown partitioning mode");
+            }
+        }
+        parameters.sorted = cmd.hasOption("sorted");
+        if (parameters.key == null && (cmd.hasOption("mode") || parameters.sorted || cmd.hasOption("partitions"))) {
+            usage(options);
+            throw new RuntimeException("Partitioning options require a key column");
+        }
+        try {
+            if (cmd.hasOption("partitions"))
+                parameters.partitions = Integer.parseInt(cmd.getOptionValue("partitions"));
+            if (cmd.hasOption("threads"))
+                parameters.threads = Integer.parseInt(cmd.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+            usage(options);
+            System.err.println("Can't parse number due to " + e.getMessage());
+            throw e;
+        }
+        if (parameters.partitions < 0 || parameters.threads <= 0)
+            throw new RuntimeException("Number of partitions and threads must be positive");
         return parameters;
     }
 
@@ -185,21 +271,22 @@ public class DataUpload {
             ClusterConfig config = null;
             if (parameters.cluster != null)
                 config = ClusterConfig.parse(parameters.cluster);
-            CsvFileLoader.Config parsConfig = new CsvFileLoader.Config();
-            parsConfig.hasHeaderRow = parameters.hasHeader;
-            parsConfig.allowFewerColumns = parameters.allowFewerColumns;
-
-            TextFileLoader loader;
-            if (parameters.grokPattern != null) {
-                GrokLogs logs = new GrokLogs(parameters.grokPattern);
-                GrokLogs.LogFileLoader ldr = logs.getFileLoader(parameters.filename);
-                ldr.addFixedColumns = false;  // we don't need these
-                loader = ldr;
-            } else {
-                loader = new CsvFileLoader(parameters.filename, parsConfig,
-                        new LazySchema(parameters.inputSchemaName));
+            TextFileLoader loader = this.createLoader(parameters);
+            @Nullable
+            Partitioner partitioner = null;
+            if (parameters.key != null) {
+                int partitions = parameters.partitions;
+                if (partitions == 0)
+                    partitions = config != null && config.workers != null ? config.workers.length : 1;
+                if (parameters.partitionMode == PartitionMode.Hash)
+                    partitioner = new Partitioner(parameters.key, partitions);
+                else
+                    // Reading the file twice is cheaper than buffering all of it.
+                    partitioner = this.sampleRanges(this.createLoader(parameters), parameters, partitions);
             }
-            parts = this.chop(loader, config, parameters);
+            if (partitioner != null)
+                this.createZoneMapFolder(config, parameters);
+            parts = this.chop(loader, config, parameters, partitioner);
 
             String localSchemaFile;
             String outputSchemaFile;
@@ -242,55 +329,369 @@ public class DataUpload {
         return parts;
     }
 
+    private TextFileLoader createLoader(Params parameters) {
+        if (parameters.grokPattern != null) {
+            GrokLogs logs = new GrokLogs(parameters.grokPattern);
+            GrokLogs.LogFileLoader ldr = logs.getFileLoader(parameters.filename);
+            ldr.addFixedColumns = false;  // we don't need these
+            return ldr;
+        } else {
+            CsvFileLoader.Config parsConfig = new CsvFileLoader.Config();
+            parsConfig.hasHeaderRow = parameters.hasHeader;
+            parsConfig.allowFewerColumns = parameters.allowFewerColumns;
+            return new CsvFileLoader(parameters.filename, parsConfig,
+                    new LazySchema(parameters.inputSchemaName));
+        }
+    }
+
+    /**
+     * Assigns rows to partitions based on the value of the key column.  Missing values
+     * are always placed in partition 0.
+     */
+    static class Partitioner {
+        final String key;
+        final int partitions;
+        /**
+         * For range partitioning the lowest value of each partition except the first one;
+         * only one of these is non-null.
+         */
+        @Nullable
+        final double[] doubleBounds;
+        @Nullable
+        final String[] stringBounds;
+
+        /**
+         * Create a hash partitioner.
+         */
+        Partitioner(String key, int partitions) {
+            this.key = key;
+            this.partitions = partitions;
+            this.doubleBounds = null;
+            this.stringBounds = null;
+        }
+
+        /**
+         * Create a range partitioner.
+         */
+        Partitioner(String key, int partitions, @Nullable double[] doubleBounds,
+                    @Nullable String[] stringBounds) {
+            this.key = key;
+            this.partitions = partitions;
+            this.doubleBounds = doubleBounds;
+            this.stringBounds = stringBounds;
+        }
+
+        boolean isRange() {
+            return this.doubleBounds != null || this.stringBounds != null;
+        }
+
+        IColumn getColumn(ITable table) {
+            IColumn column = table.getLoadedColumn(this.key);
+            if (column.getKind() == ContentsKind.Interval)
+                throw new RuntimeException("Cannot partition on interval column " + this.key);
+            return column;
+        }
+
+        int partition(IColumn column, int row) {
+            if (column.isMissing(row))
+                return 0;
+            if (column.getKind().isString()) {
+                String value = Converters.checkNull(column.getString(row));
+                if (this.stringBounds != null)
+                    return upperBound(this.stringBounds, value);
+                return Math.floorMod(value.hashCode(), this.partitions);
+            } else {
+                double value = column.asDouble(row);
+                if (this.doubleBounds != null)
+                    return upperBound(this.doubleBounds, value);
+                return Math.floorMod(Double.hashCode(value), this.partitions);
+            }
+        }
+
+        /**
+         * Number of bounds that are less than or equal to the value.
+         */
+        static int upperBound(String[] bounds, String value) {
+            int low = 0;
+            int high = bounds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (bounds[mid].compareTo(value) <= 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        static int upperBound(double[] bounds, double value) {
+            int low = 0;
+            int high = bounds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (bounds[mid] <= value)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Scan the file once, sampling values of the key column, and choose range boundaries
+     * that split the sample into partitions of equal size.
+     */
+    private Partitioner sampleRanges(TextFileLoader loader, Params parameters, int partitions) {
+        final int samplesPerChunk = 1000;
+        String key = Converters.checkNull(parameters.key);
+        List<Double> doubles = new ArrayList<Double>();
+        List<String> strings = new ArrayList<String>();
+        boolean isString = false;
+        loader.prepareLoading();
+        if (parameters.skipLines > 0)
+            loader.loadFragment(parameters.skipLines, true);
+        Partitioner partitioner = new Partitioner(key, partitions);
+        while (true) {
+            ITable table = loader.loadFragment(parameters.chunkSize, false);
+            int rows = table.getNumOfRows();
+            if (rows == 0)
+                break;
+            IColumn column = partitioner.getColumn(table);
+            isString = column.getKind().isString();
+            int stride = Math.max(1, rows / samplesPerChunk);
+            for (int i = 0; i < rows; i += stride) {
+                if (column.isMissing(i))
+                    continue;
+                if (isString)
+                    strings.add(column.getString(i));
+                else
+                    doubles.add(column.asDouble(i));
+            }
+        }
+        loader.endLoading();
+        HillviewLogger.instance.info("Sampled key values", "{0}", doubles.size() + strings.size());
+        if (isString) {
+            String[] bounds = strings.stream().sorted().toArray(String[]::new);
+            return new Partitioner(key, partitions, null, boundaries(bounds, partitions, String[]::new));
+        } else {
+            Double[] bounds = doubles.stream().sorted().toArray(Double[]::new);
+            Double[] chosen = boundaries(bounds, partitions, Double[]::new);
+            return new Partitioner(key, partitions,
+                    Arrays.stream(chosen).mapToDouble(d -> d).toArray(), null);
+        }
+    }
+
+    private static <T> T[] boundaries(T[] sorted, int partitions, IntFunction<T[]> create) {
+        if (sorted.length == 0)
+            return create.apply(0);
+        T[] result = create.apply(partitions - 1);
+        for (int i = 1; i < partitions; i++)
+            result[i - 1] = sorted[i * sorted.length / partitions];
+        return result;
+    }
+
     @Nullable
     private Schema tableSchema;
 
     private int chop(TextFileLoader loader,
                      @Nullable ClusterConfig clusterConfig,
-                     Params parameters) throws Exception {
+                     Params parameters,
+                     @Nullable Partitioner partitioner) throws Exception {
         loader.prepareLoading();
         int currentHost = 0;
         String chunkName;
         int chunk = 0;
+        // Shards are written and sent in parallel; at most 2 chunks per thread are kept in memory.
+        ExecutorService pool = ExecutorUtils.newNamedThreadPool("upload", parameters.threads, -1);
+        Semaphore inFlight = new Semaphore(2 * parameters.threads);
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        AtomicInteger shards = new AtomicInteger(0);
 
-        if (parameters.skipLines > 0)
-            loader.loadFragment(parameters.skipLines, true);
-        while (true) {
-            ITable table = loader.loadFragment(parameters.chunkSize, false);
-            if (chunk > 0 && table.getNumOfRows() == 0)
-                // If the first chunk is empty generate it anyway.
-                break;
-            tableSchema = table.getSchema();
+        try {
+            if (parameters.skipLines > 0)
+                loader.loadFragment(parameters.skipLines, true);
             while (true) {
-                chunkName = getFileName(parameters.filename).concat(Integer.toString(chunk));
-                if (parameters.outputFormat == OutputFormat.Orc)
-                    chunkName = chunkName.concat(".orc");
-                else if (parameters.outputFormat == OutputFormat.Csv)
-                    chunkName = chunkName.concat(".csv");
-                if (Files.exists(Paths.get(chunkName)))
-                    chunk++;
-                else
+                ITable table = loader.loadFragment(parameters.chunkSize, false);
+                if (chunk > 0 && table.getNumOfRows() == 0)
+                    // If the first chunk is empty generate it anyway.
                     break;
-            }
-            writeTable(table, chunkName, parameters.outputFormat);
-            if (parameters.outputFormat != OutputFormat.None) {
-                if (clusterConfig != null) {
-                    assert clusterConfig.workers != null;
-                    String host = clusterConfig.workers[currentHost];
-                    sendFile(chunkName, Converters.checkNull(clusterConfig.user),
-                            host, parameters.destinationFolder, chunkName);
-                    currentHost = (currentHost + 1) % clusterConfig.workers.length;
-                    Files.deleteIfExists(Paths.get(chunkName));
-                } else {
-                    Files.move(Paths.get(chunkName), Paths.get(parameters.destinationFolder, chunkName));
+                tableSchema = table.getSchema();
+                while (true) {
+                    chunkName = getFileName(parameters.filename).concat(Integer.toString(chunk));
+                    if (this.chunkExists(chunkName, partitioner, parameters))
+                        chunk++;
+                    else
+                        break;
                 }
+                final String name = chunkName;
+                final int host = currentHost;
+                inFlight.acquire();
+                pending.add(pool.submit(() -> {
+                    try {
+                        if (partitioner == null) {
+                            String file = name + getExtension(parameters.outputFormat);
+                            this.writeAndSend(table, file, host, clusterConfig, parameters, false);
+                        } else {
+                            shards.addAndGet(this.writePartitions(
+                                    table, name, partitioner, clusterConfig, parameters));
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+                if (clusterConfig != null && clusterConfig.workers != null)
+                    currentHost = (currentHost + 1) % clusterConfig.workers.length;
+                chunk++;
+                if (table.getNumOfRows() == 0)
+                    break;
             }
-            chunk++;
-            if (table.getNumOfRows() == 0)
-                break;
+            for (Future<?> f : pending)
+                f.get();
+        } finally {
+            pool.shutdownNow();
+            loader.endLoading();
         }
-        loader.endLoading();
-        return chunk;
+        return partitioner == null ? chunk : shards.get();
+    }
+
+    private static String getExtension(OutputFormat format) {
+        switch (format) {
+            case Orc:
+                return ".orc";
+            case Csv:
+                return ".csv";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Split a chunk into one shard per partition, sorting the shards if requested.
+     * @return  The number of shards written.
+     */
+    /**
+     * True if one of the local files that a chunk would be written to already exists.
+     */
+    private boolean chunkExists(String chunkName, @Nullable Partitioner partitioner, Params parameters) {
+        String extension = getExtension(parameters.outputFormat);
+        if (partitioner == null)
+            return Files.exists(Paths.get(chunkName + extension));
+        for (int p = 0; p < partitioner.partitions; p++)
+            if (Files.exists(Paths.get(chunkName + "_" + p + extension)))
+                return true;
+        return false;
+    }
+
+    private int writePartitions(ITable table, String chunkName, Partitioner partitioner,
+                                @Nullable ClusterConfig clusterConfig, Params parameters) throws Exception {
+        IColumn column = partitioner.getColumn(table);
+        IntArrayList[] rows = new IntArrayList[partitioner.partitions];
+        IRowIterator it = table.getMembershipSet().getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            int p = partitioner.partition(column, row);
+            if (rows[p] == null)
+                rows[p] = new IntArrayList();
+            rows[p].add(row);
+        }
+        int written = 0;
+        for (int p = 0; p < rows.length; p++) {
+            if (rows[p] == null)
+                continue;
+            int[] order = rows[p].toIntArray();
+            if (parameters.sorted) {
+                RecordOrder ro = new RecordOrder();
+                ro.append(new ColumnSortOrientation(column.getDescription(), true));
+                IntArrays.quickSort(order, ro.getIndexComparator(table));
+            }
+            ITable shard = table.compress(new ArrayRowOrder(order));
+            String file = chunkName + "_" + p + getExtension(parameters.outputFormat);
+            this.writeAndSend(shard, file, p, clusterConfig, parameters, true);
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Write a shard and place it in the destination folder, on the specified host if there
+     * is a cluster.
+     * @param host         Index of the host in the cluster; taken modulo the number of hosts.
+     * @param withZoneMap  If true also write the zone map of the shard.
+     */
+    private void writeAndSend(ITable table, String file, int host, @Nullable ClusterConfig clusterConfig,
+                              Params parameters, boolean withZoneMap) throws Exception {
+        writeTable(table, file, parameters.outputFormat);
+        if (parameters.outputFormat == OutputFormat.None)
+            return;
+        this.place(file, parameters.destinationFolder, host, clusterConfig);
+        if (withZoneMap) {
+            String zoneMapFile = file + ".zonemap";
+            Files.write(Paths.get(zoneMapFile), zoneMap(table).toString().getBytes(StandardCharsets.UTF_8));
+            this.place(zoneMapFile, parameters.zoneMapFolder, host, clusterConfig);
+        }
+    }
+
+    /**
+     * Move a local file to a folder, on the specified host if there is a cluster.
+     */
+    private void place(String file, String folder, int host, @Nullable ClusterConfig clusterConfig)
+            throws Exception {
+        if (clusterConfig != null) {
+            assert clusterConfig.workers != null;
+            String hostName = clusterConfig.workers[host % clusterConfig.workers.length];
+            sendFile(file, Converters.checkNull(clusterConfig.user), hostName, folder, file);
+            Files.deleteIfExists(Paths.get(file));
+        } else {
+            Files.move(Paths.get(file), Paths.get(folder, file));
+        }
+    }
+
+    /**
+     * Folder holding the zone maps of the shards.  This is a sibling of the destination
+     * folder: shards are found by matching file names in the destination folder, which
+     * must not match the zone maps.
+     */
+    private static String getZoneMapFolder(String destinationFolder, boolean remote) {
+        Path destination = Paths.get(destinationFolder);
+        if (!remote)
+            destination = destination.toAbsolutePath();
+        return destination.normalize().toString() + ".zonemaps";
+    }
+
+    private void createZoneMapFolder(@Nullable ClusterConfig clusterConfig, Params parameters)
+            throws Exception {
+        String folder = parameters.zoneMapFolder;
+        if (clusterConfig == null) {
+            Files.createDirectories(Paths.get(folder));
+            return;
+        }
+        assert clusterConfig.workers != null;
+        for (String host : clusterConfig.workers)
+            this.createDir(Converters.checkNull(clusterConfig.user), host, folder);
+    }
+
+    /**
+     * The zone map of each column of a table, as JSON.
+     */
+    private static JsonObject zoneMap(ITable table) {
+        JsonObject result = new JsonObject();
+        for (String c : table.getSchema().getColumnNames()) {
+            ColumnZoneMap zm = ColumnZoneMap.compute(table.getLoadedColumn(c));
+            JsonObject column = new JsonObject();
+            column.addProperty("kind", zm.kind.toString());
+            column.addProperty("present", zm.present);
+            column.addProperty("missing", zm.missing);
+            if (zm.kind.isString()) {
+                column.addProperty("min", zm.minString);
+                column.addProperty("max", zm.maxString);
+            } else if (zm.min <= zm.max) {
+                column.addProperty("min", zm.min);
+                column.addProperty("max", zm.max);
+            }
+            result.add(c, column);
+        }
+        return result;
     }
 
     private static String getFileName(String fileName) {
@@ -91,6 +91,11 @@ public class HillviewBenchmarks extends Benchmarks {
             this.totalElements = totalElements;
         }
 
+        @Override
+        public boolean isDeterministic() {
+            return false;
+        }
+
         @Override
         public ITable apply(@Nullable Empty data) {
             int length = 10;
@@ -25,6 +25,7 @@ import org.hillview.dataset.remoting.HillviewServer;
 import org.hillview.utils.HostList;
 import org.hillview.utils.HillviewLogger;
 import org.hillview.utils.HostAndPort;
+import org.hillview.utils.MetricsRegistry;
 
 import java.io.FileWriter;
 import java.lang.management.ManagementFactory;
@@ -34,6 +35,8 @@ import java.lang.management.ManagementFactory;
  * will start either a worker node, or an aggregator node that talks to many worker nodes.
  */
 class HillviewServerRunner {
+    private static final String METRICS_PORT_PROPERTY = "hillview.metrics.port";
+
     private static void usage() {
         System.out.println("Invalid number of arguments.\n" +
                 "Usage: java -jar <jarname> [children] host:port\n" +
@@ -42,7 +45,9 @@ class HillviewServerRunner {
                 "           Each child is of the form host:port.\n" +
                 "           If present this server will work as an aggregator node.\n" +
                 "The process will writes its process id into a file named hillview-worker.pid\n" +
-                "or hillview-aggregator.pid\n"
+                "or hillview-aggregator.pid\n" +
+                "If the system property " + METRICS_PORT_PROPERTY + " is set the runtime metrics\n" +
+                "are served over HTTP at http://host:port/metrics.\n"
         );
     }
 
@@ -72,6 +77,9 @@ class HillviewServerRunner {
 
             new HillviewServer(HostAndPort.fromString(hostAndPort), initial);
             HillviewLogger.instance.info("Created HillviewServer");
+            String metricsPort = System.getProperty(METRICS_PORT_PROPERTY);
+            if (metricsPort != null)
+                MetricsRegistry.instance.startHttpEndpoint(Integer.parseInt(metricsPort));
 
             // Try to find out own PID
             String jvmName = ManagementFactory.getRuntimeMXBean().getName();
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.RemoteDataSet;
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.utils.HostAndPort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This control message makes a server act as an aggregator: it installs at a
+ * reserved index a dataset that combines the datasets of its children.
+ * Children that run in the same server are used directly.
+ */
+public class ConfigureAggregator extends ControlMessage {
+    static final long serialVersionUID = 1;
+
+    /**
+     * Server that aggregates.
+     */
+    public final HostAndPort server;
+    /**
+     * Index where the combined dataset is installed.
+     */
+    private final int index;
+    private final ArrayList<HostAndPort> children;
+    /**
+     * Index of the dataset of each child.
+     */
+    private final int[] childIndexes;
+
+    public ConfigureAggregator(HostAndPort server, int index,
+                               ArrayList<HostAndPort> children, int[] childIndexes) {
+        if (children.size() != childIndexes.length)
+            throw new RuntimeException("Mismatched children and indexes");
+        this.server = server;
+        this.index = index;
+        this.children = children;
+        this.childIndexes = childIndexes;
+    }
+
+    public Status remoteServerAction(HillviewServer server) {
+        String self = server.getListenAddress().toString();
+        List<IDataSet<Object>> datasets = new ArrayList<IDataSet<Object>>(this.children.size());
+        for (int i = 0; i < this.children.size(); i++) {
+            HostAndPort child = this.children.get(i);
+            IDataSet<Object> ds;
+            if (child.toString().equals(self)) {
+                @SuppressWarnings("unchecked")
+                IDataSet<Object> local = (IDataSet<Object>)server.getInitialDataset(this.childIndexes[i]);
+                if (local == null)
+                    throw new RuntimeException("No dataset at index " + this.childIndexes[i]);
+                ds = local;
+            } else {
+                ds = new RemoteDataSet<Object>(child, this.childIndexes[i]);
+            }
+            datasets.add(ds);
+        }
+        server.setInitialDataset(this.index, new ParallelDataSet<Object>(datasets));
+        return new Status("Aggregating " + this.children.size() + " children at " + this.index);
+    }
+}
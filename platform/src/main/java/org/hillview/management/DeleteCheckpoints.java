@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.apache.commons.io.FileUtils;
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.utils.HillviewLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This control message causes the remote servers to delete the folders
+ * holding checkpoints that are no longer needed.
+ */
+public class DeleteCheckpoints extends ControlMessage {
+    static final long serialVersionUID = 1;
+
+    private final ArrayList<String> folders;
+
+    public DeleteCheckpoints(List<String> folders) {
+        this.folders = new ArrayList<String>(folders);
+    }
+
+    public Status remoteServerAction(HillviewServer server) {
+        int deleted = 0;
+        for (String f : this.folders) {
+            File folder = new File(f);
+            if (!folder.exists())
+                continue;
+            try {
+                FileUtils.deleteDirectory(folder);
+                deleted++;
+            } catch (IOException ex) {
+                HillviewLogger.instance.error("Cannot delete checkpoint", ex);
+            }
+        }
+        return new Status(deleted + " checkpoints deleted");
+    }
+}
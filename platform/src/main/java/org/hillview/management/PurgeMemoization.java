@@ -19,17 +19,21 @@ package org.hillview.management;
 
 import org.hillview.dataset.api.ControlMessage;
 import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.maps.FilterCache;
+import org.hillview.storage.LoadedFileCache;
 import org.hillview.table.Schema;
 
 /**
  * This control message causes the remote servers to remove everything from their
- * memoization caches.
+ * memoization caches, including the tables loaded from files and the filter results.
  */
 public class PurgeMemoization extends ControlMessage {
     static final long serialVersionUID = 1;
     public Status remoteServerAction(HillviewServer server) {
         server.purgeMemoized();
         Schema.purgeCache();
+        LoadedFileCache.instance.purge();
+        FilterCache.instance.purge();
         return new Status("caches purged");
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.api.OperationTrace;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.utils.Linq;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This control message returns the timing breakdown of recent operations
+ * executed by each remote server.
+ */
+public class QueryTraces extends ControlMessage {
+    static final long serialVersionUID = 1;
+
+    /**
+     * If not null only return the spans of the operation with this root span.
+     */
+    @Nullable
+    private final UUID rootId;
+    /**
+     * Maximum number of spans returned by each server.
+     */
+    private final int count;
+
+    public QueryTraces(@Nullable UUID rootId, int count) {
+        this.rootId = rootId;
+        this.count = count;
+    }
+
+    public Status remoteServerAction(HillviewServer server) {
+        List<OperationTrace> traces = OperationTrace.getRecent(this.rootId, this.count);
+        return new Status(String.join("\n", Linq.map(traces, OperationTrace::toString)));
+    }
+}
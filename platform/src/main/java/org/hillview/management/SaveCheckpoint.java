@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.storage.CheckpointLayout;
+import org.hillview.table.api.ITable;
+
+/**
+ * This control message causes a remote server to save the table it was sent
+ * to as a checkpoint.  The status returned describes the layout of the table
+ * on the server.
+ */
+public class SaveCheckpoint extends ControlMessage {
+    static final long serialVersionUID = 1;
+
+    private final String folder;
+    /**
+     * Position of the table on the server in the tree of datasets.
+     */
+    private final String position;
+
+    public SaveCheckpoint(String folder, String position) {
+        this.folder = folder;
+        this.position = position;
+    }
+
+    public static class Saved extends Status {
+        static final long serialVersionUID = 1;
+
+        public final CheckpointLayout layout;
+
+        Saved(CheckpointLayout layout) {
+            super(layout.partitions() + " partitions saved");
+            this.layout = layout;
+        }
+    }
+
+    /**
+     * True if the table can be reloaded on the server with the same layout:
+     * a table loaded from files is a ParallelDataSet of LocalDataSets.
+     */
+    private static boolean canReload(IDataSet<?> dataset) {
+        if (dataset instanceof LocalDataSet)
+            return true;
+        if (!(dataset instanceof ParallelDataSet))
+            return false;
+        for (IDataSet<?> child : ((ParallelDataSet<?>)dataset).getChildren())
+            if (!(child instanceof LocalDataSet))
+                return false;
+        return true;
+    }
+
+    @Override
+    public Status remoteServerAction(HillviewServer server, IDataSet<?> dataset) {
+        if (!canReload(dataset))
+            throw new RuntimeException("Cannot checkpoint " + dataset);
+        @SuppressWarnings("unchecked")
+        IDataSet<ITable> table = (IDataSet<ITable>)dataset;
+        CheckpointLayout layout = CheckpointLayout.save(table, this.folder, this.position)
+                .toBlocking().single();
+        return new Saved(layout);
+    }
+
+    @Override
+    public String toString() {
+        return "SaveCheckpoint(" + this.folder + ", " + this.position + ")";
+    }
+}
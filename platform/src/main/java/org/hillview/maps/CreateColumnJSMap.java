@@ -17,15 +17,13 @@
 
 package org.hillview.maps;
 
-import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Value;
-import org.graalvm.polyglot.proxy.ProxyObject;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.Schema;
 import org.hillview.table.api.*;
 import org.hillview.table.columns.BaseColumn;
 import org.hillview.table.columns.IntervalColumn;
-import org.hillview.table.rows.JSVirtualRowSnapshot;
+import org.hillview.utils.JavascriptEngine;
 
 import java.io.Serializable;
 
@@ -64,11 +62,8 @@ public class CreateColumnJSMap extends AppendOrReplaceColumnMap {
 
     @Override
     IColumn createColumn(ITable table) {
-        try {
-            Context context = Context.newBuilder().allowAllAccess(true).build();
-            // Compiles the JS function
-            context.eval("js", this.info.jsFunction);
-
+        try (JavascriptEngine.RowFunction function = JavascriptEngine.compile(
+                    this.info.jsFunction, "map", this.info.schema, table)) {
             ColumnDescription outCol = new ColumnDescription(this.info.outputColumn, this.info.outputKind);
             IMutableColumn col;
             IMutableColumn endCol = null;  // only used for Intervals
@@ -81,19 +76,11 @@ public class CreateColumnJSMap extends AppendOrReplaceColumnMap {
             } else {
                 col = BaseColumn.create(outCol, set.getMax(), set.getSize());
             }
-            table.getLoadedColumns(this.info.schema.getColumnNames());
-
-            JSVirtualRowSnapshot vrs = new JSVirtualRowSnapshot(
-                    table, this.info.schema, context);
-            ProxyObject vrsProxy = ProxyObject.fromMap(vrs);
             IRowIterator it = table.getMembershipSet().getIterator();
             int r = it.getNextRow();
-            Value function = context.eval("js", "vrs => map(vrs)");
-            assert function.canExecute();
             while (r >= 0) {
-                vrs.setRow(r);
-                Value value = function.execute(vrsProxy);
-                if (value == null)
+                Value value = function.apply(r);
+                if (value == null || value.isNull())
                     col.setMissing(r);
                 else {
                     switch (kind) {
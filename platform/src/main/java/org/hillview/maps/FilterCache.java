@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.maps;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.ITable;
+import org.hillview.table.membership.DenseMembershipSet;
+import org.hillview.table.membership.RoaringMembershipSet;
+import org.hillview.table.membership.SparseMembershipSet;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Worker-local cache of the results of filters.  The cache maps a pair
+ * (source table, filter description) to the set of rows selected by the filter.
+ * Source tables are compared by identity and are not kept alive by the cache.
+ * The cache has a memory budget; the least-recently used results are evicted first.
+ */
+public class FilterCache {
+    public static final FilterCache instance = new FilterCache(
+            Runtime.getRuntime().maxMemory() / 16);
+
+    private static class Key {
+        final WeakReference<ITable> table;
+        final int tableHash;
+        final String filter;
+
+        Key(ITable table, String filter) {
+            this.table = new WeakReference<ITable>(table);
+            this.tableHash = System.identityHashCode(table);
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            ITable table = this.table.get();
+            return table != null && table == key.table.get() && this.filter.equals(key.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.tableHash + this.filter.hashCode();
+        }
+    }
+
+    private final Cache<Key, IMembershipSet> results;
+
+    public FilterCache(long maxBytes) {
+        this.results = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Weigher<Key, IMembershipSet>) (k, m) -> FilterCache.estimateSize(m))
+                .build();
+    }
+
+    /**
+     * A rough estimate of the memory used by a membership set, in bytes.
+     */
+    private static int estimateSize(IMembershipSet set) {
+        long size;
+        if (set instanceof RoaringMembershipSet)
+            size = ((RoaringMembershipSet)set).estimateMemory();
+        else if (set instanceof DenseMembershipSet)
+            size = set.getMax() / 8;
+        else if (set instanceof SparseMembershipSet)
+            size = (long)set.getSize() * 8;
+        else
+            size = 0;
+        // Account for the key as well
+        return (int)Math.min(size + 100, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the rows of a table selected by a filter, computing them if they are not cached.
+     * @param table   Table that is filtered.
+     * @param filter  Canonical description of the filter; if null the result is not cached.
+     * @param compute Function that computes the filter result.
+     */
+    public IMembershipSet get(ITable table, @Nullable String filter, Supplier<IMembershipSet> compute) {
+        if (filter == null)
+            return compute.get();
+        try {
+            return this.results.get(new Key(table, filter), compute::get);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    public void purge() {
+        this.results.invalidateAll();
+    }
+
+    public long size() {
+        return this.results.size();
+    }
+}
@@ -18,12 +18,14 @@
 package org.hillview.maps;
 
 import org.hillview.dataset.api.IMap;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.QuantizationSchema;
 import org.hillview.table.QuantizedTable;
 import org.hillview.table.api.ITableFilterDescription;
 import org.hillview.table.api.ITableFilter;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ITable;
+import org.hillview.table.membership.EmptyMembershipSet;
 import org.hillview.utils.Converters;
 import org.hillview.utils.HillviewLogger;
 
@@ -56,14 +58,35 @@ public class FilterMap implements IMap<ITable, ITable> {
     @Override
     public ITable apply(@Nullable ITable data) {
         Converters.checkNull(data);
-        if (this.quantization != null)
+        if (this.quantization != null) {
             data = new QuantizedTable(data, this.quantization);
-        ITableFilter filter = this.rowFilterPredicate.getFilter(data);
-        HillviewLogger.instance.info("Filtering", "{0}", filter);
-        IMembershipSet result = data.getMembershipSet().filter(filter::test);
+        } else {
+            // Zone maps describe the original data, so they are not used for quantized tables.
+            ColumnZoneMap.Match match = this.rowFilterPredicate.zoneMatch(data);
+            if (match == ColumnZoneMap.Match.All)
+                return data;
+            if (match == ColumnZoneMap.Match.None)
+                return data.selectRowsFromFullTable(
+                        new EmptyMembershipSet(data.getMembershipSet().getMax()));
+        }
+        ITable table = data;
+        IMembershipSet result;
+        if (this.quantization == null)
+            // Quantized tables are created anew on each call, so caching results is useless.
+            result = FilterCache.instance.get(
+                    table, this.rowFilterPredicate.getCacheKey(), () -> this.filter(table));
+        else
+            result = this.filter(table);
         return data.selectRowsFromFullTable(result);
     }
 
+    private IMembershipSet filter(ITable data) {
+        try (ITableFilter filter = this.rowFilterPredicate.getFilter(data)) {
+            HillviewLogger.instance.info("Filtering", "{0}", filter);
+            return data.getMembershipSet().filter(filter::test);
+        }
+    }
+
     public String asString() {
         return this.rowFilterPredicate.toString();
     }
@@ -38,6 +38,11 @@ public class FindCassandraFilesMap implements IMap<Empty, List<IFileReference>>
         this.conn = conn;
     }
 
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
     @Override
     public List<IFileReference> apply(@Nullable Empty empty) {
         List<IFileReference> result = new ArrayList<IFileReference>();
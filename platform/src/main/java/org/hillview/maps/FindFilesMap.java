@@ -21,6 +21,7 @@ import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.hillview.dataset.api.IMap;
 import org.hillview.storage.FileSetDescription;
 import org.hillview.storage.IFileReference;
+import org.hillview.table.FileExtents;
 import org.hillview.utils.HillviewLogger;
 import org.hillview.utils.Utilities;
 
@@ -28,6 +29,8 @@ import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -40,13 +43,119 @@ import java.util.List;
  * Scans a folder and finds files matching a pattern. Creates a list of file
  * loaders that can be invoked to load the actual file data as tables.
  * T is not used for anything.
+ *
+ * When given the extents of the files that have already been loaded, only
+ * new data is found: files that have not been loaded, and the lines appended
+ * to appendable files since they were loaded.
  */
 public class FindFilesMap<T> implements IMap<T, List<IFileReference>> {
     static final long serialVersionUID = 1;
     private final FileSetDescription description;
+    /**
+     * If not null only data that is not described by these extents is found.
+     */
+    @Nullable
+    private final FileExtents loaded;
+    /**
+     * If not null only the data up to these extents is found, and the files
+     * that do not appear here are ignored.  Used to find again exactly the
+     * data found by an earlier search.  Only used when loaded is not null.
+     */
+    @Nullable
+    private final FileExtents upTo;
 
     public FindFilesMap(FileSetDescription description) {
+        this(description, null);
+    }
+
+    public FindFilesMap(FileSetDescription description, @Nullable FileExtents loaded) {
+        this(description, loaded, null);
+    }
+
+    public FindFilesMap(FileSetDescription description, @Nullable FileExtents loaded,
+                        @Nullable FileExtents upTo) {
         this.description = description;
+        this.loaded = loaded;
+        this.upTo = upTo;
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    /**
+     * Offset after the last complete line of a file that starts at or after start;
+     * lines that are still being written are not included.
+     */
+    public static long lastLineEnd(String pathname, long start) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(pathname, "r")) {
+            byte[] buffer = new byte[4096];
+            long end = file.length();
+            while (end > start) {
+                int toRead = (int)Math.min(buffer.length, end - start);
+                file.seek(end - toRead);
+                file.readFully(buffer, 0, toRead);
+                for (int i = toRead - 1; i >= 0; i--)
+                    if (buffer[i] == '\n')
+                        return end - toRead + i + 1;
+                end -= toRead;
+            }
+            return start;
+        }
+    }
+
+    /**
+     * Offset of the first line that starts at or after start.
+     */
+    static long nextLineStart(String pathname, long start) throws IOException {
+        if (start == 0)
+            return 0;
+        try (RandomAccessFile file = new RandomAccessFile(pathname, "r")) {
+            file.seek(start - 1);
+            int b = file.read();
+            while (b >= 0 && b != '\n')
+                b = file.read();
+            return file.getFilePointer();
+        }
+    }
+
+    /**
+     * Reference to the data in a file that is not described by the loaded extents.
+     */
+    @Nullable
+    private IFileReference newData(String pathname) {
+        assert this.loaded != null;
+        Long start = this.loaded.loaded.get(FileExtents.key(pathname));
+        Long end = null;
+        if (this.upTo != null) {
+            end = this.upTo.loaded.get(FileExtents.key(pathname));
+            if (end == null)
+                return null;
+        }
+        boolean appendable = this.description.isAppendable() && Utilities.isCompressed(pathname) == null;
+        if (!appendable)
+            return start == null ? this.description.createFileReference(pathname) : null;
+        if (start == null) {
+            start = 0L;
+        } else if (start < 0) {
+            return null;
+        } else if ((end != null ? end : new File(pathname).length()) < start) {
+            // The file was truncated, e.g., by log rotation: read it again.
+            HillviewLogger.instance.info("File was truncated", "{0}", pathname);
+            start = 0L;
+        }
+        try {
+            // If the previous load ended inside a line, the rest of the line is skipped.
+            start = nextLineStart(pathname, start);
+            if (end == null)
+                end = lastLineEnd(pathname, start);
+            if (end <= start)
+                return null;
+            return this.description.createFileReference(pathname, start, end);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
     }
 
     /**
@@ -90,8 +199,15 @@ public class FindFilesMap<T> implements IMap<T, List<IFileReference>> {
         }
 
         List<IFileReference> result = new ArrayList<IFileReference>();
-        for (String n : names)
-            result.add(this.description.createFileReference(n));
+        for (String n : names) {
+            if (this.loaded == null) {
+                result.add(this.description.createFileReference(n));
+            } else {
+                IFileReference ref = this.newData(n);
+                if (ref != null)
+                    result.add(ref);
+            }
+        }
         return result;
     }
 }
@@ -22,6 +22,7 @@ import org.hillview.dataset.api.IMap;
 import org.hillview.storage.jdbc.JdbcConnectionInformation;
 import org.hillview.table.api.ITable;
 import org.hillview.storage.jdbc.JdbcDatabase;
+import org.hillview.utils.ComputePool;
 
 import javax.annotation.Nullable;
 import java.sql.SQLException;
@@ -34,6 +35,16 @@ public class LoadDatabaseTableMap implements IMap<Empty, ITable> {
         this.conn = conn;
     }
 
+    @Override
+    public ComputePool.TaskClass getTaskClass() {
+        return ComputePool.TaskClass.Load;
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
     @Override
     public ITable apply(@Nullable Empty data) {
         try {
@@ -19,18 +19,39 @@ package org.hillview.maps;
 
 import org.hillview.dataset.api.IMap;
 import org.hillview.storage.IFileReference;
+import org.hillview.storage.LoadedFileCache;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.api.ITable;
+import org.hillview.utils.ComputePool;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 
+/**
+ * Loads the table referenced by a file.  Loaded tables are cached on the worker,
+ * so rebuilding a dataset does not need to parse the files again.
+ * The zone maps of the loaded columns are computed when the table is loaded.
+ */
 public class LoadFilesMap implements IMap<IFileReference, ITable> {
     static final long serialVersionUID = 1;
     public LoadFilesMap() {}
 
+    @Override
+    public ComputePool.TaskClass getTaskClass() {
+        return ComputePool.TaskClass.Load;
+    }
+
     @Override
     public ITable apply(@Nullable IFileReference data) {
-        return Converters.checkNull(data).load();
+        ITable result = LoadedFileCache.instance.load(Converters.checkNull(data));
+        ColumnZoneMap.computeAll(result);
+        return result;
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        // The files may have changed.
+        return false;
     }
 
     @Override
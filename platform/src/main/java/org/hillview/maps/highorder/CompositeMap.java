@@ -32,6 +32,11 @@ public class CompositeMap<T, S, V> implements IMap<T, V> {
         this.second = second;
     }
 
+    @Override
+    public boolean isDeterministic() {
+        return this.first.isDeterministic() && this.second.isDeterministic();
+    }
+
     @Override
     public V apply(@Nullable T data) {
         S second = this.first.apply(data);
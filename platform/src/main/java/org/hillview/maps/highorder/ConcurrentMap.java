@@ -33,6 +33,11 @@ public class ConcurrentMap<T, S1, S2> implements IMap<T, Pair<S1, S2>> {
         this.second = second;
     }
 
+    @Override
+    public boolean isDeterministic() {
+        return this.first.isDeterministic() && this.second.isDeterministic();
+    }
+
     @Override
     public Pair<S1, S2> apply(@Nullable T data) {
         S1 first = this.first.apply(data);
@@ -27,6 +27,7 @@ import javax.annotation.Nullable;
 
 /**
  * A Sketch that computes basic column statistics for a set of columns.
+ * The statistics of each table are computed once and kept in the StatisticsCatalog.
  */
 public class BasicColStatSketch implements TableSketch<JsonList<BasicColStats>> {
     static final long serialVersionUID = 1;
@@ -46,10 +47,9 @@ public class BasicColStatSketch implements TableSketch<JsonList<BasicColStats>>
     @Override
     public JsonList<BasicColStats> create(@Nullable final ITable data) {
         Converters.checkNull(data);
-        JsonList<BasicColStats> result = this.getZero();
-        Converters.checkNull(result);
-        for (int i = 0; i < this.cols.length; i++)
-            result.get(i).scan(data.getLoadedColumn(this.cols[i]), data.getMembershipSet());
+        JsonList<BasicColStats> result = new JsonList<BasicColStats>(this.cols.length);
+        for (String col : this.cols)
+            result.add(StatisticsCatalog.instance.getStats(data, col, this.momentNum));
         return result;
     }
 
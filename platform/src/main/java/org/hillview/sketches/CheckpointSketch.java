@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.TableSketch;
+import org.hillview.storage.SnapshotFileWriter;
+import org.hillview.table.FileSizeInfo;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.ComputePool;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * Saves a partition of a table as a snapshot file in a folder on the worker
+ * that holds it, so that the table can later be reloaded instead of being
+ * recomputed.  The file is named after the position of the partition, which
+ * is given by CheckpointLayout.  The result counts the files written.
+ */
+public class CheckpointSketch implements TableSketch<FileSizeInfo> {
+    static final long serialVersionUID = 1;
+
+    public static final String extension = ".snapshot";
+
+    private final String folder;
+    private final String partition;
+
+    public CheckpointSketch(String folder, String partition) {
+        this.folder = folder;
+        this.partition = partition;
+    }
+
+    /**
+     * Name of the file holding the specified partition.
+     */
+    public static String path(String folder, String partition) {
+        return Paths.get(folder, partition + extension).toString();
+    }
+
+    @Override
+    public ComputePool.TaskClass getTaskClass() {
+        return ComputePool.TaskClass.Background;
+    }
+
+    @Override
+    public boolean isIncremental() {
+        // Saving has side effects, so it is never skipped.
+        return false;
+    }
+
+    @Override
+    public FileSizeInfo create(@Nullable ITable data) {
+        Converters.checkNull(data);
+        File folder = new File(this.folder);
+        @SuppressWarnings("unused")
+        boolean ignored = folder.mkdirs();
+        // Several partitions may create the folder concurrently; if it cannot be
+        // created the writing below fails.
+        String path = path(this.folder, this.partition);
+        HillviewLogger.instance.info("Writing checkpoint", "{0}", path);
+        new SnapshotFileWriter(path).writeTable(data);
+        return new FileSizeInfo(1, new File(path).length());
+    }
+
+    @Nullable
+    @Override
+    public FileSizeInfo zero() {
+        return new FileSizeInfo();
+    }
+
+    @Nullable
+    @Override
+    public FileSizeInfo add(@Nullable FileSizeInfo left, @Nullable FileSizeInfo right) {
+        assert left != null;
+        assert right != null;
+        return new FileSizeInfo(left.fileCount + right.fileCount, left.totalSize + right.totalSize);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.IncrementalTableSketch;
+import org.hillview.sketches.results.DenseHistogram;
+import org.hillview.sketches.results.IHistogramBuckets;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Multi-dimensional histogram that produces a DenseHistogram.  It computes the same
+ * counts as nested group-by sketches (e.g., Histogram2DSketch), but the result is a
+ * single array of counts, and each row is placed with a single loop over the columns.
+ * Dimension 0 of the result corresponds to the first buckets.
+ */
+public class DenseHistogramSketch extends IncrementalTableSketch<DenseHistogram, DenseHistogramSketch.Workspace> {
+    static final long serialVersionUID = 1;
+
+    private final IHistogramBuckets[] buckets;
+
+    public static class Workspace implements ISketchWorkspace {
+        final IColumn[] columns;
+        /**
+         * For interval columns the column holding the interval ends; null otherwise.
+         */
+        final IColumn[] endColumns;
+        final boolean hasIntervals;
+        // Scratch space used for rows whose intervals span several buckets.
+        final int[] low;
+        final int[] high;
+        final int[] current;
+
+        Workspace(IColumn[] columns) {
+            int dimensions = columns.length;
+            this.columns = new IColumn[dimensions];
+            this.endColumns = new IColumn[dimensions];
+            boolean intervals = false;
+            for (int d = 0; d < dimensions; d++) {
+                IColumn column = columns[d];
+                if (column.getKind() == ContentsKind.Interval) {
+                    IIntervalColumn ic = column.to(IIntervalColumn.class);
+                    this.columns[d] = ic.getStartColumn();
+                    this.endColumns[d] = ic.getEndColumn();
+                    intervals = true;
+                } else {
+                    this.columns[d] = column;
+                }
+            }
+            this.hasIntervals = intervals;
+            this.low = new int[dimensions];
+            this.high = new int[dimensions];
+            this.current = new int[dimensions];
+        }
+    }
+
+    public DenseHistogramSketch(IHistogramBuckets... buckets) {
+        if (buckets.length == 0)
+            throw new RuntimeException("Histogram needs at least one dimension");
+        this.buckets = buckets;
+    }
+
+    @Override
+    public boolean canShareScan() {
+        return true;
+    }
+
+    @Override
+    public Workspace initialize(ITable data) {
+        String[] names = new String[this.buckets.length];
+        for (int d = 0; d < this.buckets.length; d++)
+            names[d] = this.buckets[d].getColumn();
+        List<IColumn> columns = data.getLoadedColumns(names);
+        return new Workspace(columns.toArray(new IColumn[0]));
+    }
+
+    @Override
+    public void increment(Workspace workspace, DenseHistogram result, int rowNumber) {
+        if (workspace.hasIntervals) {
+            this.incrementIntervals(workspace, result, rowNumber);
+            return;
+        }
+        int offset = 0;
+        for (int d = 0; d < this.buckets.length; d++) {
+            IColumn column = workspace.columns[d];
+            int count = result.getBucketCount(d);
+            int index;
+            if (column.isMissing(rowNumber)) {
+                index = count;
+            } else {
+                index = this.buckets[d].indexOf(column, rowNumber);
+                if (index < 0 || index >= count)
+                    return;
+            }
+            offset += index * result.getStride(d);
+        }
+        result.increment(offset);
+    }
+
+    /**
+     * Rows with interval values contribute to all buckets that overlap each interval.
+     */
+    private void incrementIntervals(Workspace workspace, DenseHistogram result, int rowNumber) {
+        int dimensions = this.buckets.length;
+        for (int d = 0; d < dimensions; d++) {
+            IColumn column = workspace.columns[d];
+            int count = result.getBucketCount(d);
+            if (column.isMissing(rowNumber)) {
+                workspace.low[d] = count;
+                workspace.high[d] = count;
+                continue;
+            }
+            int index0 = this.buckets[d].indexOf(column, rowNumber);
+            int index1 = index0;
+            IColumn end = workspace.endColumns[d];
+            if (end != null) {
+                index1 = this.buckets[d].indexOf(end, rowNumber);
+                if (index0 > index1) {
+                    int tmp = index0;
+                    index0 = index1;
+                    index1 = tmp;
+                }
+            }
+            index0 = Math.max(index0, 0);
+            index1 = Math.min(index1, count - 1);
+            if (index0 > index1)
+                return;
+            workspace.low[d] = index0;
+            workspace.high[d] = index1;
+        }
+        // Enumerate all combinations of buckets.
+        System.arraycopy(workspace.low, 0, workspace.current, 0, dimensions);
+        while (true) {
+            int offset = 0;
+            for (int d = 0; d < dimensions; d++)
+                offset += workspace.current[d] * result.getStride(d);
+            result.increment(offset);
+            int d = dimensions - 1;
+            while (d >= 0 && workspace.current[d] == workspace.high[d]) {
+                workspace.current[d] = workspace.low[d];
+                d--;
+            }
+            if (d < 0)
+                break;
+            workspace.current[d]++;
+        }
+    }
+
+    @Override
+    public DenseHistogram zero() {
+        int[] counts = new int[this.buckets.length];
+        for (int d = 0; d < this.buckets.length; d++)
+            counts[d] = this.buckets[d].getBucketCount();
+        return new DenseHistogram(counts);
+    }
+
+    @Nullable
+    @Override
+    public DenseHistogram add(@Nullable DenseHistogram left, @Nullable DenseHistogram right) {
+        return Converters.checkNull(left).add(Converters.checkNull(right));
+    }
+}
@@ -28,7 +28,7 @@ import javax.annotation.Nullable;
 
 /**
  * A sketch that computes the range of data in a column where values can be
- * converted to doubles.
+ * converted to doubles.  Ranges of numeric columns are obtained from the StatisticsCatalog.
  */
 public class DoubleDataRangeSketch implements TableSketch<DataRange> {
     static final long serialVersionUID = 1;
@@ -41,6 +41,8 @@ public class DoubleDataRangeSketch implements TableSketch<DataRange> {
     @Override
     public DataRange create(@Nullable final ITable data) {
         IColumn column = Converters.checkNull(data).getLoadedColumn(this.col);
+        if (!column.getKind().isString())
+            return StatisticsCatalog.instance.getRange(data, this.col);
         DataRange result = new DataRange();
         final IRowIterator myIter = data.getMembershipSet().getIterator();
         int currRow = myIter.getNextRow();
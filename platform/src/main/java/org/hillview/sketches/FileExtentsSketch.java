@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.storage.IFileReference;
+import org.hillview.table.FileExtents;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+
+/**
+ * Computes how much of each file has been read by a set of file references.
+ */
+public class FileExtentsSketch implements ISketch<IFileReference, FileExtents> {
+    static final long serialVersionUID = 1;
+
+    @Override
+    public boolean isIncremental() {
+        // File lengths change as data is appended.
+        return false;
+    }
+
+    @Override
+    public FileExtents create(@Nullable IFileReference data) {
+        Converters.checkNull(data);
+        FileExtents result = new FileExtents();
+        String path = data.getPathname();
+        if (path != null)
+            result.add(path, data.getEndOffset());
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public FileExtents zero() {
+        return new FileExtents();
+    }
+
+    @Nullable
+    @Override
+    public FileExtents add(@Nullable FileExtents left, @Nullable FileExtents right) {
+        return Converters.checkNull(left).union(Converters.checkNull(right));
+    }
+}
@@ -26,6 +26,13 @@ import javax.annotation.Nullable;
 
 public class FileSizeSketch implements ISketch<IFileReference, FileSizeInfo> {
     static final long serialVersionUID = 1;
+
+    @Override
+    public boolean isIncremental() {
+        // File sizes change as data is appended.
+        return false;
+    }
+
     @Override
     public FileSizeInfo create(@Nullable IFileReference data) {
         Converters.checkNull(data);
@@ -21,6 +21,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.hillview.dataset.api.TableSketch;
 import org.hillview.dataset.api.IJsonSketchResult;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.RecordOrder;
 import org.hillview.table.Schema;
 import org.hillview.table.api.IRowIterator;
@@ -144,14 +145,28 @@ public class FindSketch implements TableSketch<FindSketch.Result> {
         this.excludeTopRow = !this.stringFilterDescription.next || stringFilterDescription.excludeTopRow;
     }
 
+    /**
+     * Use the zone maps to check whether no row in the table can match.
+     */
+    private boolean cannotMatch(ITable data, Schema toCheck) {
+        for (String c : toCheck.getColumnNames()) {
+            ColumnZoneMap zm = ColumnZoneMap.get(data, c);
+            if (zm == null || zm.matches(this.stringFilterDescription) != ColumnZoneMap.Match.None)
+                return false;
+        }
+        return true;
+    }
+
     @Override
     public Result create(@Nullable ITable data) {
         assert(data != null);
         long before = 0;
         long at = 0;
         long after = 0;
-        IRowIterator rowIt = data.getRowIterator();
         Schema toCheck = this.recordOrder.toSchema();
+        if (this.cannotMatch(data, toCheck))
+            return new Result();
+        IRowIterator rowIt = data.getRowIterator();
         IStringFilter stringFilter = StringFilterFactory.getFilter(this.stringFilterDescription);
         VirtualRowSnapshot vw = new VirtualRowSnapshot(data, toCheck);
         VirtualRowSnapshot smallestMatch = new VirtualRowSnapshot(data, toCheck);
@@ -55,10 +55,14 @@ public class HLogLogSketch implements TableSketch<HLogLog> {
 
     @Override
     public HLogLog create(@Nullable final ITable data) {
+        Converters.checkNull(data);
+        if (this.quantization == null)
+            return StatisticsCatalog.instance.getDistinctCount(
+                    data, this.colName, this.logSpaceSize, this.seed);
         HLogLog result = this.getZero();
-        IColumn col = Converters.checkNull(data).getLoadedColumn(this.colName);
+        IColumn col = data.getLoadedColumn(this.colName);
         if (this.quantization != null)
-            col = new QuantizedColumn(col, this.quantization);
+            col = QuantizedColumn.materialize(col, this.quantization);
         Converters.checkNull(result).createHLL(col, data.getMembershipSet());
         return result;
     }
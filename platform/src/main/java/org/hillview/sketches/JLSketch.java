@@ -58,6 +58,12 @@ public class JLSketch implements TableSketch<JLProjection> {
         this.seed = seed;
     }
 
+    @Override
+    public boolean isIncremental() {
+        // The add method updates its left argument in place.
+        return false;
+    }
+
     @Nullable
     @Override
     public JLProjection zero() {
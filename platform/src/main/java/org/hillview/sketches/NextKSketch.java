@@ -33,9 +33,11 @@ import org.hillview.table.columns.ObjectArrayColumn;
 import org.hillview.table.rows.RowSnapshot;
 import org.hillview.table.rows.VirtualRowSnapshot;
 import org.hillview.utils.Converters;
+import org.hillview.utils.Linq;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -300,6 +302,113 @@ public class NextKSketch implements TableSketch<NextKList> {
                 left.rowsScanned + right.rowsScanned);
     }
 
+    /**
+     * Combine two aggregate values for rows that are equal.
+     */
+    private static double combineAggregates(
+            double left, double right, AggregateDescription.AggregateKind agkind) {
+        switch (agkind) {
+            case Sum:
+            case Count:
+                return left + right;
+            case Min:
+                return Math.min(left, right);
+            case Max:
+                return Math.max(left, right);
+            default:
+                throw new RuntimeException("Unexpected aggregation");
+        }
+    }
+
+    /**
+     * Merge a batch of NextK lists at once using a k-way merge, instead of performing
+     * a sequence of two-way merges.  Counts and aggregates of identical rows are combined.
+     * @param data The lists to merge.
+     * @return The merged list.
+     */
+    @Override @Nullable
+    public NextKList reduce(List<NextKList> data) {
+        if (data.isEmpty())
+            return this.zero();
+        if (data.size() == 1)
+            return data.get(0);
+        NextKList first = Converters.checkNull(data.get(0));
+        Schema schema = first.rows.getSchema();
+        for (NextKList l: data)
+            if (!schema.equals(Converters.checkNull(l).rows.getSchema()))
+                throw new RuntimeException("The schemas do not match.");
+        List<SmallTable> tables = Linq.map(data, l -> l.rows);
+        int[] mergeOrder = this.recordOrder.getKWayMergeOrder(tables, true, this.maxSize);
+
+        List<IColumn> mergedCol = new ArrayList<IColumn>(schema.getColumnCount());
+        for (String colName : schema.getColumnNames()) {
+            List<IColumn> columns = Linq.map(tables, t -> t.getColumn(colName));
+            mergedCol.add(ObjectArrayColumn.mergeColumns(columns, mergeOrder));
+        }
+        SmallTable mergedTable = new SmallTable(mergedCol);
+        int size = mergedTable.getNumOfRows();
+
+        IntList mergedCounts = new IntArrayList(size);
+        int[] positions = new int[data.size()];
+        for (int m : mergeOrder) {
+            if (m >= 0) {
+                mergedCounts.add(data.get(m).count.getInt(positions[m]));
+                positions[m]++;
+            } else {
+                int t = -m - 1;
+                int last = mergedCounts.size() - 1;
+                mergedCounts.set(last, mergedCounts.getInt(last) + data.get(t).count.getInt(positions[t]));
+                positions[t]++;
+            }
+        }
+
+        SmallTable aggTable = null;
+        if (first.aggregates != null) {
+            Converters.checkNull(this.aggregates);
+            List<IColumn> aggCols = new ArrayList<IColumn>(this.aggregates.length);
+            int index = 0;
+            for (ColumnDescription cd : first.aggregates.getSchema().getColumnDescriptions()) {
+                List<IColumn> columns = Linq.map(data,
+                        l -> Converters.checkNull(l.aggregates).getColumn(cd.name));
+                AggregateDescription.AggregateKind agkind = this.aggregates[index].agkind;
+                ObjectArrayColumn merged = new ObjectArrayColumn(cd, size);
+                Arrays.fill(positions, 0);
+                int k = -1;
+                for (int m : mergeOrder) {
+                    if (m >= 0) {
+                        k++;
+                        IColumn col = columns.get(m);
+                        if (!col.isMissing(positions[m]))
+                            merged.set(k, col.getDouble(positions[m]));
+                        positions[m]++;
+                    } else {
+                        int t = -m - 1;
+                        IColumn col = columns.get(t);
+                        if (!col.isMissing(positions[t])) {
+                            double d = col.getDouble(positions[t]);
+                            if (merged.isMissing(k))
+                                merged.set(k, d);
+                            else
+                                merged.set(k, combineAggregates(merged.getDouble(k), d, agkind));
+                        }
+                        positions[t]++;
+                    }
+                }
+                aggCols.add(merged);
+                index++;
+            }
+            aggTable = new SmallTable(aggCols);
+        }
+
+        long startPosition = 0;
+        long rowsScanned = 0;
+        for (NextKList l : data) {
+            startPosition += l.startPosition;
+            rowsScanned += l.rowsScanned;
+        }
+        return new NextKList(mergedTable, aggTable, mergedCounts, startPosition, rowsScanned);
+    }
+
     @Override
     public NextKList zero() {
         return new NextKList(this.recordOrder.toSchema(), this.aggregates);
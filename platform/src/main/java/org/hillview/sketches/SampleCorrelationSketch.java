@@ -53,6 +53,12 @@ public class SampleCorrelationSketch implements TableSketch<CorrMatrix> {
         this(colNames, .1, seed);
     }
 
+    @Override
+    public boolean isIncremental() {
+        // The add method updates its left argument in place.
+        return false;
+    }
+
     @Nullable
     @Override
     public CorrMatrix zero() {
@@ -25,6 +25,7 @@ import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowOrder;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
+import org.hillview.utils.Linq;
 
 import javax.annotation.Nullable;
 
@@ -119,4 +120,29 @@ public class SampleQuantileSketch  implements TableSketch<SampleList> {
         }
         return new SampleList(new SmallTable(mergedCol));
     }
+
+    /**
+     * Merges a batch of sample tables at once, using a k-way merge, instead of
+     * performing a sequence of two-way merges.
+     */
+    @Nullable
+    @Override
+    public SampleList reduce(List<SampleList> data) {
+        if (data.isEmpty())
+            return this.zero();
+        if (data.size() == 1)
+            return data.get(0);
+        List<SmallTable> tables = Linq.map(data, d -> Converters.checkNull(d).table);
+        Schema schema = tables.get(0).getSchema();
+        for (SmallTable t: tables)
+            if (!schema.equals(t.getSchema()))
+                throw new RuntimeException("The schemas do not match.");
+        int[] mergeOrder = this.colSortOrder.getKWayMergeOrder(tables, false, Integer.MAX_VALUE);
+        List<IColumn> mergedCol = new ArrayList<IColumn>(schema.getColumnCount());
+        for (String colName: schema.getColumnNames()) {
+            List<IColumn> columns = Linq.map(tables, t -> t.getColumn(colName));
+            mergedCol.add(mergeColumns(columns, mergeOrder));
+        }
+        return new SampleList(new SmallTable(mergedCol));
+    }
 }
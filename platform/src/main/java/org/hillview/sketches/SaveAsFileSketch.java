@@ -22,8 +22,10 @@ import org.hillview.dataset.api.TableSketch;
 import org.hillview.storage.CsvFileWriter;
 import org.hillview.storage.ITableWriter;
 import org.hillview.storage.OrcFileWriter;
+import org.hillview.storage.SnapshotFileWriter;
 import org.hillview.table.Schema;
 import org.hillview.table.api.ITable;
+import org.hillview.utils.ComputePool;
 import org.hillview.utils.Converters;
 import org.hillview.utils.HillviewLogger;
 import org.hillview.utils.Utilities;
@@ -65,6 +67,11 @@ public class SaveAsFileSketch implements TableSketch<Empty> {
         this.schema = schema;
     }
 
+    @Override
+    public ComputePool.TaskClass getTaskClass() {
+        return ComputePool.TaskClass.Background;
+    }
+
     @Override
     public Empty create(@Nullable ITable data) {
         Converters.checkNull(data);
@@ -98,6 +105,9 @@ public class SaveAsFileSketch implements TableSketch<Empty> {
                 case "csv":
                     writer = new CsvFileWriter(path);
                     break;
+                case "snapshot":
+                    writer = new SnapshotFileWriter(path);
+                    break;
                 default:
                     throw new RuntimeException("Unknown file kind: " + kind);
             }
@@ -121,6 +131,12 @@ public class SaveAsFileSketch implements TableSketch<Empty> {
         }
     }
 
+    @Override
+    public boolean isIncremental() {
+        // Saving has side effects, so it is never skipped.
+        return false;
+    }
+
     @Nullable
     @Override
     public Empty zero() {
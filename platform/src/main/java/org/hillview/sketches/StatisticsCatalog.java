@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hillview.sketches.results.BasicColStats;
+import org.hillview.sketches.results.DataRange;
+import org.hillview.sketches.results.HLogLog;
+import org.hillview.table.ColumnZoneMap;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.ITable;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Worker-side catalog of column statistics for each table.  Tables are immutable,
+ * so statistics computed once for a table column can be reused by all later
+ * queries over the same table.  The catalog holds basic column statistics
+ * (counts, range and moments) and distinct-count sketches.
+ * Data ranges are derived from the basic statistics, or, for tables that contain
+ * all rows of their columns, from the zone maps computed when the data was loaded.
+ * Callers always receive copies, since results may be mutated after they are computed.
+ */
+public class StatisticsCatalog {
+    public static final StatisticsCatalog instance = new StatisticsCatalog();
+
+    /**
+     * Number of moments stored for each column; requests for more moments
+     * are not served from the catalog.
+     */
+    static final int MOMENTS = 2;
+
+    /**
+     * For each table a map from a statistics key to the statistics.
+     * Tables are weak keys, compared by identity.
+     */
+    private final Cache<ITable, ConcurrentHashMap<String, Object>> tables =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private ConcurrentHashMap<String, Object> getEntries(ITable table) {
+        try {
+            return this.tables.get(table, ConcurrentHashMap::new);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private <T> T get(ITable table, String key, Supplier<T> compute) {
+        @SuppressWarnings("unchecked")
+        T result = (T)this.getEntries(table).computeIfAbsent(key, k -> compute.get());
+        return result;
+    }
+
+    private static String statsKey(String column) {
+        return "stats:" + column;
+    }
+
+    /**
+     * Basic statistics of a column of a table.
+     * @param momentCount  Number of moments to compute.
+     */
+    public BasicColStats getStats(ITable table, String column, int momentCount) {
+        if (momentCount > MOMENTS) {
+            BasicColStats result = new BasicColStats(momentCount, true);
+            result.scan(table.getLoadedColumn(column), table.getMembershipSet());
+            return result;
+        }
+        BasicColStats stats = this.get(table, statsKey(column), () -> {
+            BasicColStats result = new BasicColStats(MOMENTS, true);
+            result.scan(table.getLoadedColumn(column), table.getMembershipSet());
+            return result;
+        });
+        return stats.withMoments(momentCount);
+    }
+
+    /**
+     * Range of the values in a numeric column of a table.
+     */
+    public DataRange getRange(ITable table, String column) {
+        BasicColStats stats = (BasicColStats)this.getEntries(table).get(statsKey(column));
+        if (stats == null) {
+            DataRange range = fromZoneMap(table, table.getLoadedColumn(column));
+            if (range != null)
+                return range;
+            stats = this.getStats(table, column, 0);
+        }
+        DataRange result = new DataRange(stats.min, stats.max);
+        result.presentCount = stats.presentCount;
+        result.missingCount = stats.missingCount;
+        return result;
+    }
+
+    /**
+     * The zone map of a column describes the table if the table contains all rows of the column.
+     */
+    @Nullable
+    private static DataRange fromZoneMap(ITable table, IColumn column) {
+        ColumnZoneMap zm = ColumnZoneMap.get(column);
+        if (zm == null || zm.hasNaN || zm.kind.isString() || zm.kind == ContentsKind.Interval)
+            return null;
+        IMembershipSet members = table.getMembershipSet();
+        if (members.getSize() != column.sizeInRows())
+            return null;
+        DataRange result = zm.present == 0 ? new DataRange() : new DataRange(zm.min, zm.max);
+        result.presentCount = zm.present;
+        result.missingCount = zm.missing;
+        return result;
+    }
+
+    /**
+     * Distinct-count sketch of a column of a table.
+     */
+    public HLogLog getDistinctCount(ITable table, String column, int logSpaceSize, long seed) {
+        HLogLog hll = this.get(table, "hll:" + column + ":" + logSpaceSize + ":" + seed, () -> {
+            HLogLog result = new HLogLog(logSpaceSize, seed);
+            result.createHLL(table.getLoadedColumn(column), table.getMembershipSet());
+            return result;
+        });
+        return new HLogLog(logSpaceSize, seed).union(hll);
+    }
+
+    /**
+     * Number of tables that have statistics.
+     */
+    public long size() {
+        return this.tables.size();
+    }
+}
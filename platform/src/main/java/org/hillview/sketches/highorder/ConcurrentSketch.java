@@ -19,9 +19,12 @@ package org.hillview.sketches.highorder;
 
 import org.hillview.dataset.api.ISketch;
 import org.hillview.dataset.api.ISketchResult;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.Pair;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
 
 public class ConcurrentSketch<T, R1 extends ISketchResult, R2 extends ISketchResult>
                                     implements ISketch<T, Pair<R1, R2>> {
@@ -35,6 +38,11 @@ public class ConcurrentSketch<T, R1 extends ISketchResult, R2 extends ISketchRes
         this.second = second;
     }
 
+    @Override
+    public boolean isIncremental() {
+        return this.first.isIncremental() && this.second.isIncremental();
+    }
+
     @Nullable
     @Override
     public Pair<R1, R2> zero() {
@@ -51,8 +59,16 @@ public class ConcurrentSketch<T, R1 extends ISketchResult, R2 extends ISketchRes
         return new Pair<R1, R2>(first, second);
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public Pair<R1, R2> create(@Nullable T data) {
+        if (data instanceof ITable) {
+            // If possible scan the table only once.
+            List<ISketchResult> fused = FusedSketches.create(
+                    Arrays.asList(this.first, this.second), (ITable)data);
+            if (fused != null)
+                return new Pair<R1, R2>((R1)fused.get(0), (R2)fused.get(1));
+        }
         R1 first = this.first.create(data);
         R2 second = this.second.create(data);
         return new Pair<R1, R2>(first, second);
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches.highorder;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.dataset.api.IScalable;
+import org.hillview.dataset.api.IncrementalTableSketch;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ISketchWorkspace;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs several incremental sketches over a table in a single pass:
+ * each row is visited once and used to increment all the sketches.
+ * Sketches that are sampled can be fused only if they all use the same
+ * sampling rate and seed, since they must visit the same rows.
+ */
+public class FusedSketches {
+    /**
+     * One of the sketches that is fused.
+     */
+    @SuppressWarnings("rawtypes")
+    static class Part {
+        final IncrementalTableSketch sketch;
+        final double samplingRate;
+        final long seed;
+        @Nullable
+        ISketchWorkspace workspace;
+        @Nullable
+        ISketchResult result;
+
+        Part(IncrementalTableSketch sketch, double samplingRate, long seed) {
+            this.sketch = sketch;
+            this.samplingRate = samplingRate;
+            this.seed = seed;
+        }
+
+        boolean sampled() {
+            return this.samplingRate < 1;
+        }
+
+        boolean sameRows(Part other) {
+            if (!this.sampled() && !other.sampled())
+                return true;
+            return this.samplingRate == other.samplingRate && this.seed == other.seed;
+        }
+
+        /**
+         * An iterator over the rows this sketch visits.
+         */
+        IRowIterator getIterator(ITable data) {
+            if (this.sampled())
+                return data.getMembershipSet().getIteratorOverSample(this.samplingRate, this.seed, false);
+            return data.getRowIterator();
+        }
+
+        void initialize(ITable data) {
+            this.result = Converters.checkNull((ISketchResult)this.sketch.zero());
+            this.workspace = this.sketch.initialize(data);
+        }
+
+        @SuppressWarnings("unchecked")
+        void increment(int row) {
+            this.sketch.increment(this.workspace, this.result, row);
+        }
+
+        ISketchResult getResult() {
+            ISketchResult result = Converters.checkNull(this.result);
+            if (this.sampled())
+                result = (ISketchResult)((IScalable)result).rescale(this.samplingRate);
+            return result;
+        }
+    }
+
+    @Nullable
+    static Part getPart(ISketch<?, ?> sketch) {
+        if (sketch instanceof IncrementalTableSketch)
+            return new Part((IncrementalTableSketch<?, ?>)sketch, 1.0, 0);
+        if (sketch instanceof SamplingTableSketch) {
+            SamplingTableSketch<?, ?, ?> sts = (SamplingTableSketch<?, ?, ?>)sketch;
+            return new Part(sts.actualSketch, sts.samplingRate, sts.seed);
+        }
+        return null;
+    }
+
+    /**
+     * Check whether a list of sketches can be run in a single pass.
+     */
+    @Nullable
+    private static List<Part> getParts(List<? extends ISketch<?, ?>> sketches) {
+        if (sketches.size() < 2)
+            return null;
+        List<Part> parts = new ArrayList<Part>(sketches.size());
+        for (ISketch<?, ?> s : sketches) {
+            Part part = getPart(s);
+            if (part == null)
+                return null;
+            if (!parts.isEmpty() && !parts.get(0).sameRows(part))
+                return null;
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * Run all sketches over the data in a single pass.
+     * @param sketches  Sketches to run.
+     * @param data      Data to run sketches over.
+     * @return          A list with the results of all sketches, in order, or
+     *                  null if the sketches cannot be fused.
+     */
+    @Nullable
+    public static List<ISketchResult> create(
+            List<? extends ISketch<?, ?>> sketches, @Nullable ITable data) {
+        List<Part> parts = getParts(sketches);
+        if (parts == null)
+            return null;
+        Converters.checkNull(data);
+        for (Part p : parts)
+            p.initialize(data);
+        IRowIterator it = parts.get(0).getIterator(data);
+        Part[] array = parts.toArray(new Part[0]);
+        int row = it.getNextRow();
+        while (row >= 0) {
+            for (Part p : array)
+                p.increment(row);
+            row = it.getNextRow();
+        }
+        List<ISketchResult> results = new ArrayList<ISketchResult>(parts.size());
+        for (Part p : parts)
+            results.add(p.getResult());
+        return results;
+    }
+}
@@ -82,6 +82,11 @@ public class GroupBySketch<
         }
     }
 
+    @Override
+    public boolean canShareScan() {
+        return true;
+    }
+
     @Override
     public GroupByWorkspace<SW> initialize(ITable data) {
         IColumn column = Converters.checkNull(data).getLoadedColumn(this.buckets.getColumn());
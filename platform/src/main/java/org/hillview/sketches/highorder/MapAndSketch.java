@@ -34,6 +34,11 @@ public class MapAndSketch<T, S, R extends ISketchResult> implements ISketch<T, R
         this.sketch = sketch;
     }
 
+    @Override
+    public boolean isIncremental() {
+        return this.sketch.isIncremental();
+    }
+
     @Nullable
     @Override
     public R zero() {
@@ -20,11 +20,13 @@ package org.hillview.sketches.highorder;
 import org.hillview.dataset.api.IMonoid;
 import org.hillview.dataset.api.ISketch;
 import org.hillview.dataset.api.ISketchResult;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 import org.hillview.utils.JsonList;
 import org.hillview.utils.Linq;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Runs multiple sketches of the same type.
@@ -45,6 +47,11 @@ public class MultiSketch<T, R extends ISketchResult>
         this.sketches = new JsonList<ISketch<T, R>>(sketches);
     }
 
+    @Override
+    public boolean isIncremental() {
+        return this.sketches.stream().allMatch(ISketch::isIncremental);
+    }
+
     @Nullable
     @Override
     public JsonList<R> zero() {
@@ -60,8 +67,15 @@ public class MultiSketch<T, R extends ISketchResult>
                 t -> Converters.checkNull(t.third).add(t.first, t.second));
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public JsonList<R> create(@Nullable T data) {
+        if (data instanceof ITable) {
+            // If possible scan the table only once.
+            List<ISketchResult> fused = FusedSketches.create(this.sketches, (ITable)data);
+            if (fused != null)
+                return Linq.map(fused, r -> (R)r);
+        }
         return Linq.map(this.sketches, s -> s.create(data));
     }
 }
@@ -50,6 +50,11 @@ public class QuantizedTableSketch<
         this.childSketch.increment(workspace, result, rowNumber);
     }
 
+    @Override
+    public boolean canShareScan() {
+        return true;
+    }
+
     @Override
     public SW initialize(ITable data) {
         ITable qt = new QuantizedTable(data, this.quantizationSchema);
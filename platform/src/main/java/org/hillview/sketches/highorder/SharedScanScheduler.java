@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches.highorder;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.dataset.api.OperationTrace;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.ComputePool;
+import org.hillview.utils.Converters;
+import org.hillview.utils.ExecutorUtils;
+import org.hillview.utils.HillviewLogger;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares table scans between sketches over the same table, e.g., sketches issued at
+ * the same time by several users or by several charts.  The first sketch that arrives
+ * submits a scan task to the compute pool.  Sketches over the same rows that arrive
+ * while the scan is queued or running join it: a sketch that joins a running scan
+ * starts at the current position, and when the scan reaches the end of the table it
+ * wraps around to the rows that sketch has missed.  All sketches are computed by a
+ * single scan on one thread; each sketch receives its result through its own observable.
+ * Unsubscribing from the observable removes the sketch from the scan; a scan that has
+ * no sketches left stops.
+ */
+public class SharedScanScheduler {
+    public static final SharedScanScheduler instance = new SharedScanScheduler(null);
+
+    /**
+     * Number of rows processed between two checks for new or cancelled sketches.
+     */
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Pool that runs the scans; if null the global compute pool is used.
+     */
+    @Nullable
+    private final ComputePool pool;
+
+    /**
+     * Can be used to disable scan sharing.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Scans that accept new sketches.  Protected by the lock of this object.
+     */
+    private final HashMap<ScanKey, Scan> open = new HashMap<ScanKey, Scan>();
+
+    /**
+     * Number of sketches that joined a scan started by another sketch.
+     */
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    public SharedScanScheduler(@Nullable ComputePool pool) {
+        this.pool = pool;
+    }
+
+    public long getSharedCount() {
+        return this.sharedCount.get();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private ComputePool getPool() {
+        return this.pool != null ? this.pool : ExecutorUtils.getComputeExecutorService();
+    }
+
+    /**
+     * Scans are shared by sketches that visit the same rows of the same table
+     * and that are scheduled in the same class, whatever their session.
+     */
+    private static class ScanKey {
+        final ITable table;
+        final double samplingRate;
+        final long seed;
+        final ComputePool.TaskClass taskClass;
+
+        ScanKey(ITable table, FusedSketches.Part part, ComputePool.TaskClass taskClass) {
+            this.table = table;
+            this.samplingRate = part.sampled() ? part.samplingRate : 1.0;
+            this.seed = part.sampled() ? part.seed : 0;
+            this.taskClass = taskClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ScanKey scanKey = (ScanKey) o;
+            return this.table == scanKey.table &&
+                    Double.compare(scanKey.samplingRate, this.samplingRate) == 0 &&
+                    this.seed == scanKey.seed &&
+                    this.taskClass == scanKey.taskClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(this.table), this.samplingRate,
+                    this.seed, this.taskClass);
+        }
+    }
+
+    /**
+     * A sketch that takes part in a shared scan.
+     */
+    private static class Participant {
+        final FusedSketches.Part part;
+        final Subscriber<? super ISketchResult> subscriber;
+        @Nullable
+        final OperationTrace trace;
+        /**
+         * Time in nanoseconds when the sketch was queued.
+         */
+        final long submitted;
+        /**
+         * Time in nanoseconds when the scan started computing the sketch.
+         */
+        long started;
+        /**
+         * Position in the scan (number of rows visited before) of the first row of this sketch.
+         * The sketch is complete when the scan comes back to this position.
+         */
+        long start;
+        /**
+         * Set when the subscriber unsubscribes.
+         */
+        volatile boolean cancelled;
+        /**
+         * Scan the participant belongs to.
+         */
+        @Nullable
+        Scan scan;
+
+        Participant(FusedSketches.Part part, Subscriber<? super ISketchResult> subscriber,
+                    @Nullable OperationTrace trace) {
+            this.part = part;
+            this.subscriber = subscriber;
+            this.trace = trace;
+            this.submitted = System.nanoTime();
+        }
+
+        void complete(@Nullable ISketchResult result, @Nullable Throwable error) {
+            if (this.trace != null) {
+                this.trace.add(OperationTrace.Phase.Queue, this.started - this.submitted);
+                this.trace.add(OperationTrace.Phase.Compute, System.nanoTime() - this.started);
+                this.trace.addLeaf();
+            }
+            if (this.cancelled)
+                return;
+            if (error != null) {
+                this.subscriber.onError(error);
+            } else {
+                this.subscriber.onNext(result);
+                this.subscriber.onCompleted();
+            }
+        }
+
+        void complete() {
+            ISketchResult result;
+            try {
+                result = this.part.getResult();
+            } catch (Throwable t) {
+                this.complete(null, t);
+                return;
+            }
+            this.complete(result, null);
+        }
+    }
+
+    private class Scan {
+        final ScanKey key;
+        /**
+         * Sketches that have joined this scan.  Protected by the SharedScanScheduler lock.
+         */
+        final List<Participant> participants = new ArrayList<Participant>();
+        /**
+         * Number of participants that the scan has started computing.
+         * Only accessed by the thread running the scan.
+         */
+        int admitted;
+        /**
+         * Sketches being computed.  Only accessed by the thread running the scan.
+         */
+        final List<Participant> active = new ArrayList<Participant>();
+        /**
+         * Parts of the active sketches; null when they have to be recomputed.
+         */
+        @Nullable
+        FusedSketches.Part[] parts;
+        /**
+         * True while new sketches can join.  Protected by the SharedScanScheduler lock.
+         */
+        boolean accepting = true;
+        @Nullable
+        ComputePool.Task task;
+
+        Scan(ScanKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Stop accepting sketches; this is done when the scan reaches the end of
+         * the table, since later sketches would have to scan the whole table anyway.
+         * Must be called with the SharedScanScheduler lock held.
+         */
+        void close() {
+            this.accepting = false;
+            SharedScanScheduler.this.open.remove(this.key, this);
+        }
+
+        /**
+         * Start computing the sketches that have joined since the last call.
+         * @param position  Position of the next row visited by the scan.
+         * @return          False if there are no sketches left to compute.
+         */
+        boolean admit(long position) {
+            List<Participant> joined;
+            synchronized (SharedScanScheduler.this) {
+                joined = new ArrayList<Participant>(
+                        this.participants.subList(this.admitted, this.participants.size()));
+                this.admitted = this.participants.size();
+                if (joined.isEmpty() && this.active.stream().allMatch(p -> p.cancelled)) {
+                    this.close();
+                    return false;
+                }
+            }
+            for (Participant p : joined) {
+                if (p.cancelled)
+                    continue;
+                p.started = System.nanoTime();
+                p.start = position;
+                try {
+                    p.part.initialize(this.key.table);
+                } catch (Throwable t) {
+                    p.complete(null, t);
+                    continue;
+                }
+                this.active.add(p);
+                this.parts = null;
+            }
+            if (this.active.removeIf(p -> p.cancelled))
+                this.parts = null;
+            return true;
+        }
+
+        FusedSketches.Part[] getParts() {
+            if (this.parts == null) {
+                this.parts = new FusedSketches.Part[this.active.size()];
+                for (int i = 0; i < this.parts.length; i++)
+                    this.parts[i] = this.active.get(i).part;
+            }
+            return this.parts;
+        }
+
+        /**
+         * Compute all participants with one scan over the table.
+         */
+        void run() {
+            try {
+                // First pass: sketches join at the current position.
+                IRowIterator it = this.getIterator();
+                long position = 0;
+                boolean exhausted = false;
+                while (!exhausted) {
+                    if (!this.admit(position))
+                        return;
+                    FusedSketches.Part[] parts = this.getParts();
+                    for (int processed = 0; processed < CHUNK_SIZE; processed++) {
+                        int row = it.getNextRow();
+                        if (row < 0) {
+                            exhausted = true;
+                            break;
+                        }
+                        for (FusedSketches.Part part : parts)
+                            part.increment(row);
+                        position++;
+                    }
+                }
+                synchronized (SharedScanScheduler.this) {
+                    this.close();
+                }
+                // Sketches that joined after the last chunk have not seen any rows.
+                this.admit(position);
+                List<Participant> late = new ArrayList<Participant>();
+                for (Participant p : this.active) {
+                    if (p.start == 0)
+                        p.complete();
+                    else
+                        late.add(p);
+                }
+
+                // Second pass: each late sketch visits the rows before its start.
+                late.sort(Comparator.comparingLong(p -> p.start));
+                this.active.clear();
+                this.active.addAll(late);
+                this.parts = null;
+                it = this.getIterator();
+                position = 0;
+                while (!this.active.isEmpty()) {
+                    if (this.active.removeIf(p -> p.cancelled)) {
+                        this.parts = null;
+                        continue;
+                    }
+                    Participant first = this.active.get(0);
+                    if (position == first.start) {
+                        this.active.remove(0);
+                        this.parts = null;
+                        first.complete();
+                        continue;
+                    }
+                    FusedSketches.Part[] parts = this.getParts();
+                    long end = Math.min(first.start, position + CHUNK_SIZE);
+                    for (; position < end; position++) {
+                        int row = it.getNextRow();
+                        for (FusedSketches.Part part : parts)
+                            part.increment(row);
+                    }
+                }
+            } catch (Throwable t) {
+                // We cannot tell which sketch failed, so all of them fail.
+                List<Participant> failed = new ArrayList<Participant>(this.active);
+                synchronized (SharedScanScheduler.this) {
+                    this.close();
+                    for (Participant p : this.participants.subList(this.admitted, this.participants.size())) {
+                        p.started = System.nanoTime();
+                        failed.add(p);
+                    }
+                    this.admitted = this.participants.size();
+                }
+                for (Participant p : failed)
+                    p.complete(null, t);
+            }
+        }
+
+        IRowIterator getIterator() {
+            return this.key.samplingRate < 1 ?
+                    this.key.table.getMembershipSet().getIteratorOverSample(
+                            this.key.samplingRate, this.key.seed, false) :
+                    this.key.table.getRowIterator();
+        }
+    }
+
+    /**
+     * Add a participant to a scan that accepts sketches, or submit a new scan.
+     * A new scan is charged to the session of the sketch that starts it.
+     */
+    private synchronized void enqueue(ScanKey key, Participant participant,
+                                      ISketch<?, ?> sketch, @Nullable String session) {
+        Scan scan = this.open.get(key);
+        if (scan == null) {
+            scan = new Scan(key);
+            this.open.put(key, scan);
+            scan.task = this.getPool().submit(key.taskClass, session, scan::run);
+        } else {
+            this.sharedCount.incrementAndGet();
+            HillviewLogger.instance.info("Sharing scan", "{0}", HillviewLogger.lazy(sketch::asString));
+        }
+        scan.participants.add(participant);
+        participant.scan = scan;
+    }
+
+    /**
+     * Remove a participant whose subscriber has unsubscribed.  A running scan drops
+     * the participant at the next chunk.  If it was the last participant of a scan
+     * that has not started the scan is cancelled.
+     */
+    private synchronized void cancel(Participant participant) {
+        participant.cancelled = true;
+        Scan scan = participant.scan;
+        if (scan == null || !scan.accepting || scan.admitted > 0)
+            return;
+        if (scan.participants.stream().allMatch(p -> p.cancelled)) {
+            scan.close();
+            if (scan.task != null)
+                scan.task.cancel();
+        }
+    }
+
+    /**
+     * Schedule a sketch over a table on the compute pool, sharing the scan with
+     * other sketches over the same data that are queued or running.
+     * @param sketch  Sketch to compute.
+     * @param table   Data to compute over.
+     * @param trace   Span of the operation, if any.
+     * @return        An observable that produces the result of the sketch, or null if the
+     *                sketch cannot be computed with a shared scan.
+     */
+    @Nullable
+    public <R extends ISketchResult> Observable<R> schedule(
+            ISketch<?, R> sketch, ITable table, @Nullable OperationTrace trace) {
+        if (!this.enabled)
+            return null;
+        FusedSketches.Part part = FusedSketches.getPart(sketch);
+        if (part == null || !part.sketch.canShareScan())
+            return null;
+        ScanKey key = new ScanKey(table, part, sketch.getTaskClass());
+        Observable<ISketchResult> result = Observable.create(subscriber -> {
+            // Each subscription computes the sketch in its own part.
+            FusedSketches.Part own = Converters.checkNull(FusedSketches.getPart(sketch));
+            Participant participant = new Participant(own, subscriber, trace);
+            this.enqueue(key, participant, sketch, trace == null ? null : trace.session);
+            subscriber.add(Subscriptions.create(() -> this.cancel(participant)));
+        });
+        // Cancelling does not block, so it runs on the thread that unsubscribes.
+        @SuppressWarnings("unchecked")
+        Observable<R> typed = (Observable<R>)result;
+        return typed;
+    }
+}
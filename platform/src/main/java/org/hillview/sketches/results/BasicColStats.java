@@ -136,6 +136,23 @@ public class BasicColStats extends DataRange {
         }
     }
 
+    /**
+     * @return A copy of these statistics that keeps only the first momentCount moments.
+     */
+    public BasicColStats withMoments(int momentCount) {
+        if (momentCount > this.momentCount)
+            throw new IllegalArgumentException("Only " + this.momentCount + " moments are available");
+        BasicColStats result = new BasicColStats(momentCount, this.computeStringMax);
+        result.presentCount = this.presentCount;
+        result.missingCount = this.missingCount;
+        result.min = this.min;
+        result.max = this.max;
+        result.minString = this.minString;
+        result.maxString = this.maxString;
+        System.arraycopy(this.moments, 0, result.moments, 0, momentCount);
+        return result;
+    }
+
     /**
      * @param otherStat The other BasicColStats structure to be merged with this.
      * @return The merge of the two.
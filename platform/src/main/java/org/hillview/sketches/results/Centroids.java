@@ -143,4 +143,12 @@ public class Centroids<T> implements ISketchResult {
         });
         return centroids;
     }
+
+    @Override
+    public long estimateSize() {
+        long size = 64;
+        for (double[] s : this.sums.values())
+            size += 32 + (long)s.length * (Double.BYTES + Long.BYTES);
+        return size;
+    }
 }
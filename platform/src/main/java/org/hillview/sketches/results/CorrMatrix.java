@@ -145,4 +145,11 @@ public class CorrMatrix implements ICorrelation, IJsonSketchResult {
         DoubleMatrix eigenVectors = LinAlg.eigenVectors(new DoubleMatrix(this.getCorrelationMatrix()), nComponents);
         return new LinearProjectionMap(this.columnNames, eigenVectors, "PCA");
     }
+
+    @Override
+    public long estimateSize() {
+        long n = this.columnNames.length;
+        // rawMatrix, corrMatrix and the counts of entries per pair.
+        return 64 + n * n * 3 * Double.BYTES;
+    }
 }
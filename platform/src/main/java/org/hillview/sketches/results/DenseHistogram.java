@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches.results;
+
+import org.hillview.dataset.api.IScalable;
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.utils.Converters;
+import org.hillview.utils.JsonList;
+
+import java.util.Arrays;
+
+/**
+ * Counts of a multi-dimensional histogram, stored in a single array.
+ * Each dimension has one entry per bucket, plus a last entry for the rows
+ * where the value of the column is missing.  The cells are stored in row-major
+ * order: dimension 0 varies slowest.  Unlike nested Groups of Counts, this
+ * result is merged with a single array addition and serialized as a block
+ * of primitive values.
+ */
+public class DenseHistogram implements ISketchResult, IScalable<DenseHistogram> {
+    static final long serialVersionUID = 1;
+
+    /**
+     * Number of entries in each dimension: bucket count plus one for missing.
+     */
+    private final int[] sizes;
+    /**
+     * Distance in the counts array between consecutive entries of each dimension.
+     */
+    private final int[] strides;
+    private final long[] counts;
+
+    /**
+     * Create an empty histogram.
+     * @param bucketCounts  Number of buckets in each dimension, not counting missing values.
+     */
+    public DenseHistogram(int... bucketCounts) {
+        this.sizes = new int[bucketCounts.length];
+        this.strides = new int[bucketCounts.length];
+        long total = 1;
+        for (int d = bucketCounts.length - 1; d >= 0; d--) {
+            this.sizes[d] = bucketCounts[d] + 1;
+            this.strides[d] = Converters.toInt(total);
+            total *= this.sizes[d];
+        }
+        this.counts = new long[Converters.toInt(total)];
+    }
+
+    private DenseHistogram(DenseHistogram shape, long[] counts) {
+        this.sizes = shape.sizes;
+        this.strides = shape.strides;
+        this.counts = counts;
+    }
+
+    public int getDimensions() {
+        return this.sizes.length;
+    }
+
+    /**
+     * Number of buckets in a dimension, not counting the missing values.
+     */
+    public int getBucketCount(int dimension) {
+        return this.sizes[dimension] - 1;
+    }
+
+    /**
+     * Distance in the cell array between consecutive buckets of a dimension.
+     */
+    public int getStride(int dimension) {
+        return this.strides[dimension];
+    }
+
+    /**
+     * Add one to the cell at the specified offset; the offset is the sum of the
+     * bucket indexes multiplied by the strides of their dimensions.
+     */
+    public void increment(int offset) {
+        this.counts[offset]++;
+    }
+
+    /**
+     * The count of a cell.
+     * @param indexes  Bucket index in each dimension; the index equal to the
+     *                 bucket count designates the missing values.
+     */
+    public long get(int... indexes) {
+        if (indexes.length != this.sizes.length)
+            throw new RuntimeException("Expected " + this.sizes.length + " indexes, got " + indexes.length);
+        int offset = 0;
+        for (int d = 0; d < indexes.length; d++)
+            offset += indexes[d] * this.strides[d];
+        return this.counts[offset];
+    }
+
+    public DenseHistogram add(DenseHistogram other) {
+        if (!Arrays.equals(this.sizes, other.sizes))
+            throw new RuntimeException("Incompatible histogram shapes: " +
+                    Arrays.toString(this.sizes) + " and " + Arrays.toString(other.sizes));
+        long[] result = new long[this.counts.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = this.counts[i] + other.counts[i];
+        return new DenseHistogram(this, result);
+    }
+
+    @Override
+    public DenseHistogram rescale(double samplingRate) {
+        if (samplingRate >= 1.0)
+            return this;
+        long[] result = new long[this.counts.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = Converters.toLong(this.counts[i] / samplingRate);
+        return new DenseHistogram(this, result);
+    }
+
+    /**
+     * Convert the counts to nested groups, where dimension 0 is the outermost.
+     * The nesting depth depends on the data, so this uses raw types.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Groups toGroups(int dimension, int offset) {
+        int buckets = this.getBucketCount(dimension);
+        int stride = this.strides[dimension];
+        boolean last = dimension == this.sizes.length - 1;
+        JsonList perBucket = new JsonList(buckets);
+        for (int i = 0; i < buckets; i++) {
+            int cell = offset + i * stride;
+            perBucket.add(last ? new Count(this.counts[cell]) : this.toGroups(dimension + 1, cell));
+        }
+        int cell = offset + buckets * stride;
+        Object missing = last ? new Count(this.counts[cell]) : this.toGroups(dimension + 1, cell);
+        return new Groups(perBucket, (ISketchResult)missing);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <G> G toGroups(int dimensions) {
+        if (this.sizes.length != dimensions)
+            throw new RuntimeException("Histogram has " + this.sizes.length + " dimensions, not " + dimensions);
+        return (G)this.toGroups(0, 0);
+    }
+
+    public Groups<Count> toGroups1D() {
+        return this.toGroups(1);
+    }
+
+    public Groups<Groups<Count>> toGroups2D() {
+        return this.toGroups(2);
+    }
+
+    public Groups<Groups<Groups<Count>>> toGroups3D() {
+        return this.toGroups(3);
+    }
+
+    public Groups<Groups<Groups<Groups<Count>>>> toGroups4D() {
+        return this.toGroups(4);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DenseHistogram that = (DenseHistogram) o;
+        return Arrays.equals(this.sizes, that.sizes) && Arrays.equals(this.counts, that.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.sizes) + Arrays.hashCode(this.counts);
+    }
+
+    @Override
+    public String toString() {
+        return "DenseHistogram" + Arrays.toString(this.sizes);
+    }
+
+    @Override
+    public long estimateSize() {
+        return 64 + (long)this.counts.length * Long.BYTES;
+    }
+}
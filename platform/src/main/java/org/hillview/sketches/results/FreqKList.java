@@ -205,4 +205,12 @@ public class FreqKList implements ISketchResult {
                                    .append(System.getProperty("line.separator")));
         return builder.toString();
     }
+
+    @Override
+    public long estimateSize() {
+        long size = 64;
+        for (RowSnapshot row : this.hMap.keySet())
+            size += row.estimateSize() + 16;
+        return size + (long)this.pList.size() * 32;
+    }
 }
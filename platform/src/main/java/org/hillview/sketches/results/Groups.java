@@ -132,4 +132,9 @@ public class Groups<R extends ISketchResult & IScalable<R>>
     public R getBucket(int index) {
         return this.perBucket.get(index);
     }
+
+    @Override
+    public long estimateSize() {
+        return this.perBucket.estimateSize() + this.perMissing.estimateSize();
+    }
 }
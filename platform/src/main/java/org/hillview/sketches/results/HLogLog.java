@@ -138,4 +138,9 @@ public class HLogLog implements ISketchResult {
     public CountWithConfidence getCount() {
         return new CountWithConfidence(this.distinctItemCount, this.confidence);
     }
+
+    @Override
+    public long estimateSize() {
+        return 64 + this.registers.length;
+    }
 }
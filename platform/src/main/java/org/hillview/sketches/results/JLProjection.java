@@ -149,4 +149,9 @@ public class JLProjection implements ICorrelation, ISketchResult {
         int sIndex = Utilities.indexOf(this.colNames, s);
         return this.getCorrelationMatrix()[sIndex];
     }
+
+    @Override
+    public long estimateSize() {
+        return 64 + (long)this.hMap.size() * (this.lowDim * Double.BYTES + 32);
+    }
 }
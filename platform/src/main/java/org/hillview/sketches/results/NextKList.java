@@ -23,6 +23,7 @@ import com.google.gson.JsonObject;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntLists;
 import org.hillview.dataset.api.IJsonSketchResult;
+import org.hillview.dataset.api.ISketchResult;
 import org.hillview.table.AggregateDescription;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.Schema;
@@ -198,4 +199,10 @@ public class NextKList implements IJsonSketchResult {
         }
         return result;
     }
+
+    @Override
+    public long estimateSize() {
+        return 64 + this.rows.estimateSize() + ISketchResult.sizeOf(this.aggregates) +
+                (long)this.count.size() * Integer.BYTES;
+    }
 }
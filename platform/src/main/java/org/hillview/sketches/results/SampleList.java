@@ -63,4 +63,9 @@ public class SampleList implements ISketchResult {
             return this.table.compress(new ArrayRowOrder(order));
         }
     }
+
+    @Override
+    public long estimateSize() {
+        return 64 + this.table.estimateSize();
+    }
 }
@@ -198,4 +198,9 @@ public class SampleSet implements IJsonSketchResult, IScalable<SampleSet> {
     public void addMissing() {
         this.missing++;
     }
+
+    @Override
+    public long estimateSize() {
+        return 64 + (long)this.samples.length * Double.BYTES;
+    }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.storage;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.RemoteDataSet;
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.api.Empty;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.IMap;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.dataset.monoids.PRDataSetMonoid;
+import org.hillview.dataset.monoids.PartialResultMonoid;
+import org.hillview.management.SaveCheckpoint;
+import org.hillview.maps.LoadFilesMap;
+import org.hillview.sketches.CheckpointSketch;
+import org.hillview.table.FileSizeInfo;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HostAndPort;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Describes how the partitions of a table saved in a checkpoint are arranged
+ * in IDataSets.  Each partition is saved in a file named after its position in
+ * the tree of IDataSets, and the table is reloaded with the same tree, so that
+ * the reloaded table can be zipped with the tables derived from the original one.
+ * On a server only the layouts produced by loading files can be rebuilt:
+ * a LocalDataSet, or a ParallelDataSet of LocalDataSets.
+ */
+public class CheckpointLayout implements Serializable {
+    static final long serialVersionUID = 1;
+
+    /**
+     * Position of the root of the table.
+     */
+    private static final String root = "partition";
+
+    /**
+     * Layouts of the children of a ParallelDataSet; null for other datasets.
+     */
+    @Nullable
+    private final List<CheckpointLayout> children;
+    /**
+     * For a RemoteDataSet the server holding the data; null for other datasets.
+     */
+    @Nullable
+    private final String server;
+    /**
+     * For a RemoteDataSet the layout of the data on the server.
+     */
+    @Nullable
+    private final CheckpointLayout remote;
+
+    private CheckpointLayout(@Nullable List<CheckpointLayout> children,
+                             @Nullable String server, @Nullable CheckpointLayout remote) {
+        this.children = children;
+        this.server = server;
+        this.remote = remote;
+    }
+
+    /**
+     * Layout of a LocalDataSet.
+     */
+    public static CheckpointLayout local() {
+        return new CheckpointLayout(null, null, null);
+    }
+
+    /**
+     * Number of partitions in the checkpoint; each one is stored in a file.
+     */
+    public int partitions() {
+        if (this.remote != null)
+            return this.remote.partitions();
+        if (this.children == null)
+            return 1;
+        int result = 0;
+        for (CheckpointLayout c : this.children)
+            result += c.partitions();
+        return result;
+    }
+
+    private static String child(String position, int index) {
+        return position + "-" + index;
+    }
+
+    /**
+     * Saves each partition of a table in a file in the specified folder, on the
+     * machine that holds it.
+     * @param data    Table to save.
+     * @param folder  Folder where the files are written.
+     * @return        An observable producing the layout of the table once it is saved.
+     */
+    public static Observable<CheckpointLayout> save(IDataSet<ITable> data, String folder) {
+        return save(data, folder, root);
+    }
+
+    /**
+     * Saves a part of a table.
+     * @param position  Position of the data in the tree of datasets.
+     */
+    public static Observable<CheckpointLayout> save(
+            IDataSet<ITable> data, String folder, String position) {
+        if (data instanceof ParallelDataSet) {
+            List<IDataSet<ITable>> children = ((ParallelDataSet<ITable>)data).getChildren();
+            List<Observable<CheckpointLayout>> saved = new ArrayList<Observable<CheckpointLayout>>();
+            for (int i = 0; i < children.size(); i++)
+                saved.add(save(children.get(i), folder, child(position, i)));
+            // concatEager saves the children in parallel and keeps their order.
+            return Observable.concatEager(saved)
+                    .toList()
+                    .map(l -> new CheckpointLayout(l, null, null));
+        } else if (data instanceof LocalDataSet) {
+            CheckpointSketch sketch = new CheckpointSketch(folder, position);
+            PartialResultMonoid<FileSizeInfo> monoid = new PartialResultMonoid<FileSizeInfo>(sketch);
+            return data.sketch(sketch)
+                    .reduce(monoid::add)
+                    .map(p -> local());
+        } else if (data instanceof RemoteDataSet) {
+            String server = ((RemoteDataSet<ITable>)data).getServerEndpoint().toString();
+            return data.manage(new SaveCheckpoint(folder, position))
+                    .toList()
+                    .map(l -> {
+                        CheckpointLayout result = null;
+                        for (PartialResult<ControlMessage.StatusList> p : l) {
+                            for (ControlMessage.Status s : Converters.checkNull(p.deltaValue)) {
+                                if (s.isError())
+                                    throw new RuntimeException(s.result, s.exception);
+                                if (s instanceof SaveCheckpoint.Saved)
+                                    result = ((SaveCheckpoint.Saved)s).layout;
+                            }
+                        }
+                        if (result == null)
+                            throw new RuntimeException("No checkpoint saved on " + server);
+                        return new CheckpointLayout(null, server, result);
+                    });
+        }
+        throw new RuntimeException("Cannot checkpoint " + data);
+    }
+
+    /**
+     * Reloads a table saved by save.
+     * @param folder  Folder holding the files.
+     * @return        An observable producing the table, which has the same layout as
+     *                the saved one.  It fails if some of the files are missing.
+     */
+    public Observable<IDataSet<ITable>> load(String folder) {
+        return this.load(folder, root);
+    }
+
+    private Observable<IDataSet<ITable>> load(String folder, String position) {
+        if (this.server != null) {
+            IDataSet<Empty> source = new RemoteDataSet<Empty>(HostAndPort.fromString(this.server));
+            return Converters.checkNull(this.remote).loadFrom(source, folder, position);
+        }
+        if (this.children == null)
+            return this.loadFrom(new LocalDataSet<Empty>(Empty.getInstance()), folder, position);
+        List<Observable<IDataSet<ITable>>> loaded = new ArrayList<Observable<IDataSet<ITable>>>();
+        for (int i = 0; i < this.children.size(); i++)
+            loaded.add(this.children.get(i).load(folder, child(position, i)));
+        return Observable.concatEager(loaded)
+                .toList()
+                .map(l -> (IDataSet<ITable>)new ParallelDataSet<ITable>(l));
+    }
+
+    /**
+     * Loads the files of a LocalDataSet or of a ParallelDataSet of LocalDataSets,
+     * starting from an empty dataset on the machine holding them.
+     */
+    private Observable<IDataSet<ITable>> loadFrom(IDataSet<Empty> source, String folder, String position) {
+        Observable<PartialResult<IDataSet<IFileReference>>> files;
+        if (this.children == null) {
+            files = source.map(new FindPartition(folder, position));
+        } else {
+            List<String> partitions = new ArrayList<String>();
+            for (int i = 0; i < this.children.size(); i++) {
+                if (this.children.get(i).children != null)
+                    throw new RuntimeException("Cannot reload nested partitions");
+                partitions.add(child(position, i));
+            }
+            files = source.flatMap(new FindPartitions(folder, partitions));
+        }
+        PRDataSetMonoid<IFileReference> found = new PRDataSetMonoid<IFileReference>();
+        PRDataSetMonoid<ITable> tables = new PRDataSetMonoid<ITable>();
+        return files.reduce(found::add)
+                .concatMap(f -> Converters.checkNull(f.deltaValue).map(new LoadFilesMap()))
+                .reduce(tables::add)
+                .map(p -> Converters.checkNull(p.deltaValue));
+    }
+
+    private static IFileReference reference(String folder, String partition, String cookie) {
+        FileSetDescription desc = new FileSetDescription();
+        desc.fileKind = "snapshot";
+        desc.cookie = cookie;
+        String path = CheckpointSketch.path(folder, partition);
+        desc.fileNamePattern = path;
+        return desc.createFileReference(path);
+    }
+
+    /**
+     * Finds the file holding a partition.
+     */
+    static class FindPartition implements IMap<Empty, IFileReference> {
+        static final long serialVersionUID = 1;
+        private final String folder;
+        private final String partition;
+        private final String cookie;
+
+        FindPartition(String folder, String partition) {
+            this.folder = folder;
+            this.partition = partition;
+            this.cookie = UUID.randomUUID().toString();
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return false;
+        }
+
+        @Override
+        public IFileReference apply(@Nullable Empty unused) {
+            return reference(this.folder, this.partition, this.cookie);
+        }
+    }
+
+    /**
+     * Finds the files holding a list of partitions, in order.
+     */
+    static class FindPartitions implements IMap<Empty, List<IFileReference>> {
+        static final long serialVersionUID = 1;
+        private final String folder;
+        private final ArrayList<String> partitions;
+        private final String cookie;
+
+        FindPartitions(String folder, List<String> partitions) {
+            this.folder = folder;
+            this.partitions = new ArrayList<String>(partitions);
+            this.cookie = UUID.randomUUID().toString();
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return false;
+        }
+
+        @Override
+        public List<IFileReference> apply(@Nullable Empty unused) {
+            List<IFileReference> result = new ArrayList<IFileReference>();
+            for (String p : this.partitions)
+                result.add(reference(this.folder, p, this.cookie));
+            return result;
+        }
+    }
+}
@@ -65,6 +65,7 @@ public class CsvFileLoader extends TextFileLoader {
         this.schema = schema;
         this.allowFewerColumns = configuration.allowFewerColumns;
         this.guessSchema = this.schema.isNull();
+        this.prefixFirstLine = configuration.hasHeaderRow;
     }
 
     @Nullable
@@ -17,6 +17,7 @@
 
 package org.hillview.storage;
 
+import org.hillview.maps.FindFilesMap;
 import org.hillview.table.LazySchema;
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.Schema;
@@ -27,6 +28,7 @@ import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 
@@ -109,15 +111,77 @@ public class FileSetDescription implements IJson {
         return this.logFormat;
     }
 
+    /**
+     * True if files of this kind consist of lines that may be appended
+     * while the file is in use, such as logs.  Such files can be loaded
+     * incrementally.
+     */
+    public boolean isAppendable() {
+        switch (this.fileKind) {
+            case "csv":
+            case "hillviewlog":
+            case "genericlog":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * A reference to a file.  Appendable uncompressed files are read only up to the
+     * end of their last complete line, so a line that is still being written and
+     * data appended later can be loaded separately.
+     */
     public IFileReference createFileReference(String pathname) {
-        return new FileReference(pathname);
+        long end = -1;
+        if (this.isAppendable() && Utilities.isCompressed(pathname) == null) {
+            try {
+                end = FindFilesMap.lastLineEnd(pathname, 0);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return new FileReference(pathname, 0, end);
+    }
+
+    /**
+     * A reference to the lines of a file between two offsets.
+     * @param start  Offset of the first byte to read; should be at the start of a line.
+     * @param end    Offset after the last byte to read; should be at the end of a line.
+     */
+    public IFileReference createFileReference(String pathname, long start, long end) {
+        if (!this.isAppendable())
+            throw new RuntimeException("Cannot read parts of " + this.fileKind + " files");
+        return new FileReference(pathname, start, end);
     }
 
     class FileReference implements IFileReference {
         private final String pathname;
+        private final long startOffset;
+        /**
+         * -1 to read the whole file.
+         */
+        private final long endOffset;
 
-        FileReference(final String pathname) {
+        FileReference(final String pathname, long startOffset, long endOffset) {
             this.pathname = pathname;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        @Override
+        public String getPathname() {
+            return this.pathname;
+        }
+
+        @Override
+        public long getStartOffset() {
+            return this.startOffset;
+        }
+
+        @Override
+        public long getEndOffset() {
+            return this.endOffset;
         }
 
         @Override
@@ -151,6 +215,9 @@ public class FileSetDescription implements IJson {
                 case "parquet":
                     loader = new ParquetFileLoader(this.pathname, true);
                     break;
+                case "snapshot":
+                    loader = new SnapshotFileLoader(this.pathname, true);
+                    break;
                 case "json":
                     loader = new JsonFileLoader(this.pathname, FileSetDescription.this.getSchema());
                     break;
@@ -174,6 +241,8 @@ public class FileSetDescription implements IJson {
                     throw new RuntimeException(
                             "Unexpected file kind " + FileSetDescription.this.fileKind);
             }
+            if (this.startOffset > 0 || this.endOffset >= 0)
+                loader.setRange(this.startOffset, this.endOffset);
             ITable result = Converters.checkNull(loader.load());
             if (FileSetDescription.this.deleteAfterLoading) {
                 File file = new File(this.pathname);
@@ -187,10 +256,25 @@ public class FileSetDescription implements IJson {
         }
 
         public long getSizeInBytes() {
+            if (this.endOffset >= 0)
+                return this.endOffset - this.startOffset;
             File file = new File(this.pathname);
             if (file.exists())
-                return file.length();
+                return file.length() - this.startOffset;
             return 0;
         }
+
+        @Nullable
+        @Override
+        public String getCacheKey() {
+            if (FileSetDescription.this.deleteAfterLoading)
+                return null;
+            File file = new File(this.pathname);
+            if (!file.exists())
+                return null;
+            // The description includes the cookie, so a new cookie bypasses the cache.
+            return file.getAbsolutePath() + "," + this.startOffset + "," + this.endOffset + "," +
+                    file.length() + "," + file.lastModified() + "," + FileSetDescription.this.toJson();
+        }
     }
 }
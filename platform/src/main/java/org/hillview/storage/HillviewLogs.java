@@ -26,7 +26,6 @@ import org.hillview.table.api.ITable;
 
 import javax.annotation.Nullable;
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.regex.Pattern;
@@ -86,7 +85,7 @@ public class HillviewLogs extends LogFiles {
             assert this.parsingErrors != null;
             this.columns = schema.createAppendableColumns();
             try (BufferedReader reader = new BufferedReader(
-                    new FileReader(this.filename))) {
+                    this.getFileReader())) {
                 String[] fields = new String[this.columns.length];
                 while (true) {
                     String line = reader.readLine();
@@ -19,6 +19,8 @@ package org.hillview.storage;
 
 import org.hillview.table.api.ITable;
 
+import javax.annotation.Nullable;
+
 /**
  * This class holds a reference to a "file" from some external storage medium.
  * This class can read the data in the file into an ITable using the load method.
@@ -34,4 +36,37 @@ public interface IFileReference {
      * The size of the file in bytes.
      */
     long getSizeInBytes();
+
+    /**
+     * The name of the file, or null if the reference is not to a local file.
+     */
+    @Nullable
+    default String getPathname() {
+        return null;
+    }
+
+    /**
+     * The offset of the first byte read by load.
+     */
+    default long getStartOffset() {
+        return 0;
+    }
+
+    /**
+     * The offset after the last byte read by load; -1 if load reads the whole
+     * file, however long it is at the time of loading.
+     */
+    default long getEndOffset() {
+        return -1;
+    }
+
+    /**
+     * A key that identifies the table produced by load: it should change
+     * whenever the file contents or the loading options change.
+     * Used for caching loaded tables; null if the result cannot be cached.
+     */
+    @Nullable
+    default String getCacheKey() {
+        return null;
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+import org.hillview.table.columns.StringArrayColumn;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Worker-local cache of tables loaded from files.  Tables are indexed by a key
+ * computed by IFileReference.getCacheKey, which identifies both the file contents
+ * and the way the file is parsed.  There are two tiers: an in-memory tier with a
+ * bounded size, and an optional on-disk tier that stores snapshots of the parsed
+ * tables in the snapshot file format.  The disk tier is enabled by setting the system property
+ * hillview.snapshot.folder to the name of a folder.
+ */
+public class LoadedFileCache {
+    public static final LoadedFileCache instance = new LoadedFileCache(
+            System.getProperty("hillview.snapshot.folder"));
+
+    private static final String SNAPSHOT_SUFFIX = ".hvsnapshot";
+
+    private final Cache<String, ITable> tables;
+    /**
+     * Folder where snapshots are stored.  If null there is no disk tier.
+     */
+    @Nullable
+    private final Path snapshotFolder;
+
+    public LoadedFileCache(@Nullable String snapshotFolder) {
+        this.tables = CacheBuilder.newBuilder()
+                // We allow the cached tables to use at most 1/4 of the heap.
+                .maximumWeight(Runtime.getRuntime().maxMemory() / 4)
+                .weigher((Weigher<String, ITable>) (k, t) -> LoadedFileCache.estimateSize(t))
+                .build();
+        this.snapshotFolder = snapshotFolder == null ? null : Paths.get(snapshotFolder);
+    }
+
+    /**
+     * A rough estimate of the memory used by a table, in bytes.
+     */
+    private static int estimateSize(ITable table) {
+        long size = 0;
+        for (String c : table.getSchema().getColumnNames()) {
+            IColumn column = table.getColumn(c);
+            if (column.isLoaded())
+                size += estimateSize(column);
+        }
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Approximate memory used by a Java string with the specified contents.
+     */
+    private static long stringSize(@Nullable String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+
+    /**
+     * A rough estimate of the memory used by a loaded column, in bytes.
+     */
+    private static long estimateSize(IColumn column) {
+        int rows = column.sizeInRows();
+        switch (column.getKind()) {
+            case String:
+            case Json:
+                if (column instanceof StringArrayColumn) {
+                    // Codes and the dictionary, which is stored in two hash maps.
+                    long size = (long)rows * Integer.BYTES;
+                    for (String s : ((StringArrayColumn)column).getDictionary())
+                        size += stringSize(s) + 64;
+                    return size;
+                }
+                long size = (long)rows * 8;
+                for (int i = 0; i < rows; i++)
+                    size += stringSize(column.getString(i));
+                return size;
+            case Integer:
+                return (long)rows * Integer.BYTES + rows / 8;
+            case Interval:
+                return (long)rows * 2 * Double.BYTES + rows / 8;
+            default:
+                return (long)rows * Double.BYTES + rows / 8;
+        }
+    }
+
+    /**
+     * Load the table referenced by a file, using the cache if possible.
+     * @param file  File to load.
+     */
+    public ITable load(IFileReference file) {
+        String key = file.getCacheKey();
+        if (key == null)
+            return file.load();
+        try {
+            return this.tables.get(key, () -> this.loadMiss(key, file));
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private ITable loadMiss(String key, IFileReference file) {
+        ITable result = this.readSnapshot(key, file);
+        if (result != null)
+            return result;
+        result = file.load();
+        this.writeSnapshot(key, file, result);
+        return result;
+    }
+
+    /**
+     * Remove all tables from the memory tier.  Snapshots on disk are kept.
+     */
+    public void purge() {
+        this.tables.invalidateAll();
+    }
+
+    public long size() {
+        return this.tables.size();
+    }
+
+    private static String hash(String data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash)
+                builder.append(String.format("%02x", b));
+            return builder.toString();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Prefix of the names of all snapshots of the data starting at the same
+     * offset in the same file.  Only one of these snapshots is kept: when the
+     * file changes, or it is loaded with other options, the older one is deleted.
+     */
+    private static String snapshotPrefix(String key, IFileReference file) {
+        String pathname = file.getPathname();
+        String group = pathname == null ? key :
+                new File(pathname).getAbsolutePath() + "," + file.getStartOffset();
+        return hash(group).substring(0, 16) + "-";
+    }
+
+    @Nullable
+    private Path snapshotPath(String key, IFileReference file) {
+        if (this.snapshotFolder == null)
+            return null;
+        return this.snapshotFolder.resolve(snapshotPrefix(key, file) + hash(key) + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Delete the snapshots of the same data that are superseded by the specified one.
+     */
+    private static void deleteSuperseded(Path snapshot, String prefix) {
+        File[] files = snapshot.getParent().toFile().listFiles(
+                (d, n) -> n.startsWith(prefix) && n.endsWith(SNAPSHOT_SUFFIX));
+        if (files == null)
+            return;
+        String name = snapshot.getFileName().toString();
+        for (File f : files) {
+            if (f.getName().equals(name))
+                continue;
+            HillviewLogger.instance.info("Deleting superseded snapshot", "{0}", f);
+            if (!f.delete())
+                HillviewLogger.instance.warn("Could not delete snapshot", "{0}", f);
+        }
+    }
+
+    /**
+     * Snapshots are written with SnapshotFileWriter, so they keep the in-memory
+     * encoding of the columns and are loaded without parsing.  Only tables whose
+     * columns are all loaded are saved; lazily-loaded tables come from formats that
+     * are already cheap to read.
+     */
+    private void writeSnapshot(String key, IFileReference file, ITable table) {
+        Path path = this.snapshotPath(key, file);
+        if (path == null)
+            return;
+        for (String c : table.getSchema().getColumnNames())
+            if (!table.getColumn(c).isLoaded())
+                return;
+        @Nullable Path tmp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tmp = Files.createTempFile(path.getParent(), "snapshot", ".tmp");
+            new SnapshotFileWriter(tmp.toString()).writeTable(table);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            deleteSuperseded(path, snapshotPrefix(key, file));
+        } catch (Exception ex) {
+            HillviewLogger.instance.error("Error writing snapshot", ex);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    HillviewLogger.instance.warn("Could not delete snapshot", "{0}", tmp);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private ITable readSnapshot(String key, IFileReference file) {
+        Path path = this.snapshotPath(key, file);
+        if (path == null || !Files.exists(path))
+            return null;
+        try {
+            ITable result = new SnapshotFileLoader(path.toString(), false).load();
+            if (result != null)
+                HillviewLogger.instance.info("Loaded snapshot", "{0}", result.getSourceFile());
+            return result;
+        } catch (Exception ex) {
+            HillviewLogger.instance.error("Error reading snapshot", ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.storage;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Table;
+import org.hillview.table.api.*;
+import org.hillview.table.columns.*;
+import org.hillview.table.membership.FullMembershipSet;
+import org.hillview.table.membership.MembershipSetFactory;
+import org.hillview.utils.Converters;
+import org.hillview.utils.Linq;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Loads a table written by SnapshotFileWriter.  The file is memory-mapped
+ * and each column is copied with bulk transfers directly into the arrays
+ * that back the in-memory column; no values are parsed.  When loading lazily
+ * only the directory is read and the columns are loaded on demand.
+ */
+public class SnapshotFileLoader extends TextFileLoader {
+    private final boolean lazy;
+
+    /**
+     * Position of a column in the file.
+     */
+    private static class ColumnEntry {
+        final ColumnDescription description;
+        final int encoding;
+        final long offset;
+        final long length;
+
+        ColumnEntry(ColumnDescription description, int encoding, long offset, long length) {
+            this.description = description;
+            this.encoding = encoding;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The directory of a snapshot file.
+     */
+    private static class Directory {
+        int rows;
+        int membershipKind;
+        int memberCount;
+        long membersOffset;
+        /**
+         * File the table was originally loaded from; empty if unknown.
+         */
+        String sourceFile = "";
+        final List<ColumnEntry> columns = new ArrayList<ColumnEntry>();
+        final HashMap<String, ColumnEntry> byName = new HashMap<String, ColumnEntry>();
+    }
+
+    public SnapshotFileLoader(String path, boolean lazy) {
+        super(path);
+        this.lazy = lazy;
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        MappedByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        result.order(ByteOrder.LITTLE_ENDIAN);
+        return result;
+    }
+
+    private void checkMagic(ByteBuffer buffer) {
+        byte[] magic = new byte[SnapshotFileWriter.MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, SnapshotFileWriter.MAGIC))
+            this.error("Not a snapshot file");
+    }
+
+    private Directory readDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int trailer = 8 + SnapshotFileWriter.MAGIC.length;
+        if (size < SnapshotFileWriter.MAGIC.length + trailer)
+            this.error("File too short");
+        this.checkMagic(this.map(channel, 0, SnapshotFileWriter.MAGIC.length));
+        ByteBuffer end = this.map(channel, size - trailer, trailer);
+        long start = end.getLong();
+        this.checkMagic(end);
+
+        ByteBuffer buffer = this.map(channel, start, size - trailer - start);
+        int version = buffer.getInt();
+        if (version != SnapshotFileWriter.VERSION)
+            this.error("Unsupported snapshot version " + version);
+        Directory result = new Directory();
+        result.rows = buffer.getInt();
+        result.membershipKind = buffer.getInt();
+        result.memberCount = buffer.getInt();
+        result.membersOffset = buffer.getLong();
+        result.sourceFile = Converters.checkNull(readString(buffer));
+        int columns = buffer.getInt();
+        for (int i = 0; i < columns; i++) {
+            String name = Converters.checkNull(readString(buffer));
+            ContentsKind kind = ContentsKind.valueOf(readString(buffer));
+            ColumnEntry entry = new ColumnEntry(new ColumnDescription(name, kind),
+                    buffer.getInt(), buffer.getLong(), buffer.getLong());
+            result.columns.add(entry);
+            result.byName.put(name, entry);
+        }
+        return result;
+    }
+
+    private static BitSet readMissing(ByteBuffer buffer) {
+        long[] words = new long[Converters.toInt(buffer.getLong())];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + 8 * words.length);
+        return BitSet.valueOf(words);
+    }
+
+    private static void setMissing(BaseArrayColumn column, BitSet missing) {
+        for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1))
+            column.setMissing(i);
+    }
+
+    private static DoubleArrayColumn readDoubles(
+            ByteBuffer buffer, ColumnDescription desc, int rows, BitSet missing) {
+        double[] data = new double[rows];
+        buffer.asDoubleBuffer().get(data);
+        buffer.position(buffer.position() + 8 * rows);
+        DoubleArrayColumn result = new DoubleArrayColumn(desc, data);
+        setMissing(result, missing);
+        return result;
+    }
+
+    private IColumn readColumn(FileChannel channel, ColumnEntry entry, int rows) throws IOException {
+        ColumnDescription desc = entry.description;
+        if (entry.encoding == SnapshotFileWriter.EMPTY)
+            return new EmptyColumn(desc, rows);
+        ByteBuffer buffer = this.map(channel, entry.offset, entry.length);
+        switch (entry.encoding) {
+            case SnapshotFileWriter.INT: {
+                BitSet missing = readMissing(buffer);
+                int[] data = new int[rows];
+                buffer.asIntBuffer().get(data);
+                IntArrayColumn result = new IntArrayColumn(desc, data);
+                setMissing(result, missing);
+                return result;
+            }
+            case SnapshotFileWriter.DOUBLE:
+                return readDoubles(buffer, desc, rows, readMissing(buffer));
+            case SnapshotFileWriter.DICTIONARY: {
+                String[] dictionary = new String[Converters.toInt(buffer.getLong())];
+                for (int i = 0; i < dictionary.length; i++)
+                    dictionary[i] = readString(buffer);
+                buffer.position((buffer.position() + 7) & ~7);
+                int[] codes = new int[rows];
+                buffer.asIntBuffer().get(codes);
+                return new StringArrayColumn(desc, codes, dictionary);
+            }
+            case SnapshotFileWriter.INTERVAL: {
+                BitSet missing = readMissing(buffer);
+                IColumn start = readDoubles(buffer, new ColumnDescription(
+                        desc.name + ":start", ContentsKind.Double), rows, missing);
+                IColumn end = readDoubles(buffer, new ColumnDescription(
+                        desc.name + ":end", ContentsKind.Double), rows, missing);
+                return new IntervalColumn(desc, start, end);
+            }
+            default:
+                this.error("Unexpected encoding " + entry.encoding + " for column " + desc.name);
+                return null;
+        }
+    }
+
+    private IMembershipSet readMembership(FileChannel channel, Directory directory) throws IOException {
+        if (directory.membershipKind == SnapshotFileWriter.FULL)
+            return new FullMembershipSet(directory.rows);
+        int[] rows = new int[directory.memberCount];
+        ByteBuffer buffer = this.map(channel, directory.membersOffset, 4L * rows.length);
+        buffer.asIntBuffer().get(rows);
+        IMutableMembershipSet result = MembershipSetFactory.create(directory.rows, rows.length);
+        for (int r : rows)
+            result.add(r);
+        return result.seal();
+    }
+
+    class SnapshotColumnLoader implements IColumnLoader {
+        private final Directory directory;
+
+        SnapshotColumnLoader(Directory directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public List<? extends IColumn> loadColumns(List<String> names) {
+            try (FileChannel channel = FileChannel.open(
+                    Paths.get(SnapshotFileLoader.this.filename), StandardOpenOption.READ)) {
+                List<IColumn> result = new ArrayList<IColumn>(names.size());
+                for (String n : names) {
+                    ColumnEntry entry = this.directory.byName.get(n);
+                    if (entry == null)
+                        throw new RuntimeException("No column " + n + " in " + SnapshotFileLoader.this.filename);
+                    result.add(SnapshotFileLoader.this.readColumn(channel, entry, this.directory.rows));
+                }
+                return result;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public ITable load() {
+        try (FileChannel channel = FileChannel.open(Paths.get(this.filename), StandardOpenOption.READ)) {
+            Directory directory = this.readDirectory(channel);
+            IMembershipSet members = this.readMembership(channel, directory);
+            List<IColumn> columns;
+            IColumnLoader loader = null;
+            if (this.lazy) {
+                loader = new SnapshotColumnLoader(directory);
+                IColumnLoader finalLoader = loader;
+                columns = Linq.map(directory.columns,
+                        e -> new LazyColumn(e.description, directory.rows, finalLoader));
+            } else {
+                columns = new ArrayList<IColumn>(directory.columns.size());
+                for (ColumnEntry e : directory.columns)
+                    columns.add(this.readColumn(channel, e, directory.rows));
+            }
+            String source = directory.sourceFile.isEmpty() ? this.filename : directory.sourceFile;
+            return new Table(columns, members, source, loader);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
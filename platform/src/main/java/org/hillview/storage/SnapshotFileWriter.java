@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.storage;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.*;
+import org.hillview.table.columns.StringArrayColumn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Writes a table in the Hillview snapshot format, which stores the columns
+ * in the same encoding they have in memory: primitive arrays, dictionaries
+ * and codes for strings, and bitmaps of missing values.  The membership set of
+ * the table is saved as well.  The file can be read back by SnapshotFileLoader with
+ * bulk copies from a memory-mapped file, without any parsing or conversion.
+ *
+ * Layout (little-endian): magic, the body of each column, the membership set,
+ * a directory describing the table and its columns, the offset of the directory,
+ * and the magic again.  All bodies start at offsets that are multiples of 8.
+ */
+public class SnapshotFileWriter implements ITableWriter {
+    static final byte[] MAGIC = "HVSNAP01".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    // Column encodings
+    static final int EMPTY = 0;
+    static final int INT = 1;
+    static final int DOUBLE = 2;
+    static final int DICTIONARY = 3;
+    static final int INTERVAL = 4;
+
+    // Membership set encodings
+    static final int FULL = 0;
+    static final int ROWS = 1;
+
+    private final String path;
+
+    public SnapshotFileWriter(String path) {
+        this.path = path;
+    }
+
+    static int getEncoding(ContentsKind kind) {
+        switch (kind) {
+            case None:
+                return EMPTY;
+            case String:
+            case Json:
+                return DICTIONARY;
+            case Integer:
+                return INT;
+            case Date:
+            case Double:
+            case Duration:
+            case Time:
+            case LocalDate:
+                return DOUBLE;
+            case Interval:
+                return INTERVAL;
+            default:
+                throw new RuntimeException("Unexpected column kind " + kind);
+        }
+    }
+
+    /**
+     * Buffered output to a file channel that keeps track of the position.
+     */
+    static class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            this.position = 0;
+        }
+
+        long getPosition() {
+            return this.position;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes)
+                this.flush();
+        }
+
+        void putInt(int value) throws IOException {
+            this.ensure(4);
+            this.buffer.putInt(value);
+            this.position += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            this.ensure(8);
+            this.buffer.putLong(value);
+            this.position += 8;
+        }
+
+        void putDouble(double value) throws IOException {
+            this.ensure(8);
+            this.buffer.putDouble(value);
+            this.position += 8;
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                this.ensure(1);
+                int toCopy = Math.min(this.buffer.remaining(), bytes.length - offset);
+                this.buffer.put(bytes, offset, toCopy);
+                offset += toCopy;
+            }
+            this.position += bytes.length;
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.putInt(bytes.length);
+            this.putBytes(bytes);
+        }
+
+        void align() throws IOException {
+            while (this.position % 8 != 0) {
+                this.ensure(1);
+                this.buffer.put((byte)0);
+                this.position++;
+            }
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.flush();
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Location of the body of a column in the file.
+     */
+    private static class ColumnEntry {
+        final ColumnDescription description;
+        final int encoding;
+        final long offset;
+        final long length;
+
+        ColumnEntry(ColumnDescription description, int encoding, long offset, long length) {
+            this.description = description;
+            this.encoding = encoding;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static void writeMissing(Output out, IColumn column) throws IOException {
+        int rows = column.sizeInRows();
+        BitSet missing = new BitSet(rows);
+        for (int i = 0; i < rows; i++)
+            if (column.isMissing(i))
+                missing.set(i);
+        long[] words = missing.toLongArray();
+        out.putLong(words.length);
+        for (long w : words)
+            out.putLong(w);
+    }
+
+    private static void writeStrings(Output out, IColumn column) throws IOException {
+        int rows = column.sizeInRows();
+        String[] dictionary;
+        int[] codes;
+        if (column instanceof StringArrayColumn) {
+            StringArrayColumn sac = (StringArrayColumn)column;
+            dictionary = sac.getDictionary();
+            codes = sac.getCodes();
+        } else {
+            Object2IntOpenHashMap<String> encoding = new Object2IntOpenHashMap<String>();
+            List<String> values = new ArrayList<String>();
+            codes = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                String s = column.getString(i);
+                int code = encoding.getOrDefault(s, -1);
+                if (code < 0) {
+                    code = values.size();
+                    encoding.put(s, code);
+                    values.add(s);
+                }
+                codes[i] = code;
+            }
+            dictionary = values.toArray(new String[0]);
+        }
+        out.putLong(dictionary.length);
+        for (String s : dictionary) {
+            if (s == null)
+                out.putInt(-1);
+            else
+                out.putString(s);
+        }
+        out.align();
+        for (int code : codes)
+            out.putInt(code);
+    }
+
+    private static void writeColumn(Output out, IColumn column, int encoding) throws IOException {
+        int rows = column.sizeInRows();
+        switch (encoding) {
+            case EMPTY:
+                break;
+            case INT:
+                writeMissing(out, column);
+                for (int i = 0; i < rows; i++)
+                    out.putInt(column.isMissing(i) ? 0 : column.getInt(i));
+                break;
+            case DOUBLE:
+                writeMissing(out, column);
+                for (int i = 0; i < rows; i++)
+                    out.putDouble(column.isMissing(i) ? 0 : column.getDouble(i));
+                break;
+            case DICTIONARY:
+                writeStrings(out, column);
+                break;
+            case INTERVAL:
+                writeMissing(out, column);
+                for (int i = 0; i < rows; i++)
+                    out.putDouble(column.isMissing(i) ? 0 : column.getEndpoint(i, true));
+                for (int i = 0; i < rows; i++)
+                    out.putDouble(column.isMissing(i) ? 0 : column.getEndpoint(i, false));
+                break;
+            default:
+                throw new RuntimeException("Unexpected encoding " + encoding);
+        }
+    }
+
+    @Override
+    public void writeTable(ITable table) {
+        List<String> names = table.getSchema().getColumnNames();
+        List<IColumn> columns = table.getLoadedColumns(names);
+        IMembershipSet members = table.getMembershipSet();
+        int rows = members.getMax();
+        try (FileChannel channel = FileChannel.open(Paths.get(this.path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Output out = new Output(channel)) {
+            out.putBytes(MAGIC);
+            List<ColumnEntry> entries = new ArrayList<ColumnEntry>(columns.size());
+            for (IColumn column : columns) {
+                out.align();
+                long start = out.getPosition();
+                int encoding = getEncoding(column.getKind());
+                writeColumn(out, column, encoding);
+                entries.add(new ColumnEntry(column.getDescription(), encoding,
+                        start, out.getPosition() - start));
+            }
+
+            out.align();
+            long membersOffset = out.getPosition();
+            boolean full = members.getSize() == rows;
+            if (!full) {
+                IRowIterator it = members.getIterator();
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                    out.putInt(row);
+            }
+
+            out.align();
+            long directory = out.getPosition();
+            out.putInt(VERSION);
+            out.putInt(rows);
+            out.putInt(full ? FULL : ROWS);
+            out.putInt(members.getSize());
+            out.putLong(membersOffset);
+            String source = table.getSourceFile();
+            out.putString(source == null ? "" : source);
+            out.putInt(entries.size());
+            for (ColumnEntry e : entries) {
+                out.putString(e.description.name);
+                out.putString(e.description.kind.toString());
+                out.putInt(e.encoding);
+                out.putLong(e.offset);
+                out.putLong(e.length);
+            }
+            out.putLong(directory);
+            out.putBytes(MAGIC);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
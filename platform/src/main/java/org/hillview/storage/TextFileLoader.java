@@ -26,6 +26,7 @@ import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.hillview.table.api.IAppendableColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.HillviewLogger;
@@ -61,6 +62,17 @@ public abstract class TextFileLoader {
     private InputStream compressedStream = null;
     @Nullable
     private BOMInputStream bomStream = null;
+    /**
+     * Only the bytes between startOffset and endOffset are read; endOffset is -1
+     * to read to the end of the file.
+     */
+    private long startOffset = 0;
+    private long endOffset = -1;
+    /**
+     * If true and reading starts after the beginning of the file, the first
+     * line of the file is read before the range (it holds the column names).
+     */
+    boolean prefixFirstLine = false;
 
     TextFileLoader(String path) {
         this.filename = path;
@@ -70,10 +82,57 @@ public abstract class TextFileLoader {
         this.currentToken = null;
     }
 
+    /**
+     * Read only a range of the file.  Used for files that keep growing, where each
+     * load reads the lines appended since the previous one.  The range should start
+     * and end at line boundaries.  Not supported for compressed files.
+     * @param start  First byte to read.
+     * @param end    Byte after the last one to read; -1 to read to the end of the file.
+     */
+    void setRange(long start, long end) {
+        if (Utilities.isCompressed(this.filename) != null && (start > 0 || end >= 0))
+            throw new RuntimeException("Cannot read a range of compressed file " + this.filename);
+        this.startOffset = start;
+        this.endOffset = end;
+    }
+
+    /**
+     * The bytes of the first line of the file, including the newline.
+     */
+    private byte[] readFirstLine() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(this.filename))) {
+            int b;
+            do {
+                b = in.read();
+                if (b < 0)
+                    break;
+                result.write(b);
+            } while (b != '\n');
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * The stream of bytes of the file in the range to read.
+     */
+    private InputStream openRange() throws IOException {
+        FileInputStream file = new FileInputStream(this.filename);
+        if (this.startOffset == 0 && this.endOffset < 0)
+            return file;
+        file.getChannel().position(this.startOffset);
+        InputStream result = file;
+        if (this.endOffset >= 0)
+            result = new BoundedInputStream(file, this.endOffset - this.startOffset);
+        if (this.prefixFirstLine && this.startOffset > 0)
+            result = new SequenceInputStream(new ByteArrayInputStream(this.readFirstLine()), result);
+        return result;
+    }
+
     Reader getFileReader() {
         try {
             HillviewLogger.instance.info("Reading file", "{0}", this.filename);
-            this.inputStream = new FileInputStream(this.filename);
+            this.inputStream = this.openRange();
             this.bufferedInputStream = new BufferedInputStream(inputStream);
             // The buffered input stream is needed by the CompressorStream
             // to detect the compression method at runtime.
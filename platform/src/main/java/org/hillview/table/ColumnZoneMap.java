@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+import org.hillview.table.filters.StringFilterDescription;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Summary of the values in a column: the range of values, the number of missing
+ * values, and, for string columns, a Bloom filter of the values.  Zone maps are
+ * computed when columns are loaded and are used to decide quickly that a filter
+ * cannot match any row of a table, or that it matches all rows.
+ * Zone maps describe all the values stored in a column, so they remain valid
+ * for all tables that share the column, whatever their membership set.
+ */
+public class ColumnZoneMap {
+    /**
+     * Result of checking a predicate against a zone map.
+     */
+    public enum Match {
+        /**
+         * No row can match.
+         */
+        None,
+        /**
+         * All rows match.
+         */
+        All,
+        /**
+         * Some rows may match.
+         */
+        Some;
+
+        public Match not() {
+            switch (this) {
+                case None:
+                    return All;
+                case All:
+                    return None;
+                default:
+                    return Some;
+            }
+        }
+
+        public Match and(Match other) {
+            if (this == None || other == None)
+                return None;
+            if (this == All && other == All)
+                return All;
+            return Some;
+        }
+
+        public Match or(Match other) {
+            return this.not().and(other.not()).not();
+        }
+    }
+
+    /**
+     * Zone maps indexed by column.  Columns are weak keys, compared by identity,
+     * so zone maps disappear together with their columns.
+     */
+    private static final Cache<IColumn, ColumnZoneMap> zoneMaps =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Number of bits in the Bloom filter for string columns.
+     */
+    private static final int BLOOM_BITS = 1 << 16;
+    private static final int BLOOM_HASHES = 3;
+
+    public final ContentsKind kind;
+    public final int missing;
+    public final int present;
+    /**
+     * Range of numeric values; for intervals this covers both endpoints.
+     */
+    public final double min;
+    public final double max;
+    /**
+     * True if some numeric value is NaN; NaN values do not compare with anything.
+     */
+    public final boolean hasNaN;
+    @Nullable
+    public final String minString;
+    @Nullable
+    public final String maxString;
+    /**
+     * Bloom filter of the case-folded strings in a column.  Null if the
+     * column does not contain strings, or if the filter is too full to be useful.
+     */
+    @Nullable
+    private final long[] bloom;
+
+    private ColumnZoneMap(IColumn column) {
+        this.kind = column.getKind();
+        int rows = column.sizeInRows();
+        int missing = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        boolean hasNaN = false;
+        String minString = null;
+        String maxString = null;
+        long[] bloom = this.kind.isString() ? new long[BLOOM_BITS / 64] : null;
+        for (int i = 0; i < rows; i++) {
+            if (column.isMissing(i)) {
+                missing++;
+                continue;
+            }
+            switch (this.kind) {
+                case String:
+                case Json: {
+                    String s = column.getString(i);
+                    assert s != null;
+                    if (minString == null || s.compareTo(minString) < 0)
+                        minString = s;
+                    if (maxString == null || s.compareTo(maxString) > 0)
+                        maxString = s;
+                    addToBloom(bloom, s);
+                    break;
+                }
+                case Interval: {
+                    double start = column.getEndpoint(i, true);
+                    double end = column.getEndpoint(i, false);
+                    min = Math.min(min, Math.min(start, end));
+                    max = Math.max(max, Math.max(start, end));
+                    hasNaN |= Double.isNaN(start) || Double.isNaN(end);
+                    break;
+                }
+                case None:
+                    break;
+                default: {
+                    double d = column.asDouble(i);
+                    if (Double.isNaN(d)) {
+                        hasNaN = true;
+                    } else {
+                        min = Math.min(min, d);
+                        max = Math.max(max, d);
+                    }
+                    break;
+                }
+            }
+        }
+        this.missing = missing;
+        this.present = rows - missing;
+        this.min = min;
+        this.max = max;
+        this.hasNaN = hasNaN;
+        this.minString = minString;
+        this.maxString = maxString;
+        this.bloom = bloom != null && bloomUseful(bloom) ? bloom : null;
+    }
+
+    /**
+     * Get the zone map of a column, if it has been computed.
+     */
+    @Nullable
+    public static ColumnZoneMap get(IColumn column) {
+        return zoneMaps.getIfPresent(column);
+    }
+
+    /**
+     * Compute the zone map of a loaded column, unless it has already been computed.
+     */
+    public static ColumnZoneMap compute(IColumn column) {
+        try {
+            return zoneMaps.get(column, () -> new ColumnZoneMap(column));
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Compute the zone maps of all loaded columns of a table.
+     */
+    public static void computeAll(ITable table) {
+        for (String c : table.getSchema().getColumnNames()) {
+            IColumn column = table.getColumn(c);
+            if (column.isLoaded())
+                compute(column);
+        }
+    }
+
+    /**
+     * Get the zone map of a column of a table, loading the column if needed.
+     */
+    @Nullable
+    public static ColumnZoneMap get(ITable table, String column) {
+        return get(table.getLoadedColumn(column));
+    }
+
+    /**
+     * Combine the results for present and missing values.
+     * @param presentMatch  Match for the present values.
+     * @param missingMatch  True if missing values match.
+     */
+    private Match combine(Match presentMatch, boolean missingMatch) {
+        if (this.present == 0)
+            return missingMatch ? Match.All : Match.None;
+        if (this.missing == 0)
+            return presentMatch;
+        Match missingMatches = missingMatch ? Match.All : Match.None;
+        return presentMatch == missingMatches ? presentMatch : Match.Some;
+    }
+
+    /**
+     * Check which values fall within a numeric range (inclusive); for intervals
+     * both endpoints must be in the range.
+     * @param includeMissing  If true missing values match.
+     */
+    public Match inRange(double low, double high, boolean includeMissing) {
+        Match m;
+        if (this.kind.isString() || this.kind == ContentsKind.None)
+            m = this.present == 0 ? Match.None : Match.Some;
+        else if (this.max < low || this.min > high)
+            m = Match.None;
+        else if (low <= this.min && this.max <= high && !this.hasNaN)
+            m = Match.All;
+        else
+            m = Match.Some;
+        return this.combine(m, includeMissing);
+    }
+
+    /**
+     * Check which values fall within a string range (inclusive).
+     * @param includeMissing  If true missing values match.
+     */
+    public Match inRange(String low, String high, boolean includeMissing) {
+        Match m;
+        if (this.minString == null || this.maxString == null)
+            m = this.present == 0 ? Match.None : Match.Some;
+        else if (this.maxString.compareTo(low) < 0 || this.minString.compareTo(high) > 0)
+            m = Match.None;
+        else if (low.compareTo(this.minString) <= 0 && this.maxString.compareTo(high) <= 0)
+            m = Match.All;
+        else
+            m = Match.Some;
+        return this.combine(m, includeMissing);
+    }
+
+    /**
+     * Check which values are equal to a number; missing values do not match.
+     */
+    public Match equalTo(double value) {
+        return this.inRange(value, value, false);
+    }
+
+    /**
+     * Check which values are equal to a string; missing values do not match.
+     * @param caseSensitive  If false the comparison ignores case.
+     */
+    public Match equalTo(String value, boolean caseSensitive) {
+        if (!this.mayContain(value))
+            return this.combine(Match.None, false);
+        if (caseSensitive)
+            return this.inRange(value, value, false);
+        return this.combine(this.present == 0 ? Match.None : Match.Some, false);
+    }
+
+    /**
+     * Check which values match a string filter, as implemented by StringFilterFactory.
+     * Only exact comparisons and comparisons with missing values are checked.
+     */
+    public Match matches(StringFilterDescription filter) {
+        if (!this.kind.isString())
+            return Match.Some;
+        Match result;
+        if (filter.compareValue == null)
+            result = this.combine(Match.None, true);
+        else if (filter.asRegEx || filter.asSubString)
+            return Match.Some;
+        else if (filter.caseSensitive)
+            result = this.equalTo(filter.compareValue, true);
+        else
+            result = this.equalTo(filter.compareValue.toLowerCase(), false);
+        return filter.complement ? result.not() : result;
+    }
+
+    /**
+     * True if the column may contain a string that is equal to the value,
+     * ignoring case.
+     */
+    public boolean mayContain(String value) {
+        if (this.present == 0)
+            return false;
+        if (this.bloom == null)
+            return true;
+        int h1 = hash(value);
+        int h2 = mix(h1) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            if ((this.bloom[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hash of a string that does not depend on case.  Strings that are equal
+     * ignoring case have the same characters after folding each character
+     * to upper case and back to lower case.
+     */
+    private static int hash(String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++)
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static void addToBloom(@Nullable long[] bloom, String s) {
+        if (bloom == null)
+            return;
+        int h1 = hash(s);
+        int h2 = mix(h1) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * A Bloom filter with most bits set rejects almost nothing.
+     */
+    private static boolean bloomUseful(long[] bloom) {
+        int set = 0;
+        for (long w : bloom)
+            set += Long.bitCount(w);
+        return set < BLOOM_BITS * 0.9;
+    }
+}
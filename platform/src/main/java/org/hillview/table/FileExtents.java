@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table;
+
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.utils.Utilities;
+
+import java.util.HashMap;
+
+/**
+ * Describes how much of each file has been loaded.  Used to load
+ * incrementally files that keep growing.
+ */
+public class FileExtents implements ISketchResult {
+    static final long serialVersionUID = 1;
+
+    /**
+     * Offset after the last byte loaded from each file; -1 if the
+     * file was loaded completely and will not be read again.
+     * Files are indexed by the key function.
+     */
+    public final HashMap<String, Long> loaded;
+
+    public FileExtents() {
+        this.loaded = new HashMap<String, Long>();
+    }
+
+    /**
+     * The key of a file in the current machine.
+     */
+    public static String key(String pathname) {
+        return Utilities.getHostName() + ":" + pathname;
+    }
+
+    public void add(String pathname, long end) {
+        this.loaded.merge(key(pathname), end, FileExtents::union);
+    }
+
+    private static Long union(Long left, Long right) {
+        if (left < 0 || right < 0)
+            return -1L;
+        return Math.max(left, right);
+    }
+
+    public FileExtents union(FileExtents other) {
+        FileExtents result = new FileExtents();
+        result.loaded.putAll(this.loaded);
+        other.loaded.forEach((k, v) -> result.loaded.merge(k, v, FileExtents::union));
+        return result;
+    }
+}
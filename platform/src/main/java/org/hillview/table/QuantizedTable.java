@@ -26,7 +26,9 @@ import java.util.List;
 
 /**
  * A quantized table wraps a table using a QuantizationSchema: each column
- * is quantized according to a different policy.
+ * is quantized according to a different policy.  The quantized columns are
+ * materialized the first time they are used, and shared by all tables that
+ * have the same underlying columns.
  */
 public class QuantizedTable implements ITable {
     private final ITable table;
@@ -86,12 +88,12 @@ public class QuantizedTable implements ITable {
     @Override
     public List<IColumn> getColumns(Schema schema) {
         return Linq.map(this.table.getColumns(schema),
-                c -> new QuantizedColumn(c, this.quantizationSchema.get(c.getName())));
+                c -> QuantizedColumn.materialize(c, this.quantizationSchema.get(c.getName())));
     }
 
     @Override
     public IColumn getColumn(String name) {
-        return new QuantizedColumn(this.table.getColumn(name), this.quantizationSchema.get(name));
+        return QuantizedColumn.materialize(this.table.getColumn(name), this.quantizationSchema.get(name));
     }
 
     @Override
@@ -117,7 +119,7 @@ public class QuantizedTable implements ITable {
     @Override
     public List<IColumn> getLoadedColumns(List<String> columns) {
         return Linq.map(this.table.getLoadedColumns(columns),
-                c -> new QuantizedColumn(c, this.quantizationSchema.get(c.getName())));
+                c -> QuantizedColumn.materialize(c, this.quantizationSchema.get(c.getName())));
     }
 
     @Override
@@ -19,12 +19,15 @@ package org.hillview.table;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntPriorityQueue;
 import org.hillview.sketches.results.ColumnSortOrientation;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ITable;
 import org.hillview.table.api.IndexComparator;
+import org.hillview.table.api.Interval;
 import org.hillview.table.rows.RowSnapshot;
 import org.hillview.table.rows.VirtualRowSnapshot;
 import org.hillview.utils.Converters;
@@ -229,4 +232,128 @@ public class RecordOrder implements Serializable {
         }
         return merge;
     }
+
+    /**
+     * Compares row leftRow in the columns left with row rightRow in the columns right.
+     * Both column arrays must be in the order of this RecordOrder.  This reads the
+     * column values directly, without going through a row snapshot.
+     */
+    private int compareRows(IColumn[] left, int leftRow, IColumn[] right, int rightRow) {
+        for (int i = 0; i < this.sortOrientationList.size(); i++) {
+            ColumnSortOrientation cso = this.sortOrientationList.get(i);
+            IColumn lc = left[i];
+            IColumn rc = right[i];
+            boolean leftMissing = lc.isMissing(leftRow);
+            boolean rightMissing = rc.isMissing(rightRow);
+            int c;
+            if (leftMissing && rightMissing)
+                c = 0;
+            else if (leftMissing)
+                c = 1;
+            else if (rightMissing)
+                c = -1;
+            else switch (cso.columnDescription.kind) {
+                case None:
+                    c = 0;
+                    break;
+                case String:
+                case Json:
+                    c = Converters.checkNull(lc.getString(leftRow)).compareTo(
+                            Converters.checkNull(rc.getString(rightRow)));
+                    break;
+                case Integer:
+                    c = Integer.compare(lc.getInt(leftRow), rc.getInt(rightRow));
+                    break;
+                case Time:
+                case Date:
+                case Double:
+                case Duration:
+                case LocalDate:
+                    c = Double.compare(lc.getDouble(leftRow), rc.getDouble(rightRow));
+                    break;
+                case Interval: {
+                    Interval li = Converters.checkNull(lc.getInterval(leftRow));
+                    Interval ri = Converters.checkNull(rc.getInterval(rightRow));
+                    c = li.compareTo(ri);
+                    break;
+                }
+                default:
+                    throw new RuntimeException("Unexpected kind " + cso.columnDescription.kind);
+            }
+            if (!cso.isAscending)
+                c = -c;
+            if (c != 0)
+                return c;
+        }
+        return 0;
+    }
+
+    /**
+     * Given several Tables in sorted order, decide the order in which to merge them all at once.
+     * The merge uses a heap holding the index of the table with the smallest current row, so
+     * it performs O(n log k) comparisons for k tables with n rows in total, instead of
+     * the O(n k) row copies performed by repeated two-way merges.
+     * @param tables        The tables to merge; all must have the same schema.
+     * @param combineEqual  If true equal rows coming from different tables are combined into
+     *                      a single row of the result (as in getIntMergeOrder); otherwise
+     *                      they are all kept (as in getMergeOrder).
+     * @param maxSize       Maximum number of rows in the merged result.
+     * @return An array that describes where each element in the merged result comes from.
+     * A non-negative value t means that the next row of the result comes from table t.
+     * When combineEqual is true a negative value -(t+1) means that the current row of table
+     * t is equal to the previous row of the result and is combined with it.
+     */
+    public int[] getKWayMergeOrder(final List<SmallTable> tables, boolean combineEqual, int maxSize) {
+        final int tableCount = tables.size();
+        final IColumn[][] columns = new IColumn[tableCount][];
+        final int[] lengths = new int[tableCount];
+        final int[] positions = new int[tableCount];
+        Schema schema = this.toSchema();
+        List<String> names = schema.getColumnNames();
+        int total = 0;
+        for (int t = 0; t < tableCount; t++) {
+            SmallTable table = tables.get(t);
+            table.check();
+            if (!table.schema.equals(tables.get(0).schema))
+                throw new RuntimeException("Tables do not have matching schemas");
+            columns[t] = table.getLoadedColumns(names).toArray(new IColumn[0]);
+            lengths[t] = table.getNumOfRows();
+            total += lengths[t];
+        }
+
+        // Ties are broken by table index, so the merge is stable.
+        IntPriorityQueue heap = new IntHeapPriorityQueue(tableCount, (a, b) -> {
+            int c = this.compareRows(columns[a], positions[a], columns[b], positions[b]);
+            if (c != 0)
+                return c;
+            return Integer.compare(a, b);
+        });
+        for (int t = 0; t < tableCount; t++)
+            if (lengths[t] > 0)
+                heap.enqueue(t);
+
+        final IntList order = new IntArrayList(Math.min(total, maxSize));
+        int produced = 0;
+        int lastTable = -1;
+        int lastRow = -1;
+        while (!heap.isEmpty()) {
+            int t = heap.dequeueInt();
+            int row = positions[t];
+            if (combineEqual && lastTable >= 0 &&
+                    this.compareRows(columns[t], row, columns[lastTable], lastRow) == 0) {
+                order.add(-(t + 1));
+            } else {
+                if (produced == maxSize)
+                    break;
+                order.add(t);
+                produced++;
+                lastTable = t;
+                lastRow = row;
+            }
+            positions[t]++;
+            if (positions[t] < lengths[t])
+                heap.enqueue(t);
+        }
+        return order.toIntArray();
+    }
 }
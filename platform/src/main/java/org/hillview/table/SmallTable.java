@@ -200,4 +200,10 @@ public class SmallTable extends BaseTable implements IJsonSketchResult {
             return new SmallTable();
         }
     }
+
+    @Override
+    public long estimateSize() {
+        // Roughly 16 bytes for each value.
+        return 64 + (long)this.rowCount * this.schema.getColumnCount() * 16;
+    }
 }
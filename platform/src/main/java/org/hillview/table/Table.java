@@ -167,8 +167,10 @@ public class Table extends BaseTable {
             if (this.columnLoader == null)
                 throw new RuntimeException("Cannot load columns dynamically");
             List<? extends IColumn> cols = this.columnLoader.loadColumns(toLoad);
-            for (IColumn c: cols)
+            for (IColumn c: cols) {
                 this.columns.put(c.getName(), c);
+                ColumnZoneMap.compute(c);
+            }
         }
         for (String name : columns) {
             IColumn col = this.columns.get(name);
@@ -20,10 +20,16 @@ package org.hillview.table.api;
 /**
  * Interface implemented by filters that run over all rows in a table.
  */
-public interface ITableFilter {
+public interface ITableFilter extends AutoCloseable {
     /**
      * Tests whether a row is selected or not.
      * @param rowIndex Row index in the table.
      */
     boolean test(int rowIndex);
+
+    /**
+     * Releases the resources held by the filter; called after all rows have been tested.
+     */
+    @Override
+    default void close() {}
 }
@@ -18,6 +18,9 @@
 package org.hillview.table.api;
 
 import org.hillview.dataset.api.IJson;
+import org.hillview.table.ColumnZoneMap;
+
+import javax.annotation.Nullable;
 
 /**
  * Describes a filter that is applied to each row of a table.
@@ -29,4 +32,23 @@ public interface ITableFilterDescription extends IJson {
      * @return       A new filter, customized for this table.
      */
     ITableFilter getFilter(ITable table);
+
+    /**
+     * Use the zone maps of the table columns to check quickly whether
+     * the filter matches no rows or all rows of the table.
+     * @param table  Table on which the filter operates.
+     */
+    default ColumnZoneMap.Match zoneMatch(ITable table) {
+        return ColumnZoneMap.Match.Some;
+    }
+
+    /**
+     * A string that identifies the filter; two filters with the same key
+     * select the same rows from a table.  Used to cache filter results.
+     * @return  The key, or null if the filter results should not be cached.
+     */
+    @Nullable
+    default String getCacheKey() {
+        return this.getClass().getName() + ":" + this.toJson();
+    }
 }
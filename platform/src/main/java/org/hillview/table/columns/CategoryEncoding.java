@@ -37,6 +37,23 @@ class CategoryEncoding {
         this.intDecoding = new Int2ObjectOpenHashMap<String>(100);
     }
 
+    /**
+     * Create an encoding where each value is encoded by its index in the dictionary.
+     */
+    CategoryEncoding(String[] dictionary) {
+        this.intEncoding = new Object2IntOpenHashMap<String>(dictionary.length);
+        this.intDecoding = new Int2ObjectOpenHashMap<String>(dictionary.length);
+        for (int i = 0; i < dictionary.length; i++) {
+            this.intEncoding.put(dictionary[i], i);
+            this.intDecoding.put(i, dictionary[i]);
+        }
+    }
+
+    /**
+     * Number of distinct values encoded; codes are between 0 and size - 1.
+     */
+    int size() { return this.intEncoding.size(); }
+
     @Nullable
     String decode(int code) { return this.intDecoding.getOrDefault(code, null); }
 
@@ -19,6 +19,7 @@ package org.hillview.table.columns;
 
 import org.hillview.dataset.api.IJson;
 import org.hillview.sketches.results.BucketsInfo;
+import org.hillview.table.api.IColumn;
 
 import javax.annotation.Nullable;
 
@@ -36,6 +37,12 @@ import javax.annotation.Nullable;
 public abstract class ColumnQuantization implements IJson {
     static final long serialVersionUID = 1;
 
+    /**
+     * Code used for values that are missing or out of range when a column
+     * is encoded as quantization interval indexes.
+     */
+    public static final int MISSING_CODE = -1;
+
     private final String column;
 
     protected ColumnQuantization(String column) {
@@ -113,4 +120,36 @@ public abstract class ColumnQuantization implements IJson {
 
     public abstract String maxAsString();
     public abstract String minAsString();
+
+    /**
+     * Encode the value in a row of a column as the index of its quantization interval.
+     * Values equal to the maximum are encoded as getIntervalCount().
+     * @param column    Column holding the data.
+     * @param rowIndex  Row to encode.
+     * @return          The interval index, or MISSING_CODE if the value is missing or out of range.
+     */
+    public abstract int encode(IColumn column, int rowIndex);
+
+    /**
+     * Implemented by the quantizations of numeric columns.
+     */
+    public interface IDoubleDecoder {
+        /**
+         * Inverse of encode: the value obtained by rounding down.
+         * @param code  A code produced by encode; must not be MISSING_CODE.
+         */
+        double decodeDouble(int code);
+    }
+
+    /**
+     * Implemented by the quantizations of string columns.
+     */
+    public interface IStringDecoder {
+        /**
+         * Inverse of encode: the value obtained by rounding down.
+         * @param code  A code produced by encode; must not be MISSING_CODE.
+         */
+        @Nullable
+        String decodeString(int code);
+    }
 }
@@ -41,7 +41,9 @@ public class DoubleArrayColumn
     public DoubleArrayColumn(final ColumnDescription description,
                              final double[] data) {
         super(description, data.length);
-        this.checkKind(ContentsKind.Double);
+        // Dates, times and durations are also stored as doubles.
+        if (!description.kind.isNumeric() || description.kind == ContentsKind.Integer)
+            throw new RuntimeException("Expected a kind stored as double but have " + description.kind);
         this.data = data;
     }
 
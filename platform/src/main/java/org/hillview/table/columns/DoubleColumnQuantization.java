@@ -19,9 +19,11 @@ package org.hillview.table.columns;
 
 import org.hillview.sketches.results.BucketsInfo;
 import org.hillview.sketches.results.DataRange;
+import org.hillview.table.api.IColumn;
 import org.hillview.utils.Converters;
 
-public class DoubleColumnQuantization extends ColumnQuantization {
+public class DoubleColumnQuantization extends ColumnQuantization
+        implements ColumnQuantization.IDoubleDecoder {
     static final long serialVersionUID = 1;
 
     /**
@@ -81,6 +83,25 @@ public class DoubleColumnQuantization extends ColumnQuantization {
         return Converters.toInt(index);
     }
 
+    @Override
+    public int encode(IColumn column, int rowIndex) {
+        if (column.isMissing(rowIndex))
+            return MISSING_CODE;
+        double value = column.asDouble(rowIndex);
+        if (this.outOfRange(value))
+            return MISSING_CODE;
+        if (value >= this.globalMax)
+            return this.getIntervalCount();
+        return Converters.toInt(Math.floor((value - this.globalMin) / this.granularity));
+    }
+
+    @Override
+    public double decodeDouble(int code) {
+        if (code == this.getIntervalCount())
+            return this.globalMax;
+        return this.globalMin + code * this.granularity;
+    }
+
     @Override
     public int getIntervalCount() {
         double count = ((this.globalMax - this.globalMin) / this.granularity);
@@ -243,6 +243,37 @@ public final class ObjectArrayColumn extends BaseArrayColumn {
         return merged;
     }
 
+    /**
+     * Given several Columns, merge them to a single Column, using the array mergeOrder
+     * produced by RecordOrder.getKWayMergeOrder.  A non-negative value t means that the
+     * next element comes from column t; a negative value -(t+1) means that the next element of
+     * column t is equal to the previous element, so it is skipped.
+     * @param columns    The columns to merge.
+     * @param mergeOrder The order in which to merge the columns.
+     * @return The merged column.
+     */
+    public static ObjectArrayColumn mergeColumns(final List<IColumn> columns,
+                                                 final int[] mergeOrder) {
+        int size = 0;
+        for (int m: mergeOrder)
+            if (m >= 0)
+                size++;
+        final ObjectArrayColumn merged = new ObjectArrayColumn(
+                columns.get(0).getDescription(), size);
+        final int[] positions = new int[columns.size()];
+        int k = 0;
+        for (int m: mergeOrder) {
+            if (m >= 0) {
+                merged.set(k, columns.get(m).getData(positions[m]));
+                positions[m]++;
+                k++;
+            } else {
+                positions[-m - 1]++;
+            }
+        }
+        return merged;
+    }
+
     @Override
     public long hashCode64(int rowIndex, LongHashFunction hash) {
         if (this.isMissing(rowIndex))
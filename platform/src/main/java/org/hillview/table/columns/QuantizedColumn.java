@@ -17,6 +17,9 @@
 
 package org.hillview.table.columns;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.*;
 import org.hillview.utils.Converters;
@@ -28,6 +31,9 @@ import javax.annotation.Nullable;
  * The quantized column mediates access to the column data; when queried it
  * does not return the real values; each value is fit within a bucket of
  * the quantization policy and treated as if it is the lower bound of the bucket.
+ * A quantized column can be materialized: the index of the quantization interval
+ * of each row is then computed once and stored in an array of codes, so that accessing
+ * the data does not need to apply the quantization policy again.
  */
 public class QuantizedColumn extends BaseColumn {
     static final long serialVersionUID = 1;
@@ -39,16 +45,54 @@ public class QuantizedColumn extends BaseColumn {
     @Nullable
     private final ColumnQuantization quantization;
 
+    /**
+     * If not null, the code of each row in the data column, as computed by
+     * ColumnQuantization.encode.
+     */
+    @Nullable
+    private final int[] codes;
+
+    /**
+     * Materialized codes for a column, together with the quantization that produced them.
+     */
+    private static class QuantizedCodes {
+        final String quantization;
+        final int[] codes;
+
+        QuantizedCodes(String quantization, int[] codes) {
+            this.quantization = quantization;
+            this.codes = codes;
+        }
+    }
+
+    /**
+     * Materialized codes, indexed by the data column.  The keys are weak and compared
+     * by identity, so the codes are reclaimed when the column is no longer used.  Since
+     * columns are shared between a table and the tables derived from it by filtering,
+     * all these tables use the same codes.
+     */
+    private static final Cache<IColumn, QuantizedCodes> materialized = CacheBuilder.newBuilder()
+            .weakKeys()
+            // We allow the codes to use at most 1/8 of the heap.
+            .maximumWeight(Runtime.getRuntime().maxMemory() / 8)
+            .weigher((Weigher<IColumn, QuantizedCodes>) (c, q) -> q.codes.length * Integer.BYTES)
+            .build();
+
     public QuantizedColumn(IColumn data, @Nullable ColumnQuantization quantization) {
+        this(data, quantization, null);
+    }
+
+    private QuantizedColumn(IColumn data, @Nullable ColumnQuantization quantization,
+                            @Nullable int[] codes) {
         super(data.getDescription());
         if (quantization != null) {
             if (data.getKind().isString()) {
-                if (!(quantization instanceof StringColumnQuantization))
+                if (!(quantization instanceof ColumnQuantization.IStringDecoder))
                     throw new IllegalArgumentException(
                             "Quantization should be String, but it's " +
                                     quantization.getClass().toString());
             } else {
-                if (!(quantization instanceof DoubleColumnQuantization)) {
+                if (!(quantization instanceof ColumnQuantization.IDoubleDecoder)) {
                     throw new IllegalArgumentException(
                             "Quantization should be Double, but it's " +
                                     quantization.getClass().toString());
@@ -57,6 +101,49 @@ public class QuantizedColumn extends BaseColumn {
         }
         this.data = data;
         this.quantization = quantization;
+        this.codes = codes;
+    }
+
+    /**
+     * Create a quantized column whose codes are materialized.  The codes are computed
+     * only once for each pair (data column, quantization); subsequent calls return
+     * columns that share the same codes.
+     * @param data          Column to quantize.
+     * @param quantization  Quantization policy.  If null the data is not quantized.
+     */
+    public static QuantizedColumn materialize(IColumn data, @Nullable ColumnQuantization quantization) {
+        if (quantization == null || !data.isLoaded())
+            return new QuantizedColumn(data, quantization);
+        String key = quantization.toJson();
+        if (data instanceof QuantizedColumn) {
+            QuantizedColumn qc = (QuantizedColumn)data;
+            // Quantizing twice with the same policy is the same as quantizing once.
+            if (qc.quantization != null && qc.quantization.toJson().equals(key))
+                return materialize(qc.data, quantization);
+        }
+        @Nullable QuantizedCodes q = materialized.getIfPresent(data);
+        if (q == null || !q.quantization.equals(key)) {
+            int[] codes = new int[data.sizeInRows()];
+            for (int i = 0; i < codes.length; i++)
+                codes[i] = quantization.encode(data, i);
+            q = new QuantizedCodes(key, codes);
+            materialized.put(data, q);
+        }
+        return new QuantizedColumn(data, quantization, q.codes);
+    }
+
+    public boolean isMaterialized() {
+        return this.codes != null;
+    }
+
+    /**
+     * The index of the quantization interval that contains the value in the
+     * specified row, or ColumnQuantization.MISSING_CODE if the value is missing or out of range.
+     */
+    public int getCode(int rowIndex) {
+        if (this.codes != null)
+            return this.codes[rowIndex];
+        return Converters.checkNull(this.quantization).encode(this.data, rowIndex);
     }
 
     @Override
@@ -79,6 +166,9 @@ public class QuantizedColumn extends BaseColumn {
             case String:
                 throw new RuntimeException("Not supported for private string columns");
             case Integer:
+                if (this.codes != null)
+                    return ((ColumnQuantization.IDoubleDecoder)this.quantization).decodeDouble(
+                            this.codes[rowIndex]);
                 return this.quantization.roundDown(this.data.getInt(rowIndex));
             case Date:
             case Double:
@@ -97,21 +187,27 @@ public class QuantizedColumn extends BaseColumn {
     public double getDouble(final int rowIndex) {
         if (this.quantization == null)
             return this.data.getDouble(rowIndex);
+        if (this.codes != null)
+            return ((ColumnQuantization.IDoubleDecoder)this.quantization).decodeDouble(this.codes[rowIndex]);
         return this.quantization.roundDown(this.data.getDouble(rowIndex));
     }
 
     @Override
     public int getInt(final int rowIndex) {
-        int v = this.data.getInt(rowIndex);
         if (this.quantization == null)
-            return v;
-        return Converters.toInt(this.quantization.roundDown(v));
+            return this.data.getInt(rowIndex);
+        if (this.codes != null)
+            return Converters.toInt(
+                    ((ColumnQuantization.IDoubleDecoder)this.quantization).decodeDouble(this.codes[rowIndex]));
+        return Converters.toInt(this.quantization.roundDown(this.data.getInt(rowIndex)));
     }
 
     @Override
     public String getString(final int rowIndex) {
         if (this.quantization == null)
             return this.data.getString(rowIndex);
+        if (this.codes != null)
+            return ((ColumnQuantization.IStringDecoder)this.quantization).decodeString(this.codes[rowIndex]);
         return this.quantization.roundDown(this.data.getString(rowIndex));
     }
 
@@ -121,6 +217,8 @@ public class QuantizedColumn extends BaseColumn {
      */
     @Override
     public boolean isMissing(final int rowIndex) {
+        if (this.codes != null)
+            return this.codes[rowIndex] == ColumnQuantization.MISSING_CODE;
         if (this.data.isMissing(rowIndex))
             return true;
         if (this.quantization == null)
@@ -193,7 +291,7 @@ public class QuantizedColumn extends BaseColumn {
 
     @Override
     public IColumn rename(String newName) {
-        return new QuantizedColumn(this.data.rename(newName), this.quantization);
+        return new QuantizedColumn(this.data.rename(newName), this.quantization, this.codes);
     }
 
     @Override
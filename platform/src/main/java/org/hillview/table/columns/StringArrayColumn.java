@@ -51,6 +51,17 @@ public class StringArrayColumn extends BaseArrayColumn
         }
     }
 
+    /**
+     * Create a column from encoded values.
+     * @param codes       For each row the index of its value in the dictionary.
+     * @param dictionary  Distinct values; may contain null, which stands for missing values.
+     */
+    public StringArrayColumn(ColumnDescription description, int[] codes, String[] dictionary) {
+        this(description, codes, new CategoryEncoding(dictionary));
+        if (!description.kind.isString())
+            throw new RuntimeException("Unexpected kind for string column: " + description.kind);
+    }
+
     private StringArrayColumn(ColumnDescription description,
                               int[] data, CategoryEncoding encoding) {
         super(description, data.length);
@@ -86,6 +97,24 @@ public class StringArrayColumn extends BaseArrayColumn
         return this.encoding.decode(this.data[rowIndex]);
     }
 
+    /**
+     * The code of the value in each row.  The array is shared with the column
+     * and should not be modified.
+     */
+    public int[] getCodes() {
+        return this.data;
+    }
+
+    /**
+     * The values of all codes, indexed by code.
+     */
+    public String[] getDictionary() {
+        String[] result = new String[this.encoding.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = this.encoding.decode(i);
+        return result;
+    }
+
     @Override
     public int sizeInRows() {
         return this.data.length;
@@ -19,13 +19,15 @@ package org.hillview.table.columns;
 
 import org.hillview.sketches.results.BucketsInfo;
 import org.hillview.sketches.results.StringQuantiles;
+import org.hillview.table.api.IColumn;
 import org.hillview.utils.JsonList;
 import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
 
-public class StringColumnQuantization extends ColumnQuantization {
+public class StringColumnQuantization extends ColumnQuantization
+        implements ColumnQuantization.IStringDecoder {
     static final long serialVersionUID = 1;
 
     /**
@@ -109,6 +111,29 @@ public class StringColumnQuantization extends ColumnQuantization {
         return index;
     }
 
+    @Override
+    public int encode(IColumn column, int rowIndex) {
+        if (column.isMissing(rowIndex))
+            return MISSING_CODE;
+        String value = column.getString(rowIndex);
+        if (this.outOfRange(value))
+            return MISSING_CODE;
+        assert value != null;
+        if (value.compareTo(this.globalMax) >= 0)
+            return this.leftBoundaries.length;
+        int index = Arrays.binarySearch(leftBoundaries, value);
+        if (index < 0)
+            index = -index - 2;
+        return index;
+    }
+
+    @Override
+    public String decodeString(int code) {
+        if (code == this.leftBoundaries.length)
+            return this.globalMax;
+        return this.leftBoundaries[code];
+    }
+
     @Override
     public String minAsString() {
         return this.leftBoundaries[0];
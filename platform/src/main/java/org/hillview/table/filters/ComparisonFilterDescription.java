@@ -18,6 +18,7 @@
 package org.hillview.table.filters;
 
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.api.*;
 import org.hillview.utils.Converters;
 
@@ -66,6 +67,46 @@ public class ComparisonFilterDescription implements ITableFilterDescription {
         return new ComparisonFilter(table);
     }
 
+    /**
+     * Only equality comparisons are checked against the zone maps.
+     */
+    @Override
+    public ColumnZoneMap.Match zoneMatch(ITable table) {
+        boolean equal = this.comparison.equals("==");
+        if (!equal && !this.comparison.equals("!="))
+            return ColumnZoneMap.Match.Some;
+        ColumnZoneMap zm = ColumnZoneMap.get(table, this.column.name);
+        if (zm == null)
+            return ColumnZoneMap.Match.Some;
+        ColumnZoneMap.Match result;
+        switch (zm.kind) {
+            case String:
+            case Json:
+                if (this.stringValue == null)
+                    return ColumnZoneMap.Match.Some;
+                result = zm.equalTo(this.stringValue, true);
+                break;
+            case Integer:
+                if (this.doubleValue == null)
+                    return ColumnZoneMap.Match.Some;
+                result = zm.equalTo(Converters.toInt(this.doubleValue));
+                break;
+            case Double:
+            case Duration:
+            case Date:
+            case Time:
+            case LocalDate:
+                if (this.doubleValue == null)
+                    return ColumnZoneMap.Match.Some;
+                result = zm.equalTo(this.doubleValue);
+                break;
+            default:
+                return ColumnZoneMap.Match.Some;
+        }
+        // Missing values never compare equal, so != is the complement of ==.
+        return equal ? result : result.not();
+    }
+
     /**
      * This filter maps a given Table to a Table that only contains the given value in the
      * specified column.
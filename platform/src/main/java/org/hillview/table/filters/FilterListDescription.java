@@ -17,6 +17,7 @@
 
 package org.hillview.table.filters;
 
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.table.api.ITableFilter;
@@ -58,4 +59,18 @@ public class FilterListDescription implements ITableFilterDescription {
     public ITableFilter getFilter(ITable table) {
         return new ListFilter(table);
     }
+
+    @Override
+    public ColumnZoneMap.Match zoneMatch(ITable table) {
+        ColumnZoneMap zm = ColumnZoneMap.get(table, this.column);
+        if (zm == null || !zm.kind.isString())
+            return ColumnZoneMap.Match.Some;
+        ColumnZoneMap.Match result = ColumnZoneMap.Match.None;
+        for (String k : this.keep) {
+            if (k == null)
+                return ColumnZoneMap.Match.Some;
+            result = result.or(zm.equalTo(k, true));
+        }
+        return result;
+    }
 }
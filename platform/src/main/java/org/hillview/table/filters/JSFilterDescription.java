@@ -17,14 +17,11 @@
 
 package org.hillview.table.filters;
 
-import org.graalvm.polyglot.Context;
-import org.graalvm.polyglot.Value;
-import org.graalvm.polyglot.proxy.ProxyObject;
 import org.hillview.table.Schema;
 import org.hillview.table.api.ITable;
 import org.hillview.table.api.ITableFilter;
 import org.hillview.table.api.ITableFilterDescription;
-import org.hillview.table.rows.VirtualRowSnapshot;
+import org.hillview.utils.JavascriptEngine;
 
 import java.io.Serializable;
 
@@ -51,27 +48,25 @@ public class JSFilterDescription implements ITableFilterDescription {
     }
 
     class JSFilter implements ITableFilter {
-        private final VirtualRowSnapshot vrs;
-        private final Value function;
-        private final ProxyObject vrsProxy;
+        private final JavascriptEngine.RowFunction function;
 
         JSFilter(ITable table) {
             try {
-                this.vrs = new VirtualRowSnapshot(table, JSFilterDescription.this.info.schema);
-                this.vrsProxy = ProxyObject.fromMap(this.vrs);
-                Context context = Context.newBuilder().allowAllAccess(true).build();
-                // Compiles the JS function
-                context.eval("js", JSFilterDescription.this.info.jsCode);
-                this.function = context.eval("js", "vrs => filter(vrs)");
-                assert this.function.canExecute();
+                this.function = JavascriptEngine.compile(
+                        JSFilterDescription.this.info.jsCode, "filter",
+                        JSFilterDescription.this.info.schema, table);
             } catch (Exception ex) {
                 throw new RuntimeException(ex);
             }
         }
 
         public boolean test(int rowIndex) {
-            this.vrs.setRow(rowIndex);
-            return this.function.execute(this.vrsProxy).asBoolean();
+            return this.function.apply(rowIndex).asBoolean();
+        }
+
+        @Override
+        public void close() {
+            this.function.close();
         }
     }
 
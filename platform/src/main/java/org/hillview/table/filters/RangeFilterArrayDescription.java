@@ -17,6 +17,7 @@
 
 package org.hillview.table.filters;
 
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.api.ITable;
 import org.hillview.table.api.ITableFilter;
 import org.hillview.table.api.ITableFilterDescription;
@@ -40,5 +41,15 @@ public class RangeFilterArrayDescription implements ITableFilterDescription {
             result = new NotFilter(result);
         return result;
     }
+
+    @Override
+    public ColumnZoneMap.Match zoneMatch(ITable table) {
+        ColumnZoneMap.Match result = ColumnZoneMap.Match.All;
+        for (RangeFilterDescription f : this.filters)
+            result = result.and(f.zoneMatch(table));
+        if (this.complement)
+            result = result.not();
+        return result;
+    }
 }
 
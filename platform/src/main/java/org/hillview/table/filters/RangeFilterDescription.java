@@ -18,6 +18,7 @@
 package org.hillview.table.filters;
 
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.api.*;
 import org.hillview.table.columns.ColumnQuantization;
 import org.hillview.table.columns.DoubleColumnQuantization;
@@ -48,6 +49,17 @@ public class RangeFilterDescription implements ITableFilterDescription {
             return new DoubleRangeFilter(col);
     }
 
+    @Override
+    public ColumnZoneMap.Match zoneMatch(ITable table) {
+        ColumnZoneMap zm = ColumnZoneMap.get(table, this.cd.name);
+        if (zm == null)
+            return ColumnZoneMap.Match.Some;
+        if (this.cd.kind.isString())
+            return zm.inRange(this.minString, this.maxString, this.includeMissing);
+        else
+            return zm.inRange(this.min, this.max, this.includeMissing);
+    }
+
     public class DoubleRangeFilter implements ITableFilter {
         final IColumn column;
 
@@ -17,6 +17,7 @@
 
 package org.hillview.table.filters;
 
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.table.api.*;
 
 public class StringColumnFilterDescription implements ITableFilterDescription {
@@ -42,6 +43,14 @@ public class StringColumnFilterDescription implements ITableFilterDescription {
         return new StringColumnFilter(table);
     }
 
+    @Override
+    public ColumnZoneMap.Match zoneMatch(ITable table) {
+        ColumnZoneMap zm = ColumnZoneMap.get(table, this.colName);
+        if (zm == null)
+            return ColumnZoneMap.Match.Some;
+        return zm.matches(this.stringFilterDescription);
+    }
+
     /**
      * This filter maps a given Table to a Table that only contains the given value in the
      * specified column.
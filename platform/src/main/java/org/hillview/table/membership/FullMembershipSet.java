@@ -90,6 +90,20 @@ public class FullMembershipSet implements IMembershipSet {
             return this.setMinus(s.seal());
     }
 
+    @Override
+    public IMembershipSet union(IMembershipSet other) {
+        if (other.getMax() <= this.rowCount)
+            return this;
+        return IMembershipSet.super.union(other);
+    }
+
+    @Override
+    public IMembershipSet intersection(IMembershipSet other) {
+        if (other.getMax() <= this.rowCount)
+            return other;
+        return IMembershipSet.super.intersection(other);
+    }
+
     /**
      * Returns an iterator that runs over the sampled data.
      * @param rate  Sampling rate.
@@ -30,15 +30,22 @@ public class MembershipSetFactory {
     private static final int sizeEstimationSampleSize = 40;
 
     /**
-     * Creates a mutable membership set.
+     * Sets expected to hold fewer rows than this are stored in a hash set, which is
+     * cheaper to build than containers; at this size a container holds a sorted array.
+     */
+    private static final int smallSetSize = 4096;
+
+    /**
+     * Creates a mutable membership set.  Small sets use a SparseMembershipSet; larger
+     * sets adapt their representation to the density of each block of rows, so the
+     * estimated size only needs to tell small sets apart.
      * @param maxSize        Maximum size.
      * @param estimatedSize  Estimated number of elements inside.
      */
     public static IMutableMembershipSet create(int maxSize, int estimatedSize) {
-        if (estimatedSize >= maxSize / 30)
-            return new DenseMembershipSet(maxSize, estimatedSize);
-        else
+        if (estimatedSize < smallSetSize && estimatedSize < maxSize / 30)
             return new SparseMembershipSet(maxSize, estimatedSize);
+        return new RoaringMembershipSet(maxSize);
     }
 
     /**
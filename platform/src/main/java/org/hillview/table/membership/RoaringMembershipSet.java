@@ -0,0 +1,875 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.membership;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IMutableMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ISampledRowIterator;
+import org.hillview.utils.Converters;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A compressed membership set.  The row indexes are split into blocks of 64K rows;
+ * each non-empty block is stored in a container whose representation depends on the
+ * rows it holds: a sorted array of offsets for sparse blocks, a bitmap for dense blocks,
+ * and a list of runs for blocks made of long ranges of consecutive rows.
+ * Set operations between two such sets work container by container, using
+ * word-wide operations on bitmaps.  Iteration is always in increasing row order.
+ * Sealed sets share containers, so they must not be modified.
+ */
+public class RoaringMembershipSet implements IMembershipSet, IMutableMembershipSet, Serializable {
+    static final long serialVersionUID = 1;
+
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    /**
+     * Number of 64-bit words in a bitmap container.
+     */
+    private static final int WORDS = BLOCK_SIZE / 64;
+    /**
+     * Array containers larger than this are converted to bitmaps; at this size
+     * both representations use the same amount of memory.
+     */
+    private static final int MAX_ARRAY_SIZE = 4096;
+    /**
+     * If the size is smaller than this there is no need to sample.
+     */
+    private static final int samplingSizeMinimum = 100;
+
+    private final int max;
+    /**
+     * Container for each block; null for empty blocks.
+     */
+    private final Container[] containers;
+    private int size;
+
+    public RoaringMembershipSet(int max) {
+        this.max = max;
+        this.containers = new Container[blockCount(max)];
+        this.size = 0;
+    }
+
+    private RoaringMembershipSet(int max, Container[] containers) {
+        this.max = max;
+        this.containers = containers;
+        int size = 0;
+        for (Container c : containers)
+            if (c != null)
+                size += c.cardinality();
+        this.size = size;
+    }
+
+    private static int blockCount(int max) {
+        return (max + BLOCK_MASK) >>> BLOCK_BITS;
+    }
+
+    /**
+     * Builds a set containing the same rows as the specified set.
+     */
+    public static RoaringMembershipSet copyOf(IMembershipSet set) {
+        if (set instanceof RoaringMembershipSet)
+            return (RoaringMembershipSet)set;
+        RoaringMembershipSet result = new RoaringMembershipSet(set.getMax());
+        IRowIterator it = set.getIterator();
+        int row = it.getNextRow();
+        while (row >= 0) {
+            result.add(row);
+            row = it.getNextRow();
+        }
+        result.seal();
+        return result;
+    }
+
+    @Override
+    public int getMax() {
+        return this.max;
+    }
+
+    @Override
+    public boolean isMember(int rowIndex) {
+        int block = rowIndex >>> BLOCK_BITS;
+        if (block >= this.containers.length)
+            return false;
+        Container c = this.containers[block];
+        return c != null && c.contains(rowIndex & BLOCK_MASK);
+    }
+
+    @Override
+    public void add(int index) {
+        int block = index >>> BLOCK_BITS;
+        Container c = this.containers[block];
+        if (c == null)
+            c = new ArrayContainer();
+        int before = c.cardinality();
+        c = c.add(index & BLOCK_MASK);
+        this.containers[block] = c;
+        this.size += c.cardinality() - before;
+    }
+
+    /**
+     * Converts each container to its most compact representation.
+     */
+    @Override
+    public IMembershipSet seal() {
+        for (int i = 0; i < this.containers.length; i++)
+            if (this.containers[i] != null)
+                this.containers[i] = this.containers[i].optimize();
+        return this;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * An estimate of the memory used by this set, in bytes.
+     */
+    public long estimateMemory() {
+        long result = 32 + 4L * this.containers.length;
+        for (Container c : this.containers)
+            if (c != null)
+                result += c.estimateMemory();
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new RoaringIterator();
+    }
+
+    /**
+     * Sampling skips over members, so it is always cheaper than
+     * scanning; thus the requested rate is used, unless the set is so
+     * small that it is not worth sampling.
+     */
+    @Override
+    public ISampledRowIterator getIteratorOverSample(double rate, long seed, boolean enforceRate) {
+        if (rate >= 1 || (!enforceRate && this.size < samplingSizeMinimum))
+            return new NoSampleRowIterator(this.getIterator());
+        return new RoaringSampledRowIterator(rate, seed);
+    }
+
+    /**
+     * Returns exactly k distinct rows chosen uniformly at random.
+     */
+    @Override
+    public IMembershipSet sample(int k, long seed) {
+        if (k >= this.size)
+            return this;
+        // Choose the ranks of the rows that are kept, or of the rows that are dropped,
+        // whichever is smaller.
+        boolean keep = k <= this.size / 2;
+        int count = keep ? k : this.size - k;
+        Randomness psg = new Randomness(seed);
+        IntOpenHashSet chosen = new IntOpenHashSet(count);
+        while (chosen.size() < count)
+            chosen.add(psg.nextInt(this.size));
+        int[] ranks = chosen.toIntArray();
+        Arrays.sort(ranks);
+
+        RoaringMembershipSet result = new RoaringMembershipSet(this.max);
+        if (keep) {
+            // Jump directly to the chosen rows.
+            int next = 0;
+            int base = 0;  // rank of the first row in the current block
+            for (int block = 0; block < this.containers.length && next < ranks.length; block++) {
+                Container c = this.containers[block];
+                if (c == null)
+                    continue;
+                int card = c.cardinality();
+                OffsetIterator it = c.getIterator();
+                int position = -1;  // rank in block of the last offset visited
+                while (next < ranks.length && ranks[next] < base + card) {
+                    int r = ranks[next++] - base;
+                    result.add((block << BLOCK_BITS) | it.skip(r - position));
+                    position = r;
+                }
+                base += card;
+            }
+        } else {
+            IRowIterator it = this.getIterator();
+            int next = 0;
+            int rank = 0;
+            int row = it.getNextRow();
+            while (row >= 0) {
+                if (next < ranks.length && ranks[next] == rank)
+                    next++;
+                else
+                    result.add(row);
+                rank++;
+                row = it.getNextRow();
+            }
+        }
+        return result.seal();
+    }
+
+    @Override
+    public IMembershipSet union(IMembershipSet other) {
+        if (other instanceof FullMembershipSet && other.getMax() == this.max)
+            return other;
+        if (!(other instanceof RoaringMembershipSet))
+            return IMembershipSet.super.union(other);
+        RoaringMembershipSet o = (RoaringMembershipSet)other;
+        Container[] result = new Container[Math.max(this.containers.length, o.containers.length)];
+        for (int i = 0; i < result.length; i++) {
+            Container a = i < this.containers.length ? this.containers[i] : null;
+            Container b = i < o.containers.length ? o.containers[i] : null;
+            if (a == null)
+                result[i] = b;
+            else if (b == null)
+                result[i] = a;
+            else
+                result[i] = or(a, b);
+        }
+        return new RoaringMembershipSet(Math.max(this.max, o.max), result);
+    }
+
+    @Override
+    public IMembershipSet intersection(IMembershipSet other) {
+        if (other instanceof FullMembershipSet && other.getMax() >= this.max)
+            return this;
+        if (!(other instanceof RoaringMembershipSet))
+            return IMembershipSet.super.intersection(other);
+        RoaringMembershipSet o = (RoaringMembershipSet)other;
+        Container[] result = new Container[this.containers.length];
+        int common = Math.min(this.containers.length, o.containers.length);
+        for (int i = 0; i < common; i++) {
+            Container a = this.containers[i];
+            Container b = o.containers[i];
+            if (a != null && b != null)
+                result[i] = and(a, b);
+        }
+        return new RoaringMembershipSet(this.max, result);
+    }
+
+    @Override
+    public IMembershipSet setMinus(IMembershipSet other) {
+        if (other instanceof FullMembershipSet && other.getMax() >= this.max)
+            return new EmptyMembershipSet(this.max);
+        if (!(other instanceof RoaringMembershipSet))
+            return IMembershipSet.super.setMinus(other);
+        RoaringMembershipSet o = (RoaringMembershipSet)other;
+        Container[] result = new Container[this.containers.length];
+        for (int i = 0; i < result.length; i++) {
+            Container a = this.containers[i];
+            Container b = i < o.containers.length ? o.containers[i] : null;
+            if (a == null || b == null)
+                result[i] = a;
+            else
+                result[i] = andNot(a, b);
+        }
+        return new RoaringMembershipSet(this.max, result);
+    }
+
+    //////////////////////////////// Containers
+
+    /**
+     * Set of offsets within a block of 64K rows; offsets are between 0 and 65535.
+     */
+    private abstract static class Container implements Serializable {
+        abstract int cardinality();
+
+        abstract boolean contains(int offset);
+
+        /**
+         * Adds an offset to the container.
+         * @return  The container holding the result; may be a different container.
+         */
+        abstract Container add(int offset);
+
+        /**
+         * The container contents as a bitmap.  The result must not be modified.
+         */
+        abstract long[] words();
+
+        abstract int runCount();
+
+        abstract OffsetIterator getIterator();
+
+        /**
+         * An estimate of the memory used by this container, in bytes.
+         */
+        abstract int estimateMemory();
+
+        /**
+         * Convert the container to the representation that uses the least memory.
+         */
+        Container optimize() {
+            int card = this.cardinality();
+            int runs = this.runCount();
+            // Approximate sizes in bytes
+            int runSize = 4 * runs;
+            int arraySize = 2 * card;
+            int bitmapSize = 8 * WORDS;
+            if (runSize < Math.min(arraySize, bitmapSize))
+                return this instanceof RunContainer ? this : RunContainer.fromWords(this.words(), runs);
+            if (card <= MAX_ARRAY_SIZE)
+                return this instanceof ArrayContainer ? ((ArrayContainer)this).trim() :
+                        ArrayContainer.fromWords(this.words(), card);
+            return this instanceof BitmapContainer ? this : new BitmapContainer(this.words().clone(), card);
+        }
+    }
+
+    /**
+     * Iterates over the offsets in a container in increasing order.
+     */
+    private interface OffsetIterator {
+        /**
+         * @return  The next offset, or -1 if there are no more offsets.
+         */
+        int next();
+
+        /**
+         * Advance over a number of offsets.
+         * @param count  Number of offsets to advance over; at least 1.  The caller
+         *               guarantees that there are enough offsets left.
+         * @return       The last offset advanced over.
+         */
+        int skip(int count);
+    }
+
+    private static int runCount(long[] words) {
+        int runs = 0;
+        long previous = 0;
+        for (long w : words) {
+            // A run starts at each bit set whose predecessor is not set.
+            runs += Long.bitCount(w & ~((w << 1) | (previous >>> 63)));
+            previous = w;
+        }
+        return runs;
+    }
+
+    /**
+     * Builds the most compact container from a bitmap.
+     */
+    @Nullable
+    private static Container fromWords(long[] words) {
+        int card = 0;
+        for (long w : words)
+            card += Long.bitCount(w);
+        if (card == 0)
+            return null;
+        if (card <= MAX_ARRAY_SIZE)
+            return ArrayContainer.fromWords(words, card).optimize();
+        return new BitmapContainer(words, card).optimize();
+    }
+
+    @Nullable
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer)
+            return ((ArrayContainer)a).filter(b, true);
+        if (b instanceof ArrayContainer)
+            return ((ArrayContainer)b).filter(a, true);
+        long[] wa = a.words();
+        long[] wb = b.words();
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = wa[i] & wb[i];
+        return fromWords(result);
+    }
+
+    @Nullable
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer &&
+                a.cardinality() + b.cardinality() <= MAX_ARRAY_SIZE)
+            return ((ArrayContainer)a).merge((ArrayContainer)b);
+        long[] wa = a.words();
+        long[] wb = b.words();
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = wa[i] | wb[i];
+        return fromWords(result);
+    }
+
+    @Nullable
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer)
+            return ((ArrayContainer)a).filter(b, false);
+        long[] wa = a.words();
+        long[] wb = b.words();
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = wa[i] & ~wb[i];
+        return fromWords(result);
+    }
+
+    /**
+     * A sorted array of offsets.
+     */
+    private static class ArrayContainer extends Container {
+        static final long serialVersionUID = 1;
+
+        private char[] values;
+        private int count;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int count) {
+            this.values = values;
+            this.count = count;
+        }
+
+        static ArrayContainer fromWords(long[] words, int card) {
+            char[] values = new char[card];
+            int index = 0;
+            for (int i = 0; i < words.length; i++) {
+                long w = words[i];
+                while (w != 0) {
+                    values[index++] = (char)(i * 64 + Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+            return new ArrayContainer(values, card);
+        }
+
+        @Override
+        int estimateMemory() {
+            return 32 + 2 * this.values.length;
+        }
+
+        ArrayContainer trim() {
+            if (this.values.length != this.count)
+                this.values = Arrays.copyOf(this.values, this.count);
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return this.count;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            return Arrays.binarySearch(this.values, 0, this.count, (char)offset) >= 0;
+        }
+
+        @Override
+        Container add(int offset) {
+            int position;
+            // Rows are most often added in increasing order.
+            if (this.count == 0 || this.values[this.count - 1] < offset) {
+                position = this.count;
+            } else {
+                position = Arrays.binarySearch(this.values, 0, this.count, (char)offset);
+                if (position >= 0)
+                    return this;
+                position = -position - 1;
+            }
+            if (this.count == MAX_ARRAY_SIZE) {
+                BitmapContainer bitmap = new BitmapContainer(this.words(), this.count);
+                return bitmap.add(offset);
+            }
+            if (this.count == this.values.length)
+                this.values = Arrays.copyOf(this.values,
+                        Math.min(MAX_ARRAY_SIZE, this.values.length * 2));
+            System.arraycopy(this.values, position, this.values, position + 1, this.count - position);
+            this.values[position] = (char)offset;
+            this.count++;
+            return this;
+        }
+
+        @Override
+        long[] words() {
+            long[] result = new long[WORDS];
+            for (int i = 0; i < this.count; i++) {
+                int v = this.values[i];
+                result[v >>> 6] |= 1L << v;
+            }
+            return result;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int i = 0; i < this.count; i++)
+                if (i == 0 || this.values[i] != this.values[i - 1] + 1)
+                    runs++;
+            return runs;
+        }
+
+        /**
+         * Keep the offsets that are (or are not) in the other container.
+         */
+        @Nullable
+        Container filter(Container other, boolean inOther) {
+            char[] result = new char[this.count];
+            int index = 0;
+            for (int i = 0; i < this.count; i++)
+                if (other.contains(this.values[i]) == inOther)
+                    result[index++] = this.values[i];
+            if (index == 0)
+                return null;
+            return new ArrayContainer(result, index).optimize();
+        }
+
+        Container merge(ArrayContainer other) {
+            char[] result = new char[this.count + other.count];
+            int i = 0, j = 0, index = 0;
+            while (i < this.count && j < other.count) {
+                char a = this.values[i];
+                char b = other.values[j];
+                if (a < b) {
+                    result[index++] = a;
+                    i++;
+                } else if (b < a) {
+                    result[index++] = b;
+                    j++;
+                } else {
+                    result[index++] = a;
+                    i++;
+                    j++;
+                }
+            }
+            while (i < this.count)
+                result[index++] = this.values[i++];
+            while (j < other.count)
+                result[index++] = other.values[j++];
+            return new ArrayContainer(result, index).optimize();
+        }
+
+        @Override
+        OffsetIterator getIterator() {
+            return new OffsetIterator() {
+                int index = 0;
+
+                @Override
+                public int next() {
+                    if (this.index >= ArrayContainer.this.count)
+                        return -1;
+                    return ArrayContainer.this.values[this.index++];
+                }
+
+                @Override
+                public int skip(int count) {
+                    this.index += count;
+                    return ArrayContainer.this.values[this.index - 1];
+                }
+            };
+        }
+    }
+
+    /**
+     * A bitmap with one bit for each offset.
+     */
+    private static class BitmapContainer extends Container {
+        static final long serialVersionUID = 1;
+
+        private final long[] bits;
+        private int count;
+
+        BitmapContainer(long[] bits, int count) {
+            this.bits = bits;
+            this.count = count;
+        }
+
+        @Override
+        int cardinality() {
+            return this.count;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            return (this.bits[offset >>> 6] & (1L << offset)) != 0;
+        }
+
+        @Override
+        int estimateMemory() {
+            return 32 + 8 * WORDS;
+        }
+
+        @Override
+        Container add(int offset) {
+            long mask = 1L << offset;
+            int word = offset >>> 6;
+            if ((this.bits[word] & mask) == 0) {
+                this.bits[word] |= mask;
+                this.count++;
+            }
+            return this;
+        }
+
+        @Override
+        long[] words() {
+            return this.bits;
+        }
+
+        @Override
+        int runCount() {
+            return RoaringMembershipSet.runCount(this.bits);
+        }
+
+        @Override
+        OffsetIterator getIterator() {
+            return new OffsetIterator() {
+                int word = 0;
+                long current = BitmapContainer.this.bits[0];
+
+                @Override
+                public int next() {
+                    while (this.current == 0) {
+                        this.word++;
+                        if (this.word >= WORDS)
+                            return -1;
+                        this.current = BitmapContainer.this.bits[this.word];
+                    }
+                    int result = this.word * 64 + Long.numberOfTrailingZeros(this.current);
+                    this.current &= this.current - 1;
+                    return result;
+                }
+
+                @Override
+                public int skip(int count) {
+                    // Skip whole words first
+                    int bits = Long.bitCount(this.current);
+                    while (count > bits) {
+                        count -= bits;
+                        this.word++;
+                        this.current = BitmapContainer.this.bits[this.word];
+                        bits = Long.bitCount(this.current);
+                    }
+                    for (; count > 1; count--)
+                        this.current &= this.current - 1;
+                    return this.next();
+                }
+            };
+        }
+    }
+
+    /**
+     * A sorted list of disjoint ranges of consecutive offsets.
+     */
+    private static class RunContainer extends Container {
+        static final long serialVersionUID = 1;
+
+        /**
+         * First offset of each run.
+         */
+        private final char[] starts;
+        /**
+         * Length of each run minus 1.
+         */
+        private final char[] lengths;
+        private final int count;
+
+        RunContainer(char[] starts, char[] lengths) {
+            this.starts = starts;
+            this.lengths = lengths;
+            int count = 0;
+            for (char l : lengths)
+                count += l + 1;
+            this.count = count;
+        }
+
+        static RunContainer fromWords(long[] words, int runs) {
+            char[] starts = new char[runs];
+            char[] lengths = new char[runs];
+            int run = -1;
+            int previous = -2;
+            for (int i = 0; i < words.length; i++) {
+                long w = words[i];
+                while (w != 0) {
+                    int offset = i * 64 + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                    if (offset == previous + 1) {
+                        lengths[run]++;
+                    } else {
+                        run++;
+                        starts[run] = (char)offset;
+                    }
+                    previous = offset;
+                }
+            }
+            return new RunContainer(starts, lengths);
+        }
+
+        @Override
+        int cardinality() {
+            return this.count;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            int index = Arrays.binarySearch(this.starts, (char)offset);
+            if (index >= 0)
+                return true;
+            index = -index - 2;
+            return index >= 0 && offset <= this.starts[index] + this.lengths[index];
+        }
+
+        @Override
+        Container add(int offset) {
+            if (this.contains(offset))
+                return this;
+            BitmapContainer bitmap = new BitmapContainer(this.words(), this.count);
+            return bitmap.add(offset);
+        }
+
+        @Override
+        long[] words() {
+            long[] result = new long[WORDS];
+            for (int i = 0; i < this.starts.length; i++) {
+                int start = this.starts[i];
+                int end = start + this.lengths[i];  // inclusive
+                int firstWord = start >>> 6;
+                int lastWord = end >>> 6;
+                long firstMask = -1L << start;
+                long lastMask = -1L >>> (63 - (end & 63));
+                if (firstWord == lastWord) {
+                    result[firstWord] |= firstMask & lastMask;
+                } else {
+                    result[firstWord] |= firstMask;
+                    for (int w = firstWord + 1; w < lastWord; w++)
+                        result[w] = -1L;
+                    result[lastWord] |= lastMask;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        int runCount() {
+            return this.starts.length;
+        }
+
+        @Override
+        int estimateMemory() {
+            return 48 + 4 * this.starts.length;
+        }
+
+        @Override
+        OffsetIterator getIterator() {
+            return new OffsetIterator() {
+                int run = 0;
+                int position = 0;
+
+                @Override
+                public int next() {
+                    if (this.run >= RunContainer.this.starts.length)
+                        return -1;
+                    int result = RunContainer.this.starts[this.run] + this.position;
+                    if (this.position == RunContainer.this.lengths[this.run]) {
+                        this.run++;
+                        this.position = 0;
+                    } else {
+                        this.position++;
+                    }
+                    return result;
+                }
+
+                @Override
+                public int skip(int count) {
+                    while (true) {
+                        int left = RunContainer.this.lengths[this.run] - this.position + 1;
+                        if (count <= left)
+                            break;
+                        count -= left;
+                        this.run++;
+                        this.position = 0;
+                    }
+                    this.position += count - 1;
+                    return this.next();
+                }
+            };
+        }
+    }
+
+    //////////////////////////////// Iterators
+
+    private class RoaringIterator implements IRowIterator {
+        private int block = -1;
+        @Nullable
+        private OffsetIterator current = null;
+
+        @Override
+        public int getNextRow() {
+            while (true) {
+                if (this.current != null) {
+                    int offset = this.current.next();
+                    if (offset >= 0)
+                        return (this.block << BLOCK_BITS) | offset;
+                }
+                do {
+                    this.block++;
+                    if (this.block >= RoaringMembershipSet.this.containers.length)
+                        return -1;
+                } while (RoaringMembershipSet.this.containers[this.block] == null);
+                this.current = RoaringMembershipSet.this.containers[this.block].getIterator();
+            }
+        }
+    }
+
+    /**
+     * An iterator that skips a geometrically-distributed number of members
+     * between consecutive rows returned.  The class has a Randomness object
+     * as a member which makes it non thread-safe.
+     */
+    private class RoaringSampledRowIterator implements ISampledRowIterator {
+        private final Randomness prg;
+        private final double rate;
+        private int block = -1;
+        @Nullable
+        private OffsetIterator current = null;
+        /**
+         * Number of members of the current block that have not been visited yet.
+         */
+        private int left = 0;
+
+        RoaringSampledRowIterator(double rate, long seed) {
+            this.prg = new Randomness(seed);
+            this.rate = rate;
+        }
+
+        @Override
+        public int getNextRow() {
+            Container[] containers = RoaringMembershipSet.this.containers;
+            if (this.block >= containers.length)
+                return -1;
+            int step = this.prg.nextGeometric(this.rate);
+            while (step > this.left) {
+                step -= this.left;
+                do {
+                    this.block++;
+                    if (this.block >= containers.length)
+                        return -1;
+                } while (containers[this.block] == null);
+                this.current = containers[this.block].getIterator();
+                this.left = containers[this.block].cardinality();
+            }
+            this.left -= step;
+            return (this.block << BLOCK_BITS) | Converters.checkNull(this.current).skip(step);
+        }
+
+        @Override
+        public double rate() { return this.rate; }
+    }
+}
@@ -276,4 +276,9 @@ public class RowSnapshot extends BaseRowSnapshot
     public int hashCode() {
         return Converters.foldHash(this.cachedHashcode);
     }
+
+    @Override
+    public long estimateSize() {
+        return 64 + (long)this.fields.size() * 32;
+    }
 }
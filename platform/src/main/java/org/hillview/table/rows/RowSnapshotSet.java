@@ -93,6 +93,15 @@ public class RowSnapshotSet implements Serializable {
             this.includeSet = includeSet;
         }
 
+        /**
+         * The set of rows can be large, so the results are not cached.
+         */
+        @Nullable
+        @Override
+        public String getCacheKey() {
+            return null;
+        }
+
         @Override
         public ITableFilter getFilter(ITable table) {
             return new SpecializedTableFilter(this.set, this.includeSet, table);
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.utils;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool that runs the compute-heavy tasks.  Each task is tagged with a class
+ * and with the session that requested it.  Tasks with the same class and session
+ * form a flow; flows share the threads in proportion to the weight of their class,
+ * and flows of the same class share them equally.  This is stride scheduling: each
+ * flow has a pass value, which advances by the inverse of its weight each time the
+ * flow runs a task, and the flow with the smallest pass runs next.
+ *
+ * To bound the latency of interactive tasks, the other classes can never occupy
+ * all threads.  A session can occupy at most a fraction of the threads while
+ * other sessions have tasks waiting.
+ * Queued tasks can be cancelled; they are discarded when they reach the head of the queue.
+ */
+public class ComputePool extends AbstractExecutorService {
+    /**
+     * Classes of tasks.
+     */
+    public enum TaskClass {
+        /**
+         * Short operations whose results a user is waiting for.
+         */
+        Interactive(8),
+        /**
+         * Operations that load data.
+         */
+        Load(2),
+        /**
+         * Long operations, such as exports.
+         */
+        Background(1);
+
+        final int weight;
+
+        TaskClass(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A task submitted to the pool.
+     */
+    public static class Task {
+        final Runnable runnable;
+        volatile boolean cancelled;
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.cancelled = false;
+        }
+
+        /**
+         * Cancel the task if it has not started yet.
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+
+    private static class Flow {
+        final TaskClass taskClass;
+        final String session;
+        final ArrayDeque<Task> tasks;
+        double pass;
+
+        Flow(TaskClass taskClass, String session) {
+            this.taskClass = taskClass;
+            this.session = session;
+            this.tasks = new ArrayDeque<Task>();
+            this.pass = 0;
+        }
+    }
+
+    private static final String NO_SESSION = "";
+
+    private final int threadCount;
+    /**
+     * Maximum number of threads used by tasks that are not interactive.
+     */
+    private final int nonInteractiveLimit;
+    /**
+     * Maximum number of threads used by one session while other sessions wait.
+     */
+    private final int sessionLimit;
+    private final List<Thread> threads;
+    /**
+     * All flows that have tasks queued, keyed by class and session.
+     */
+    private final HashMap<Pair<TaskClass, String>, Flow> flows;
+    /**
+     * Number of running tasks for each session.
+     */
+    private final HashMap<String, Integer> runningPerSession;
+    private int runningNonInteractive;
+    private int running;
+    private int queued;
+    private long completed;
+    /**
+     * Pass of the last flow scheduled; flows that become active start here.
+     */
+    private double virtualTime;
+    private boolean shutdown;
+
+    public ComputePool(String poolName, int threadCount) {
+        if (threadCount <= 0)
+            throw new RuntimeException("Thread pool needs at least one thread: " + threadCount);
+        this.threadCount = threadCount;
+        this.nonInteractiveLimit = Math.max(1, threadCount - 1);
+        this.sessionLimit = Math.max(1, threadCount * 3 / 4);
+        this.flows = new HashMap<Pair<TaskClass, String>, Flow>();
+        this.runningPerSession = new HashMap<String, Integer>();
+        this.threads = new ArrayList<Thread>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(this::workLoop, poolName + "-" + i);
+            thread.setDaemon(true);
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Submit a task.
+     * @param taskClass  Class of the task.
+     * @param session    Session that requested the task; null if unknown.
+     * @param runnable   Code to run.
+     * @return           A handle that can be used to cancel the task.
+     */
+    public synchronized Task submit(TaskClass taskClass, @Nullable String session, Runnable runnable) {
+        if (this.shutdown)
+            throw new RuntimeException("Thread pool is shut down");
+        Task task = new Task(runnable);
+        String s = session == null ? NO_SESSION : session;
+        Flow flow = this.flows.computeIfAbsent(new Pair<TaskClass, String>(taskClass, s),
+                k -> new Flow(taskClass, s));
+        if (flow.tasks.isEmpty())
+            flow.pass = Math.max(flow.pass, this.virtualTime);
+        flow.tasks.add(task);
+        this.queued++;
+        this.notifyAll();
+        return task;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        this.submit(TaskClass.Interactive, null, runnable);
+    }
+
+    private int getRunning(String session) {
+        return this.runningPerSession.getOrDefault(session, 0);
+    }
+
+    /**
+     * True if some flow of another session than the specified one has tasks waiting.
+     */
+    private boolean othersWaiting(String session) {
+        for (Flow f : this.flows.values())
+            if (!f.session.equals(session) && !f.tasks.isEmpty())
+                return true;
+        return false;
+    }
+
+    /**
+     * Choose the next flow to run a task from; null if no flow can run now.
+     */
+    @Nullable
+    private Flow chooseFlow() {
+        Flow best = null;
+        for (Flow f : this.flows.values()) {
+            // Drop cancelled tasks from the head of the queue.
+            while (!f.tasks.isEmpty() && Converters.checkNull(f.tasks.peek()).cancelled) {
+                f.tasks.poll();
+                this.queued--;
+            }
+            if (f.tasks.isEmpty())
+                continue;
+            if (f.taskClass != TaskClass.Interactive && this.runningNonInteractive >= this.nonInteractiveLimit)
+                continue;
+            if (this.getRunning(f.session) >= this.sessionLimit && this.othersWaiting(f.session))
+                continue;
+            if (best == null || f.pass < best.pass)
+                best = f;
+        }
+        this.flows.values().removeIf(f -> f.tasks.isEmpty() && f.pass <= this.virtualTime);
+        return best;
+    }
+
+    private void workLoop() {
+        while (true) {
+            Task task;
+            Flow flow;
+            synchronized (this) {
+                while (true) {
+                    if (this.shutdown)
+                        return;
+                    flow = this.chooseFlow();
+                    if (flow != null)
+                        break;
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task = Converters.checkNull(flow.tasks.poll());
+                this.queued--;
+                this.virtualTime = flow.pass;
+                flow.pass += 1.0 / flow.taskClass.weight;
+                this.running++;
+                this.runningPerSession.merge(flow.session, 1, Integer::sum);
+                if (flow.taskClass != TaskClass.Interactive)
+                    this.runningNonInteractive++;
+            }
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                HillviewLogger.instance.error("Exception in compute task", t);
+            } finally {
+                synchronized (this) {
+                    this.running--;
+                    this.completed++;
+                    this.runningPerSession.merge(flow.session, -1, Integer::sum);
+                    if (this.runningPerSession.get(flow.session) == 0)
+                        this.runningPerSession.remove(flow.session);
+                    if (flow.taskClass != TaskClass.Interactive)
+                        this.runningNonInteractive--;
+                    this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of tasks waiting, including cancelled tasks not yet discarded.
+     */
+    public synchronized int getQueued() {
+        return this.queued;
+    }
+
+    public synchronized int getRunning() {
+        return this.running;
+    }
+
+    public synchronized long getCompleted() {
+        return this.completed;
+    }
+
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        this.shutdown = true;
+        this.notifyAll();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> result = new ArrayList<Runnable>();
+        synchronized (this) {
+            this.shutdown();
+            for (Flow f : this.flows.values())
+                for (Task t : f.tasks)
+                    if (!t.cancelled)
+                        result.add(t.runnable);
+            this.flows.clear();
+            this.queued = 0;
+        }
+        for (Thread t : this.threads)
+            t.interrupt();
+        return result;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (Thread t : this.threads)
+            if (t.isAlive())
+                return false;
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread t : this.threads) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0)
+                return this.isTerminated();
+            t.join(left);
+        }
+        return this.isTerminated();
+    }
+}
@@ -15,7 +15,7 @@ import java.util.concurrent.ThreadFactory;
  */
 public class ExecutorUtils {
     @Nullable
-    private static ExecutorService computeExecutorService = null;
+    private static ComputePool computeExecutorService = null;
 
     /**
      * This machinery is used to create a separate thread to handle unsubscriptions.
@@ -77,11 +77,15 @@ public class ExecutorUtils {
     /**
      * Use for all compute-heavy tasks.
      */
-    public static synchronized ExecutorService getComputeExecutorService() {
+    public static synchronized ComputePool getComputeExecutorService() {
         if (computeExecutorService == null) {
             int cpuCount = Runtime.getRuntime().availableProcessors();
             HillviewLogger.instance.info("Detect CPUs", "Using {0} processors", cpuCount);
-            computeExecutorService = newNamedThreadPool("computation", cpuCount, -1);
+            ComputePool pool = new ComputePool("computation", cpuCount);
+            MetricsRegistry.instance.gauge("compute_queue_depth", pool::getQueued);
+            MetricsRegistry.instance.gauge("compute_active_threads", pool::getRunning);
+            MetricsRegistry.instance.gauge("compute_completed_tasks", pool::getCompleted);
+            computeExecutorService = pool;
         }
         return computeExecutorService;
     }
@@ -21,6 +21,7 @@ import javax.annotation.Nullable;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
 
@@ -29,25 +30,33 @@ public class HillviewLogFormatter extends SimpleFormatter {
     private final DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
     private final StringBuilder builder = new StringBuilder();
 
-    @SuppressWarnings("ConstantConditions")
     @Override
-    public synchronized String format(LogRecord record) {
-        @Nullable
-        HillviewLogger logger = HillviewLogger.instance;
+    public String format(LogRecord record) {
+        return this.format(record.getMillis(), record.getLevel(), record.getMessage());
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    public String format(long millis, Level level, String message) {
+        return this.format(millis, level, HillviewLogger.instance, message);
+    }
 
+    /**
+     * Format a message written by the specified logger.
+     */
+    public synchronized String format(long millis, Level level, @Nullable HillviewLogger logger, String message) {
         this.builder.setLength(0);
-        String d = df.format(new Date(record.getMillis()));
+        String d = df.format(new Date(millis));
         this.builder.append(d);
         this.builder.append(',');
         if (logger != null)
             this.builder.append(logger.role);
         this.builder.append(',');
-        this.builder.append(record.getLevel().toString());
+        this.builder.append(level.toString());
         this.builder.append(',');
         if (logger != null)
             this.builder.append(logger.machine);
         this.builder.append(',');
-        this.builder.append(record.getMessage());
+        this.builder.append(message);
         this.builder.append(this.newline);
         return builder.toString();
     }
@@ -22,10 +22,19 @@ import io.grpc.netty.shaded.io.netty.util.internal.logging.JdkLoggerFactory;
 import org.apache.commons.text.StringEscapeUtils;
 
 import javax.annotation.Nullable;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.*;
+import java.util.stream.Stream;
 
 /**
  * Core API for logging in hillview.
@@ -35,10 +44,132 @@ import java.util.logging.*;
  * This is a typical log message format
 2017-10-12 02:18:29.084,worker,INFO,ubuntu,pool-1-thread-1,org.hillview.maps.FindCsvFileMapper,apply,Find files in folder,/hillview/data
 _______date_______________who__level_machine___thread___________class__________________________method__message______________args_________
+ *
+ * Logging is asynchronous: the calling thread checks the level, formats the message,
+ * and stores it in a preallocated ring buffer.  A background thread adds the date
+ * and writes the messages in batches.  Since the arguments are formatted on the
+ * calling thread they may be mutated after the call; expensive string arguments
+ * can be wrapped with lazy(), so that they are not computed if the level is disabled.
+ * If the buffer is full messages are dropped, and the number of dropped messages is logged.
  */
 public class HillviewLogger {
-    // Actual logging channel.
-    private final Logger logger;
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * A slot of the ring buffer.  A slot with sequence s can be written by the
+     * producer that claims position s; once written its sequence becomes s + 1,
+     * and the writer can consume it.  After consuming it the sequence advances
+     * by the capacity, so the slot can be reused on the next lap.
+     */
+    private static final class Slot {
+        volatile long sequence;
+        long millis;
+        @Nullable
+        Level level;
+        @Nullable
+        String text;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Finds the frame that called the logger.  On Java 9 and later this uses a
+     * StackWalker, which only visits the top frames of the stack; on Java 8
+     * the whole stack has to be captured.
+     */
+    private static final class CallerFinder {
+        @Nullable
+        private static final MethodHandle walk;
+        @Nullable
+        private static final MethodHandle getClassName;
+        @Nullable
+        private static final MethodHandle getMethodName;
+
+        static {
+            MethodHandle w = null, c = null, m = null;
+            try {
+                Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+                Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Object walker = lookup.findStatic(
+                        walkerClass, "getInstance", MethodType.methodType(walkerClass)).invoke();
+                w = lookup.findVirtual(walkerClass, "walk",
+                        MethodType.methodType(Object.class, Function.class)).bindTo(walker);
+                c = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class));
+                m = lookup.findVirtual(frameClass, "getMethodName", MethodType.methodType(String.class));
+            } catch (Throwable ignored) {
+                w = null;
+            }
+            walk = w;
+            getClassName = c;
+            getMethodName = m;
+        }
+
+        private static final String self = HillviewLogger.class.getName();
+
+        /**
+         * True if the class is the logger or one of its nested classes.
+         */
+        private static boolean isLogger(String className) {
+            return className.startsWith(self) &&
+                    (className.length() == self.length() || className.charAt(self.length()) == '$');
+        }
+
+        private static String frameString(MethodHandle handle, Object frame) {
+            try {
+                return (String)handle.invoke(frame);
+            } catch (Throwable t) {
+                return "";
+            }
+        }
+
+        /**
+         * The class and method that called the logger, separated by a comma.
+         */
+        static String find() {
+            if (walk != null) {
+                MethodHandle c = Converters.checkNull(getClassName);
+                MethodHandle m = Converters.checkNull(getMethodName);
+                Function<Stream<Object>, String> first = frames -> frames
+                        .filter(f -> !isLogger(frameString(c, f)))
+                        .findFirst()
+                        .map(f -> frameString(c, f) + "," + frameString(m, f))
+                        .orElse(",");
+                try {
+                    return (String)walk.invoke(first);
+                } catch (Throwable ignored) {
+                    return ",";
+                }
+            }
+            for (StackTraceElement e : new Throwable().getStackTrace())
+                if (!isLogger(e.getClassName()))
+                    return e.getClassName() + "," + e.getMethodName();
+            return ",";
+        }
+    }
+
+    // Destination of the log messages.
+    private final Writer out;
+    // True if the destination should be closed when the logger shuts down.
+    private final boolean closeOut;
+    private final HillviewLogFormatter formatter;
+    private final Slot[] slots;
+    // Next position to be claimed by a producer.
+    private final AtomicLong tail;
+    // Next position to be consumed by the writer thread; only written by that thread.
+    private volatile long head;
+    // Set while the writer thread is parked waiting for messages.
+    private volatile boolean waiting;
+    private final Thread writer;
+    // Number of messages dropped because the buffer was full.
+    private final AtomicLong dropped;
+    // Integer value of the current logging level.
+    private volatile int level;
+    private volatile boolean stopped;
     // Machine where the core is running.
     final String machine;
     // Role of machine (worker or web server).
@@ -51,96 +182,232 @@ public class HillviewLogger {
     }
 
     /**
-     * Create a Hillview logger.
+     * Create a Hillview logger.  Most code should use the logger set by initialize.
      * @param role      Who is doing the logging: web server, worker, test, etc.
      * @param filename  File where logs are to be written.  If null logs will be written to the
      *                  console.
      */
-    private HillviewLogger(String role, @Nullable String filename) {
+    public HillviewLogger(String role, @Nullable String filename) {
         LogManager manager = LogManager.getLogManager();
         // Disable all default logging
         manager.reset();
-        this.logger = Logger.getLogger("Hillview");
-        this.machine = this.checkCommas(Utilities.getHostName());
-        this.role = this.checkCommas(role);
-        this.logger.setLevel(Level.INFO);
+        this.machine = checkCommas(Utilities.getHostName());
+        this.role = checkCommas(role);
+        this.level = Level.INFO.intValue();
+        this.formatter = new HillviewLogFormatter();
+        this.slots = new Slot[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++)
+            this.slots[i] = new Slot(i);
+        this.tail = new AtomicLong();
+        this.head = 0;
+        this.dropped = new AtomicLong();
+        this.stopped = false;
 
-        Formatter form = new HillviewLogFormatter();
-        Handler handler;
+        OutputStream stream;
         if (filename != null) {
             try {
-                handler = new FileHandler(filename);
+                stream = new FileOutputStream(filename);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         } else {
-            handler = new ConsoleHandler();
+            stream = System.err;
         }
-        handler.setFormatter(form);
-        logger.addHandler(handler);
+        this.closeOut = filename != null;
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        this.writer = new Thread(this::writeLoop, "logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
         File currentDirectory = new File(new File(".").getAbsolutePath());
         this.info("Starting logger", "Working directory: {0}", currentDirectory);
-
-        // Redirect existing loggers to the same file
-        /*
-        Enumeration<String> e = manager.getLoggerNames();
-        while (e.hasMoreElements()) {
-            String ln = e.nextElement();
-            if (ln.equals("Hillview")) continue;
-            Logger logger = manager.getLogger(ln);
-            logger.addHandler(handler);
-            this.info("Intercepted logger", "{0}", ln);
-        }
-        */
     }
 
     public static void initialize(String role, @Nullable String filename) {
+        HillviewLogger previous = instance;
         instance = new HillviewLogger(role, filename);
+        previous.shutdown();
     }
 
     public void setLogLevel(final Level level) {
-        this.logger.setLevel(level);
+        this.level = level.intValue();
+    }
+
+    /**
+     * Fast check to use before computing expensive logging arguments.
+     */
+    public boolean isLoggable(final Level level) {
+        return level.intValue() >= this.level && this.level != Level.OFF.intValue();
+    }
+
+    public boolean isInfoEnabled() {
+        return this.isLoggable(Level.INFO);
+    }
+
+    /**
+     * An argument that is only computed if the message is logged.
+     */
+    public static Object lazy(Supplier<String> supplier) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * Write all messages logged so far; waits at most one second.
+     */
+    public void flush() {
+        long target = this.tail.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (this.head < target && this.writer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(this.writer);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
-    @SuppressWarnings("unused")
+    /**
+     * Write all messages logged so far and close the output.
+     */
     public void shutdown() {
-        Handler[] hs = this.logger.getHandlers();
-        for (Handler h : hs)
-            h.close();
+        this.flush();
+        this.stopped = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void info(String message, String format, Object... arguments) {
-        if (!this.logger.isLoggable(Level.INFO))
+        if (!this.isLoggable(Level.INFO))
             return;
-        String text = this.createMessage(message, format, arguments);
-        this.logger.info(text);
+        this.log(Level.INFO, message, format, arguments);
     }
 
     public void warn(String message, String format, Object... arguments) {
-        if (!this.logger.isLoggable(Level.WARNING))
+        if (!this.isLoggable(Level.WARNING))
             return;
-        String text = this.createMessage(message, format, arguments);
-        this.logger.warning(text);
+        this.log(Level.WARNING, message, format, arguments);
     }
 
     private void debug(String message, String format, Object... arguments) {
-        if (!this.logger.isLoggable(Level.INFO))
+        if (!this.isLoggable(Level.FINE))
             return;
-        String text = this.createMessage(message, format, arguments);
-        this.logger.log(Level.INFO, text);
+        this.log(Level.FINE, message, format, arguments);
     }
 
     public void error(String message, Throwable ex) {
-        String text = this.createMessage(message, "{0}", Utilities.throwableToString(ex));
-        this.logger.severe(text);
+        if (!this.isLoggable(Level.SEVERE))
+            return;
+        this.log(Level.SEVERE, message, "{0}", new Object[] { Utilities.throwableToString(ex) });
     }
 
     public void error(String message, String format, Object... arguments) {
-        String text = this.createMessage(message, format, arguments);
-        this.logger.severe(text);
+        if (!this.isLoggable(Level.SEVERE))
+            return;
+        this.log(Level.SEVERE, message, format, arguments);
     }
 
-    private String checkCommas(String str) {
+    private void log(Level level, String message, String format, Object[] arguments) {
+        String text = this.createMessage(CallerFinder.find(), message, format, arguments);
+        if (!this.offer(System.currentTimeMillis(), level, text))
+            this.dropped.incrementAndGet();
+    }
+
+    /**
+     * Store a message in the ring buffer.
+     * @return  False if the buffer is full.
+     */
+    private boolean offer(long millis, Level level, String text) {
+        while (true) {
+            long position = this.tail.get();
+            Slot slot = this.slots[(int)(position & MASK)];
+            long sequence = slot.sequence;
+            if (sequence < position)
+                // The writer has not consumed this slot on the previous lap.
+                return false;
+            if (sequence == position && this.tail.compareAndSet(position, position + 1)) {
+                slot.millis = millis;
+                slot.level = level;
+                slot.text = text;
+                slot.sequence = position + 1;
+                if (this.waiting)
+                    LockSupport.unpark(this.writer);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Write the messages available in the buffer, at most one batch.
+     * @return  The number of messages written.
+     */
+    private int writeBatch() throws IOException {
+        int count = 0;
+        long position = this.head;
+        while (count < BATCH_SIZE) {
+            Slot slot = this.slots[(int)(position & MASK)];
+            if (slot.sequence != position + 1)
+                break;
+            this.out.write(this.formatter.format(
+                    slot.millis, Converters.checkNull(slot.level), this, Converters.checkNull(slot.text)));
+            slot.text = null;
+            slot.level = null;
+            slot.sequence = position + CAPACITY;
+            position++;
+            count++;
+        }
+        long lost = this.dropped.getAndSet(0);
+        if (lost > 0) {
+            String text = this.createMessage(",", "Dropped log messages", "{0}", new Object[] { lost });
+            this.out.write(this.formatter.format(System.currentTimeMillis(), Level.WARNING, this, text));
+        }
+        if (count > 0 || lost > 0)
+            this.out.flush();
+        this.head = position;
+        return count;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean stopping = this.stopped;
+            int count;
+            try {
+                count = this.writeBatch();
+            } catch (IOException ex) {
+                System.err.println("Cannot write log: " + ex.getMessage());
+                count = 0;
+            }
+            if (count > 0)
+                continue;
+            if (stopping)
+                break;
+            this.waiting = true;
+            Slot next = this.slots[(int)(this.head & MASK)];
+            if (next.sequence != this.head + 1 && !this.stopped)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            this.waiting = false;
+        }
+        try {
+            if (this.closeOut)
+                this.out.close();
+            else
+                this.out.flush();
+        } catch (IOException ex) {
+            System.err.println("Cannot close log: " + ex.getMessage());
+        }
+    }
+
+    private static String checkCommas(String str) {
         if (str.contains(",")) {
             HillviewLogger.instance.error("Log message should contain no commas", "{0}", str);
             str = str.replace(",", ";");
@@ -148,18 +415,23 @@ public class HillviewLogger {
         return str;
     }
 
-    private String createMessage(String message, String format, Object... arguments) {
-        message = this.checkCommas(message);
-        String text = MessageFormat.format(format, arguments);
+    /**
+     * Format a message.
+     * @param caller  Class and method that logged the message, separated by a comma.
+     */
+    private String createMessage(String caller, String message, String format, Object[] arguments) {
+        message = checkCommas(message);
+        String text;
+        try {
+            text = MessageFormat.format(format, arguments);
+        } catch (Exception ex) {
+            text = "Cannot format log message: " + ex;
+        }
         int len = text.length();
         if (len > 20000)
             text = text.substring(0, 19500) + "... (" + (len - 19500) + " more)";
-        Thread current = Thread.currentThread();
-        StackTraceElement[] stackTraceElements = current.getStackTrace();
-        StackTraceElement caller = stackTraceElements[3];
         String quoted = this.quote(text);
-        return String.join(",", current.getName(), caller.getClassName(),
-                caller.getMethodName(), message, quoted);
+        return String.join(",", Thread.currentThread().getName(), caller, message, quoted);
     }
 
     private String quote(String message) {
@@ -55,4 +55,17 @@ public class HostAndPort implements IJson {
     public String toString() {
         return this.host + ":" + this.port;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HostAndPort other = (HostAndPort) o;
+        return this.port == other.port && this.host.equals(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.host.hashCode() + this.port;
+    }
 }
@@ -31,8 +31,9 @@ import java.lang.reflect.Type;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Describes the list of hosts running the hillview service.
@@ -40,16 +41,34 @@ import java.util.stream.Collectors;
  *          {
  *              "serverList": ["192.168.0.1:1234", "192.168.0.2:1234"]
  *          }
+ * Each host may carry a label describing its location, e.g., its rack.
  */
 public final class HostList implements IJson {
     static final long serialVersionUID = 1;
 
     private final List<HostAndPort> serverList;
+    /**
+     * Location label of each host, indexed by the string representation of the host.
+     */
+    private final HashMap<String, String> labels;
 
     public int size() { return this.serverList.size(); }
 
     public HostList(final List<HostAndPort> serverList) {
+        this(serverList, new HashMap<String, String>());
+    }
+
+    public HostList(final List<HostAndPort> serverList, final HashMap<String, String> labels) {
         this.serverList = serverList;
+        this.labels = labels;
+    }
+
+    /**
+     * The location label of a host; hosts without a label are labeled with their host name.
+     */
+    public String getLabel(HostAndPort host) {
+        String label = this.labels.get(host.toString());
+        return label == null ? host.getHost() : label;
     }
 
     public List<HostAndPort> getServerList() {
@@ -75,11 +94,23 @@ public final class HostList implements IJson {
         }
     }
 
+    /**
+     * Read a list of hosts from a file.  Each line has the form host:port,
+     * optionally followed by whitespace and a location label.
+     */
     public static HostList fromFile(String filename) throws IOException {
         final List<String> lines = Files.readAllLines(Paths.get(filename), Charset.defaultCharset());
-        final List<HostAndPort> hostAndPorts = lines.stream()
-                .map(HostAndPort::fromString)
-                .collect(Collectors.toList());
-        return new HostList(hostAndPorts);
+        final List<HostAndPort> hostAndPorts = new ArrayList<HostAndPort>();
+        final HashMap<String, String> labels = new HashMap<String, String>();
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts[0].isEmpty())
+                continue;
+            HostAndPort host = HostAndPort.fromString(parts[0]);
+            hostAndPorts.add(host);
+            if (parts.length > 1)
+                labels.put(host.toString(), parts[1]);
+        }
+        return new HostList(hostAndPorts, labels);
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.hillview.dataset.api.IJson;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Process-wide support for running user-supplied JavaScript functions over table rows.
+ * All contexts share a single polyglot engine, so code compiled once is reused across
+ * partitions and across repeated executions of the same operation.
+ * Each compiled function gets a fresh context, so that state created by user code
+ * (globals, modified prototypes, closures) is never visible to other operations.
+ * The context is released when the function is closed.
+ */
+public class JavascriptEngine {
+    private static final Engine engine = Engine.create();
+    /**
+     * Compiled sources, indexed by the source code.
+     */
+    private static final Cache<String, Source> sources = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    /**
+     * A JavaScript function that is called with the values of a row.
+     * The row is passed to the user function as an object indexed by column names,
+     * but it crosses the language boundary as a list of positional arguments.
+     */
+    public static class RowFunction implements AutoCloseable {
+        private final Context context;
+        private final Value function;
+        private final IColumn[] columns;
+        private final Object[] arguments;
+
+        RowFunction(Context context, Value function, IColumn[] columns, int argumentCount) {
+            this.context = context;
+            this.function = function;
+            this.columns = columns;
+            this.arguments = new Object[argumentCount];
+        }
+
+        /**
+         * Invoke the function on the specified row.
+         * @param rowIndex  Row index in the table.
+         * @return          The value returned by the JavaScript function.
+         */
+        public Value apply(int rowIndex) {
+            int arg = 0;
+            for (IColumn col : this.columns) {
+                ContentsKind kind = col.getKind();
+                boolean missing = col.isMissing(rowIndex);
+                if (kind == ContentsKind.Interval) {
+                    this.arguments[arg++] = missing ? null : col.getEndpoint(rowIndex, true);
+                    this.arguments[arg++] = missing ? null : col.getEndpoint(rowIndex, false);
+                    continue;
+                }
+                Object value;
+                if (missing)
+                    value = null;
+                else if (kind == ContentsKind.String || kind == ContentsKind.Json)
+                    value = col.getString(rowIndex);
+                else if (kind == ContentsKind.Integer)
+                    value = col.getInt(rowIndex);
+                else if (kind == ContentsKind.None)
+                    value = null;
+                else
+                    value = col.getDouble(rowIndex);
+                this.arguments[arg++] = value;
+            }
+            return this.function.execute(this.arguments);
+        }
+
+        /**
+         * Releases the context in which the function was evaluated.  The
+         * values returned by the function cannot be used afterwards.
+         */
+        @Override
+        public void close() {
+            this.context.close();
+        }
+    }
+
+    /**
+     * Generates a JavaScript expression that converts an argument to the
+     * representation expected by user code.
+     */
+    private static String convertArgument(ContentsKind kind, String arg) {
+        switch (kind) {
+            case Date:
+            case Time:
+                return arg + " == null ? null : new Date(" + arg + ")";
+            case LocalDate:
+                return arg + " == null ? null : new Date(" + arg +
+                        " + new Date(" + arg + ").getTimezoneOffset() * 60000)";
+            default:
+                return arg;
+        }
+    }
+
+    private static Source getSource(String code) {
+        try {
+            return sources.get(code, () -> Source.newBuilder("js", code, "hillview.js").build());
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Creates a function that invokes a user-defined JavaScript function on rows of a table.
+     * @param userCode      JavaScript code that defines a function.
+     * @param functionName  Name of the function defined by userCode; it receives a row.
+     * @param schema        Schema of the columns that are visible to the function.
+     * @param table         Table whose rows will be supplied to the function.
+     * @return              A function that must be closed after use.
+     */
+    public static RowFunction compile(String userCode, String functionName, Schema schema, ITable table) {
+        List<String> names = schema.getColumnNames();
+        List<IColumn> columns = table.getLoadedColumns(names);
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder row = new StringBuilder();
+        int arg = 0;
+        for (String name : names) {
+            ColumnDescription desc = schema.getDescription(name);
+            if (arg > 0) {
+                parameters.append(",");
+                row.append(",");
+            }
+            row.append(IJson.gsonInstance.toJson(name)).append(":");
+            if (desc.kind == ContentsKind.Interval) {
+                String start = "a" + arg++;
+                String end = "a" + arg++;
+                parameters.append(start).append(",").append(end);
+                row.append(start).append(" == null ? null : [").append(start)
+                        .append(",").append(end).append("]");
+            } else {
+                String a = "a" + arg++;
+                parameters.append(a);
+                row.append(convertArgument(desc.kind, a));
+            }
+        }
+        // The user code is evaluated in its own scope, so nothing leaks into the global scope.
+        String code = "(function() {\n" + userCode + "\n;\n" +
+                "var f = " + functionName + ";\n" +
+                "return function(" + parameters + ") { return f({" + row + "}); };\n" +
+                "})()";
+        Source source = getSource(code);
+        Context context = Context.newBuilder("js").engine(engine).build();
+        try {
+            Value function = context.eval(source);
+            if (!function.canExecute())
+                throw new RuntimeException("Could not compile JavaScript function " + functionName);
+            return new RowFunction(context, function, columns.toArray(new IColumn[0]), arg);
+        } catch (RuntimeException ex) {
+            context.close();
+            throw ex;
+        }
+    }
+}
@@ -111,4 +111,9 @@ public class JsonGroups<R extends IJsonSketchResult> implements IJsonSketchResul
                         new JsonGroups<Count>(data[0].length, new Count(0)):
                         fromArray(data[index]));
     }
+
+    @Override
+    public long estimateSize() {
+        return this.perBucket.estimateSize() + this.perMissing.estimateSize();
+    }
 }
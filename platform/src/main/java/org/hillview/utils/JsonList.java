@@ -18,6 +18,7 @@
 package org.hillview.utils;
 
 import org.hillview.dataset.api.IJsonSketchResult;
+import org.hillview.dataset.api.ISketchResult;
 
 import java.util.*;
 import java.util.function.BiFunction;
@@ -199,4 +200,12 @@ public class JsonList<T> implements List<T>, IJsonSketchResult {
 
     @Override
     public String toString() { return this.data.toString(); }
+
+    @Override
+    public long estimateSize() {
+        long size = 64;
+        for (T t : this.data)
+            size += ISketchResult.sizeOf(t);
+        return size;
+    }
 }
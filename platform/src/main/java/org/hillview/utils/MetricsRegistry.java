@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.utils;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of runtime metrics.  Counters are incremented on the hot
+ * paths; gauges are sampled when the metrics are read.  The metrics can be
+ * scraped over HTTP in the Prometheus text format, or queried with the
+ * GetMetrics control message.
+ * Metric names may carry labels, in the form name{label="value"}.
+ */
+public class MetricsRegistry {
+    public static final MetricsRegistry instance = new MetricsRegistry();
+
+    private static final String PREFIX = "hillview_";
+
+    private final ConcurrentHashMap<String, LongAdder> counters;
+    private final ConcurrentHashMap<String, LongSupplier> gauges;
+
+    private MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<String, LongAdder>();
+        this.gauges = new ConcurrentHashMap<String, LongSupplier>();
+        this.registerJvmGauges();
+    }
+
+    private void registerJvmGauges() {
+        this.gauge("jvm_heap_used_bytes", () -> heap().getUsed());
+        this.gauge("jvm_heap_committed_bytes", () -> heap().getCommitted());
+        this.gauge("jvm_heap_max_bytes", () -> heap().getMax());
+        this.gauge("jvm_gc_count", () -> {
+            long result = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+                result += Math.max(gc.getCollectionCount(), 0);
+            return result;
+        });
+        this.gauge("jvm_gc_time_ms", () -> {
+            long result = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+                result += Math.max(gc.getCollectionTime(), 0);
+            return result;
+        });
+        this.gauge("jvm_threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private static MemoryUsage heap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+    /**
+     * A name with a single label.
+     */
+    public static String labeled(String name, String label, String value) {
+        return name + "{" + label + "=\"" + value + "\"}";
+    }
+
+    public void increment(String counter) {
+        this.add(counter, 1);
+    }
+
+    public void add(String counter, long value) {
+        this.counters.computeIfAbsent(counter, k -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Register a gauge; registering a gauge with an existing name replaces it.
+     * Gauges that read the state of an object that can be discarded should carry
+     * a label that identifies the object, and be removed with the object.
+     * @param name   Name of the gauge.
+     * @param value  Function that reads the current value of the gauge.
+     */
+    public void gauge(String name, LongSupplier value) {
+        this.gauges.put(name, value);
+    }
+
+    public void removeGauge(String name) {
+        this.gauges.remove(name);
+    }
+
+    public long getCounter(String counter) {
+        LongAdder adder = this.counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * The current values of all metrics, sorted by name.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : this.counters.entrySet())
+            result.put(e.getKey(), e.getValue().sum());
+        for (Map.Entry<String, LongSupplier> e : this.gauges.entrySet()) {
+            try {
+                result.put(e.getKey(), e.getValue().getAsLong());
+            } catch (Exception ex) {
+                HillviewLogger.instance.error("Cannot read gauge " + e.getKey(), ex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Name of a metric without its labels.
+     */
+    private static String family(String name) {
+        int brace = name.indexOf('{');
+        return brace < 0 ? name : name.substring(0, brace);
+    }
+
+    /**
+     * All metrics in the Prometheus text format, one per line.  The metrics
+     * are grouped by name, and each group is preceded by its type.
+     */
+    public String toText() {
+        SortedMap<String, Long> snapshot = this.snapshot();
+        SortedMap<String, SortedMap<String, Long>> families = new TreeMap<String, SortedMap<String, Long>>();
+        for (Map.Entry<String, Long> e : snapshot.entrySet())
+            families.computeIfAbsent(family(e.getKey()), k -> new TreeMap<String, Long>())
+                    .put(e.getKey(), e.getValue());
+        Set<String> counterFamilies = new HashSet<String>();
+        for (String name : this.counters.keySet())
+            counterFamilies.add(family(name));
+
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, SortedMap<String, Long>> f : families.entrySet()) {
+            String type = counterFamilies.contains(f.getKey()) ? "counter" : "gauge";
+            builder.append("# TYPE ").append(PREFIX).append(f.getKey()).append(" ")
+                    .append(type).append("\n");
+            for (Map.Entry<String, Long> e : f.getValue().entrySet())
+                builder.append(PREFIX).append(e.getKey()).append(" ").append(e.getValue()).append("\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Start an HTTP server that serves the metrics at /metrics.
+     * @param port  Port to listen on; if 0 a free port is chosen.
+     * @return      The port the server listens on.
+     */
+    public int startHttpEndpoint(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = this.toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(ExecutorUtils.newNamedThreadPool("metrics", 1, -1));
+        server.start();
+        int result = server.getAddress().getPort();
+        HillviewLogger.instance.info("Metrics endpoint started", "port {0}", result);
+        return result;
+    }
+}
@@ -18,6 +18,7 @@
 package org.hillview.utils;
 
 import org.hillview.dataset.api.IJsonSketchResult;
+import org.hillview.dataset.api.ISketchResult;
 
 import javax.annotation.Nullable;
 import java.util.Objects;
@@ -60,4 +61,9 @@ public class Pair<T, S> implements IJsonSketchResult {
         result = (31 * result) + ((this.second != null) ? this.second.hashCode() : 0);
         return result;
     }
+
+    @Override
+    public long estimateSize() {
+        return 32 + ISketchResult.sizeOf(this.first) + ISketchResult.sizeOf(this.second);
+    }
 }
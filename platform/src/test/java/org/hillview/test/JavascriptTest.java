@@ -184,6 +184,24 @@ public class JavascriptTest extends BaseTest {
                 "Bill,20\n", data);
     }
 
+    @Test
+    public void testIsolation() {
+        // Global state created by one execution is not visible to the next one.
+        ITable table = TestTables.testRepTable();
+        LocalDataSet<ITable> lds = new LocalDataSet<ITable>(table);
+        String function = "function map(row) { globalThis.count = (globalThis.count || 0) + 1; " +
+                "return globalThis.count; }";
+        CreateColumnJSMap.Info info = new CreateColumnJSMap.Info(
+                function, table.getSchema(), "Count", ContentsKind.Integer);
+        for (int i = 0; i < 2; i++) {
+            IDataSet<ITable> mapped = lds.blockingMap(new CreateColumnJSMap(info));
+            ITable outTable = ((LocalDataSet<ITable>)mapped).data;
+            Assert.assertNotNull(outTable);
+            int first = outTable.getMembershipSet().getIterator().getNextRow();
+            Assert.assertEquals(1, outTable.getLoadedColumn("Count").getInt(first));
+        }
+    }
+
     @Test
     public void testDate() {
         ITable table = TestTables.testRepTable();
@@ -284,4 +302,27 @@ public class JavascriptTest extends BaseTest {
                 "John,30," + p.parseLocalDate("2000-01-01") + "," + p.parseLocalDate("2010-01-01") + "\n" +
                 "Tom,10," + p.parseLocalDate("1980-01-01") + ","+ p.parseLocalDate("1990-01-01") + "\n", data);
     }
+
+    @Test
+    public void testMissingAcrossPartitions() {
+        ITable table = TestTables.getMissingIntTable(1000, 1);
+        String col = table.getSchema().getColumnNames().get(0);
+        String function = "function filter(row) { return row[" +
+                "'" + col + "'] == null; }";
+        JSFilterDescription.Info info = new JSFilterDescription.Info(table.getSchema(), function);
+        FilterMap map = new FilterMap(new JSFilterDescription(info));
+        int expected = 0;
+        IColumn column = table.getLoadedColumn(col);
+        for (int i = 0; i < table.getNumOfRows(); i++)
+            if (column.isMissing(i))
+                expected++;
+        // The same compiled code is reused for all partitions.
+        int found = 0;
+        for (ITable part : TestTables.splitTable(table, 100)) {
+            ITable filtered = map.apply(part);
+            Assert.assertNotNull(filtered);
+            found += filtered.getNumOfRows();
+        }
+        Assert.assertEquals(expected, found);
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.dataset;
+
+import org.hillview.dataset.AggregationTree;
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HostAndPort;
+import org.hillview.utils.HostList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+@net.jcip.annotations.NotThreadSafe
+public class AggregationTreeTest extends BaseTest {
+    private static class Sum implements ISketch<Integer, DataSetTest.IntegerWrapper> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public DataSetTest.IntegerWrapper zero() {
+            return new DataSetTest.IntegerWrapper(0);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper add(@Nullable DataSetTest.IntegerWrapper left,
+                                              @Nullable DataSetTest.IntegerWrapper right) {
+            return new DataSetTest.IntegerWrapper(
+                    Converters.checkNull(left).value + Converters.checkNull(right).value);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper create(@Nullable Integer data) {
+            return new DataSetTest.IntegerWrapper(Converters.checkNull(data));
+        }
+    }
+
+    private static void check(AggregationTree.Node node, int fanOut, HashMap<String, Integer> leaves) {
+        Assert.assertTrue(node.children.size() <= fanOut);
+        if (node.level == 0) {
+            Assert.assertTrue(node.children.isEmpty());
+            leaves.merge(node.server.toString(), 1, Integer::sum);
+            return;
+        }
+        boolean aggregatorIsChild = false;
+        for (AggregationTree.Node c : node.children) {
+            Assert.assertTrue(c.level < node.level);
+            if (c.server.toString().equals(node.server.toString()))
+                aggregatorIsChild = true;
+            check(c, fanOut, leaves);
+        }
+        Assert.assertTrue(aggregatorIsChild);
+    }
+
+    @Test
+    public void testShape() {
+        List<HostAndPort> hosts = new ArrayList<HostAndPort>();
+        HashMap<String, String> racks = new HashMap<String, String>();
+        for (int i = 0; i < 100; i++) {
+            HostAndPort h = HostAndPort.fromParts("10.0.0." + i, 3569);
+            hosts.add(h);
+            racks.put(h.toString(), "rack" + (i % 4));
+        }
+        HostList workers = new HostList(hosts, racks);
+        List<AggregationTree.Node> roots = AggregationTree.build(workers, 8);
+        Assert.assertTrue(roots.size() <= 8);
+        HashMap<String, Integer> leaves = new HashMap<String, Integer>();
+        for (AggregationTree.Node n : roots) {
+            Assert.assertEquals(2, n.level);
+            check(n, 8, leaves);
+        }
+        Assert.assertEquals(100, leaves.size());
+        for (int count : leaves.values())
+            Assert.assertEquals(1, count);
+        // Workers on the same rack are aggregated together.
+        for (AggregationTree.Node n : roots)
+            for (AggregationTree.Node c : n.children)
+                for (AggregationTree.Node leaf : c.children)
+                    Assert.assertEquals(workers.getLabel(c.server), workers.getLabel(leaf.server));
+
+        List<AggregationTree.Node> flat = AggregationTree.build(workers, 128);
+        Assert.assertEquals(100, flat.size());
+    }
+
+    @Test
+    public void testRemoteTree() throws IOException {
+        final int servers = 5;
+        List<HillviewServer> started = new ArrayList<HillviewServer>();
+        List<HostAndPort> hosts = new ArrayList<HostAndPort>();
+        try {
+            for (int i = 0; i < servers; i++) {
+                HostAndPort h = HostAndPort.fromParts("127.0.0.1", 1250 + i);
+                hosts.add(h);
+                started.add(new HillviewServer(h, new LocalDataSet<Integer>(i + 1)));
+            }
+            IDataSet<Integer> root = AggregationTree.createCluster(new HostList(hosts), 2);
+            DataSetTest.IntegerWrapper result = root.blockingSketch(new Sum());
+            Assert.assertNotNull(result);
+            Assert.assertEquals(15, result.intValue());
+
+            // Rebuild the tree after a worker leaves.
+            root = AggregationTree.createCluster(new HostList(hosts.subList(0, servers - 1)), 3);
+            result = root.blockingSketch(new Sum());
+            Assert.assertNotNull(result);
+            Assert.assertEquals(10, result.intValue());
+        } finally {
+            for (HillviewServer s : started)
+                s.shutdown();
+        }
+    }
+}
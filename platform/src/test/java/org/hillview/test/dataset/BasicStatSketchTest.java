@@ -20,6 +20,8 @@ package org.hillview.test.dataset;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.sketches.*;
 import org.hillview.sketches.results.BasicColStats;
+import org.hillview.sketches.results.DataRange;
+import org.hillview.table.ColumnZoneMap;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.JsonList;
 import org.hillview.utils.TestTables;
@@ -77,4 +79,41 @@ public class BasicStatSketchTest extends BaseTest {
         Assert.assertEquals("Tom", result.get(0).maxString);
         Assert.assertEquals("Bill", result.get(0).minString);
     }
+
+    @Test
+    public void StatisticsCatalogTest() {
+        Table table = TestTables.testRepTable();
+        String colName = "Age";
+        // The range comes from the zone map, without scanning the table.
+        ColumnZoneMap.computeAll(table);
+        DataRange range = new DoubleDataRangeSketch(colName).create(table);
+        Assert.assertNotNull(range);
+        Assert.assertEquals(10, range.min, 0);
+        Assert.assertEquals(60, range.max, 0);
+        Assert.assertEquals(15, range.presentCount);
+
+        BasicColStatSketch sketch = new BasicColStatSketch(colName, 2);
+        JsonList<BasicColStats> first = sketch.create(table);
+        Assert.assertNotNull(first);
+        // Results are copies, so they can be mutated
+        first.get(0).moments[1] = 0;
+        JsonList<BasicColStats> second = sketch.create(table);
+        Assert.assertNotNull(second);
+        Assert.assertNotSame(first.get(0), second.get(0));
+        Assert.assertEquals(first.get(0).getMoment(1), second.get(0).getMoment(1), 0);
+        Assert.assertNotEquals(0, second.get(0).getMoment(2), 0);
+
+        JsonList<BasicColStats> one = new BasicColStatSketch(colName, 1).create(table);
+        Assert.assertNotNull(one);
+        Assert.assertEquals(1, one.get(0).moments.length);
+        Assert.assertEquals(second.get(0).getMoment(1), one.get(0).getMoment(1), 0);
+
+        // A table with a subset of the rows has its own statistics.
+        ITable filtered = table.selectRowsFromFullTable(
+                table.getMembershipSet().filter(r -> table.getColumn(colName).getInt(r) > 20));
+        range = new DoubleDataRangeSketch(colName).create(filtered);
+        Assert.assertNotNull(range);
+        Assert.assertEquals(30, range.min, 0);
+        Assert.assertEquals(7, range.presentCount);
+    }
 }
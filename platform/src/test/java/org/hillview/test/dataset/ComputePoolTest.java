@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.dataset;
+
+import org.hillview.test.BaseTest;
+import org.hillview.utils.ComputePool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ComputePoolTest extends BaseTest {
+    /**
+     * Submit a task that occupies the single thread of the pool until the latch is released.
+     */
+    private static CountDownLatch block(ComputePool pool) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.submit(ComputePool.TaskClass.Interactive, "blocker", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {}
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void drain(ComputePool pool) throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            if (pool.getQueued() == 0 && pool.getRunning() == 0)
+                break;
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, pool.getQueued());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testInteractiveFirst() throws InterruptedException {
+        ComputePool pool = new ComputePool("test", 1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch release = block(pool);
+        for (int i = 0; i < 8; i++)
+            pool.submit(ComputePool.TaskClass.Load, "s", () -> order.add("L"));
+        for (int i = 0; i < 4; i++)
+            pool.submit(ComputePool.TaskClass.Interactive, "s", () -> order.add("I"));
+        Assert.assertEquals(12, pool.getQueued());
+        release.countDown();
+        drain(pool);
+        Assert.assertEquals(12, order.size());
+        int lastInteractive = order.lastIndexOf("I");
+        // Interactive tasks overtake most of the load tasks queued before them.
+        Assert.assertTrue(lastInteractive <= 5);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        ComputePool pool = new ComputePool("test", 1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch release = block(pool);
+        ComputePool.Task task = pool.submit(
+                ComputePool.TaskClass.Interactive, "s", () -> order.add("cancelled"));
+        pool.submit(ComputePool.TaskClass.Interactive, "s", () -> order.add("run"));
+        task.cancel();
+        release.countDown();
+        drain(pool);
+        Assert.assertEquals(1, order.size());
+        Assert.assertEquals("run", order.get(0));
+    }
+
+    @Test
+    public void testSessionFairness() throws InterruptedException {
+        ComputePool pool = new ComputePool("test", 1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch release = block(pool);
+        for (int i = 0; i < 6; i++)
+            pool.submit(ComputePool.TaskClass.Interactive, "a", () -> order.add("a"));
+        pool.submit(ComputePool.TaskClass.Interactive, "b", () -> order.add("b"));
+        release.countDown();
+        drain(pool);
+        Assert.assertEquals(7, order.size());
+        // The single task of b does not wait for all the tasks of a.
+        Assert.assertTrue(order.indexOf("b") <= 1);
+    }
+}
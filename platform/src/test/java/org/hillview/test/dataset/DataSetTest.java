@@ -17,6 +17,7 @@
 
 package org.hillview.test.dataset;
 
+import org.hillview.dataset.BundleOperator;
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.api.*;
@@ -27,12 +28,15 @@ import org.junit.Test;
 import rx.Observable;
 import rx.Observer;
 import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DataSetTest extends BaseTest {
     private static class Increment implements IMap<Integer, Integer> {
@@ -329,4 +333,55 @@ public class DataSetTest extends BaseTest {
         IDataSet<Integer> result = pds.blockingPrune(isZero);
         //Assert.assertNull(result);
     }
+
+    private static class IntSum implements IMonoid<Integer> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public Integer zero() {
+            return 0;
+        }
+
+        @Override
+        public Integer add(@Nullable Integer left, @Nullable Integer right) {
+            return Converters.checkNull(left) + Converters.checkNull(right);
+        }
+    }
+
+    @Test
+    public void bundleTest() {
+        final int count = 1000;
+        List<Integer> results = Observable.range(0, count)
+                .lift(new BundleOperator<Integer>(new IntSum(), 100, 10))
+                .toList()
+                .toBlocking()
+                .single();
+        int sum = 0;
+        for (int i : results)
+            sum += i;
+        Assert.assertEquals(count * (count - 1) / 2, sum);
+        Assert.assertTrue(results.size() < count);
+
+        // A slow producer: each value is emitted before the next one arrives.
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<Integer> emitted = new ArrayList<Integer>();
+        source.lift(new BundleOperator<Integer>(new IntSum(), 100, 1, scheduler))
+                .subscribe(emitted::add);
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+            scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(i + 1, emitted.size());
+        }
+        // Values that arrive together are added.
+        source.onNext(1);
+        source.onNext(2);
+        source.onNext(3);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(11, emitted.size());
+        Assert.assertEquals(6, (int)emitted.get(10));
+        source.onCompleted();
+        scheduler.triggerActions();
+        Assert.assertEquals(11, emitted.size());
+    }
 }
@@ -19,18 +19,35 @@ package org.hillview.test.dataset;
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.OperationTrace;
 import org.hillview.dataset.api.TableSketch;
 import org.hillview.sketches.*;
+import org.hillview.sketches.highorder.ConcurrentSketch;
+import org.hillview.sketches.highorder.GroupByWorkspace;
+import org.hillview.sketches.highorder.MultiSketch;
+import org.hillview.sketches.highorder.SharedScanScheduler;
 import org.hillview.sketches.results.*;
 import org.hillview.table.api.IIntColumn;
 import org.hillview.test.BaseTest;
+import org.hillview.utils.ComputePool;
 import org.hillview.utils.TestTables;
 import org.hillview.table.SmallTable;
 import org.hillview.table.Table;
 import org.hillview.table.api.ITable;
+import org.hillview.utils.JsonList;
+import org.hillview.utils.Pair;
 import org.junit.Assert;
 import org.junit.Test;
 
+import rx.Observable;
+import rx.Subscription;
+import rx.subjects.AsyncSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
 /**
  * Test class for the sketches of all types of histograms.
  */
@@ -197,4 +214,265 @@ public class HistSketchTest extends BaseTest {
         Assert.assertNotNull(h1);
         Assert.assertEquals(h0, h1);
     }
+
+    @Test
+    public void denseHistogramTest() {
+        int bigSize = 100000;
+        SmallTable bigTable = TestTables.getIntTable(bigSize, 3);
+        IHistogramBuckets[] buckets = new IHistogramBuckets[3];
+        int[] counts = { 10, 15, 20 };
+        for (int i = 0; i < 3; i++) {
+            String colName = bigTable.getSchema().getColumnNames().get(i);
+            IIntColumn col = bigTable.getColumn(colName).to(IIntColumn.class);
+            buckets[i] = new DoubleHistogramBuckets(colName, col.minInt(), col.maxInt(), counts[i]);
+        }
+        ParallelDataSet<ITable> data = TestTables.makeParallel(bigTable, bigSize / 10);
+
+        DenseHistogram d2 = data.blockingSketch(new DenseHistogramSketch(buckets[0], buckets[1]));
+        Groups<Groups<Count>> g2 = data.blockingSketch(new Histogram2DSketch(buckets[1], buckets[0]));
+        Assert.assertNotNull(d2);
+        Assert.assertEquals(g2, d2.toGroups2D());
+        Assert.assertEquals(g2.perBucket.get(3).perMissing.count, d2.get(3, 15));
+
+        DenseHistogram d3 = data.blockingSketch(new DenseHistogramSketch(buckets));
+        Groups<Groups<Groups<Count>>> g3 = data.blockingSketch(
+                new Histogram3DSketch(buckets[2], buckets[1], buckets[0]));
+        Assert.assertNotNull(d3);
+        Assert.assertEquals(g3, d3.toGroups3D());
+
+        DenseHistogram sampled = data.blockingSketch(
+                new DenseHistogramSketch(buckets[0], buckets[1]).sampled(0.5, 1));
+        Assert.assertNotNull(sampled);
+        Assert.assertEquals(2, sampled.getDimensions());
+        Assert.assertEquals(15, sampled.getBucketCount(1));
+    }
+
+    private static void assertSameCounts(Groups<Count> expected, Groups<Count> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            Assert.assertEquals(expected.getBucket(i).count, actual.getBucket(i).count);
+        Assert.assertEquals(expected.perMissing.count, actual.perMissing.count);
+    }
+
+    @Test
+    public void fusedSketchTest() {
+        Table myTable = TestTables.getRepIntTable(10000, 2);
+        String col0 = myTable.getSchema().getColumnNames().get(0);
+        String col1 = myTable.getSchema().getColumnNames().get(1);
+        IHistogramBuckets buckets0 = new DoubleHistogramBuckets(col0, 1, 50, 10);
+        IHistogramBuckets buckets1 = new DoubleHistogramBuckets(col1, 1, 50, 20);
+        for (double rate : new double[] { 1.0, 0.1 }) {
+            TableSketch<Groups<Count>> sk0 = new HistogramSketch(buckets0).sampled(rate, 1);
+            TableSketch<Groups<Count>> sk1 = new HistogramSketch(buckets1).sampled(rate, 1);
+            Groups<Count> r0 = sk0.create(myTable);
+            Groups<Count> r1 = sk1.create(myTable);
+            Assert.assertNotNull(r0);
+            Assert.assertNotNull(r1);
+
+            ConcurrentSketch<ITable, Groups<Count>, Groups<Count>> csk = new ConcurrentSketch<>(sk0, sk1);
+            Pair<Groups<Count>, Groups<Count>> pair = csk.create(myTable);
+            assertSameCounts(r0, pair.first);
+            assertSameCounts(r1, pair.second);
+
+            MultiSketch<ITable, Groups<Count>> msk = new MultiSketch<>(sk0, sk1, sk0);
+            JsonList<Groups<Count>> list = msk.create(myTable);
+            Assert.assertEquals(3, list.size());
+            assertSameCounts(r0, list.get(0));
+            assertSameCounts(r1, list.get(1));
+            assertSameCounts(r0, list.get(2));
+        }
+
+        // Sketches with different sampling rates cannot be fused, but the results are the same.
+        TableSketch<Groups<Count>> sampled = new HistogramSketch(buckets1).sampled(0.1, 1);
+        ConcurrentSketch<ITable, Groups<Count>, Groups<Count>> csk =
+                new ConcurrentSketch<>(new HistogramSketch(buckets0), sampled);
+        Pair<Groups<Count>, Groups<Count>> pair = csk.create(myTable);
+        Groups<Count> expected = sampled.create(myTable);
+        Assert.assertNotNull(expected);
+        assertSameCounts(expected, pair.second);
+    }
+
+    /**
+     * Submit a task that occupies the single thread of a pool until the latch is released.
+     */
+    private static void block(ComputePool pool, CountDownLatch latch) {
+        pool.submit(ComputePool.TaskClass.Interactive, null, () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
+    @Test
+    public void sharedScanTest() {
+        SmallTable table = TestTables.getIntTable(500000, 2);
+        String col0 = table.getSchema().getColumnNames().get(0);
+        String col1 = table.getSchema().getColumnNames().get(1);
+        List<TableSketch<Groups<Count>>> sketches = new ArrayList<TableSketch<Groups<Count>>>();
+        for (int i = 0; i < 8; i++) {
+            IHistogramBuckets buckets = new DoubleHistogramBuckets(
+                    i % 2 == 0 ? col0 : col1, 0, 100, 5 + i);
+            HistogramSketch sk = new HistogramSketch(buckets);
+            sketches.add(i % 4 == 3 ? sk.sampled(0.2, 3) : sk);
+        }
+
+        ComputePool pool = new ComputePool("test", 1);
+        SharedScanScheduler scheduler = new SharedScanScheduler(pool);
+        CountDownLatch latch = new CountDownLatch(1);
+        block(pool, latch);
+        // All sketches are queued behind the blocked task, so they are fused in two
+        // scans: one over all rows and one over the sampled rows.
+        List<AsyncSubject<Groups<Count>>> results = new ArrayList<AsyncSubject<Groups<Count>>>();
+        for (TableSketch<Groups<Count>> sk : sketches) {
+            Observable<Groups<Count>> obs = scheduler.schedule(sk, table, null);
+            Assert.assertNotNull(obs);
+            AsyncSubject<Groups<Count>> subject = AsyncSubject.create();
+            obs.subscribe(subject);
+            results.add(subject);
+        }
+        Assert.assertEquals(6, scheduler.getSharedCount());
+        latch.countDown();
+        for (int i = 0; i < sketches.size(); i++) {
+            Groups<Count> shared = results.get(i).toBlocking().single();
+            Assert.assertNotNull(shared);
+            Groups<Count> expected = sketches.get(i).create(table);
+            Assert.assertNotNull(expected);
+            assertSameCounts(expected, shared);
+        }
+        pool.shutdown();
+
+        // Sketches that are not computed incrementally do not share scans.
+        Assert.assertNull(scheduler.schedule(new CounterSketch(), table, null));
+    }
+
+    @Test
+    public void sharedScanCancelTest() {
+        SmallTable table = TestTables.getIntTable(1000, 1);
+        String col = table.getSchema().getColumnNames().get(0);
+        HistogramSketch first = new HistogramSketch(new DoubleHistogramBuckets(col, 0, 100, 5));
+        HistogramSketch second = new HistogramSketch(new DoubleHistogramBuckets(col, 0, 100, 7));
+
+        ComputePool pool = new ComputePool("test", 1);
+        SharedScanScheduler scheduler = new SharedScanScheduler(pool);
+        CountDownLatch latch = new CountDownLatch(1);
+        block(pool, latch);
+        Observable<Groups<Count>> o1 = scheduler.schedule(first, table, null);
+        Observable<Groups<Count>> o2 = scheduler.schedule(second, table, null);
+        Assert.assertNotNull(o1);
+        Assert.assertNotNull(o2);
+        List<Groups<Count>> received = new ArrayList<Groups<Count>>();
+        Subscription s1 = o1.subscribe(received::add);
+        AsyncSubject<Groups<Count>> r2 = AsyncSubject.create();
+        o2.subscribe(r2);
+        // Unsubscribing removes the first sketch from the scan.
+        s1.unsubscribe();
+        latch.countDown();
+        Groups<Count> result = r2.toBlocking().single();
+        Groups<Count> expected = second.create(table);
+        Assert.assertNotNull(expected);
+        assertSameCounts(expected, result);
+        Assert.assertTrue(received.isEmpty());
+
+        // A scan whose sketches have all unsubscribed is cancelled before it runs,
+        // so a later sketch starts a new scan.
+        CountDownLatch latch2 = new CountDownLatch(1);
+        block(pool, latch2);
+        Observable<Groups<Count>> o3 = scheduler.schedule(first, table, null);
+        Assert.assertNotNull(o3);
+        o3.subscribe(received::add).unsubscribe();
+        long shared = scheduler.getSharedCount();
+        Observable<Groups<Count>> o4 = scheduler.schedule(second, table, null);
+        Assert.assertNotNull(o4);
+        AsyncSubject<Groups<Count>> r4 = AsyncSubject.create();
+        o4.subscribe(r4);
+        Assert.assertEquals(shared, scheduler.getSharedCount());
+        latch2.countDown();
+        assertSameCounts(expected, r4.toBlocking().single());
+        pool.shutdown();
+        Assert.assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void sharedScanSessionsTest() {
+        SmallTable table = TestTables.getIntTable(1000, 1);
+        String col = table.getSchema().getColumnNames().get(0);
+        HistogramSketch first = new HistogramSketch(new DoubleHistogramBuckets(col, 0, 100, 5));
+        HistogramSketch second = new HistogramSketch(new DoubleHistogramBuckets(col, 0, 100, 7));
+
+        ComputePool pool = new ComputePool("test", 1);
+        SharedScanScheduler scheduler = new SharedScanScheduler(pool);
+        CountDownLatch latch = new CountDownLatch(1);
+        block(pool, latch);
+        // Sketches from different sessions share the scan.
+        Observable<Groups<Count>> o1 = scheduler.schedule(first, table,
+                OperationTrace.start(UUID.randomUUID(), null, "histogram", "session1"));
+        Observable<Groups<Count>> o2 = scheduler.schedule(second, table,
+                OperationTrace.start(UUID.randomUUID(), null, "histogram", "session2"));
+        Assert.assertNotNull(o1);
+        Assert.assertNotNull(o2);
+        AsyncSubject<Groups<Count>> r1 = AsyncSubject.create();
+        AsyncSubject<Groups<Count>> r2 = AsyncSubject.create();
+        o1.subscribe(r1);
+        o2.subscribe(r2);
+        Assert.assertEquals(1, scheduler.getSharedCount());
+        latch.countDown();
+        assertSameCounts(first.create(table), r1.toBlocking().single());
+        assertSameCounts(second.create(table), r2.toBlocking().single());
+        pool.shutdown();
+    }
+
+    /**
+     * A histogram whose computation stops at a row until it is released.
+     */
+    private static class GatedHistogramSketch extends HistogramSketch {
+        static final long serialVersionUID = 1;
+        static final int GATE_ROW = 50000;
+        static final CountDownLatch reached = new CountDownLatch(1);
+        static final CountDownLatch release = new CountDownLatch(1);
+
+        GatedHistogramSketch(IHistogramBuckets buckets) {
+            super(buckets);
+        }
+
+        @Override
+        public void increment(GroupByWorkspace<EmptyWorkspace> workspace, Groups<Count> result, int rowNumber) {
+            if (rowNumber == GATE_ROW) {
+                reached.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            super.increment(workspace, result, rowNumber);
+        }
+    }
+
+    @Test
+    public void sharedScanLateJoinTest() throws InterruptedException {
+        SmallTable table = TestTables.getIntTable(200000, 1);
+        String col = table.getSchema().getColumnNames().get(0);
+        HistogramSketch first = new GatedHistogramSketch(new DoubleHistogramBuckets(col, 0, 100, 5));
+        HistogramSketch second = new HistogramSketch(new DoubleHistogramBuckets(col, 0, 100, 7));
+
+        ComputePool pool = new ComputePool("test", 1);
+        SharedScanScheduler scheduler = new SharedScanScheduler(pool);
+        Observable<Groups<Count>> o1 = scheduler.schedule(first, table, null);
+        Assert.assertNotNull(o1);
+        AsyncSubject<Groups<Count>> r1 = AsyncSubject.create();
+        o1.subscribe(r1);
+        GatedHistogramSketch.reached.await();
+        // The second sketch joins the running scan and wraps around to the rows it missed.
+        Observable<Groups<Count>> o2 = scheduler.schedule(second, table, null);
+        Assert.assertNotNull(o2);
+        AsyncSubject<Groups<Count>> r2 = AsyncSubject.create();
+        o2.subscribe(r2);
+        Assert.assertEquals(1, scheduler.getSharedCount());
+        GatedHistogramSketch.release.countDown();
+        assertSameCounts(first.create(table), r1.toBlocking().single());
+        assertSameCounts(second.create(table), r2.toBlocking().single());
+        pool.shutdown();
+    }
 }
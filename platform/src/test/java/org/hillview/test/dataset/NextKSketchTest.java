@@ -285,4 +285,39 @@ public class NextKSketchTest extends BaseTest {
         Assert.assertNotNull(nkl);
         Assert.assertEquals(nkl.rows.toString(), "Table[1x0]");
     }
+
+    @Test
+    public void testReduce() {
+        final int numCols = 2;
+        final int maxSize = 20;
+        final int parts = 5;
+        RecordOrder cso = null;
+        List<NextKList> lists = new ArrayList<NextKList>();
+        NextKSketch nk = null;
+        for (int i = 0; i < parts; i++) {
+            Table table = TestTables.getRepIntTable(100 + i * 10, numCols);
+            if (cso == null) {
+                cso = new RecordOrder();
+                for (String colName : table.getSchema().getColumnNames())
+                    cso.append(new ColumnSortOrientation(table.getSchema().getDescription(colName), true));
+                ColumnDescription cd = table.getSchema().getDescription(
+                        table.getSchema().getColumnNames().get(0));
+                AggregateDescription[] agg = new AggregateDescription[2];
+                agg[0] = new AggregateDescription(cd, AggregateDescription.AggregateKind.Sum);
+                agg[1] = new AggregateDescription(cd, AggregateDescription.AggregateKind.Max);
+                nk = new NextKSketch(cso, agg, null, maxSize);
+            }
+            lists.add(nk.create(table));
+        }
+        assert nk != null;
+        NextKList sequential = lists.get(0);
+        for (int i = 1; i < parts; i++)
+            sequential = nk.add(sequential, lists.get(i));
+        NextKList reduced = nk.reduce(lists);
+        Assert.assertNotNull(sequential);
+        Assert.assertNotNull(reduced);
+        Assert.assertEquals(sequential.toLongString(maxSize), reduced.toLongString(maxSize));
+        Assert.assertEquals(sequential.rowsScanned, reduced.rowsScanned);
+        Assert.assertEquals(sequential.startPosition, reduced.startPosition);
+    }
 }
@@ -17,11 +17,13 @@
 
 package org.hillview.test.dataset;
 
+import org.apache.commons.io.IOUtils;
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.monoids.PartialResultMonoid;
 import org.hillview.dataset.RemoteDataSet;
 import org.hillview.dataset.api.*;
+import org.hillview.dataset.remoting.ChannelPool;
 import org.hillview.dataset.remoting.HillviewServer;
 import org.hillview.maps.FalseMap;
 import org.hillview.sketches.NextKSketch;
@@ -51,8 +53,11 @@ import rx.subjects.SerializedSubject;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -158,6 +163,44 @@ public class RemotingTest extends BaseTest {
         }
     }
 
+    /**
+     * Sums the data; the last partition is delayed, and fails if requested.
+     */
+    private static class DelayedSumSketch implements ISketch<int[], DataSetTest.IntegerWrapper> {
+        static final long serialVersionUID = 1;
+        private final boolean fail;
+
+        DelayedSumSketch(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override @Nullable
+        public DataSetTest.IntegerWrapper zero() {
+            return new DataSetTest.IntegerWrapper(0);
+        }
+
+        @Override @Nullable
+        public DataSetTest.IntegerWrapper add(@Nullable final DataSetTest.IntegerWrapper left, @Nullable final DataSetTest.IntegerWrapper right) {
+            return new DataSetTest.IntegerWrapper(Converters.checkNull(left).value + Converters.checkNull(right).value);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper create(final int[] data) {
+            if (data[0] == 9000) {
+                try {
+                    Thread.sleep(this.fail ? 500 : 5000);
+                } catch (InterruptedException ignored) {
+                }
+                if (this.fail)
+                    throw new RuntimeException("DelayedSumSketch");
+            }
+            int sum = 0;
+            for (int d : data)
+                sum += d;
+            return new DataSetTest.IntegerWrapper(sum);
+        }
+    }
+
     /*
      * Create separate server and client actor systems to test remoting.
      */
@@ -195,6 +238,134 @@ public class RemotingTest extends BaseTest {
         assertEquals(50005000, result);
     }
 
+    @Test
+    public void testTracedSketch() {
+        // Memoized replies do not carry spans
+        Converters.checkNull(server).setMemoization(false);
+        try {
+            final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+            OperationTrace trace = OperationTrace.start(UUID.randomUUID(), null, "sum");
+            final int result = OperationTrace.with(trace, () -> remoteIds.sketch(new SumSketch()))
+                    .map(e -> Converters.checkNull(e.deltaValue).value)
+                    .reduce(Integer::sum)
+                    .toBlocking()
+                    .last();
+            assertEquals(49995000, result);
+            assertEquals(1, trace.getRemotes());
+            assertEquals(10, trace.getLeaves());
+            assertTrue(trace.getBytes() > 0);
+            assertTrue(trace.getNanos(OperationTrace.Phase.Compute) > 0);
+            // The span of the server is registered in this process as well.
+            List<OperationTrace> spans = OperationTrace.getRecent(trace.id, 10);
+            assertEquals(2, spans.size());
+        } finally {
+            Converters.checkNull(server).setMemoization(true);
+        }
+    }
+
+    @Test
+    public void testTracedErrorAndUnsubscribe() throws InterruptedException {
+        Converters.checkNull(server).setMemoization(false);
+        try {
+            final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+            // The work done before an error is added to the span of the caller.
+            OperationTrace trace = OperationTrace.start(UUID.randomUUID(), null, "fail");
+            TestSubscriber<PartialResult<DataSetTest.IntegerWrapper>> failing = new TestSubscriber<>();
+            OperationTrace.with(trace, () -> remoteIds.sketch(new DelayedSumSketch(true)))
+                    .subscribe(failing);
+            failing.awaitTerminalEvent(10, TimeUnit.SECONDS);
+            assertEquals(1, failing.getOnErrorEvents().size());
+            assertEquals(1, trace.getRemotes());
+
+            // So is the work done before the caller unsubscribes.
+            OperationTrace cancelled = OperationTrace.start(UUID.randomUUID(), null, "cancel");
+            TestSubscriber<PartialResult<DataSetTest.IntegerWrapper>> sub = createUnsubscribeSubscriber(2);
+            OperationTrace.with(cancelled, () -> remoteIds.sketch(new DelayedSumSketch(false)))
+                    .subscribe(sub);
+            for (int i = 0; i < 100 && cancelled.getRemotes() == 0; i++)
+                Thread.sleep(50);
+            assertEquals(1, cancelled.getRemotes());
+            assertTrue(cancelled.getLeaves() > 0);
+        } finally {
+            Converters.checkNull(server).setMemoization(true);
+        }
+    }
+
+    @Test
+    public void testMetrics() throws IOException, InterruptedException {
+        MetricsRegistry metrics = MetricsRegistry.instance;
+        String sketchBytes = MetricsRegistry.labeled("rpc_bytes_sent", "rpc", "sketch");
+        long hits = metrics.getCounter("memoization_hits");
+        long bytes = metrics.getCounter(sketchBytes);
+        final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+        // The server memoizes the result after the reply completes,
+        // so a repeated query may arrive before the result is memoized.
+        for (int i = 0; i < 10 && metrics.getCounter("memoization_hits") == hits; i++) {
+            final int result = remoteIds.sketch(new SumSketch())
+                    .map(e -> Converters.checkNull(e.deltaValue).value)
+                    .reduce(Integer::sum)
+                    .toBlocking()
+                    .last();
+            assertEquals(49995000, result);
+            Thread.sleep(50);
+        }
+        assertTrue(metrics.getCounter("memoization_hits") > hits);
+        assertTrue(metrics.getCounter(sketchBytes) > bytes);
+
+        int port = metrics.startHttpEndpoint(0);
+        URL url = new URL("http://127.0.0.1:" + port + "/metrics");
+        String text = IOUtils.toString(url, StandardCharsets.UTF_8);
+        assertTrue(text.contains("hillview_" + sketchBytes + " "));
+        assertTrue(text.contains("# TYPE hillview_rpc_bytes_sent counter\n"));
+        String datasets = MetricsRegistry.labeled("datasets", "server", serverAddress.toString());
+        assertTrue(text.contains("# TYPE hillview_datasets gauge\n"));
+        assertTrue(text.contains("hillview_" + datasets + " "));
+        assertTrue(text.contains("hillview_jvm_heap_used_bytes "));
+        // Every sample follows the type of its metric.
+        String family = null;
+        for (String line : text.split("\n")) {
+            if (line.startsWith("# TYPE ")) {
+                family = line.split(" ")[2];
+                continue;
+            }
+            String name = line.split("[ {]")[0];
+            assertEquals(family, name);
+        }
+
+        // Unsubscribing from an operation that has completed does not cancel anything.
+        long cancelled = metrics.getCounter("operations_cancelled");
+        remoteIds.sketch(new SumSketch()).toBlocking().last();
+        Thread.sleep(200);
+        assertEquals(cancelled, metrics.getCounter("operations_cancelled"));
+
+        // A server that shuts down removes its gauges.
+        HostAndPort address = HostAndPort.fromParts("127.0.0.1", 1242);
+        HillviewServer other = new HillviewServer(address, new LocalDataSet<Integer>(0));
+        String otherDatasets = MetricsRegistry.labeled("datasets", "server", address.toString());
+        assertTrue(metrics.snapshot().containsKey(otherDatasets));
+        other.shutdown();
+        assertTrue(!metrics.snapshot().containsKey(otherDatasets));
+        assertTrue(metrics.snapshot().containsKey(datasets));
+    }
+
+    @Test
+    public void testSharedChannels() {
+        final IDataSet<int[]> first = new RemoteDataSet<int[]>(serverAddress);
+        first.sketch(new SumSketch()).toBlocking().last();
+        long channels = ChannelPool.instance.getChannelCount();
+        assertTrue(channels >= ChannelPool.instance.getChannelsPerHost());
+        for (int i = 0; i < 20; i++) {
+            final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+            final int result = remoteIds.sketch(new SumSketch())
+                    .map(e -> Converters.checkNull(e.deltaValue).value)
+                    .reduce(Integer::sum)
+                    .toBlocking()
+                    .last();
+            assertEquals(49995000, result);
+        }
+        assertEquals(channels, ChannelPool.instance.getChannelCount());
+    }
+
     //@Test
     public void testRaceSerialized() throws InterruptedException {
         final ExecutorService es = Executors.newFixedThreadPool(10);
@@ -377,10 +548,14 @@ public class RemotingTest extends BaseTest {
                 remoteIds.map(new IncrementMap()).toBlocking().last().deltaValue);
         final IDataSet<int[]> remoteIdsRight = Converters.checkNull(
                 remoteIds.map(new IncrementMap()).toBlocking().last().deltaValue);
-        final PartialResult<IDataSet<Pair<int[], int[]>>> last
-                = Converters.checkNull(remoteIdsLeft.zip(remoteIdsRight)).toBlocking().last();
-        assertNotNull(last);
-        assertEquals(last.deltaDone, 1.0, 0.001);
+        final List<PartialResult<IDataSet<Pair<int[], int[]>>>> results
+                = Converters.checkNull(remoteIdsLeft.zip(remoteIdsRight)).toList().toBlocking().single();
+        // Progress may be reported in several partial results.
+        double done = 0;
+        for (PartialResult<IDataSet<Pair<int[], int[]>>> r : results)
+            done += r.deltaDone;
+        assertNotNull(results.get(results.size() - 1).deltaValue);
+        assertEquals(1.0, done, 0.001);
     }
 
     @Test
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.dataset;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.ReplicatedDataSet;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.IMap;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.hillview.utils.MetricsRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReplicatedDataSetTest extends BaseTest {
+    private static class Sum implements ISketch<Integer, DataSetTest.IntegerWrapper> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public DataSetTest.IntegerWrapper zero() {
+            return new DataSetTest.IntegerWrapper(0);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper add(@Nullable DataSetTest.IntegerWrapper left,
+                                              @Nullable DataSetTest.IntegerWrapper right) {
+            return new DataSetTest.IntegerWrapper(
+                    Converters.checkNull(left).value + Converters.checkNull(right).value);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper create(@Nullable Integer data) {
+            return new DataSetTest.IntegerWrapper(Converters.checkNull(data));
+        }
+    }
+
+    /**
+     * A replica that is slow to answer sketches, e.g., because of a long GC pause.
+     */
+    private static class SlowDataSet<T> extends LocalDataSet<T> {
+        SlowDataSet(T data) {
+            super(data);
+        }
+
+        @Override
+        public <R extends ISketchResult> Observable<PartialResult<R>> sketch(ISketch<T, R> sketch) {
+            return super.sketch(sketch).delaySubscription(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A replica whose sketches fail, e.g., because its server is down.
+     */
+    private static class FailingDataSet<T> extends LocalDataSet<T> {
+        FailingDataSet(T data) {
+            super(data);
+        }
+
+        @Override
+        public <R extends ISketchResult> Observable<PartialResult<R>> sketch(ISketch<T, R> sketch) {
+            return Observable.error(new RuntimeException("Replica is down"));
+        }
+    }
+
+    /**
+     * A replica that answers after a delay longer than the default hedging delay,
+     * and counts the sketches it runs.
+     */
+    private static class CountingDataSet<T> extends LocalDataSet<T> {
+        final AtomicInteger sketches = new AtomicInteger();
+
+        CountingDataSet(T data) {
+            super(data);
+        }
+
+        @Override
+        public <R extends ISketchResult> Observable<PartialResult<R>> sketch(ISketch<T, R> sketch) {
+            return super.sketch(sketch)
+                    .delaySubscription(1500, TimeUnit.MILLISECONDS)
+                    .doOnSubscribe(this.sketches::incrementAndGet);
+        }
+    }
+
+    private static class Twice implements IMap<Integer, Integer> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public Integer apply(@Nullable Integer data) {
+            return 2 * Converters.checkNull(data);
+        }
+    }
+
+    private static IDataSet<Integer> replicated(int value) {
+        return new ReplicatedDataSet<Integer>(Arrays.asList(
+                new LocalDataSet<Integer>(value), new SlowDataSet<Integer>(value)));
+    }
+
+    @Test
+    public void testHedging() {
+        List<IDataSet<Integer>> children = new ArrayList<IDataSet<Integer>>();
+        for (int i = 1; i <= 3; i++)
+            children.add(replicated(i));
+        IDataSet<Integer> data = new ParallelDataSet<Integer>(children);
+        long hedged = MetricsRegistry.instance.getCounter("hedged_sketches");
+        for (int i = 0; i < 4; i++) {
+            long start = System.currentTimeMillis();
+            DataSetTest.IntegerWrapper sum = data.blockingSketch(new Sum());
+            long elapsed = System.currentTimeMillis() - start;
+            Assert.assertNotNull(sum);
+            Assert.assertEquals(6, sum.intValue());
+            // The slow replicas are never waited for.
+            Assert.assertTrue("Sketch took " + elapsed, elapsed < 15000);
+        }
+        Assert.assertTrue(MetricsRegistry.instance.getCounter("hedged_sketches") > hedged);
+    }
+
+    @Test
+    public void testReplicatedMap() {
+        IDataSet<Integer> data = replicated(5);
+        IDataSet<Integer> doubled = data.blockingMap(new Twice());
+        Assert.assertTrue(doubled instanceof ReplicatedDataSet);
+        Assert.assertEquals(2, ((ReplicatedDataSet<Integer>)doubled).size());
+        DataSetTest.IntegerWrapper sum = doubled.blockingSketch(new Sum());
+        Assert.assertNotNull(sum);
+        Assert.assertEquals(10, sum.intValue());
+    }
+
+    @Test
+    public void testFailover() {
+        IDataSet<Integer> data = new ReplicatedDataSet<Integer>(Arrays.asList(
+                new LocalDataSet<Integer>(3), new FailingDataSet<Integer>(3)));
+        long failovers = MetricsRegistry.instance.getCounter("replica_failovers");
+        // Each sketch starts on a different replica; both orders must succeed.
+        for (int i = 0; i < 4; i++) {
+            DataSetTest.IntegerWrapper sum = data.blockingSketch(new Sum());
+            Assert.assertNotNull(sum);
+            Assert.assertEquals(3, sum.intValue());
+        }
+        Assert.assertTrue(MetricsRegistry.instance.getCounter("replica_failovers") > failovers);
+    }
+
+    @Test
+    public void testNoHedgeAfterFailover() {
+        CountingDataSet<Integer> counting = new CountingDataSet<Integer>(3);
+        IDataSet<Integer> data = new ReplicatedDataSet<Integer>(Arrays.asList(
+                new FailingDataSet<Integer>(3), counting));
+        // Whichever replica is tried first, the working one runs each sketch once.
+        for (int i = 0; i < 2; i++) {
+            DataSetTest.IntegerWrapper sum = data.blockingSketch(new Sum());
+            Assert.assertNotNull(sum);
+            Assert.assertEquals(3, sum.intValue());
+        }
+        Assert.assertEquals(2, counting.sketches.get());
+    }
+}
@@ -24,13 +24,16 @@ import org.hillview.sketches.results.SampleList;
 import org.hillview.table.RecordOrder;
 import org.hillview.table.SmallTable;
 import org.hillview.table.api.ITable;
+import org.hillview.table.rows.RowSnapshot;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.RankInTable;
 import org.hillview.utils.TestTables;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class SampleQuantileSketchTest extends BaseTest {
     @Test
@@ -83,4 +86,36 @@ public class SampleQuantileSketchTest extends BaseTest {
         if (toPrint)
             System.out.println(Arrays.toString(rIT.getRank(sl.getQuantiles(19))));
     }
+
+    @Test
+    public void SQSReduceTest() {
+        final int numCols = 2;
+        final int size = 20000;
+        final int parts = 6;
+        final int resolution = 100;
+        RecordOrder rso = null;
+        SampleQuantileSketch sqSketch = null;
+        List<SampleList> samples = new ArrayList<SampleList>();
+        for (int i = 0; i < parts; i++) {
+            final SmallTable table = TestTables.getIntTable(size, numCols);
+            if (rso == null) {
+                rso = new RecordOrder();
+                for (String colName : table.getSchema().getColumnNames())
+                    rso.append(new ColumnSortOrientation(
+                            table.getSchema().getDescription(colName), true));
+                sqSketch = new SampleQuantileSketch(rso, resolution, size * parts, 0);
+            }
+            samples.add(sqSketch.create(table));
+        }
+        assert sqSketch != null;
+        SampleList sequential = samples.get(0);
+        for (int i = 1; i < parts; i++)
+            sequential = sqSketch.add(sequential, samples.get(i));
+        SampleList reduced = sqSketch.reduce(samples);
+        Assert.assertNotNull(reduced);
+        Assert.assertEquals(sequential.table.getNumOfRows(), reduced.table.getNumOfRows());
+        for (int i = 0; i < reduced.table.getNumOfRows(); i++)
+            Assert.assertEquals(new RowSnapshot(sequential.table, i),
+                    new RowSnapshot(reduced.table, i));
+    }
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.dataset;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.SketchResultCache;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.IMap;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.ISketchResult;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.dataset.monoids.PartialResultMonoid;
+import org.hillview.sketches.BasicColStatSketch;
+import org.hillview.sketches.HLogLogSketch;
+import org.hillview.sketches.HistogramSketch;
+import org.hillview.sketches.MGFreqKSketch;
+import org.hillview.sketches.SummarySketch;
+import org.hillview.sketches.results.DoubleHistogramBuckets;
+import org.hillview.table.api.ITable;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SketchResultCacheTest extends BaseTest {
+    /**
+     * Number of partitions sketched.
+     */
+    private static final AtomicInteger created = new AtomicInteger();
+
+    private static class Sum implements ISketch<Integer, DataSetTest.IntegerWrapper> {
+        static final long serialVersionUID = 1;
+        private final boolean incremental;
+
+        Sum(boolean incremental) {
+            this.incremental = incremental;
+        }
+
+        @Override
+        public boolean isIncremental() {
+            return this.incremental;
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper zero() {
+            return new DataSetTest.IntegerWrapper(0);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper add(@Nullable DataSetTest.IntegerWrapper left,
+                                              @Nullable DataSetTest.IntegerWrapper right) {
+            return new DataSetTest.IntegerWrapper(
+                    Converters.checkNull(left).value + Converters.checkNull(right).value);
+        }
+
+        @Override
+        public DataSetTest.IntegerWrapper create(@Nullable Integer data) {
+            created.incrementAndGet();
+            return new DataSetTest.IntegerWrapper(Converters.checkNull(data));
+        }
+    }
+
+    private static class Twice implements IMap<Integer, Integer> {
+        static final long serialVersionUID = 1;
+        private final boolean deterministic;
+
+        Twice(boolean deterministic) {
+            this.deterministic = deterministic;
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return this.deterministic;
+        }
+
+        @Override
+        public Integer apply(@Nullable Integer data) {
+            return 2 * Converters.checkNull(data);
+        }
+    }
+
+    private static IDataSet<Integer> map(SketchResultCache cache, IDataSet<Integer> data, Twice map) {
+        IDataSet<Integer> result = data.blockingMap(map);
+        cache.derived(data, map, result);
+        return result;
+    }
+
+    private static IDataSet<Integer> partitions(int from, int to) {
+        List<IDataSet<Integer>> children = new ArrayList<IDataSet<Integer>>();
+        for (int i = from; i < to; i++)
+            children.add(new LocalDataSet<Integer>(i));
+        return new ParallelDataSet<Integer>(children);
+    }
+
+    private static int sum(SketchResultCache cache, IDataSet<Integer> data, Sum sketch) {
+        PartialResultMonoid<DataSetTest.IntegerWrapper> monoid =
+                new PartialResultMonoid<DataSetTest.IntegerWrapper>(sketch);
+        PartialResult<DataSetTest.IntegerWrapper> result =
+                cache.sketch(data, sketch).reduce(monoid::add).toBlocking().single();
+        Assert.assertEquals(1.0, result.deltaDone, 1e-6);
+        return Converters.checkNull(result.deltaValue).intValue();
+    }
+
+    @Test
+    public void testAppend() {
+        SketchResultCache cache = new SketchResultCache(1 << 20);
+        Sum sketch = new Sum(true);
+        IDataSet<Integer> data = partitions(0, 10);
+        created.set(0);
+        Assert.assertEquals(45, sum(cache, data, sketch));
+        Assert.assertEquals(10, created.get());
+        Assert.assertEquals(1, cache.size());
+
+        // The same sketch on the same data is not recomputed.
+        Assert.assertEquals(45, sum(cache, data, new Sum(true)));
+        Assert.assertEquals(10, created.get());
+
+        // Only the appended partitions are sketched.
+        IDataSet<Integer> appended = new ParallelDataSet<Integer>(Arrays.asList(data, partitions(10, 12)));
+        Assert.assertEquals(66, sum(cache, appended, sketch));
+        Assert.assertEquals(12, created.get());
+        IDataSet<Integer> again = new ParallelDataSet<Integer>(Arrays.asList(appended, partitions(12, 13)));
+        Assert.assertEquals(78, sum(cache, again, sketch));
+        Assert.assertEquals(13, created.get());
+
+        cache.purge();
+        Assert.assertEquals(78, sum(cache, again, sketch));
+        Assert.assertEquals(26, created.get());
+    }
+
+    @Test
+    public void testNotIncremental() {
+        SketchResultCache cache = new SketchResultCache(1 << 20);
+        Sum sketch = new Sum(false);
+        IDataSet<Integer> data = partitions(0, 10);
+        created.set(0);
+        Assert.assertEquals(45, sum(cache, data, sketch));
+        IDataSet<Integer> appended = new ParallelDataSet<Integer>(Arrays.asList(data, partitions(10, 12)));
+        Assert.assertEquals(66, sum(cache, appended, sketch));
+        Assert.assertEquals(22, created.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMemoryBound() {
+        // Too small to hold any result
+        SketchResultCache cache = new SketchResultCache(10);
+        Sum sketch = new Sum(true);
+        IDataSet<Integer> data = partitions(0, 10);
+        created.set(0);
+        Assert.assertEquals(45, sum(cache, data, sketch));
+        Assert.assertEquals(45, sum(cache, data, sketch));
+        Assert.assertEquals(20, created.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDerivedView() {
+        SketchResultCache cache = new SketchResultCache(1 << 20);
+        Sum sketch = new Sum(true);
+        IDataSet<Integer> data = partitions(0, 10);
+        IDataSet<Integer> view = map(cache, data, new Twice(true));
+        created.set(0);
+        Assert.assertEquals(90, sum(cache, view, sketch));
+        Assert.assertEquals(10, created.get());
+
+        // The same view derived again from the same data reuses the results.
+        Assert.assertEquals(90, sum(cache, map(cache, data, new Twice(true)), sketch));
+        Assert.assertEquals(10, created.get());
+
+        // The view of the data with appended partitions only sketches the new ones.
+        IDataSet<Integer> appended = new ParallelDataSet<Integer>(Arrays.asList(data, partitions(10, 12)));
+        IDataSet<Integer> appendedView = map(cache, appended, new Twice(true));
+        Assert.assertEquals(132, sum(cache, appendedView, sketch));
+        Assert.assertEquals(12, created.get());
+
+        // Views derived from these views are covered as well.
+        IDataSet<Integer> quad = map(cache, view, new Twice(true));
+        Assert.assertEquals(180, sum(cache, quad, sketch));
+        Assert.assertEquals(22, created.get());
+        Assert.assertEquals(264, sum(cache, map(cache, appendedView, new Twice(true)), sketch));
+        Assert.assertEquals(24, created.get());
+    }
+
+    @Test
+    public void testNotDeterministic() {
+        SketchResultCache cache = new SketchResultCache(1 << 20);
+        Sum sketch = new Sum(true);
+        IDataSet<Integer> data = partitions(0, 10);
+        created.set(0);
+        Assert.assertEquals(90, sum(cache, map(cache, data, new Twice(false)), sketch));
+        Assert.assertEquals(90, sum(cache, map(cache, data, new Twice(false)), sketch));
+        Assert.assertEquals(20, created.get());
+    }
+
+    @Test
+    public void testEstimateSize() {
+        // The estimates are within an order of magnitude of the serialized sizes.
+        ITable table = TestTables.testTable();
+        List<ISketch<ITable, ? extends ISketchResult>> sketches =
+                new ArrayList<ISketch<ITable, ? extends ISketchResult>>();
+        sketches.add(new HistogramSketch(new DoubleHistogramBuckets("Age", 0, 100, 4)));
+        sketches.add(new HistogramSketch(new DoubleHistogramBuckets("Age", 0, 100, 100)));
+        sketches.add(new HLogLogSketch("Name", 16, 12345678, null));
+        sketches.add(new MGFreqKSketch(table.getSchema(), 0.1));
+        for (ISketch<ITable, ? extends ISketchResult> sketch : sketches) {
+            ISketchResult result = Converters.checkNull(sketch.create(table));
+            long serialized = SerializationUtils.serialize(result).length;
+            long estimate = result.estimateSize();
+            Assert.assertTrue(sketch.asString() + ": " + estimate + " vs " + serialized,
+                    estimate * 10 > serialized && estimate < serialized * 10);
+        }
+    }
+
+    /**
+     * Check that adding two results of a sketch leaves both unchanged.
+     */
+    private static <R extends ISketchResult> void checkAddKeepsArguments(ISketch<ITable, R> sketch, ITable table) {
+        R left = sketch.create(table);
+        R right = sketch.create(table);
+        byte[] leftBytes = SerializationUtils.serialize(left);
+        byte[] rightBytes = SerializationUtils.serialize(right);
+        sketch.add(left, right);
+        Assert.assertArrayEquals(leftBytes, SerializationUtils.serialize(left));
+        Assert.assertArrayEquals(rightBytes, SerializationUtils.serialize(right));
+    }
+
+    @Test
+    public void testAddKeepsArguments() {
+        // Cached results are added to new results, so incremental sketches must
+        // not modify the arguments of add.
+        ITable table = TestTables.testTable();
+        List<ISketch<ITable, ? extends ISketchResult>> sketches =
+                new ArrayList<ISketch<ITable, ? extends ISketchResult>>();
+        sketches.add(new HistogramSketch(new DoubleHistogramBuckets("Age", 0, 100, 4)));
+        sketches.add(new HLogLogSketch("Name", 16, 12345678, null));
+        sketches.add(new BasicColStatSketch("Age", 2));
+        sketches.add(new SummarySketch());
+        sketches.add(new MGFreqKSketch(table.getSchema(), 0.1));
+        for (ISketch<ITable, ? extends ISketchResult> sketch : sketches) {
+            Assert.assertTrue(sketch.isIncremental());
+            checkAddKeepsArguments(sketch, table);
+        }
+    }
+}
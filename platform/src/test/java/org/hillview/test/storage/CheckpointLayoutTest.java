@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.RemoteDataSet;
+import org.hillview.dataset.api.Empty;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.IMap;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.storage.CheckpointLayout;
+import org.hillview.table.api.ITable;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HostAndPort;
+import org.hillview.utils.Pair;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CheckpointLayoutTest extends BaseTest {
+    /**
+     * Creates partitions with different numbers of rows.
+     */
+    static class MakeTables implements IMap<Empty, List<ITable>> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public List<ITable> apply(@Nullable Empty unused) {
+            List<ITable> result = new ArrayList<ITable>();
+            for (int i = 0; i < 12; i++)
+                result.add(TestTables.getIntTable(i + 1, 2));
+            return result;
+        }
+    }
+
+    static class RowCount implements IMap<ITable, Integer> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public Integer apply(@Nullable ITable data) {
+            return Converters.checkNull(data).getNumOfRows();
+        }
+    }
+
+    /**
+     * Checks that the zipped partitions correspond to each other.
+     */
+    static class CheckRows implements IMap<Pair<ITable, Integer>, Integer> {
+        static final long serialVersionUID = 1;
+
+        @Override
+        public Integer apply(@Nullable Pair<ITable, Integer> data) {
+            Converters.checkNull(data);
+            int rows = Converters.checkNull(data.first).getNumOfRows();
+            if (rows != Converters.checkNull(data.second))
+                throw new RuntimeException("Zipped partitions differ: " + rows + " vs " + data.second);
+            return rows;
+        }
+    }
+
+    @Test
+    public void testZipRestored() throws Exception {
+        HostAndPort address = HostAndPort.fromParts("127.0.0.1", 1260);
+        HillviewServer server = new HillviewServer(address, new LocalDataSet<Empty>(Empty.getInstance()));
+        Path folder = Files.createTempDirectory("checkpoint");
+        try {
+            IDataSet<ITable> remote = new RemoteDataSet<Empty>(address).blockingFlatMap(new MakeTables());
+            IDataSet<ITable> local = new LocalDataSet<Empty>(Empty.getInstance()).blockingFlatMap(new MakeTables());
+            IDataSet<ITable> table = new ParallelDataSet<ITable>(Arrays.asList(remote, local));
+            IDataSet<Integer> sibling = table.blockingMap(new RowCount());
+
+            CheckpointLayout layout = CheckpointLayout.save(table, folder.toString()).toBlocking().single();
+            Assert.assertEquals(24, layout.partitions());
+            IDataSet<ITable> restored = layout.load(folder.toString()).toBlocking().single();
+            IDataSet<Integer> zipped = restored.blockingZip(sibling, new CheckRows());
+            Assert.assertNotNull(zipped);
+
+            // A missing file causes the load to fail.
+            File[] files = folder.toFile().listFiles();
+            Assert.assertNotNull(files);
+            Assert.assertEquals(24, files.length);
+            Assert.assertTrue(files[0].delete());
+            try {
+                layout.load(folder.toString()).toBlocking().single();
+                Assert.fail("Expected an exception");
+            } catch (RuntimeException ignored) {
+                // expected
+            }
+        } finally {
+            server.shutdown();
+            FileUtils.deleteDirectory(folder.toFile());
+        }
+    }
+}
@@ -21,11 +21,14 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.hillview.table.LazySchema;
 import org.hillview.main.DataUpload;
+import org.hillview.storage.CsvFileLoader;
 import org.hillview.storage.OrcFileLoader;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.hillview.utils.Pair;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -33,6 +36,10 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 
 public class DataUploadTest extends BaseTest {
     @Test
@@ -130,4 +137,95 @@ public class DataUploadTest extends BaseTest {
         this.deleteOrcChecksums(file, parts);
         Assert.assertEquals(2, parts);
     }
+
+    /**
+     * Number of lines in blockTracelog.
+     */
+    private static final int LOG_ROWS = 200;
+
+    /**
+     * Load all shards written by a partitioned upload, with their partition.
+     */
+    private List<Pair<Integer, ITable>> loadShards(Path dir, int parts) {
+        List<Pair<Integer, ITable>> result = new ArrayList<Pair<Integer, ITable>>();
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(".csv"));
+        Assert.assertNotNull(files);
+        Assert.assertEquals(parts, files.length);
+        // Zone maps are not placed next to the shards
+        File[] zoneMaps = dir.toFile().listFiles((d, name) -> name.endsWith(".zonemap"));
+        Assert.assertNotNull(zoneMaps);
+        Assert.assertEquals(0, zoneMaps.length);
+        CsvFileLoader.Config config = new CsvFileLoader.Config();
+        config.hasHeaderRow = true;
+        for (File f : files) {
+            Assert.assertTrue(new File(dir.toString() + ".zonemaps", f.getName() + ".zonemap").exists());
+            String name = FilenameUtils.getBaseName(f.getName());
+            int partition = Integer.parseInt(name.substring(name.lastIndexOf('_') + 1));
+            CsvFileLoader loader = new CsvFileLoader(f.getPath(), config,
+                    new LazySchema(dir.toString() + "/schema"));
+            result.add(new Pair<Integer, ITable>(partition, loader.load()));
+        }
+        return result;
+    }
+
+    @Test
+    public void testRangePartitionedSorted() throws Exception {
+        Path dir = Files.createTempDirectory(".");
+        DataUpload upload = new DataUpload();
+        int parts = upload.run(
+                "-f", dataDir + "/sample_logs/blockTracelog", "-p", "%{BLOCKTRACE}",
+                "-o", "csv", "-l", "1000", "-d", dir.toString(),
+                "--key", "Sequence", "--mode", "range", "--partitions", "4", "--sorted");
+        Assert.assertEquals(4, parts);
+        List<Pair<Integer, ITable>> shards = this.loadShards(dir, parts);
+        shards.sort(Comparator.comparing(p -> p.first));
+        int rows = 0;
+        int previous = Integer.MIN_VALUE;
+        for (Pair<Integer, ITable> shard : shards) {
+            ITable table = Converters.checkNull(shard.second);
+            IColumn seq = table.getLoadedColumn("Sequence");
+            rows += table.getNumOfRows();
+            for (int i = 0; i < table.getNumOfRows(); i++) {
+                if (seq.isMissing(i))
+                    continue;
+                int value = seq.getInt(i);
+                // Shards are sorted and partitions do not overlap
+                Assert.assertTrue(value >= previous);
+                previous = value;
+            }
+        }
+        Assert.assertEquals(LOG_ROWS, rows);
+        FileUtils.deleteDirectory(dir.toFile());
+        FileUtils.deleteDirectory(new File(dir.toString() + ".zonemaps"));
+    }
+
+    @Test
+    public void testHashPartitioned() throws Exception {
+        Path dir = Files.createTempDirectory(".");
+        DataUpload upload = new DataUpload();
+        int parts = upload.run(
+                "-f", dataDir + "/sample_logs/blockTracelog", "-p", "%{BLOCKTRACE}",
+                "-o", "csv", "-l", "50", "-d", dir.toString(),
+                "--key", "Action", "--partitions", "3", "--threads", "2");
+        // Each chunk is split in up to 3 shards
+        Assert.assertTrue(parts > 4);
+        List<Pair<Integer, ITable>> shards = this.loadShards(dir, parts);
+        HashMap<String, Integer> partitionOf = new HashMap<String, Integer>();
+        int rows = 0;
+        for (Pair<Integer, ITable> shard : shards) {
+            int partition = Converters.checkNull(shard.first);
+            Assert.assertTrue(partition < 3);
+            ITable table = Converters.checkNull(shard.second);
+            IColumn action = table.getLoadedColumn("Action");
+            rows += table.getNumOfRows();
+            for (int i = 0; i < table.getNumOfRows(); i++) {
+                // All rows with the same key are in the same partition
+                Integer previous = partitionOf.put(action.getString(i), partition);
+                Assert.assertTrue(previous == null || previous == partition);
+            }
+        }
+        Assert.assertTrue(rows > 0 && rows <= LOG_ROWS);
+        FileUtils.deleteDirectory(dir.toFile());
+        FileUtils.deleteDirectory(new File(dir.toString() + ".zonemaps"));
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.storage;
+
+import org.hillview.dataset.api.Empty;
+import org.hillview.maps.FindFilesMap;
+import org.hillview.sketches.FileExtentsSketch;
+import org.hillview.storage.FileSetDescription;
+import org.hillview.storage.IFileReference;
+import org.hillview.table.FileExtents;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class IncrementalLoadTest extends BaseTest {
+    private static void append(Path file, String data) throws IOException {
+        Files.write(file, data.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static FileExtents extents(List<IFileReference> files) {
+        FileExtentsSketch sketch = new FileExtentsSketch();
+        FileExtents result = Converters.checkNull(sketch.zero());
+        for (IFileReference f : files)
+            result = sketch.add(result, sketch.create(f));
+        return Converters.checkNull(result);
+    }
+
+    private static ITable load(IFileReference file) {
+        return Converters.checkNull(file.load());
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        Path folder = Files.createTempDirectory("incremental");
+        try {
+            FileSetDescription desc = new FileSetDescription();
+            desc.fileKind = "csv";
+            desc.fileNamePattern = folder.toString() + "/*.csv";
+            desc.headerRow = true;
+            desc.cookie = folder.toString();
+            Path first = folder.resolve("first.csv");
+            // The last line is still being written and is not loaded.
+            append(first, "Name,Value\na,1\nb,2\nc,");
+
+            List<IFileReference> loaded = new FindFilesMap<Empty>(desc).apply(null);
+            Assert.assertEquals(1, loaded.size());
+            Assert.assertEquals(2, load(loaded.get(0)).getNumOfRows());
+
+            append(first, "3\nd,");
+            append(folder.resolve("second.csv"), "Name,Value\ne,5\n");
+            List<IFileReference> delta = new FindFilesMap<Empty>(desc, extents(loaded)).apply(null);
+            Assert.assertEquals(2, delta.size());
+            int rows = 0;
+            boolean sawFirst = false;
+            for (IFileReference f : delta) {
+                ITable table = load(f);
+                rows += table.getNumOfRows();
+                IColumn names = table.getLoadedColumn("Name");
+                Assert.assertNotEquals("a", names.getString(0));
+                Assert.assertNotEquals("b", names.getString(0));
+                if (first.toFile().equals(new File(Converters.checkNull(f.getPathname())))) {
+                    sawFirst = true;
+                    // The line that was incomplete in the first load is loaded whole.
+                    Assert.assertEquals("c", names.getString(0));
+                    Assert.assertEquals("3", table.getLoadedColumn("Value").asString(0));
+                }
+            }
+            Assert.assertEquals(2, rows);
+            Assert.assertTrue(sawFirst);
+            loaded.addAll(delta);
+
+            append(first, "4\n");
+            delta = new FindFilesMap<Empty>(desc, extents(loaded)).apply(null);
+            Assert.assertEquals(1, delta.size());
+            ITable last = load(delta.get(0));
+            Assert.assertEquals(1, last.getNumOfRows());
+            Assert.assertEquals("d", last.getLoadedColumn("Name").getString(0));
+            Assert.assertEquals("4", last.getLoadedColumn("Value").asString(0));
+            loaded.addAll(delta);
+
+            List<IFileReference> none = new FindFilesMap<Empty>(desc, extents(loaded)).apply(null);
+            Assert.assertTrue(none.isEmpty());
+        } finally {
+            File[] files = folder.toFile().listFiles();
+            if (files != null)
+                for (File f : files)
+                    Assert.assertTrue(f.delete());
+            Files.delete(folder);
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        Path folder = Files.createTempDirectory("incremental");
+        try {
+            FileSetDescription desc = new FileSetDescription();
+            desc.fileKind = "csv";
+            desc.fileNamePattern = folder.toString() + "/*.csv";
+            desc.headerRow = true;
+            desc.cookie = folder.toString();
+            Path first = folder.resolve("first.csv");
+            append(first, "Name,Value\na,1\n");
+            List<IFileReference> loaded = new FindFilesMap<Empty>(desc).apply(null);
+
+            append(first, "b,2\nc,");
+            List<IFileReference> delta = new FindFilesMap<Empty>(desc, extents(loaded)).apply(null);
+            Assert.assertEquals(1, delta.size());
+            FileExtents upTo = extents(delta);
+
+            // Data added after the first search is not found again.
+            append(first, "3\nd,4\n");
+            append(folder.resolve("second.csv"), "Name,Value\ne,5\n");
+            List<IFileReference> replayed = new FindFilesMap<Empty>(
+                    desc, extents(loaded), upTo).apply(null);
+            Assert.assertEquals(1, replayed.size());
+            IFileReference original = delta.get(0);
+            IFileReference again = replayed.get(0);
+            Assert.assertEquals(original.getPathname(), again.getPathname());
+            Assert.assertEquals(original.getStartOffset(), again.getStartOffset());
+            Assert.assertEquals(original.getEndOffset(), again.getEndOffset());
+            ITable table = load(again);
+            Assert.assertEquals(1, table.getNumOfRows());
+            Assert.assertEquals("b", table.getLoadedColumn("Name").getString(0));
+        } finally {
+            File[] files = folder.toFile().listFiles();
+            if (files != null)
+                for (File f : files)
+                    Assert.assertTrue(f.delete());
+            Files.delete(folder);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.storage;
+
+import org.hillview.storage.FileSetDescription;
+import org.hillview.storage.IFileReference;
+import org.hillview.storage.LoadedFileCache;
+import org.hillview.table.api.ITable;
+import org.hillview.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LoadedFileCacheTest extends BaseTest {
+    private static final String file = "../data/ontime/On_Time_Sample.csv";
+
+    private static IFileReference getReference(String cookie) {
+        FileSetDescription desc = new FileSetDescription();
+        desc.fileKind = "csv";
+        desc.fileNamePattern = file;
+        desc.headerRow = true;
+        desc.cookie = cookie;
+        return desc.createFileReference(file);
+    }
+
+    @Test
+    public void testMemoryCache() {
+        LoadedFileCache cache = new LoadedFileCache(null);
+        ITable first = cache.load(getReference(null));
+        ITable second = cache.load(getReference(null));
+        Assert.assertSame(first, second);
+        ITable other = cache.load(getReference("x"));
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals(2, cache.size());
+        cache.purge();
+        ITable third = cache.load(getReference(null));
+        Assert.assertNotSame(first, third);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Path folder = Files.createTempDirectory("snapshots");
+        try {
+            LoadedFileCache cache = new LoadedFileCache(folder.toString());
+            ITable first = cache.load(getReference(null));
+            File[] snapshots = folder.toFile().listFiles();
+            Assert.assertNotNull(snapshots);
+            Assert.assertEquals(1, snapshots.length);
+            Assert.assertTrue(snapshots[0].getName().endsWith(".hvsnapshot"));
+
+            // A new cache finds the table in the snapshot.
+            LoadedFileCache other = new LoadedFileCache(folder.toString());
+            ITable second = other.load(getReference(null));
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(first.getSchema(), second.getSchema());
+            Assert.assertEquals(first.toLongString(20), second.toLongString(20));
+
+            // A snapshot of the same file with other options replaces the old one.
+            other.load(getReference("x"));
+            File[] replaced = folder.toFile().listFiles();
+            Assert.assertNotNull(replaced);
+            Assert.assertEquals(1, replaced.length);
+            Assert.assertNotEquals(snapshots[0].getName(), replaced[0].getName());
+        } finally {
+            File[] files = folder.toFile().listFiles();
+            if (files != null)
+                for (File f : files)
+                    Assert.assertTrue(f.delete());
+            Files.delete(folder);
+        }
+    }
+
+    @Test
+    public void testFailedSnapshot() throws Exception {
+        Path folder = Files.createTempDirectory("snapshots");
+        Path blocked = null;
+        try {
+            new LoadedFileCache(folder.toString()).load(getReference(null));
+            File[] snapshots = folder.toFile().listFiles();
+            Assert.assertNotNull(snapshots);
+            Assert.assertEquals(1, snapshots.length);
+
+            // Replace the snapshot with a non-empty folder, so that it can neither
+            // be read nor overwritten.
+            blocked = snapshots[0].toPath();
+            Files.delete(blocked);
+            Files.createDirectory(blocked);
+            Files.createFile(blocked.resolve("x"));
+            ITable table = new LoadedFileCache(folder.toString()).load(getReference(null));
+            Assert.assertNotNull(table);
+            // No temporary file is left behind.
+            File[] files = folder.toFile().listFiles();
+            Assert.assertNotNull(files);
+            Assert.assertEquals(1, files.length);
+            Assert.assertEquals(blocked.toFile(), files[0]);
+        } finally {
+            if (blocked != null) {
+                Files.deleteIfExists(blocked.resolve("x"));
+                Files.deleteIfExists(blocked);
+            }
+            File[] files = folder.toFile().listFiles();
+            if (files != null)
+                for (File f : files)
+                    Assert.assertTrue(f.delete());
+            Files.delete(folder);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.Converters;
+import org.hillview.utils.HillviewLogger;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -103,4 +104,35 @@ public class LogFileParserTest extends BaseTest {
         Assert.assertNull(getValue(table, LogFiles.parseErrorColumn, 0));
         Assert.assertNotNull(getValue(table, LogFiles.parseErrorColumn, 1));
     }
+
+    @Test
+    public void parseAsyncLog() throws IOException {
+        File f = File.createTempFile("tmp", ".log", new File("."));
+        f.deleteOnExit();
+        // A separate logger, so that messages logged by other tests do not interfere.
+        HillviewLogger logger = new HillviewLogger("worker", f.getPath());
+        StringBuilder mutable = new StringBuilder("before");
+        for (int i = 0; i < 100; i++) {
+            logger.info("Logged message", "{0}:{1}:{2}", i,
+                    HillviewLogger.lazy(() -> "lazy,value"), mutable);
+            // Arguments are formatted when the message is logged.
+            mutable.setLength(0);
+            mutable.append("after");
+        }
+        logger.shutdown();
+
+        ITable table = HillviewLogs.parseLogFile(f.getPath());
+        Converters.checkNull(table);
+        // The first message is written when the logger starts.
+        Assert.assertEquals(101, table.getNumOfRows());
+        for (int i = 1; i < table.getNumOfRows(); i++) {
+            Assert.assertEquals("Logged message", getValue(table, "Message", i));
+            Assert.assertEquals("parseAsyncLog", getValue(table, "Method", i));
+        }
+        Assert.assertEquals("worker", getValue(table, "Role", 1));
+        Assert.assertEquals("INFO", getValue(table, "Level", 1));
+        Assert.assertEquals(LogFileParserTest.class.getName(), getValue(table, "Class", 1));
+        Assert.assertEquals("0:lazy,value:before", getValue(table, "Arguments", 1));
+        Assert.assertEquals("99:lazy,value:after", getValue(table, "Arguments", 100));
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.storage;
+
+import org.hillview.storage.SnapshotFileLoader;
+import org.hillview.storage.SnapshotFileWriter;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Table;
+import org.hillview.table.api.*;
+import org.hillview.table.columns.*;
+import org.hillview.table.membership.MembershipSetFactory;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SnapshotFileTest extends BaseTest {
+    private static final int ROWS = 1000;
+
+    private static Table createTable() {
+        IntArrayColumn ints = new IntArrayColumn(new ColumnDescription("Int", ContentsKind.Integer), ROWS);
+        DoubleArrayColumn doubles = new DoubleArrayColumn(
+                new ColumnDescription("Double", ContentsKind.Double), ROWS);
+        StringArrayColumn strings = new StringArrayColumn(
+                new ColumnDescription("String", ContentsKind.String), ROWS);
+        DoubleArrayColumn dates = new DoubleArrayColumn(new ColumnDescription("Date", ContentsKind.Date), ROWS);
+        DoubleArrayColumn start = new DoubleArrayColumn(new ColumnDescription("S", ContentsKind.Double), ROWS);
+        DoubleArrayColumn end = new DoubleArrayColumn(new ColumnDescription("E", ContentsKind.Double), ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            if (i % 7 == 0)
+                ints.setMissing(i);
+            else
+                ints.set(i, i * 3 - 500);
+            doubles.set(i, i / 3.0);
+            if (i % 5 == 0)
+                strings.setMissing(i);
+            else
+                strings.set(i, "S" + (i % 13));
+            dates.set(i, 1.5e12 + i * 1000.0);
+            start.set(i, (double)i);
+            end.set(i, i + 0.5);
+        }
+        IColumn intervals = new IntervalColumn(
+                new ColumnDescription("Interval", ContentsKind.Interval), start, end);
+        List<IColumn> columns = new ArrayList<IColumn>();
+        columns.add(ints);
+        columns.add(doubles);
+        columns.add(strings);
+        columns.add(dates);
+        columns.add(intervals);
+        columns.add(new EmptyColumn(new ColumnDescription("None", ContentsKind.None), ROWS));
+        return new Table(columns, "snapshot", null);
+    }
+
+    private static ITable roundTrip(ITable table, boolean lazy) throws IOException {
+        File file = File.createTempFile("hillview", ".snapshot");
+        try {
+            SnapshotFileWriter writer = new SnapshotFileWriter(file.getPath());
+            writer.writeTable(table);
+            SnapshotFileLoader loader = new SnapshotFileLoader(file.getPath(), lazy);
+            ITable result = loader.load();
+            Assert.assertNotNull(result);
+            // Force lazy columns to load before the file is deleted.
+            result.getLoadedColumns(result.getSchema().getColumnNames());
+            return result;
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Table table = createTable();
+        ITable result = roundTrip(table, false);
+        Assert.assertEquals(table.getSchema(), result.getSchema());
+        Assert.assertEquals(ROWS, result.getNumOfRows());
+        Assert.assertEquals(table.toLongString(ROWS), result.toLongString(ROWS));
+        IColumn strings = result.getLoadedColumn("String");
+        Assert.assertTrue(strings instanceof StringArrayColumn);
+        Assert.assertTrue(strings.isMissing(0));
+        Assert.assertEquals("S1", strings.getString(1));
+        Assert.assertTrue(result.getLoadedColumn("Int").isMissing(7));
+    }
+
+    @Test
+    public void testFilteredTable() throws IOException {
+        Table table = createTable();
+        IMutableMembershipSet members = MembershipSetFactory.create(ROWS, ROWS / 3);
+        for (int i = 0; i < ROWS; i += 3)
+            members.add(i);
+        ITable filtered = table.selectRowsFromFullTable(members.seal());
+        ITable result = roundTrip(filtered, false);
+        Assert.assertEquals(filtered.getNumOfRows(), result.getNumOfRows());
+        Assert.assertEquals(filtered.toLongString(ROWS), result.toLongString(ROWS));
+    }
+
+    @Test
+    public void testLazyLoad() throws IOException {
+        ITable table = TestTables.getIntTable(ROWS, 3);
+        ITable result = roundTrip(table, true);
+        Assert.assertEquals(table.toLongString(50), result.toLongString(50));
+        for (IColumn c : result.getLoadedColumns(Collections.singletonList("Column0")))
+            Assert.assertTrue(c.isLoaded());
+    }
+}
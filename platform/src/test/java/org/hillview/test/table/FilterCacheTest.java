@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.table;
+
+import org.hillview.maps.FilterCache;
+import org.hillview.maps.FilterMap;
+import org.hillview.table.Table;
+import org.hillview.table.api.ITable;
+import org.hillview.table.filters.RangeFilterDescription;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FilterCacheTest extends BaseTest {
+    private static RangeFilterDescription range(ITable table, double min, double max) {
+        RangeFilterDescription result = new RangeFilterDescription();
+        result.cd = table.getSchema().getDescription("Age");
+        result.min = min;
+        result.max = max;
+        return result;
+    }
+
+    @Test
+    public void testFilterCache() {
+        Table table = TestTables.testRepTable();
+        ITable first = new FilterMap(range(table, 15, 25)).apply(table);
+        // A different description object of the same filter
+        ITable second = new FilterMap(range(table, 15, 25)).apply(table);
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertEquals(4, first.getNumOfRows());
+        Assert.assertSame(first.getMembershipSet(), second.getMembershipSet());
+
+        ITable other = new FilterMap(range(table, 15, 35)).apply(table);
+        Assert.assertNotNull(other);
+        Assert.assertEquals(7, other.getNumOfRows());
+        Assert.assertNotSame(first.getMembershipSet(), other.getMembershipSet());
+
+        // The same filter on another table is computed separately.
+        Table copy = TestTables.testRepTable();
+        ITable third = new FilterMap(range(copy, 15, 25)).apply(copy);
+        Assert.assertNotNull(third);
+        Assert.assertNotSame(first.getMembershipSet(), third.getMembershipSet());
+
+        FilterCache.instance.purge();
+        ITable fourth = new FilterMap(range(table, 15, 25)).apply(table);
+        Assert.assertNotNull(fourth);
+        Assert.assertNotSame(first.getMembershipSet(), fourth.getMembershipSet());
+        Assert.assertEquals(4, fourth.getNumOfRows());
+    }
+}
@@ -25,11 +25,20 @@ import org.hillview.table.membership.DenseMembershipSet;
 import org.hillview.table.membership.EmptyMembershipSet;
 import org.hillview.table.membership.FullMembershipSet;
 import org.hillview.table.membership.MembershipSetFactory;
+import org.hillview.table.membership.RoaringMembershipSet;
+import org.hillview.table.membership.SparseMembershipSet;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.IntSet;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.BitSet;
+import java.util.Random;
+
 /* Tests for the three Membership Classes:
  * FullMembership, LazyMembership, SparseMembership
  */
@@ -155,4 +164,131 @@ public class MembershipTest extends BaseTest {
         Assert.assertTrue( counter > 0.9 * iter.rate() * dms.getSize());
         Assert.assertTrue( counter < 1.1 * iter.rate() * dms.getSize());
     }
+
+    /**
+     * Builds a set with blocks of different densities: sparse rows,
+     * dense random rows, and long runs.
+     */
+    private static RoaringMembershipSet roaring(int max, long seed, BitSet reference) {
+        Random random = new Random(seed);
+        RoaringMembershipSet set = new RoaringMembershipSet(max);
+        for (int i = 0; i < max; i++) {
+            int block = i >>> 16;
+            boolean member;
+            if (block % 3 == 0)
+                member = random.nextInt(100) == 0;
+            else if (block % 3 == 1)
+                member = random.nextBoolean();
+            else
+                member = (i / 1000 + seed) % 2 == 0;
+            if (member) {
+                set.add(i);
+                reference.set(i);
+            }
+        }
+        set.seal();
+        return set;
+    }
+
+    private static void check(IMembershipSet set, BitSet reference) {
+        Assert.assertEquals(reference.cardinality(), set.getSize());
+        IRowIterator it = set.getIterator();
+        int expected = reference.nextSetBit(0);
+        int row = it.getNextRow();
+        while (row >= 0) {
+            Assert.assertEquals(expected, row);
+            Assert.assertTrue(set.isMember(row));
+            expected = reference.nextSetBit(row + 1);
+            row = it.getNextRow();
+        }
+        Assert.assertEquals(-1, expected);
+        for (int i = 0; i < 1000; i++)
+            Assert.assertEquals(reference.get(i * 331), set.isMember(i * 331));
+    }
+
+    @Test
+    public void TestRoaringMembership() throws Exception {
+        final int max = 6 * 65536 + 123;
+        BitSet r1 = new BitSet();
+        BitSet r2 = new BitSet();
+        RoaringMembershipSet s1 = roaring(max, 1, r1);
+        RoaringMembershipSet s2 = roaring(max, 2, r2);
+        check(s1, r1);
+        check(s2, r2);
+
+        BitSet union = (BitSet)r1.clone();
+        union.or(r2);
+        check(s1.union(s2), union);
+        BitSet intersection = (BitSet)r1.clone();
+        intersection.and(r2);
+        check(s1.intersection(s2), intersection);
+        BitSet minus = (BitSet)r1.clone();
+        minus.andNot(r2);
+        check(s1.setMinus(s2), minus);
+
+        // Set operations with other kinds of membership sets
+        DenseMembershipSet dense = new DenseMembershipSet(max, max);
+        for (int i = r2.nextSetBit(0); i >= 0; i = r2.nextSetBit(i + 1))
+            dense.add(i);
+        check(s1.intersection(dense), intersection);
+        check(dense.setMinus(s2), new BitSet());
+        check(s1.intersection(new FullMembershipSet(max)), r1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(s1);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            check((IMembershipSet)in.readObject(), r1);
+        }
+    }
+
+    @Test
+    public void TestRoaringSample() {
+        BitSet reference = new BitSet();
+        RoaringMembershipSet set = roaring(4 * 65536, 3, reference);
+        for (int k : new int[] { 40, 1000, set.getSize() / 2 + 1, set.getSize() - 10 }) {
+            IMembershipSet sample = set.sample(k, 12345);
+            Assert.assertEquals(k, sample.getSize());
+            IRowIterator it = sample.getIterator();
+            int previous = -1;
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                Assert.assertTrue(reference.get(row));
+                Assert.assertTrue(row > previous);
+                previous = row;
+            }
+        }
+
+        double rate = 0.1;
+        ISampledRowIterator iter = set.getIteratorOverSample(rate, 123, false);
+        int counter = 0;
+        for (int row = iter.getNextRow(); row >= 0; row = iter.getNextRow()) {
+            Assert.assertTrue(reference.get(row));
+            counter++;
+        }
+        Assert.assertEquals(-1, iter.getNextRow());
+        Assert.assertTrue(counter > 0.9 * rate * set.getSize());
+        Assert.assertTrue(counter < 1.1 * rate * set.getSize());
+    }
+
+    @Test
+    public void TestFactoryRepresentation() {
+        Assert.assertTrue(MembershipSetFactory.create(1000000, 10) instanceof SparseMembershipSet);
+        Assert.assertTrue(MembershipSetFactory.create(1000000, 500000) instanceof RoaringMembershipSet);
+        Assert.assertTrue(MembershipSetFactory.create(1000, 500) instanceof RoaringMembershipSet);
+
+        // Small sets are not sampled unless the rate is enforced.
+        RoaringMembershipSet small = new RoaringMembershipSet(1000);
+        for (int i = 0; i < 50; i++)
+            small.add(i * 3);
+        small.seal();
+        ISampledRowIterator iter = small.getIteratorOverSample(0.1, 123, false);
+        Assert.assertEquals(1.0, iter.rate(), 0);
+        int counter = 0;
+        while (iter.getNextRow() >= 0)
+            counter++;
+        Assert.assertEquals(50, counter);
+        Assert.assertEquals(0.1, small.getIteratorOverSample(0.1, 123, true).rate(), 0);
+    }
 }
@@ -156,4 +156,37 @@ public class QuantizationTest extends BaseTest {
         for (int i = 0; i < shisto.size(); i++)
             Assert.assertEquals(shisto.getBucket(i).count, ohs.getBucket(i).count);
     }
+
+    @Test
+    public void testMaterializedColumn() {
+        Table table = TestTables.testTable();
+        IColumn age = table.getLoadedColumn("Age");
+        // Some values are out of range
+        ColumnQuantization cpm = new DoubleColumnQuantization("Age", 2, 2, 10);
+        QuantizedColumn pc = new QuantizedColumn(age, cpm);
+        QuantizedColumn mc = QuantizedColumn.materialize(age, cpm);
+        Assert.assertTrue(mc.isMaterialized());
+        for (int i = 0; i < pc.sizeInRows(); i++) {
+            Assert.assertEquals(pc.isMissing(i), mc.isMissing(i));
+            if (!pc.isMissing(i)) {
+                Assert.assertEquals(pc.getInt(i), mc.getInt(i));
+                Assert.assertEquals(pc.asDouble(i), mc.asDouble(i), 0);
+            }
+        }
+        // The codes are shared
+        QuantizedColumn mc1 = QuantizedColumn.materialize(age, cpm);
+        for (int i = 0; i < pc.sizeInRows(); i++)
+            Assert.assertEquals(mc.getCode(i), mc1.getCode(i));
+
+        IColumn name = table.getLoadedColumn("Name");
+        String[] boundaries = new String[] { "B", "D", "F" };
+        cpm = new StringColumnQuantization("Name", boundaries, "M");
+        pc = new QuantizedColumn(name, cpm);
+        mc = QuantizedColumn.materialize(name, cpm);
+        for (int i = 0; i < pc.sizeInRows(); i++) {
+            Assert.assertEquals(pc.isMissing(i), mc.isMissing(i));
+            if (!pc.isMissing(i))
+                Assert.assertEquals(pc.getString(i), mc.getString(i));
+        }
+    }
 }
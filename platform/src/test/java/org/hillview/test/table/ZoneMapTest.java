@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.table;
+
+import org.hillview.maps.FilterMap;
+import org.hillview.sketches.FindSketch;
+import org.hillview.sketches.results.ColumnSortOrientation;
+import org.hillview.table.ColumnZoneMap;
+import org.hillview.table.RecordOrder;
+import org.hillview.table.Table;
+import org.hillview.table.api.ITable;
+import org.hillview.table.filters.ComparisonFilterDescription;
+import org.hillview.table.filters.RangeFilterDescription;
+import org.hillview.table.filters.StringColumnFilterDescription;
+import org.hillview.table.filters.StringFilterDescription;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZoneMapTest extends BaseTest {
+    private static RangeFilterDescription range(ITable table, String column, double min, double max) {
+        RangeFilterDescription result = new RangeFilterDescription();
+        result.cd = table.getSchema().getDescription(column);
+        result.min = min;
+        result.max = max;
+        return result;
+    }
+
+    @Test
+    public void testZoneMap() {
+        Table table = TestTables.testRepTable();
+        ColumnZoneMap.computeAll(table);
+        ColumnZoneMap age = ColumnZoneMap.get(table, "Age");
+        Assert.assertNotNull(age);
+        Assert.assertEquals(10, age.min, 0);
+        Assert.assertEquals(60, age.max, 0);
+        Assert.assertEquals(0, age.missing);
+        ColumnZoneMap name = ColumnZoneMap.get(table, "Name");
+        Assert.assertNotNull(name);
+        Assert.assertEquals("Bill", name.minString);
+        Assert.assertEquals("Tom", name.maxString);
+        Assert.assertTrue(name.mayContain("Mike"));
+        Assert.assertTrue(name.mayContain("mIKE"));
+        Assert.assertFalse(name.mayContain("Nobody"));
+    }
+
+    @Test
+    public void testFilterPruning() {
+        Table table = TestTables.testRepTable();
+        ColumnZoneMap.computeAll(table);
+
+        RangeFilterDescription none = range(table, "Age", 100, 200);
+        Assert.assertEquals(ColumnZoneMap.Match.None, none.zoneMatch(table));
+        ITable result = new FilterMap(none).apply(table);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(0, result.getNumOfRows());
+
+        RangeFilterDescription all = range(table, "Age", 0, 100);
+        Assert.assertEquals(ColumnZoneMap.Match.All, all.zoneMatch(table));
+        Assert.assertSame(table, new FilterMap(all).apply(table));
+
+        RangeFilterDescription some = range(table, "Age", 15, 25);
+        Assert.assertEquals(ColumnZoneMap.Match.Some, some.zoneMatch(table));
+        result = new FilterMap(some).apply(table);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(4, result.getNumOfRows());
+
+        StringColumnFilterDescription missingName = new StringColumnFilterDescription(
+                "Name", new StringFilterDescription("Nobody"));
+        Assert.assertEquals(ColumnZoneMap.Match.None, missingName.zoneMatch(table));
+        StringColumnFilterDescription notMissing = new StringColumnFilterDescription(
+                "Name", new StringFilterDescription("Nobody", false, false, false, true, false, false));
+        Assert.assertEquals(ColumnZoneMap.Match.All, notMissing.zoneMatch(table));
+
+        ComparisonFilterDescription equal = new ComparisonFilterDescription(
+                table.getSchema().getDescription("Age"), null, 70.0, null, "==");
+        Assert.assertEquals(ColumnZoneMap.Match.None, equal.zoneMatch(table));
+        ComparisonFilterDescription notEqual = new ComparisonFilterDescription(
+                table.getSchema().getDescription("Age"), null, 70.0, null, "!=");
+        Assert.assertEquals(ColumnZoneMap.Match.All, notEqual.zoneMatch(table));
+    }
+
+    @Test
+    public void testFindPruning() {
+        Table table = TestTables.testRepTable();
+        ColumnZoneMap.computeAll(table);
+        RecordOrder cso = new RecordOrder();
+        cso.append(new ColumnSortOrientation(table.getSchema().getDescription("Name"), true));
+        StringFilterDescription sf = new StringFilterDescription(
+                "Nobody", false, false, false, false, false, true);
+        FindSketch.Result result = new FindSketch(sf, null, cso).create(table);
+        Assert.assertNotNull(result);
+        Assert.assertNull(result.firstMatchingRow);
+        Assert.assertEquals(0, result.at);
+
+        sf = new StringFilterDescription("mike", false, false, false, false, false, true);
+        result = new FindSketch(sf, null, cso).create(table);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(2, result.at);
+    }
+}
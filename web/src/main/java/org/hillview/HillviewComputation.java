@@ -64,11 +64,24 @@ public class HillviewComputation implements Serializable {
         this.onCreate = new ArrayList<RpcTargetAction>();
     }
 
+    /**
+     * A computation that produces the same object with a request that has
+     * other arguments.  Used when the arguments describing how to produce
+     * the object again are only known after the computation has run.
+     * @param arguments  New arguments; they are encoded as JSON.
+     */
+    public HillviewComputation withArguments(Object arguments) {
+        return new HillviewComputation(this.resultId, this.request.withArguments(arguments));
+    }
+
     private RpcTarget.Id getSourceId() {
         return this.request.objectId;
     }
 
-    private synchronized void registerOnCreate(RpcTargetAction action) {
+    /**
+     * Registers an action to execute when the object with resultId is created.
+     */
+    synchronized void registerOnCreate(RpcTargetAction action) {
         // If the object already exists notify right away
         // Hopefully there is no race which could lose a notification this way.
         RpcTarget target = RpcObjectManager.instance.getObject(this.resultId);
@@ -79,11 +92,12 @@ public class HillviewComputation implements Serializable {
         }
     }
 
-    synchronized void replay(RpcTargetAction action) {
+    /**
+     * Executes the computation again.  The actions waiting for the result
+     * should be registered with registerOnCreate.
+     */
+    void replay() {
         HillviewLogger.instance.info("Attempt to replay", "{0}", this);
-        // Tell this guy when the produced object is created
-        this.registerOnCreate(action);
-
         // Trigger the computation by retrieving the source; when that's done it will
         // start sourceNotify which will rerun this computation.
         RpcObjectManager.instance.when(this.getSourceId(), source -> {
@@ -135,11 +149,17 @@ public class HillviewComputation implements Serializable {
      * and inserted in the RpcObjectManager.
      */
     void objectCreated(RpcTarget target) {
-        for (RpcTargetAction o: this.onCreate) {
+        // The actions are executed without holding the lock, since they
+        // may start the replay of other computations.
+        List<RpcTargetAction> toNotify;
+        synchronized (this) {
+            toNotify = new ArrayList<RpcTargetAction>(this.onCreate);
+            this.onCreate.clear();
+        }
+        for (RpcTargetAction o: toNotify) {
             HillviewLogger.instance.info("Notifying observer of new object.",
                     "Computation={0}", this.toString());
             o.action(target);
         }
-        this.onCreate.clear();
     }
 }
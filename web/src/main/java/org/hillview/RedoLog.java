@@ -18,56 +18,178 @@
 package org.hillview;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonStreamParser;
 import org.hillview.dataset.api.IJson;
+import org.hillview.storage.CheckpointLayout;
+import org.hillview.targets.InitialObjectTarget;
 import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.MetricsRegistry;
+import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
 
 /**
  * The Redo log stores information about how RpcTarget objects have been created.
  * The log can be stored to persistent storage.
  * On start-up the log is read from persistent storage allowing sessions
  * to persist across system restarts.
+ *
+ * The memory and the storage used are bounded:
+ * - At most maxObjects RpcTargets are kept in memory; the least recently used
+ *   ones are evicted and rebuilt from their lineage when needed again.
+ * - The log is periodically compacted: only the lineage of the objects used
+ *   within the retention period, in memory, or referenced by bookmarks is kept.
+ * - Objects that were expensive to compute can be checkpointed; an object with a
+ *   checkpoint is rebuilt by reloading the checkpoint instead of replaying its lineage.
  */
 class RedoLog {
     private static final String defaultStorageFile = "hillview.redo";
+    /**
+     * The log is not compacted while it has fewer lines than this.
+     */
+    private static final int minCompactionLines = 1000;
+
+    /**
+     * Describes the files holding a checkpoint of an object.
+     */
+    static class Checkpoint implements IJson {
+        static final long serialVersionUID = 1;
+
+        /**
+         * Folder on each worker holding the checkpoint files.
+         */
+        final String folder;
+        /**
+         * Describes the files and how they are arranged in the object.
+         */
+        final CheckpointLayout layout;
+        @Nullable
+        final String metadataDirectory;
+
+        Checkpoint(String folder, CheckpointLayout layout, @Nullable String metadataDirectory) {
+            this.folder = folder;
+            this.layout = layout;
+            this.metadataDirectory = metadataDirectory;
+        }
+    }
 
     /**
      * For each object id the computation that has produced it.
      */
-    private final HashMap<RpcTarget.Id, HillviewComputation> generator =
+    private final LinkedHashMap<RpcTarget.Id, HillviewComputation> generator =
+            new LinkedHashMap<RpcTarget.Id, HillviewComputation>();
+    /**
+     * For each object id the time when it was last created or used.
+     */
+    private final HashMap<RpcTarget.Id, Long> lastUsed = new HashMap<RpcTarget.Id, Long>();
+    /**
+     * Checkpoints of objects.
+     */
+    private final HashMap<RpcTarget.Id, Checkpoint> checkpoints = new HashMap<RpcTarget.Id, Checkpoint>();
+    /**
+     * For each object with a checkpoint the computation that reloads it.
+     */
+    private final HashMap<RpcTarget.Id, HillviewComputation> restore =
             new HashMap<RpcTarget.Id, HillviewComputation>();
     /**
-     * Map object id to object.
+     * Folders of checkpoints that are no longer used and can be deleted.
      */
-    private final HashMap<RpcTarget.Id, RpcTarget> objects;
+    private final List<String> droppedCheckpoints = new ArrayList<String>();
+    /**
+     * Map object id to object; iterates in order of use.
+     */
+    private final LinkedHashMap<RpcTarget.Id, RpcTarget> objects;
     /**
      * File storing this redo log.  If null there is no persistent storage.
      */
     @Nullable
     private final String backupFile;
+    /**
+     * Maximum number of objects kept in memory.
+     */
+    private final int maxObjects;
+    /**
+     * The lineage of objects that have not been used for this long is discarded.
+     */
+    private final long retentionMs;
+    /**
+     * Number of lines in the backup file.
+     */
+    private int logLines;
+    /**
+     * The log is compacted when it grows to this many lines.
+     */
+    private int compactAt;
 
     RedoLog() {
-        this.objects = new HashMap<RpcTarget.Id, RpcTarget>();
-        this.backupFile = defaultStorageFile;
+        this(storageFile(),
+                Integer.parseInt(Configuration.instance.getProperty("maxTargets", "10000")),
+                TimeUnit.DAYS.toMillis(Long.parseLong(
+                        Configuration.instance.getProperty("redoRetentionDays", "30"))));
+    }
+
+    /**
+     * The file storing the log; an empty file name disables persistent storage.
+     */
+    @Nullable
+    private static String storageFile() {
+        String file = Configuration.instance.getProperty("redoLogFile", defaultStorageFile);
+        return Utilities.isNullOrEmpty(file) ? null : file;
+    }
+
+    RedoLog(@Nullable String backupFile, int maxObjects, long retentionMs) {
+        this.objects = new LinkedHashMap<RpcTarget.Id, RpcTarget>(16, 0.75f, true);
+        this.backupFile = backupFile;
+        this.maxObjects = maxObjects;
+        this.retentionMs = retentionMs;
         this.reload();
+        this.compact();
     }
 
     synchronized public void addObject(RpcTarget target) {
-        if (this.objects.containsKey(target.getId()))
-            throw new RuntimeException("Object with id " + target.getId() + " already in map");
-        this.generator.put(target.getId(), target.computation);
-        this.persistInLog(target);
+        RpcTarget.Id id = target.getId();
+        if (this.objects.containsKey(id))
+            throw new RuntimeException("Object with id " + id + " already in map");
+        if (target.computation != null && !this.generator.containsKey(id)) {
+            // Objects that are rebuilt already have their lineage in the log.
+            this.generator.put(id, target.computation);
+            this.persistInLog(id, target.computation.request, null);
+        }
+        this.lastUsed.put(id, System.currentTimeMillis());
         HillviewLogger.instance.info("Inserting targetId", "{0}", target.toString());
-        this.objects.put(target.getId(), target);
+        this.objects.put(id, target);
+        this.evict();
+        if (this.logLines >= this.compactAt)
+            this.compact();
+    }
+
+    /**
+     * Remove the least recently used objects from memory; they can be rebuilt
+     * from their lineage.
+     */
+    private void evict() {
+        Iterator<Map.Entry<RpcTarget.Id, RpcTarget>> it = this.objects.entrySet().iterator();
+        while (this.objects.size() > this.maxObjects && it.hasNext()) {
+            RpcTarget.Id id = it.next().getKey();
+            // Objects without lineage, such as the initial object, cannot be rebuilt.
+            if (this.generator.get(id) == null)
+                continue;
+            HillviewLogger.instance.info("Evicting object", "{0}", id);
+            MetricsRegistry.instance.increment("evicted_targets");
+            it.remove();
+        }
     }
 
     private static class DestAndRequest implements IJson {
@@ -75,18 +197,48 @@ class RedoLog {
 
         final String resultId;
         final RpcRequest request;
+        /**
+         * Time when the object was last used; 0 if unknown.
+         */
+        final long time;
+        @Nullable
+        final Checkpoint checkpoint;
 
-        DestAndRequest(String resultId, RpcRequest request) {
+        DestAndRequest(String resultId, RpcRequest request, long time, @Nullable Checkpoint checkpoint) {
             this.request = request;
             this.resultId = resultId;
+            this.time = time;
+            this.checkpoint = checkpoint;
         }
     }
 
-    private synchronized void addGenerated(String id, RpcRequest request) {
+    /**
+     * A computation that rebuilds an object by reloading its checkpoint.
+     */
+    private static HillviewComputation restoreComputation(RpcTarget.Id id, Checkpoint checkpoint) {
+        JsonObject request = new JsonObject();
+        request.addProperty("requestId", -1);
+        request.addProperty("objectId", RpcTarget.Id.initialId().toString());
+        request.addProperty("method", "loadCheckpoint");
+        request.addProperty("arguments", checkpoint.toJson());
+        return new HillviewComputation(id, new RpcRequest(request));
+    }
+
+    private synchronized void addGenerated(DestAndRequest dar) {
         HillviewLogger.instance.info("Installing object lineage", "{0} from {1}",
-                id, request);
-        RpcTarget.Id tid = new RpcTarget.Id(id);
-        this.generator.put(tid, new HillviewComputation(tid, request));
+                dar.resultId, dar.request);
+        RpcTarget.Id tid = new RpcTarget.Id(dar.resultId);
+        this.generator.put(tid, new HillviewComputation(tid, dar.request));
+        // Logs written by older versions have no times.
+        this.lastUsed.put(tid, dar.time == 0 ? System.currentTimeMillis() : dar.time);
+        // The last line for an object describes its current checkpoint.
+        if (dar.checkpoint != null) {
+            this.checkpoints.put(tid, dar.checkpoint);
+            this.restore.put(tid, restoreComputation(tid, dar.checkpoint));
+        } else {
+            this.checkpoints.remove(tid);
+            this.restore.remove(tid);
+        }
     }
 
     private void reload() {
@@ -98,33 +250,159 @@ class RedoLog {
              while (parser.hasNext()) {
                  JsonElement elem = parser.next();
                  DestAndRequest dar = IJson.gsonInstance.fromJson(elem, DestAndRequest.class);
-                 this.addGenerated(dar.resultId, dar.request);
+                 this.addGenerated(dar);
+                 this.logLines++;
              }
         } catch (IOException ex) {
             HillviewLogger.instance.error("Cannot read hillview redo log", ex);
         }
     }
 
-    private void persistInLog(RpcTarget target) {
+    private void persistInLog(RpcTarget.Id id, RpcRequest request, @Nullable Checkpoint checkpoint) {
         // Yes, we write the data and close the file immediately.
         if (this.backupFile == null)
             return;
-        if (target.computation == null)
-            return;
         DestAndRequest dar = new DestAndRequest(
-                target.getId().toString(),
-                target.computation.request);
+                id.toString(), request, System.currentTimeMillis(), checkpoint);
         try (FileWriter f = new FileWriter(this.backupFile, true);
              PrintWriter p = new PrintWriter(f)) {
             p.println(dar.toJson());
+            this.logLines++;
         } catch (IOException ex) {
             HillviewLogger.instance.error("Cannot write to redo log", ex);
         }
     }
 
+    /**
+     * Ids of the objects referenced by bookmarks.
+     */
+    private static Set<RpcTarget.Id> bookmarkedIds() {
+        Set<RpcTarget.Id> result = new HashSet<RpcTarget.Id>();
+        File[] files = new File(InitialObjectTarget.bookmarkDirectory).listFiles(
+                (dir, name) -> name.endsWith(InitialObjectTarget.bookmarkExtension));
+        if (files == null)
+            return result;
+        for (File f : files) {
+            try {
+                String content = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+                Matcher m = RpcRequest.idPattern.matcher(content);
+                while (m.find())
+                    result.add(new RpcTarget.Id(m.group()));
+            } catch (IOException ex) {
+                HillviewLogger.instance.error("Cannot read bookmark", ex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Discard the lineage of the objects that cannot be used any more: the
+     * objects that are not in memory, have not been used within the retention
+     * period, are not referenced by bookmarks, and are not ancestors of such
+     * objects.  The backup file is rewritten with one line for each remaining object.
+     */
+    synchronized void compact() {
+        long now = System.currentTimeMillis();
+        ArrayDeque<RpcTarget.Id> toVisit = new ArrayDeque<RpcTarget.Id>(this.objects.keySet());
+        for (Map.Entry<RpcTarget.Id, Long> e : this.lastUsed.entrySet())
+            if (now - e.getValue() < this.retentionMs)
+                toVisit.add(e.getKey());
+        toVisit.addAll(bookmarkedIds());
+        Set<RpcTarget.Id> live = new HashSet<RpcTarget.Id>();
+        while (!toVisit.isEmpty()) {
+            RpcTarget.Id id = toVisit.pop();
+            if (!live.add(id))
+                continue;
+            HillviewComputation computation = this.generator.get(id);
+            if (computation != null)
+                toVisit.addAll(computation.request.getReferencedIds());
+        }
+
+        int before = this.generator.size();
+        for (Map.Entry<RpcTarget.Id, Checkpoint> e : this.checkpoints.entrySet())
+            if (!live.contains(e.getKey()))
+                this.droppedCheckpoints.add(e.getValue().folder);
+        this.generator.keySet().retainAll(live);
+        this.lastUsed.keySet().retainAll(live);
+        this.checkpoints.keySet().retainAll(live);
+        this.restore.keySet().retainAll(live);
+        HillviewLogger.instance.info("Compacted redo log", "{0} of {1} objects kept",
+                this.generator.size(), before);
+        this.rewrite();
+        this.compactAt = Math.max(minCompactionLines, 2 * this.logLines);
+    }
+
+    /**
+     * Write the backup file again with one line for each object.
+     */
+    private void rewrite() {
+        if (this.backupFile == null)
+            return;
+        File tmp = new File(this.backupFile + ".tmp");
+        int lines = 0;
+        try {
+            try (PrintWriter p = new PrintWriter(new FileWriter(tmp))) {
+                for (Map.Entry<RpcTarget.Id, HillviewComputation> e : this.generator.entrySet()) {
+                    if (e.getValue() == null)
+                        continue;
+                    RpcTarget.Id id = e.getKey();
+                    DestAndRequest dar = new DestAndRequest(id.toString(), e.getValue().request,
+                            this.lastUsed.getOrDefault(id, 0L), this.checkpoints.get(id));
+                    p.println(dar.toJson());
+                    lines++;
+                }
+            }
+            Files.move(tmp.toPath(), new File(this.backupFile).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.logLines = lines;
+        } catch (IOException ex) {
+            HillviewLogger.instance.error("Cannot compact redo log", ex);
+        }
+    }
+
+    /**
+     * Record that an object has been saved in a checkpoint.
+     */
+    synchronized void addCheckpoint(RpcTarget.Id id, Checkpoint checkpoint) {
+        HillviewComputation computation = this.generator.get(id);
+        if (computation == null) {
+            // The lineage has been discarded meanwhile.
+            this.droppedCheckpoints.add(checkpoint.folder);
+            return;
+        }
+        HillviewLogger.instance.info("Checkpoint saved", "{0} in {1}", id, checkpoint.folder);
+        this.checkpoints.put(id, checkpoint);
+        this.restore.put(id, restoreComputation(id, checkpoint));
+        this.persistInLog(id, computation.request, checkpoint);
+    }
+
+    /**
+     * Forget the checkpoint of an object, e.g., because some of its files are missing.
+     */
+    synchronized void removeCheckpoint(RpcTarget.Id id) {
+        Checkpoint checkpoint = this.checkpoints.remove(id);
+        this.restore.remove(id);
+        HillviewComputation computation = this.generator.get(id);
+        if (checkpoint == null || computation == null)
+            return;
+        this.droppedCheckpoints.add(checkpoint.folder);
+        this.persistInLog(id, computation.request, null);
+    }
+
+    /**
+     * Returns the folders of the checkpoints that are no longer used and clears the list.
+     */
+    synchronized List<String> takeDroppedCheckpoints() {
+        List<String> result = new ArrayList<String>(this.droppedCheckpoints);
+        this.droppedCheckpoints.clear();
+        return result;
+    }
+
     synchronized @Nullable
     RpcTarget getObject(RpcTarget.Id id) {
         HillviewLogger.instance.info("Getting object", "{0}", id);
+        if (this.generator.containsKey(id))
+            this.lastUsed.put(id, System.currentTimeMillis());
         return this.objects.get(id);
     }
 
@@ -142,7 +420,7 @@ class RedoLog {
      * Removes all RemoteObjects from the cache, except the specified (initial) object.
      * @return  The number of objects removed.
      */
-    public int removeAllObjects(RpcTarget.Id except) {
+    public synchronized int removeAllObjects(RpcTarget.Id except) {
         List<RpcTarget.Id> toDelete = new ArrayList<RpcTarget.Id>();
         for (RpcTarget.Id k: this.objects.keySet()) {
             if (!k.equals(except))
@@ -155,7 +433,23 @@ class RedoLog {
     }
 
     @Nullable
-    public HillviewComputation getComputation(RpcTarget.Id id) {
+    public synchronized HillviewComputation getComputation(RpcTarget.Id id) {
         return this.generator.get(id);
     }
+
+    /**
+     * The computation to use to rebuild an object: the one reloading its
+     * checkpoint if there is one, and otherwise the one that produced it.
+     */
+    @Nullable
+    synchronized HillviewComputation getReplayComputation(RpcTarget.Id id) {
+        HillviewComputation result = this.restore.get(id);
+        if (result != null)
+            return result;
+        return this.generator.get(id);
+    }
+
+    synchronized int size() {
+        return this.objects.size();
+    }
 }
@@ -17,6 +17,9 @@
 
 package org.hillview;
 
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.storage.CheckpointLayout;
+import org.hillview.table.api.ITable;
 import org.hillview.targets.InitialObjectTarget;
 import org.hillview.utils.HillviewLogger;
 import org.hillview.utils.RpcTargetAction;
@@ -25,9 +28,11 @@ import rx.Subscription;
 
 import javax.annotation.Nullable;
 import javax.websocket.Session;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 /**
  * The RpcObjectManager manages a pool of objects that are the targets of RPC calls
@@ -59,10 +64,31 @@ public final class RpcObjectManager {
             new HashMap<Session, Subscription>(10);
 
     private final RedoLog objectLog;
+    /**
+     * Folder where checkpoints are saved on each worker; if null no checkpoints are saved.
+     */
+    @Nullable
+    private final String checkpointDirectory;
+    /**
+     * Tables that took longer than this to compute are checkpointed.
+     */
+    private final long checkpointThresholdMs;
+    /**
+     * Objects that are being rebuilt; each is replayed only once even if
+     * several requests are waiting for it.
+     */
+    private final HashSet<RpcTarget.Id> rebuilding = new HashSet<RpcTarget.Id>();
 
     // Private constructor
     private RpcObjectManager() {
         this.objectLog = new RedoLog();
+        // Replicated datasets place partitions on several workers, so a
+        // checkpoint could not be reloaded with the same layout.
+        int replication = Integer.parseInt(Configuration.instance.getProperty("replication", "1"));
+        this.checkpointDirectory = replication == 1 ?
+                Configuration.instance.getProperty("checkpointDirectory", null) : null;
+        this.checkpointThresholdMs = Long.parseLong(
+                Configuration.instance.getProperty("checkpointThresholdMs", "30000"));
     }
 
     synchronized void addSession(Session session, @Nullable RpcTarget target) {
@@ -117,6 +143,59 @@ public final class RpcObjectManager {
     public void addObject(RpcTarget target) {
         HillviewLogger.instance.info("Object generated", "{0} from {1}", target.getId(), target.computation);
         this.objectLog.addObject(target);
+        synchronized (this) {
+            this.rebuilding.remove(target.getId());
+        }
+        List<String> dropped = this.objectLog.takeDroppedCheckpoints();
+        if (!dropped.isEmpty()) {
+            RpcTarget initial = this.getObject(initialObjectId);
+            if (initial != null)
+                ((InitialObjectTarget)initial).deleteCheckpoints(dropped);
+        }
+    }
+
+    /**
+     * Saves a table that took a long time to compute, so that it can be
+     * reloaded instead of recomputed if it has to be rebuilt.
+     * @param target     Target that was just computed.
+     * @param elapsedMs  Time taken to compute it.
+     */
+    void checkpoint(RpcTarget target, long elapsedMs) {
+        if (this.checkpointDirectory == null || elapsedMs < this.checkpointThresholdMs)
+            return;
+        IDataSet<ITable> data = target.getCheckpointData();
+        if (data == null)
+            return;
+        RpcTarget.Id id = target.getId();
+        String folder = Paths.get(this.checkpointDirectory, id.toString()).toString();
+        HillviewLogger.instance.info("Saving checkpoint", "{0} took {1}ms", id, elapsedMs);
+        CheckpointLayout.save(data, folder)
+                .subscribe(layout -> {
+                    this.objectLog.addCheckpoint(id, new RedoLog.Checkpoint(
+                            folder, layout, target.metadataDirectory));
+                }, e -> {
+                    HillviewLogger.instance.error("Cannot save checkpoint", e);
+                    RpcTarget initial = this.getObject(initialObjectId);
+                    if (initial != null)
+                        ((InitialObjectTarget)initial).deleteCheckpoints(Utilities.list(folder));
+                });
+    }
+
+    /**
+     * Rebuilds an object by replaying its lineage; used when its checkpoint
+     * cannot be reloaded.
+     * @param computation  Computation that was attempting to reload the checkpoint.
+     */
+    public void replayWithoutCheckpoint(HillviewComputation computation) {
+        RpcTarget.Id id = computation.resultId;
+        this.objectLog.removeCheckpoint(id);
+        HillviewComputation original = this.objectLog.getComputation(id);
+        if (original == null)
+            throw new RuntimeException("Don't know how to reconstruct " + id);
+        HillviewLogger.instance.info("Replaying without checkpoint", "{0}", original);
+        // The replayed request produces the object for the waiting computation.
+        this.when(original.request.objectId,
+                source -> source.execute(original.request, new RpcRequestContext(computation)));
     }
 
     @Nullable RpcTarget getObject(RpcTarget.Id id) {
@@ -129,9 +208,11 @@ public final class RpcObjectManager {
 
     /**
      * Execute the specified action.
+     * @param progress  If not null, receives the fraction of the objects
+     *                  rebuilt when the target has to be rebuilt.
      */
     @SuppressWarnings("SameParameterValue")
-    private void executeAction(RpcTargetAction action, boolean rebuild) {
+    private void executeAction(RpcTargetAction action, boolean rebuild, @Nullable DoubleConsumer progress) {
         RpcTarget target = this.getObject(action.id);
         if (target != null) {
             // Object found
@@ -141,20 +222,32 @@ public final class RpcObjectManager {
         // Object not found.
         if (rebuild) {
             // Attempt to rebuild the object.
-            this.rebuild(action);
+            this.rebuild(action, progress);
         } else {
             throw new RuntimeException("Cannot find object " + action.id);
         }
     }
 
-    public void when(RpcTarget.Id id, Consumer<RpcTarget> consumer) {
+    /**
+     * Retrieve the RpcTarget with the specified id, when available, pass it to
+     * the consumer as an argument for execution.
+     * @param id       Id to retrieve.
+     * @param consumer Action to execute when the RpcTarget is found.
+     * @param progress If not null, receives the fraction of the missing
+     *                 objects that have been rebuilt.
+     */
+    public void when(RpcTarget.Id id, Consumer<RpcTarget> consumer, @Nullable DoubleConsumer progress) {
         RpcTargetAction append = new RpcTargetAction(id) {
             @Override
             public void action(RpcTarget target) {
                 consumer.accept(target);
             }
         };
-        this.executeAction(append, true);
+        this.executeAction(append, true, progress);
+    }
+
+    public void when(RpcTarget.Id id, Consumer<RpcTarget> consumer) {
+        this.when(id, consumer, null);
     }
 
     /**
@@ -169,39 +262,139 @@ public final class RpcObjectManager {
 
     /**
      * Retrieve all the RpcTargets with the specified ids, when available, pass them to
-     * the consumer as an argument for execution.
+     * the consumer as an argument for execution.  The missing targets are
+     * rebuilt concurrently.
      * @param ids     Ids to retrieve.
      * @param consumer Action to execute when all the RpcTargets are found.
      */
     public void when(List<String> ids, Consumer<List<RpcTarget>> consumer) {
         if (ids.isEmpty()) {
             consumer.accept(Utilities.list());
-        } else {
-            String first = ids.remove(0);
-            this.when(ids, l -> this.when(first, f -> {
-                l.add(0, f);
-                consumer.accept(l);
-            }));
+            return;
+        }
+        int size = ids.size();
+        RpcTarget[] targets = new RpcTarget[size];
+        AtomicInteger remaining = new AtomicInteger(size);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            this.when(ids.get(i), t -> {
+                targets[index] = t;
+                if (remaining.decrementAndGet() == 0)
+                    consumer.accept(new ArrayList<RpcTarget>(Arrays.asList(targets)));
+            });
+        }
+    }
+
+    /**
+     * Finds the objects that have to be rebuilt to obtain the specified object:
+     * the object and all its ancestors that are not in memory.  Each object
+     * appears once even if it is shared by several descendants.
+     */
+    private Set<RpcTarget.Id> missingLineage(RpcTarget.Id id) {
+        Set<RpcTarget.Id> result = new LinkedHashSet<RpcTarget.Id>();
+        ArrayDeque<RpcTarget.Id> toVisit = new ArrayDeque<RpcTarget.Id>();
+        toVisit.add(id);
+        while (!toVisit.isEmpty()) {
+            RpcTarget.Id current = toVisit.pop();
+            if (result.contains(current) || this.getObject(current) != null)
+                continue;
+            HillviewComputation computation = this.objectLog.getReplayComputation(current);
+            // Strings in the arguments that look like ids may not be objects.
+            if (computation == null && !current.equals(id))
+                continue;
+            result.add(current);
+            if (computation != null)
+                toVisit.addAll(computation.request.getReferencedIds());
         }
+        return result;
     }
 
     /**
      * We have lost the object specified by the action.  Try to reconstruct it
-     * from the history and then execute the action.
+     * from the history and then execute the action.  All the missing ancestors
+     * are replayed at once: each replay waits only for its own sources, so
+     * independent branches of the lineage are rebuilt concurrently, and an
+     * ancestor shared by several objects is rebuilt only once.
      * @param action   Action that needs to be executed.
+     * @param progress If not null, receives the fraction of the missing
+     *                 objects that have been rebuilt.
      */
-    private void rebuild(RpcTargetAction action) {
+    private void rebuild(RpcTargetAction action, @Nullable DoubleConsumer progress) {
         HillviewLogger.instance.info("Attempt to reconstruct", "{0}", action.id);
-        HillviewComputation computation = this.objectLog.getComputation(action.id);
-        if (computation != null) {
-            // The following may trigger a recursive reconstruction.
-            HillviewLogger.instance.info("Replaying", "computation={0}", computation);
-            computation.replay(action);
-        } else {
+        HillviewComputation computation = this.objectLog.getReplayComputation(action.id);
+        if (computation == null) {
             RuntimeException ex = new RuntimeException("Don't know how to reconstruct " + action.id);
             HillviewLogger.instance.error("Could not locate computation", ex);
             throw ex;
         }
+
+        Set<RpcTarget.Id> missing = this.missingLineage(action.id);
+        HillviewLogger.instance.info("Objects to rebuild", "{0}: {1}", action.id, missing.size());
+        List<RpcTarget.Id> toReplay = new ArrayList<RpcTarget.Id>();
+        List<HillviewComputation> computations = new ArrayList<HillviewComputation>();
+        synchronized (this) {
+            for (RpcTarget.Id id : missing) {
+                HillviewComputation c = this.objectLog.getReplayComputation(id);
+                if (c != null && this.rebuilding.add(id)) {
+                    toReplay.add(id);
+                    computations.add(c);
+                }
+            }
+        }
+        if (progress != null && missing.size() > 1) {
+            int total = missing.size();
+            AtomicInteger rebuilt = new AtomicInteger();
+            for (RpcTarget.Id id : missing) {
+                HillviewComputation c = this.objectLog.getReplayComputation(id);
+                if (c == null)
+                    continue;
+                c.registerOnCreate(new RpcTargetAction(id) {
+                    @Override
+                    public void action(RpcTarget target) {
+                        progress.accept((double)rebuilt.incrementAndGet() / total);
+                    }
+                });
+            }
+        }
+        computation.registerOnCreate(action);
+        for (int i = 0; i < toReplay.size(); i++) {
+            HillviewComputation c = computations.get(i);
+            HillviewLogger.instance.info("Replaying", "computation={0}", c);
+            try {
+                c.replay();
+            } catch (RuntimeException ex) {
+                // Neither this object nor the ones not replayed yet are being rebuilt.
+                for (int j = i; j < toReplay.size(); j++)
+                    this.rebuildFailed(toReplay.get(j));
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Called when replaying a computation has failed, so that a later request
+     * attempts to rebuild the object again.
+     */
+    synchronized void rebuildFailed(RpcTarget.Id id) {
+        this.rebuilding.remove(id);
+    }
+
+    /**
+     * Called when a replayed computation has completed.  If it has not
+     * produced the object a later request attempts to rebuild it again.
+     */
+    void replayCompleted(RpcTarget.Id id) {
+        if (this.getObject(id) != null)
+            return;
+        HillviewLogger.instance.warn("Replay completed without producing object", "{0}", id);
+        this.rebuildFailed(id);
+    }
+
+    /**
+     * True if the object with this id is being rebuilt.
+     */
+    synchronized boolean isRebuilding(RpcTarget.Id id) {
+        return this.rebuilding.contains(id);
     }
 
     /**
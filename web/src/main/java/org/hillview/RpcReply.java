@@ -41,6 +41,11 @@ public final class RpcReply {
      * True if this message corresponds to an onCompleted call.
      */
     private final boolean isCompleted;
+    /**
+     * True if this message only reports the progress of rebuilding the
+     * objects needed by the request; the result is the fraction done.
+     */
+    private final boolean isProgress;
 
     /**
      * Create a reply to a request; this is one of many replies.
@@ -53,6 +58,7 @@ public final class RpcReply {
         this.result = result;
         this.isError = isError;
         this.isCompleted = false;
+        this.isProgress = false;
     }
 
     /**
@@ -64,6 +70,20 @@ public final class RpcReply {
         this.result = "0";  // unused
         this.isError = false;
         this.isCompleted = true;
+        this.isProgress = false;
+    }
+
+    /**
+     * A reply that reports the progress of rebuilding the objects needed by a request.
+     * @param requestId  Request that is waiting.
+     * @param done       Fraction of the objects rebuilt.
+     */
+    RpcReply(final int requestId, double done) {
+        this.requestId = requestId;
+        this.result = Double.toString(done);
+        this.isError = false;
+        this.isCompleted = false;
+        this.isProgress = true;
     }
 
     JsonElement toJson() {
@@ -72,6 +92,7 @@ public final class RpcReply {
         result.addProperty("result", this.result);
         result.addProperty("isError", this.isError);
         result.addProperty("isCompleted", this.isCompleted);
+        result.addProperty("isProgress", this.isProgress);
         return result;
     }
 
@@ -19,12 +19,17 @@ package org.hillview;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.hillview.dataset.api.IJson;
 import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
 import javax.websocket.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 public final class RpcRequest implements IJson {
     static final long serialVersionUID = 1;
@@ -51,6 +56,12 @@ public final class RpcRequest implements IJson {
      */
     private final JsonElement element;
 
+    /**
+     * Object ids other than the initial object are random UUIDs.
+     */
+    static final Pattern idPattern = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
     public RpcRequest(JsonElement element) {
         final JsonObject obj = element.getAsJsonObject();
         this.element = element;
@@ -75,6 +86,33 @@ public final class RpcRequest implements IJson {
         return new RpcTarget.Id[] { this.objectId };
     }
 
+    /**
+     * Returns the ids of all the RpcTarget objects that this request uses: the
+     * object it is applied to and the objects whose ids appear in the arguments,
+     * e.g., for zips and set operations.
+     */
+    List<RpcTarget.Id> getReferencedIds() {
+        List<RpcTarget.Id> result = new ArrayList<RpcTarget.Id>();
+        result.add(this.objectId);
+        if (this.arguments != null && !this.arguments.isEmpty())
+            addIds(JsonParser.parseString(this.arguments), result);
+        return result;
+    }
+
+    private static void addIds(JsonElement element, List<RpcTarget.Id> ids) {
+        if (element.isJsonPrimitive()) {
+            if (element.getAsJsonPrimitive().isString() &&
+                    idPattern.matcher(element.getAsString()).matches())
+                ids.add(new RpcTarget.Id(element.getAsString()));
+        } else if (element.isJsonArray()) {
+            for (JsonElement e : element.getAsJsonArray())
+                addIds(e, ids);
+        } else if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : element.getAsJsonObject().entrySet())
+                addIds(e.getValue(), ids);
+        }
+    }
+
     @Override
     public String toString() {
         return this.objectId + "." + this.method + "()";
@@ -97,10 +135,24 @@ public final class RpcRequest implements IJson {
         return new RpcReply(this.requestId);
     }
 
+    RpcReply createProgressReply(double done) {
+        return new RpcReply(this.requestId, done);
+    }
+
     public <T> T parseArgs(Class<T> classOfT) {
         return IJson.gsonInstance.fromJson(this.arguments, classOfT);
     }
 
+    /**
+     * A copy of this request with other arguments.
+     * @param arguments  Arguments; they are encoded as JSON.
+     */
+    RpcRequest withArguments(Object arguments) {
+        JsonObject obj = this.element.getAsJsonObject().deepCopy();
+        obj.addProperty("arguments", IJson.gsonInstance.toJson(arguments));
+        return new RpcRequest(obj);
+    }
+
     /**
      * Initiated by the server.
      * @param session  Session to close.
@@ -68,6 +68,14 @@ public final class RpcRequestContext {
         return this.session;
     }
 
+    /**
+     * Identifier of the session that initiated the request; null when replaying.
+     */
+    @Nullable
+    public String getSessionId() {
+        return this.session == null ? null : this.session.getId();
+    }
+
     public String toString() {
         return "[Id=" + this.id + ", Session=" + this.session + ", Computation=" + this.computation + "]";
     }
@@ -129,6 +129,11 @@ public final class RpcServer {
                 RpcObjectManager.instance.addSession(context.session, rpcTarget);
             // This function is responsible for sending the replies and closing the session.
             rpcTarget.execute(rpcRequest, context);
+        }, done -> {
+            // The object is being rebuilt; report progress to the client.
+            Session session = context.getSessionIfOpen();
+            if (session != null)
+                RpcServer.sendReply(rpcRequest.createProgressReply(done), session);
         });
     }
 
@@ -20,10 +20,12 @@ package org.hillview;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import io.grpc.StatusRuntimeException;
+import org.hillview.dataset.SketchResultCache;
 import org.hillview.dataset.api.*;
 import org.hillview.dataset.monoids.PRDataSetMonoid;
 import org.hillview.dataset.monoids.PartialResultMonoid;
 import org.hillview.sketches.highorder.PostProcessedSketch;
+import org.hillview.table.api.ITable;
 import org.hillview.targets.InitialObjectTarget;
 import org.hillview.utils.*;
 import rx.Observable;
@@ -41,6 +43,7 @@ import java.util.List;
 import java.util.UUID;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * An RPC target is an object that has methods that are invoked from the UI
@@ -53,6 +56,15 @@ import java.util.function.Function;
 public abstract class RpcTarget implements IJson, IRpcTarget {
     static final long serialVersionUID = 1;
 
+    /**
+     * Results of the sketches computed for all targets.  When a target holds
+     * data appended to the data of another target, or a view derived from
+     * such data, the sketches are only computed on the new partitions.
+     */
+    protected static final SketchResultCache sketchResults = new SketchResultCache(
+            Long.parseLong(Configuration.instance.getProperty("sketchResultCacheBytes",
+                    Long.toString(Runtime.getRuntime().maxMemory() / 32))));
+
     private final IRpcTarget.Id objectId;
     /**
      * Computation that has generated this object.  Can only
@@ -87,6 +99,15 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
         HillviewLogger.instance.info("Create RpcTarget", "{0}", computation.toString());
     }
 
+    /**
+     * The data to save when checkpointing this object, or null if this object
+     * cannot be checkpointed.
+     */
+    @Nullable
+    protected IDataSet<ITable> getCheckpointData() {
+        return null;
+    }
+
     /**
      * Insert object in object manager maps.
      * Also, notify computations that may be waiting for object to appear.
@@ -129,6 +150,9 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
             s.execute();
         } catch (Exception ex) {
             HillviewLogger.instance.error("Exception while invoking method", ex);
+            if (context.computation != null)
+                // A replayed computation has failed.
+                RpcObjectManager.instance.rebuildFailed(context.computation.resultId);
             RpcReply reply = request.createReply(ex);
             if (context.session != null)
                 RpcServer.sendReply(reply, context.session);
@@ -169,6 +193,7 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
         @Override
         public void onCompleted() {
             HillviewLogger.instance.info("Computation completed", "for {0}", this.name);
+            this.replayCompleted();
             if (this.context.session != null && this.context.session.isOpen()) {
                 RpcServer.requestCompleted(this.request, this.context.session);
                 this.request.syncCloseSession(this.context.session);
@@ -178,10 +203,21 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
             }
         }
 
+        /**
+         * If this is a replayed computation, tell the object manager that it has completed.
+         */
+        void replayCompleted() {
+            if (this.context.computation != null)
+                RpcObjectManager.instance.replayCompleted(this.context.computation.resultId);
+        }
+
         @Override
         public void onError(Throwable throwable) {
             HillviewLogger.instance.error("onError", "{0}", this.name);
             HillviewLogger.instance.error("onError", throwable);
+            if (this.context.computation != null)
+                // A replayed computation has failed.
+                RpcObjectManager.instance.rebuildFailed(this.context.computation.resultId);
             boolean reconstructing = this.checkMissingDataset(throwable);
             if (reconstructing ||
                     this.context.session == null ||
@@ -338,8 +374,10 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
                 @Nullable S result = this.postprocessing.apply(this.last);
                 HillviewLogger.instance.info("Computation completed", "for {0}", this.name);
                 Session session = this.context.getSessionIfOpen();
-                if (session == null)
+                if (session == null) {
+                    this.replayCompleted();
                     return;
+                }
 
                 if (result == null)
                     json.add("data", null);
@@ -361,12 +399,28 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
         @Nullable
         IDataSet<T> result;
         final BiFunction<IDataSet<T>, HillviewComputation, IRpcTarget> factory;
+        /**
+         * Last target created from the partial results.
+         */
+        @Nullable
+        IRpcTarget created;
+        final long startTime;
 
         MapResultObserver(String name, RpcTarget target, RpcRequest request,
                           RpcRequestContext context,
                           BiFunction<IDataSet<T>, HillviewComputation, IRpcTarget> factory) {
             super(name, request, target, context);
             this.factory = factory;
+            this.startTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public void onCompleted() {
+            super.onCompleted();
+            // Objects that are being rebuilt have been checkpointed already if needed.
+            if (this.context.computation == null && this.created instanceof RpcTarget)
+                RpcObjectManager.instance.checkpoint((RpcTarget)this.created,
+                        System.currentTimeMillis() - this.startTime);
         }
 
         @Override
@@ -380,6 +434,7 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
             if (dataSet != null) {
                 this.result = dataSet;
                 IRpcTarget target = this.factory.apply(this.result, this.getComputation());
+                this.created = target;
                 json.addProperty("data", target.getId().toString());
             } else {
                 json.add("data", null);
@@ -424,11 +479,30 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
         request.syncCloseSession(context.session);
     }
 
+    /**
+     * Invoke an operation on a dataset on behalf of a new root span.
+     * The spans of all the workers are added to the root span when they complete.
+     * The span carries the session of the request, which the workers use
+     * to share their threads fairly between sessions.
+     * @param operation  Description of the operation.
+     * @param context    Context of the request.
+     * @param invoke     Function that invokes the operation.
+     */
+    private static <R> Observable<R> traced(String operation, RpcRequestContext context,
+                                            Supplier<Observable<R>> invoke) {
+        OperationTrace trace = OperationTrace.start(
+                UUID.randomUUID(), null, operation, context.getSessionId());
+        return OperationTrace.with(trace, invoke)
+                .doOnTerminate(trace::finish)
+                .doOnUnsubscribe(trace::finish);
+    }
+
     private <T, R extends ISketchResult, S extends IJson> void
     runObservedSketch(IDataSet<T> data, PostProcessedSketch<T, R, S> sketch, ResultObserver<R> observer,
                       RpcRequestContext context) {
         // Run the sketch
-        Observable<PartialResult<R>> sketches = data.sketch(sketch.sketch);
+        Observable<PartialResult<R>> sketches = traced(
+                sketch.sketch.asString(), context, () -> sketchResults.sketch(data, sketch.sketch));
         // Knows how to add partial results
         PartialResultMonoid<R> prm = new PartialResultMonoid<R>(sketch.sketch);
         // Prefix sum of the partial results
@@ -483,6 +557,24 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
         this.saveSubscription(context, sub);
     }
 
+    /**
+     * Runs a computation composed of several steps which produces a dataset,
+     * and sends the result directly to the client.
+     * @param description  Description of the computation.
+     * @param computation  Function that starts the computation.
+     * @param factory      Function which knows how to create a new RpcTarget
+     *                     out of the resulting IDataSet.
+     * @param request      Web socket request, used to send the reply.
+     * @param context      Context for the computation.
+     */
+    protected <S> void
+    runDataSetComputation(String description, Supplier<Observable<PartialResult<IDataSet<S>>>> computation,
+                          BiFunction<IDataSet<S>, HillviewComputation, IRpcTarget> factory,
+                          RpcRequest request, RpcRequestContext context) {
+        Observable<PartialResult<IDataSet<S>>> stream = traced(description, context, computation);
+        this.collectDataset(stream, description, request, context, factory);
+    }
+
     /**
      * Runs a map and sends the result directly to the client.
      * @param data    Dataset to run the map on.
@@ -498,7 +590,13 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
     runMap(IDataSet<T> data, IMap<T, S> map,
            BiFunction<IDataSet<S>, HillviewComputation, IRpcTarget> factory,
            RpcRequest request, RpcRequestContext context) {
-        Observable<PartialResult<IDataSet<S>>> stream = data.map(map);
+        Observable<PartialResult<IDataSet<S>>> stream = traced(
+                map.asString(), context, () -> data.map(map))
+                .doOnNext(p -> {
+                    // Views derived again from the same data reuse the cached sketch results.
+                    if (p.deltaValue != null)
+                        sketchResults.derived(data, map, p.deltaValue);
+                });
         this.collectDataset(stream, map.asString(), request, context, factory);
     }
 
@@ -517,7 +615,8 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
     runPrune(IDataSet<T> data, IMap<T, Boolean> map,
              BiFunction<IDataSet<T>, HillviewComputation, IRpcTarget> factory,
              RpcRequest request, RpcRequestContext context) {
-        Observable<PartialResult<IDataSet<T>>> stream = data.prune(map);
+        Observable<PartialResult<IDataSet<T>>> stream = traced(
+                map.asString(), context, () -> data.prune(map));
         this.collectDataset(stream, map.asString(), request, context, factory);
     }
 
@@ -536,7 +635,8 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
     runFlatMap(IDataSet<T> data, IMap<T, List<S>> map,
                BiFunction<IDataSet<S>, HillviewComputation, IRpcTarget> factory,
                RpcRequest request, RpcRequestContext context) {
-        Observable<PartialResult<IDataSet<S>>> stream = data.flatMap(map);
+        Observable<PartialResult<IDataSet<S>>> stream = traced(
+                map.asString(), context, () -> data.flatMap(map));
         this.collectDataset(stream, map.asString(), request, context, factory);
     }
 
@@ -556,7 +656,8 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
     runZip(IDataSet<T> data, IDataSet<S> other, IMap<Pair<T, S>, R> map,
            BiFunction<IDataSet<R>, HillviewComputation, IRpcTarget> factory,
            RpcRequest request, RpcRequestContext context) {
-        Observable<PartialResult<IDataSet<R>>> stream = data.zip(other, map);
+        Observable<PartialResult<IDataSet<R>>> stream = traced(
+                map.asString(), context, () -> data.zip(other, map));
         this.collectDataset(stream, "zip", request, context, factory);
     }
 
@@ -578,7 +679,8 @@ public abstract class RpcTarget implements IJson, IRpcTarget {
            RpcRequest request, RpcRequestContext context) {
         if (other.isEmpty())
             throw new RuntimeException("Empty set of datasets");
-        Observable<PartialResult<IDataSet<R>>> stream = data.zipN(other, map);
+        Observable<PartialResult<IDataSet<R>>> stream = traced(
+                map.asString(), context, () -> data.zipN(other, map));
         this.collectDataset(stream, "zipN", request, context, factory);
     }
 
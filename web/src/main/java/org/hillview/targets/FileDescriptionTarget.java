@@ -18,11 +18,13 @@
 package org.hillview.targets;
 
 import org.hillview.*;
+import org.hillview.dataset.api.Empty;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.dataset.api.IMap;
 import org.hillview.maps.FalseMap;
 import org.hillview.maps.LoadFilesMap;
 import org.hillview.sketches.FileSizeSketch;
+import org.hillview.storage.FileSetDescription;
 import org.hillview.storage.IFileReference;
 import org.hillview.table.api.ITable;
 
@@ -35,11 +37,31 @@ public class FileDescriptionTarget extends RpcTarget {
     static final long serialVersionUID = 1;
 
     protected final IDataSet<IFileReference> files;
+    /**
+     * If not null the tables loaded from these files can be extended
+     * incrementally with data added later to the files.
+     */
+    @Nullable
+    private final FileSetDescription description;
+    @Nullable
+    private final IDataSet<Empty> cluster;
 
     FileDescriptionTarget(IDataSet<IFileReference> files, HillviewComputation computation,
                           @Nullable String metadataDirectory) {
+        this(files, computation, metadataDirectory, null, null);
+    }
+
+    /**
+     * @param description  Description of the files.
+     * @param cluster      Dataset used to find the files on all workers.
+     */
+    FileDescriptionTarget(IDataSet<IFileReference> files, HillviewComputation computation,
+                          @Nullable String metadataDirectory,
+                          @Nullable FileSetDescription description, @Nullable IDataSet<Empty> cluster) {
         super(computation, metadataDirectory);
         this.files = files;
+        this.description = description;
+        this.cluster = cluster;
         this.registerObject();
     }
 
@@ -52,12 +74,18 @@ public class FileDescriptionTarget extends RpcTarget {
     @HillviewRpc
     public void loadTable(RpcRequest request, RpcRequestContext context) {
         IMap<IFileReference, ITable> loader = new LoadFilesMap();
-        this.runMap(this.files, loader, (d, c) -> new TableTarget(d, c, this.metadataDirectory), request, context);
+        IncrementalFileSource source = null;
+        if (this.description != null && this.cluster != null)
+            source = new IncrementalFileSource(this.description, this.files, this.cluster);
+        IncrementalFileSource finalSource = source;
+        this.runMap(this.files, loader, (d, c) -> new TableTarget(
+                d, c, this.metadataDirectory, finalSource), request, context);
     }
 
     @HillviewRpc
     public void prune(RpcRequest request, RpcRequestContext context) {
         this.runPrune(this.files, new FalseMap<IFileReference>(),
-                (d, c) -> new FileDescriptionTarget(d, c, this.metadataDirectory), request, context);
+                (d, c) -> new FileDescriptionTarget(
+                        d, c, this.metadataDirectory, this.description, this.cluster), request, context);
     }
 }
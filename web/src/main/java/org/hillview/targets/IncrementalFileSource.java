@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.targets;
+
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.api.Empty;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.dataset.monoids.PRDataSetMonoid;
+import org.hillview.dataset.monoids.PartialResultMonoid;
+import org.hillview.maps.FindFilesMap;
+import org.hillview.maps.LoadFilesMap;
+import org.hillview.sketches.FileExtentsSketch;
+import org.hillview.storage.FileSetDescription;
+import org.hillview.storage.IFileReference;
+import org.hillview.table.FileExtents;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Remembers where the data of a table was loaded from, so that data added
+ * later to the files can be loaded incrementally: new files, and the lines
+ * appended to existing files.
+ */
+class IncrementalFileSource {
+    /**
+     * Description of the set of files.
+     */
+    final FileSetDescription description;
+    /**
+     * References to all the data loaded so far.
+     */
+    final IDataSet<IFileReference> files;
+    /**
+     * Dataset used to search for new files on all workers.
+     */
+    final IDataSet<Empty> cluster;
+
+    IncrementalFileSource(FileSetDescription description,
+                          IDataSet<IFileReference> files, IDataSet<Empty> cluster) {
+        this.description = description;
+        this.files = files;
+        this.cluster = cluster;
+    }
+
+    /**
+     * Finds the data that has not been loaded yet, loads it, and appends it
+     * to the specified table as new partitions.
+     * @param table      Table containing all the data loaded so far.
+     * @param upTo       If not null only the data up to these extents is loaded;
+     *                   used to load again the data loaded by an earlier call.
+     * @param newSource  Receives the source describing the data loaded
+     *                   including the new data.
+     * @param newExtents Receives the extents of the new data.
+     * @return           A stream of partial results ending with the new table.
+     */
+    Observable<PartialResult<IDataSet<ITable>>> loadNewData(
+            IDataSet<ITable> table, @Nullable FileExtents upTo,
+            AtomicReference<IncrementalFileSource> newSource, AtomicReference<FileExtents> newExtents) {
+        FileExtentsSketch sketch = new FileExtentsSketch();
+        PartialResultMonoid<FileExtents> extents = new PartialResultMonoid<FileExtents>(sketch);
+        PRDataSetMonoid<IFileReference> found = new PRDataSetMonoid<IFileReference>();
+        return this.files.sketch(sketch)
+                .reduce(extents::add)
+                .concatMap(e -> this.cluster.flatMap(new FindFilesMap<Empty>(
+                        this.description, Converters.checkNull(e.deltaValue), upTo)))
+                .reduce(found::add)
+                .concatMap(f -> {
+                    IDataSet<IFileReference> delta = Converters.checkNull(f.deltaValue);
+                    newSource.set(new IncrementalFileSource(this.description,
+                            new ParallelDataSet<IFileReference>(Arrays.asList(this.files, delta)),
+                            this.cluster));
+                    return delta.sketch(sketch)
+                            .reduce(extents::add)
+                            .concatMap(d -> {
+                                newExtents.set(Converters.checkNull(d.deltaValue));
+                                return delta.map(new LoadFilesMap());
+                            });
+                })
+                .map(p -> {
+                    if (p.deltaValue == null)
+                        return p;
+                    return new PartialResult<IDataSet<ITable>>(p.deltaDone,
+                            new ParallelDataSet<ITable>(Arrays.asList(table, p.deltaValue)));
+                });
+    }
+}
@@ -22,7 +22,9 @@ import org.hillview.*;
 import org.hillview.storage.jdbc.JdbcConnectionInformation;
 import org.hillview.storage.jdbc.JdbcDatabase;
 import org.hillview.table.PrivacySchema;
+import org.hillview.dataset.AggregationTree;
 import org.hillview.dataset.RemoteDataSet;
+import org.hillview.dataset.ReplicatedDataSet;
 import org.hillview.dataset.api.*;
 import org.hillview.dataset.remoting.HillviewServer;
 import org.hillview.management.*;
@@ -32,7 +34,10 @@ import org.hillview.maps.highorder.IdMap;
 import org.hillview.maps.LoadDatabaseTableMap;
 import org.hillview.storage.*;
 import org.hillview.table.Schema;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.*;
+import rx.Observable;
+import rx.schedulers.Schedulers;
 
 import javax.annotation.Nullable;
 import javax.websocket.Session;
@@ -44,6 +49,7 @@ import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the first RpcTarget that is created on the front-end.  It receives the
@@ -54,41 +60,115 @@ public class InitialObjectTarget extends RpcTarget {
 
     private static final String LOCALHOST = "127.0.0.1";
     private static final String ENV_VARIABLE = "WEB_CLUSTER_DESCRIPTOR";
+    /**
+     * Number of recent operation traces reported by each node.
+     */
+    private static final int TRACE_COUNT = 20;
 
     public static final String bookmarkDirectory = "bookmark";
     public static final String bookmarkExtension = ".json";
 
+    /**
+     * The workers, and the dataset spanning them.  The snapshot is immutable;
+     * when the cluster file changes a new snapshot replaces it.
+     */
+    private static final class ClusterSnapshot {
+        final IDataSet<Empty> dataset;
+        /**
+         * Modification time of the cluster file that describes the workers;
+         * 0 if there is no cluster file.
+         */
+        final long fileTime;
+
+        ClusterSnapshot(IDataSet<Empty> dataset, long fileTime) {
+            this.dataset = dataset;
+            this.fileTime = fileTime;
+        }
+    }
+
     @Nullable
-    private IDataSet<Empty> emptyDataset = null;
+    private volatile ClusterSnapshot cluster = null;
+    /**
+     * File describing the workers; null if running on the local machine.
+     */
+    @Nullable
+    private final String clusterFile;
 
     public InitialObjectTarget() {
         // Get the base naming context
-        final String clusterFile = System.getenv(ENV_VARIABLE);
-        final HostList desc;
-        if (clusterFile == null) {
+        this.clusterFile = System.getenv(ENV_VARIABLE);
+        if (this.clusterFile == null) {
             HillviewLogger.instance.info(
                     "No cluster description file specified; creating singleton");
-            desc = new HostList(Collections.singletonList(HostAndPort.fromParts(LOCALHOST,
+            HostList desc = new HostList(Collections.singletonList(HostAndPort.fromParts(LOCALHOST,
                                                                     HillviewServer.DEFAULT_PORT)));
-            this.initialize(desc);
+            this.cluster = new ClusterSnapshot(createCluster(desc), 0);
         } else {
             try {
-                HillviewLogger.instance.info(
-                        "Initializing cluster descriptor from file", "{0}", clusterFile);
-                desc = HostList.fromFile(clusterFile);
-                HillviewLogger.instance.info("Backend servers", "{0}", desc.getServerList().size());
-                this.initialize(desc);
+                this.cluster = readClusterFile(this.clusterFile);
             } catch (IOException e) {
                 e.printStackTrace();
                 System.exit(-1);
             }
+            int period = Integer.parseInt(
+                    Configuration.instance.getProperty("clusterReloadSeconds", "10"));
+            if (period > 0)
+                Observable.interval(period, period, TimeUnit.SECONDS, Schedulers.io())
+                        .subscribe(t -> this.reloadCluster());
         }
 
         RpcObjectManager.instance.addObject(this);
     }
 
-    private void initialize(final HostList description) {
-        this.emptyDataset = RemoteDataSet.createCluster(description, RemoteDataSet.defaultDatasetIndex);
+    private static ClusterSnapshot readClusterFile(String file) throws IOException {
+        HillviewLogger.instance.info(
+                "Initializing cluster descriptor from file", "{0}", file);
+        long fileTime = new File(file).lastModified();
+        HostList desc = HostList.fromFile(file);
+        HillviewLogger.instance.info("Backend servers", "{0}", desc.getServerList().size());
+        return new ClusterSnapshot(createCluster(desc), fileTime);
+    }
+
+    /**
+     * If the replication property is set each partition is loaded on several workers.
+     * Otherwise, if the aggregationFanout property is set and there are more workers
+     * than the fan-out, the workers are organized in a tree of aggregators.
+     */
+    private static IDataSet<Empty> createCluster(final HostList description) {
+        int replication = Integer.parseInt(Configuration.instance.getProperty("replication", "1"));
+        int fanOut = Integer.parseInt(Configuration.instance.getProperty("aggregationFanout", "0"));
+        if (replication > 1)
+            return ReplicatedDataSet.createCluster(
+                    description, RemoteDataSet.defaultDatasetIndex, replication);
+        else if (fanOut > 1 && description.size() > fanOut)
+            return AggregationTree.createCluster(description, fanOut);
+        else
+            return RemoteDataSet.createCluster(description, RemoteDataSet.defaultDatasetIndex);
+    }
+
+    /**
+     * Called periodically: if the cluster file has changed since it was read
+     * the workers are reconfigured.  Datasets created earlier keep using the
+     * previous configuration.
+     */
+    private void reloadCluster() {
+        String file = Converters.checkNull(this.clusterFile);
+        ClusterSnapshot current = Converters.checkNull(this.cluster);
+        if (new File(file).lastModified() == current.fileTime)
+            return;
+        HillviewLogger.instance.info("Cluster membership changed");
+        try {
+            this.cluster = readClusterFile(file);
+        } catch (Exception e) {
+            HillviewLogger.instance.error("Cannot reload cluster description", e);
+        }
+    }
+
+    /**
+     * The dataset spanning all workers.
+     */
+    private IDataSet<Empty> getCluster() {
+        return Converters.checkNull(this.cluster).dataset;
     }
 
     @HillviewRpc
@@ -101,7 +181,6 @@ public class InitialObjectTarget extends RpcTarget {
         config.privateIsCsv = Configuration.instance.getBooleanProperty("privateIsCsv");
         config.hideSuggestions = Configuration.instance.getBooleanProperty("hideSuggestions");
         config.hideDemoMenu = Configuration.instance.getBooleanProperty("hideDemoMenu");
-        Converters.checkNull(this.emptyDataset);
         this.returnResult(config, request, context);
     }
 
@@ -110,7 +189,6 @@ public class InitialObjectTarget extends RpcTarget {
         String bookmarkFile = request.parseArgs(String.class);
         File file = new File(InitialObjectTarget.bookmarkDirectory, bookmarkFile);
         String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-        Converters.checkNull(this.emptyDataset);
         this.returnResult(new JsonInString(content), request, context);
     }
 
@@ -118,7 +196,6 @@ public class InitialObjectTarget extends RpcTarget {
     public void loadSimpleDBTable(RpcRequest request, RpcRequestContext context) {
         JdbcConnectionInformation conn = request.parseArgs(JdbcConnectionInformation.class);
         IMap<Empty, Empty> map = new IdMap<Empty>();
-        Converters.checkNull(this.emptyDataset);
         String dir = Paths.get(Converters.checkNull(conn.databaseKind).toLowerCase(),
                 Converters.checkNull(conn.database),
                 conn.table).toString();
@@ -126,7 +203,7 @@ public class InitialObjectTarget extends RpcTarget {
         String privacyMetadataFile = DPWrapper.privacyMetadataFile(dir);
         if (privacyMetadataFile != null) {
             PrivacySchema privacySchema = PrivacySchema.loadFromFile(privacyMetadataFile);
-            this.runMap(this.emptyDataset, map,
+            this.runMap(this.getCluster(), map,
                     (e, c) -> {
                         try {
                             return new PrivateSimpleDBTarget(conn, c, privacySchema, privacyMetadataFile);
@@ -135,7 +212,7 @@ public class InitialObjectTarget extends RpcTarget {
                         }
                     }, request, context);
         } else {
-            this.runMap(this.emptyDataset, map, (e, c) -> new SimpleDBTarget(conn, c, dir), request, context);
+            this.runMap(this.getCluster(), map, (e, c) -> new SimpleDBTarget(conn, c, dir), request, context);
         }
     }
 
@@ -153,10 +230,9 @@ public class InitialObjectTarget extends RpcTarget {
         IMap<Empty, List<IFileReference>> finder = new FindFilesMap<>(desc.files);
         String folder = Utilities.getFolder(desc.files.fileNamePattern);
         Converters.checkNull(desc.schema);
-        Converters.checkNull(this.emptyDataset);
         JdbcDatabase database = new JdbcDatabase(desc.jdbc);
         String tmpTableName = Utilities.getBasename(folder);
-        this.runFlatMap(this.emptyDataset, finder,
+        this.runFlatMap(this.getCluster(), finder,
                 (d, c) -> new GreenplumFileDescriptionTarget(
                         d, c, folder, tmpTableName, database, desc.schema), request, context);
     }
@@ -166,8 +242,7 @@ public class InitialObjectTarget extends RpcTarget {
         CassandraConnectionInfo desc = request.parseArgs(CassandraConnectionInfo.class);
         HillviewLogger.instance.info("Finding SSTable files", "{0}", desc);
         IMap<Empty, List<IFileReference>> finder = new FindCassandraFilesMap(desc);
-        Converters.checkNull(this.emptyDataset);
-        this.runFlatMap(this.emptyDataset, finder,
+        this.runFlatMap(this.getCluster(), finder,
                 // TODO: metadata file
                 (d, c) -> new FileDescriptionTarget(d, c, null), request, context);
     }
@@ -176,11 +251,10 @@ public class InitialObjectTarget extends RpcTarget {
     public void loadDBTable(RpcRequest request, RpcRequestContext context) {
         JdbcConnectionInformation conn = request.parseArgs(JdbcConnectionInformation.class);
         LoadDatabaseTableMap mapper = new LoadDatabaseTableMap(conn);
-        Converters.checkNull(this.emptyDataset);
         String dir = Paths.get(Converters.checkNull(conn.databaseKind).toLowerCase(),
                 Converters.checkNull(conn.database),
                 conn.table).toString();
-        this.runMap(this.emptyDataset, mapper, (d, c) -> new TableTarget(d, c, dir), request, context);
+        this.runMap(this.getCluster(), mapper, (d, c) -> new TableTarget(d, c, dir), request, context);
     }
 
     @HillviewRpc
@@ -190,11 +264,10 @@ public class InitialObjectTarget extends RpcTarget {
         // path is similar to the simpleDB
         JdbcConnectionInformation conn = request.parseArgs(JdbcConnectionInformation.class);
         IMap<Empty, Empty> map = new IdMap<Empty>();
-        Converters.checkNull(this.emptyDataset);
         String dir = Paths.get(Converters.checkNull(conn.databaseKind).toLowerCase(),
                 Converters.checkNull(conn.database),
                 conn.table).toString();
-        this.runMap(this.emptyDataset, map, (e, c) -> new GreenplumStubTarget(conn, c, dir), request, context);
+        this.runMap(this.getCluster(), map, (e, c) -> new GreenplumStubTarget(conn, c, dir), request, context);
     }
 
     @HillviewRpc
@@ -202,7 +275,6 @@ public class InitialObjectTarget extends RpcTarget {
         FileSetDescription desc = request.parseArgs(FileSetDescription.class);
         HillviewLogger.instance.info("Finding files", "{0}", desc);
         IMap<Empty, List<IFileReference>> finder = new FindFilesMap<>(desc);
-        Converters.checkNull(this.emptyDataset);
         String folder;
         if (desc.fileKind.equals("lazycsv"))
             // These files are generated from a database, use the database/table name,
@@ -213,11 +285,12 @@ public class InitialObjectTarget extends RpcTarget {
 
         String privacyMetadataFile = DPWrapper.privacyMetadataFile(Converters.checkNull(folder));
         if (privacyMetadataFile != null) {
-            this.runFlatMap(this.emptyDataset, finder,
+            this.runFlatMap(this.getCluster(), finder,
                     (d, c) -> new PrivateFileDescriptionTarget(d, c, privacyMetadataFile), request, context);
         } else {
-            this.runFlatMap(this.emptyDataset, finder,
-                    (d, c) -> new FileDescriptionTarget(d, c, folder), request, context);
+            IDataSet<Empty> cluster = this.getCluster();
+            this.runFlatMap(cluster, finder,
+                    (d, c) -> new FileDescriptionTarget(d, c, folder, desc, cluster), request, context);
         }
     }
 
@@ -231,11 +304,55 @@ public class InitialObjectTarget extends RpcTarget {
         desc.repeat = 1;
         IMap<Empty, List<IFileReference>> finder = new FindFilesMap<>(desc);
         HillviewLogger.instance.info("Finding log files");
-        assert this.emptyDataset != null;
-        this.runFlatMap(this.emptyDataset, finder,
+        this.runFlatMap(this.getCluster(), finder,
                 (d, c) -> new FileDescriptionTarget(d, c, null), request, context);
     }
 
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    static class CheckpointArgs {
+        String folder;
+        // Null in checkpoints written by older versions.
+        @Nullable
+        CheckpointLayout layout;
+        @Nullable
+        String metadataDirectory;
+    }
+
+    /**
+     * Reloads a table saved in a checkpoint, with the same partitions as the
+     * saved table.  This is only invoked when rebuilding a table; if the
+     * checkpoint cannot be loaded the table is rebuilt from its lineage instead.
+     */
+    @HillviewRpc
+    public void loadCheckpoint(RpcRequest request, RpcRequestContext context) {
+        CheckpointArgs args = request.parseArgs(CheckpointArgs.class);
+        HillviewComputation computation = Converters.checkNull(context.computation);
+        this.runDataSetComputation("loadCheckpoint", () -> {
+            if (args.layout == null) {
+                RpcObjectManager.instance.replayWithoutCheckpoint(computation);
+                return Observable.empty();
+            }
+            return args.layout.load(args.folder)
+                    .map(d -> new PartialResult<IDataSet<ITable>>(d))
+                    .onErrorResumeNext(e -> {
+                        HillviewLogger.instance.error("Cannot load checkpoint " + args.folder, e);
+                        RpcObjectManager.instance.replayWithoutCheckpoint(computation);
+                        return Observable.empty();
+                    });
+        }, (d, c) -> new TableTarget(d, c, args.metadataDirectory), request, context);
+    }
+
+    /**
+     * Deletes the folders holding checkpoints on all workers.
+     */
+    public void deleteCheckpoints(List<String> folders) {
+        if (folders.isEmpty())
+            return;
+        HillviewLogger.instance.info("Deleting checkpoints", "{0}", folders.size());
+        this.getCluster().manage(new DeleteCheckpoints(folders))
+                .subscribe(p -> {}, e -> HillviewLogger.instance.error("Cannot delete checkpoints", e));
+    }
+
     @Override
     public String toString() {
         return "Initial object=" + super.toString();
@@ -247,37 +364,69 @@ public class InitialObjectTarget extends RpcTarget {
     @HillviewRpc
     public void ping(RpcRequest request, RpcRequestContext context) {
         PingSketch<Empty> ping = new PingSketch<Empty>();
-        this.runSketch(Converters.checkNull(this.emptyDataset), ping, request, context);
+        this.runSketch(this.getCluster(), ping, request, context);
     }
 
     @HillviewRpc
     public void setMemoization(RpcRequest request, RpcRequestContext context) {
         SetMemoization tm = new SetMemoization(true);
-        this.runManage(Converters.checkNull(this.emptyDataset), tm, request, context);
+        this.runManage(this.getCluster(), tm, request, context);
     }
 
     @HillviewRpc
     public void unsetMemoization(RpcRequest request, RpcRequestContext context) {
         SetMemoization tm = new SetMemoization(false);
-        this.runManage(Converters.checkNull(this.emptyDataset), tm, request, context);
+        this.runManage(this.getCluster(), tm, request, context);
     }
 
     @HillviewRpc
     public void purgeMemoization(RpcRequest request, RpcRequestContext context) {
+        sketchResults.purge();
         PurgeMemoization tm = new PurgeMemoization();
-        this.runManage(Converters.checkNull(this.emptyDataset), tm, request, context);
+        this.runManage(this.getCluster(), tm, request, context);
     }
 
     @HillviewRpc
     public void purgeLeafDatasets(RpcRequest request, RpcRequestContext context) {
         PurgeLeafDatasets tm = new PurgeLeafDatasets();
-        this.runManage(Converters.checkNull(this.emptyDataset), tm, request, context);
+        this.runManage(this.getCluster(), tm, request, context);
     }
 
     @HillviewRpc
     public void memoryUse(RpcRequest request, RpcRequestContext context) {
         MemoryUse tm = new MemoryUse();
-        this.runManage(Converters.checkNull(this.emptyDataset), tm, request, context);
+        this.runManage(this.getCluster(), tm, request, context);
+    }
+
+    @HillviewRpc
+    public void metrics(RpcRequest request, RpcRequestContext context) {
+        GetMetrics tm = new GetMetrics();
+        this.runManage(this.getCluster(), tm, request, context);
+    }
+
+    @HillviewRpc
+    public void workerTraces(RpcRequest request, RpcRequestContext context) {
+        QueryTraces tm = new QueryTraces(null, TRACE_COUNT);
+        this.runManage(this.getCluster(), tm, request, context);
+    }
+
+    /**
+     * Reports the time breakdown of the recent operations started by the root;
+     * each one summarizes the work done by all workers.
+     */
+    @HillviewRpc
+    public void rootTraces(RpcRequest request, RpcRequestContext context) {
+        JsonList<ControlMessage.Status> statusList = new JsonList<ControlMessage.Status>();
+        for (OperationTrace trace : OperationTrace.getRecent(null, TRACE_COUNT))
+            statusList.add(new ControlMessage.Status(trace.toString()));
+        PartialResult<JsonList<ControlMessage.Status>> pr = new PartialResult<JsonList<ControlMessage.Status>>(statusList);
+        RpcReply reply = request.createReply(Utilities.toJsonTree(pr));
+        Session session = context.getSessionIfOpen();
+        if (session == null)
+            return;
+        RpcServer.sendReply(reply, session);
+        RpcServer.requestCompleted(request, session);
+        request.syncCloseSession(session);
     }
 
     @HillviewRpc
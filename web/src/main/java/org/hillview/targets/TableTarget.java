@@ -41,6 +41,7 @@ import javax.websocket.Session;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This is the most important RpcTarget, representing a remote table.
@@ -50,12 +51,35 @@ import java.util.List;
 public class TableTarget extends TableRpcTarget {
     static final long serialVersionUID = 1;
 
+    /**
+     * If not null, the files the table was loaded from; used to load data
+     * added to the files later.
+     */
+    @Nullable
+    private final IncrementalFileSource source;
+
     TableTarget(IDataSet<ITable> table, HillviewComputation computation, @Nullable String metadataDirectory) {
+        this(table, computation, metadataDirectory, null);
+    }
+
+    TableTarget(IDataSet<ITable> table, HillviewComputation computation, @Nullable String metadataDirectory,
+                @Nullable IncrementalFileSource source) {
         super(computation, metadataDirectory);
+        this.source = source;
         this.setTable(table);
         this.registerObject();
     }
 
+    @Nullable
+    @Override
+    protected IDataSet<ITable> getCheckpointData() {
+        // A table reloaded from a checkpoint no longer knows the files it was
+        // loaded from, and subclasses hold additional state.
+        if (this.getClass() != TableTarget.class || this.source != null)
+            return null;
+        return this.table;
+    }
+
     static class NextKArgs {
         RecordOrder order = new RecordOrder();
         @Nullable
@@ -99,6 +123,41 @@ public class TableTarget extends TableRpcTarget {
         this.runMap(this.table, map, (d, c) -> new TableTarget(d, c, this.metadataDirectory), request, context);
     }
 
+    static class LoadNewDataArgs {
+        /**
+         * Extents of the new data to load; if null all the data found is loaded.
+         * The client sends null; the request saved in the redo log has the
+         * extents of the data found, so replaying it loads the same data.
+         */
+        @Nullable
+        FileExtents upTo;
+    }
+
+    /**
+     * Loads the data added to the files of this table since they were loaded
+     * and returns a table which has the new data as additional partitions.
+     */
+    @HillviewRpc
+    public void loadNewData(RpcRequest request, RpcRequestContext context) {
+        if (this.source == null)
+            throw new RuntimeException("Only tables loaded from files can load new data");
+        IncrementalFileSource source = this.source;
+        LoadNewDataArgs args = request.parseArgs(LoadNewDataArgs.class);
+        @Nullable FileExtents upTo = args == null ? null : args.upTo;
+        AtomicReference<IncrementalFileSource> newSource = new AtomicReference<IncrementalFileSource>();
+        AtomicReference<FileExtents> found = new AtomicReference<FileExtents>();
+        this.runDataSetComputation("loadNewData", () -> source.loadNewData(this.table, upTo, newSource, found),
+                (d, c) -> {
+                    HillviewComputation computation = c;
+                    if (upTo == null) {
+                        LoadNewDataArgs logged = new LoadNewDataArgs();
+                        logged.upTo = Converters.checkNull(found.get());
+                        computation = c.withArguments(logged);
+                    }
+                    return new TableTarget(d, computation, this.metadataDirectory, newSource.get());
+                }, request, context);
+    }
+
     @HillviewRpc
     public void prune(RpcRequest request, RpcRequestContext context) {
         this.runPrune(this.table, new EmptyTableMap(), (d, c) -> new TableTarget(d, c, this.metadataDirectory), request, context);
@@ -254,11 +313,12 @@ public class TableTarget extends TableRpcTarget {
     public void histogram2D(RpcRequest request, RpcRequestContext context) {
         HistogramRequestInfo info = request.parseArgs(HistogramRequestInfo.class);
         assert info.size() == 2;
-        Histogram2DSketch sk = new Histogram2DSketch(
-                info.getBuckets(1),
-                info.getBuckets(0));
+        DenseHistogramSketch sk = new DenseHistogramSketch(
+                info.getBuckets(0),
+                info.getBuckets(1));
         this.runSketch(this.table, sk.andThen(
-                r -> new Two<>(r.toSerializable(s -> s.toSerializable(c -> c)), null)), request, context);
+                r -> new Two<>(r.toGroups2D().toSerializable(s -> s.toSerializable(c -> c)), null)),
+                request, context);
     }
 
     static class HeatmapRequestInfo extends HistogramRequestInfo {
@@ -293,26 +353,27 @@ public class TableTarget extends TableRpcTarget {
     public void histogram2DAndCDF(RpcRequest request, RpcRequestContext context) {
         HistogramRequestInfo info = request.parseArgs(HistogramRequestInfo.class);
         assert info.size() == 3;
-        TableSketch<Groups<Groups<Count>>> sk = new Histogram2DSketch(
-                info.getBuckets(1),
-                info.getBuckets(0)).sampled(info.samplingRate, info.seed);
+        TableSketch<DenseHistogram> sk = new DenseHistogramSketch(
+                info.getBuckets(0),
+                info.getBuckets(1)).sampled(info.samplingRate, info.seed);
         TableSketch<Groups<Count>> cdf = info.getSketch(2);
-        ConcurrentSketch<ITable, Groups<Groups<Count>>, Groups<Count>> csk =
-                new ConcurrentSketch<ITable, Groups<Groups<Count>>, Groups<Count>>(sk, cdf);
-        DataWithCDFSketch<Groups<Groups<Count>>> dwc = new DataWithCDFSketch<Groups<Groups<Count>>>(csk);
-        this.runSketch(this.table, dwc, request, context);
+        ConcurrentSketch<ITable, DenseHistogram, Groups<Count>> csk =
+                new ConcurrentSketch<ITable, DenseHistogram, Groups<Count>>(sk, cdf);
+        DataWithCDFSketch<DenseHistogram> dwc = new DataWithCDFSketch<DenseHistogram>(csk);
+        this.runSketch(this.table, dwc.andThen(p -> new Pair<>(p.first.toGroups2D(), p.second)),
+                request, context);
     }
 
     @HillviewRpc
     public void histogram3D(RpcRequest request, RpcRequestContext context) {
         HistogramRequestInfo info = request.parseArgs(HistogramRequestInfo.class);
         assert info.size() == 3;
-        Histogram3DSketch sk = new Histogram3DSketch(
-                info.getBuckets(2),
+        DenseHistogramSketch sk = new DenseHistogramSketch(
+                info.getBuckets(0),
                 info.getBuckets(1),
-                info.getBuckets(0));
-        TableSketch<Groups<Groups<Groups<Count>>>> sts = sk.sampled(info.samplingRate, info.seed);
-        this.runSketch(this.table, sts.andThen(res -> res.toSerializable(
+                info.getBuckets(2));
+        TableSketch<DenseHistogram> sts = sk.sampled(info.samplingRate, info.seed);
+        this.runSketch(this.table, sts.andThen(res -> res.toGroups3D().toSerializable(
                 r -> r.toSerializable(s -> s.toSerializable(c -> c)))), request, context);
     }
 
@@ -167,6 +167,10 @@ export class TableView extends TSViewBase implements IScrollTarget, OnNextK {
                 text: "Log view",
                 action: () => this.openLogView(),
                 help: "Open a log viewer in a new tab"
+            }, {
+                text: "Load new data",
+                action: () => this.loadNewData(),
+                help: "Add the data appended to the files of this table since they were loaded"
             }];
         items.push({
                 text: "View", help: "Change the way the data is displayed.",
@@ -1667,6 +1671,11 @@ export class TableView extends TSViewBase implements IScrollTarget, OnNextK {
         this.dataRowsDisplayed += row.count;
     }
 
+    public loadNewData(): void {
+        const rr = this.createLoadNewDataRequest();
+        rr.invoke(new NewDataReceiver(this.page, rr));
+    }
+
     public openLogView(): void {
         const ts = this.meta.schema.find(GenericLogs.timestampColumnName);
         if (ts == null) {
@@ -1991,6 +2000,23 @@ export class TableOperationCompleted extends BaseReceiver {
     }
 }
 
+/**
+ * Receives a table that includes newly appended data and displays it.
+ */
+class NewDataReceiver extends BaseReceiver {
+    public constructor(page: FullPage, operation: ICancellable<RemoteObjectId>) {
+        super(page, operation, "Load new data", page.dataset);
+    }
+
+    public run(value: RemoteObjectId): void {
+        super.run(value);
+        const rr = this.remoteObject.createGetMetadataRequest();
+        rr.chain(this.operation);
+        rr.invoke(new SchemaReceiver(
+            this.page, rr, this.remoteObject, this.page.dataset!, null, "Table"));
+    }
+}
+
 /**
  * Receives a result from a remote table and initiates a NextK sketch
  * if any result is found.
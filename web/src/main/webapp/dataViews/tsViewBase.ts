@@ -382,6 +382,11 @@ export abstract class TSViewBase extends BigTableView {
                     text: "Save as CSV files...",
                     action: () => this.saveAs(this.getSchema(), "csv"),
                     help: "Save the data to a set of CSV files on the worker machines.",
+                }, {
+                    text: "Save as snapshot files...",
+                    action: () => this.saveAs(this.getSchema(), "snapshot"),
+                    help: "Save the data to a set of files on the worker machines that " +
+                        "preserve the in-memory representation and can be loaded very quickly.",
                 }, {
                     text: "Save as DB table...",
                     action: () => this.saveAs(this.getSchema(), "db"),
@@ -171,7 +171,7 @@ export interface CassandraConnectionInfo extends JdbcConnectionInformation {
     cassandraRootDir: string;
 }
 
-export type DataKinds = "csv" | "orc" | "parquet" | "json" | "hillviewlog" | "db" | "genericlog" | "sstable" | "lazycsv";
+export type DataKinds = "csv" | "orc" | "parquet" | "json" | "hillviewlog" | "db" | "genericlog" | "sstable" | "lazycsv" | "snapshot";
 
 export interface FileSetDescription {
     fileKind: DataKinds;
@@ -192,6 +192,14 @@ export class LoadView extends RemoteObject implements IDataView {
                     dialog.show();
                 },
                 help: "A set of Parquet files residing on the worker machines."
+            }, {
+                text: "Snapshot files...",
+                action: () => {
+                    const dialog = new SnapshotFileDialog();
+                    dialog.setAction(() => this.init.loadFiles(dialog.getFiles(), this.page));
+                    dialog.show();
+                },
+                help: "A set of snapshot files saved by Hillview residing on the worker machines."
             }, {
                 text: "ORC files...",
                 action: () => {
@@ -268,6 +276,18 @@ export class LoadView extends RemoteObject implements IDataView {
                         text: "Memory use",
                         action: () => this.command("memoryUse"),
                         help: "Reports Java memory use for each worker.",
+                    }, {
+                        text: "Metrics",
+                        action: () => this.command("metrics"),
+                        help: "Reports the runtime metrics of each worker.",
+                    }, {
+                        text: "Root timings",
+                        action: () => this.command("rootTraces"),
+                        help: "Reports the time breakdown of recent operations, summed over all workers.",
+                    }, {
+                        text: "Worker timings",
+                        action: () => this.command("workerTraces"),
+                        help: "Reports the time breakdown of recent operations on each worker.",
                     }, {
                         text: "Purge memoized",
                         action: () => this.command("purgeMemoization"),
@@ -507,6 +527,29 @@ class ParquetFileDialog extends Dialog {
     }
 }
 
+/**
+ * Dialog that asks the user which snapshot files to load.
+ */
+class SnapshotFileDialog extends Dialog {
+    constructor() {
+        super("Load snapshot files", "Loads snapshot files saved by Hillview from all machines " +
+            "that are part of the service.");
+        const pattern = this.addTextField("fileNamePattern", "File name pattern", FieldKind.String, "/*.snapshot",
+            "Shell pattern that describes the names of the files to load.");
+        pattern.required = true;
+        this.setCacheTitle("SnapshotFileDialog");
+    }
+
+    public getFiles(): FileSetDescription {
+        return {
+            schemaFile: null,  // not used
+            schema: null,
+            fileNamePattern: this.getFieldValue("fileNamePattern"),
+            fileKind: "snapshot",
+        };
+    }
+}
+
 /**
  * Dialog that asks the user which Orc files to load.
  */
@@ -230,6 +230,10 @@ export class RpcRequest<T> implements ICancellable<T> {
                 } else if (reply.isCompleted) {
                     this.completed = true;
                     onReply.onCompleted();
+                } else if (reply.isProgress) {
+                    // The server is rebuilding data needed by this request.
+                    if (onReply instanceof Receiver)
+                        onReply.reportProgress(Number(reply.result));
                 } else {
                     let success = false;
                     let response: any;
@@ -390,6 +394,14 @@ export abstract class Receiver<T> implements Rx.Observer<PartialResult<T>> {
             console.log("onNext after " + this.elapsedMilliseconds());
     }
 
+    /**
+     * Advances the progress bar without delivering any data.
+     */
+    public reportProgress(done: number): void {
+        if (!this.done)
+            this.progressBar.setPosition(done);
+    }
+
     /**
      * The number of milliseconds elapsed since the operation was initiated.
      * Note that the operation may have been 'chained' with another operation.
@@ -105,6 +105,13 @@ export class TableTargetAPI extends RemoteObject {
         return this.createStreamingRpcRequest<RemoteObjectId>("mergeWith", [r]);
     }
 
+    /**
+     * Load the data appended to the files of this table since they were loaded.
+     */
+    public createLoadNewDataRequest(): RpcRequest<RemoteObjectId> {
+        return this.createStreamingRpcRequest<RemoteObjectId>("loadNewData", null);
+    }
+
     public createSetRequest(r: RemoteObjectId, c: CombineOperators): RpcRequest<RemoteObjectId> {
         return this.createStreamingRpcRequest<RemoteObjectId>("setOperation",
             { otherId: r, op: CombineOperators[c] });
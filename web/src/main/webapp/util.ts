@@ -1230,6 +1230,7 @@ export interface RpcReply {
     requestId: number;  // Request that is being replied.
     isError: boolean;   // Indicates that the message contains an error.
     isCompleted: boolean;  // If true this message is the last one.
+    isProgress: boolean;   // If true the result is the fraction of the lost data rebuilt.
 }
 
 // untyped cancellable
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.hillview;
+
+import com.google.gson.JsonObject;
+import org.hillview.dataset.api.IJson;
+import org.hillview.storage.CheckpointLayout;
+import org.hillview.utils.Converters;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class RedoLogTest {
+    private static final long retention = TimeUnit.DAYS.toMillis(1);
+
+    private static String request(String objectId, String arguments) {
+        JsonObject request = new JsonObject();
+        request.addProperty("requestId", 1);
+        request.addProperty("objectId", objectId);
+        request.addProperty("method", "filter");
+        request.addProperty("arguments", arguments);
+        return request.toString();
+    }
+
+    private static String line(String id, String source, String arguments, long time) {
+        JsonObject line = new JsonObject();
+        line.addProperty("resultId", id);
+        line.add("request", IJson.gsonInstance.toJsonTree(
+                new RpcRequest(IJson.gsonInstance.fromJson(request(source, arguments), JsonObject.class))));
+        line.addProperty("time", time);
+        return line.toString();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        File file = File.createTempFile("hillview", ".redo");
+        String initial = RpcTarget.Id.initialId().toString();
+        String a = UUID.randomUUID().toString();
+        String b = UUID.randomUUID().toString();
+        String c = UUID.randomUUID().toString();
+        String d = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        long old = now - 2 * retention;
+        List<String> lines = new ArrayList<String>();
+        lines.add(line(a, initial, "\"\"", old));
+        lines.add(line(c, initial, "\"\"", old));
+        lines.add(line(d, initial, "\"\"", old));
+        // b is recent; it is derived from a and also uses c.
+        lines.add(line(b, a, "\"" + c + "\"", now));
+        try {
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+            RedoLog log = new RedoLog(file.getPath(), 10, retention);
+            Assert.assertNotNull(log.getComputation(new RpcTarget.Id(a)));
+            Assert.assertNotNull(log.getComputation(new RpcTarget.Id(b)));
+            Assert.assertNotNull(log.getComputation(new RpcTarget.Id(c)));
+            Assert.assertNull(log.getComputation(new RpcTarget.Id(d)));
+            Assert.assertEquals(3, Files.readAllLines(file.toPath()).size());
+
+            RpcTarget.Id bid = new RpcTarget.Id(b);
+            log.addCheckpoint(bid, new RedoLog.Checkpoint("/tmp/checkpoint", CheckpointLayout.local(), null));
+            log = new RedoLog(file.getPath(), 10, retention);
+            HillviewComputation replay = log.getReplayComputation(bid);
+            Assert.assertNotNull(replay);
+            Assert.assertEquals("loadCheckpoint", replay.request.method);
+            Assert.assertEquals("filter",
+                    Converters.checkNull(log.getComputation(bid)).request.method);
+
+            log.removeCheckpoint(bid);
+            Assert.assertEquals(1, log.takeDroppedCheckpoints().size());
+            Assert.assertEquals("filter",
+                    Converters.checkNull(log.getReplayComputation(bid)).request.method);
+            log = new RedoLog(file.getPath(), 10, retention);
+            Assert.assertEquals("filter",
+                    Converters.checkNull(log.getReplayComputation(bid)).request.method);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview;
+
+import com.google.gson.JsonObject;
+import org.hillview.dataset.api.IJson;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RpcObjectManagerTest {
+    /**
+     * Computations replayed and not completed yet, by result id.
+     */
+    private static final Map<RpcTarget.Id, HillviewComputation> pending =
+            new ConcurrentHashMap<RpcTarget.Id, HillviewComputation>();
+    /**
+     * Number of times each object has been replayed.
+     */
+    private static final Map<RpcTarget.Id, AtomicInteger> replays =
+            new ConcurrentHashMap<RpcTarget.Id, AtomicInteger>();
+    /**
+     * Objects whose replay throws.
+     */
+    private static final Set<RpcTarget.Id> failing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A target whose "derive" method creates a new target when the test completes it.
+     */
+    public static class Derived extends RpcTarget {
+        static final long serialVersionUID = 1;
+
+        Derived(HillviewComputation computation) {
+            super(computation, null);
+            this.registerObject();
+        }
+
+        @SuppressWarnings("unused")
+        public void derive(RpcRequest request, RpcRequestContext context) {
+            HillviewComputation computation = context.getComputation(request);
+            replays.computeIfAbsent(computation.resultId, k -> new AtomicInteger()).incrementAndGet();
+            if (failing.contains(computation.resultId))
+                throw new RuntimeException("Replay failed");
+            pending.put(computation.resultId, computation);
+        }
+    }
+
+    @BeforeClass
+    public static void noRedoFile() {
+        Configuration.instance.properties.setProperty("redoLogFile", "");
+    }
+
+    /**
+     * Create an object derived from a source; the arguments may reference other objects.
+     */
+    private static RpcTarget.Id create(RpcTarget.Id source, String... arguments) {
+        JsonObject request = new JsonObject();
+        request.addProperty("requestId", 1);
+        request.addProperty("objectId", source.toString());
+        request.addProperty("method", "derive");
+        request.addProperty("arguments", IJson.gsonInstance.toJson(arguments));
+        HillviewComputation computation = new HillviewComputation(null, new RpcRequest(request));
+        return new Derived(computation).getId();
+    }
+
+    /**
+     * Complete the replay that produces the specified object.
+     */
+    private static void complete(RpcTarget.Id id) {
+        HillviewComputation computation = pending.remove(id);
+        Assert.assertNotNull(computation);
+        new Derived(computation);
+    }
+
+    private static int replayCount(RpcTarget.Id id) {
+        AtomicInteger count = replays.get(id);
+        return count == null ? 0 : count.get();
+    }
+
+    @Test
+    public void testConcurrentRebuilds() {
+        RpcObjectManager manager = RpcObjectManager.instance;
+        RpcTarget.Id a = create(RpcObjectManager.initialObjectId);
+        RpcTarget.Id b = create(a);
+        manager.deleteObject(b);
+
+        AtomicInteger found = new AtomicInteger();
+        manager.when(b, t -> found.incrementAndGet());
+        manager.when(b, t -> found.incrementAndGet());
+        // The second request waits for the first replay.
+        Assert.assertEquals(1, replayCount(b));
+        Assert.assertTrue(manager.isRebuilding(b));
+        complete(b);
+        Assert.assertEquals(2, found.get());
+        Assert.assertFalse(manager.isRebuilding(b));
+        Assert.assertNotNull(manager.getObject(b));
+    }
+
+    @Test
+    public void testParallelBranches() {
+        RpcObjectManager manager = RpcObjectManager.instance;
+        RpcTarget.Id a = create(RpcObjectManager.initialObjectId);
+        RpcTarget.Id b = create(a);
+        RpcTarget.Id c = create(a);
+        // d is derived from b and also uses c.
+        RpcTarget.Id d = create(b, c.toString());
+        manager.deleteObject(b);
+        manager.deleteObject(c);
+        manager.deleteObject(d);
+
+        AtomicInteger found = new AtomicInteger();
+        manager.when(d, t -> found.incrementAndGet());
+        // The independent branches are replayed at once.
+        Assert.assertEquals(new HashSet<RpcTarget.Id>(Arrays.asList(b, c)), pending.keySet());
+        Assert.assertEquals(0, replayCount(d));
+        complete(c);
+        Assert.assertEquals(0, replayCount(d));
+        complete(b);
+        // d waits only for its source.
+        Assert.assertEquals(1, replayCount(d));
+        complete(d);
+        Assert.assertEquals(1, found.get());
+        Assert.assertEquals(1, replayCount(b));
+        Assert.assertEquals(1, replayCount(c));
+    }
+
+    @Test
+    public void testFailedReplayRetried() {
+        RpcObjectManager manager = RpcObjectManager.instance;
+        RpcTarget.Id a = create(RpcObjectManager.initialObjectId);
+        RpcTarget.Id b = create(a);
+        manager.deleteObject(b);
+
+        failing.add(b);
+        AtomicInteger found = new AtomicInteger();
+        manager.when(b, t -> found.incrementAndGet());
+        Assert.assertEquals(1, replayCount(b));
+        Assert.assertFalse(manager.isRebuilding(b));
+
+        // A later request replays the object again.
+        failing.remove(b);
+        manager.when(b, t -> found.incrementAndGet());
+        Assert.assertEquals(2, replayCount(b));
+        Assert.assertTrue(manager.isRebuilding(b));
+
+        // A replay that completes without producing the object is also retried.
+        pending.remove(b);
+        manager.replayCompleted(b);
+        Assert.assertFalse(manager.isRebuilding(b));
+        manager.when(b, t -> found.incrementAndGet());
+        Assert.assertEquals(3, replayCount(b));
+        complete(b);
+        Assert.assertNotNull(manager.getObject(b));
+        Assert.assertEquals(3, found.get());
+    }
+}